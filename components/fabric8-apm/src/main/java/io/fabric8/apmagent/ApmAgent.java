@@ -18,6 +18,7 @@ package io.fabric8.apmagent;
 import java.lang.instrument.Instrumentation;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import io.fabric8.apmagent.metrics.ApmAgentContext;
@@ -97,6 +98,39 @@ public class ApmAgent implements ApmAgentMBean, ApmConfigurationChangeListener {
         }
     }
 
+    public static void enterMethod(int methodId) {
+        if (INSTANCE.started.get()) {
+            INSTANCE.apmAgentContext.enterMethod(methodId);
+        }
+    }
+
+    public static void exitMethod(int methodId) {
+        if (INSTANCE.started.get()) {
+            INSTANCE.apmAgentContext.exitMethod(methodId);
+        }
+    }
+
+    /**
+     * @return the W3C traceparent header value for the current instrumented call on this thread, to pass on
+     * to a downstream service - or null if call trees aren't being recorded
+     */
+    public static String getTraceParent() {
+        if (INSTANCE.started.get()) {
+            return INSTANCE.apmAgentContext.getTraceParent();
+        }
+        return null;
+    }
+
+    /**
+     * Continue the trace of an upstream service, from the value of its W3C traceparent header
+     */
+    public static boolean continueTrace(String traceParent) {
+        if (INSTANCE.started.get()) {
+            return INSTANCE.apmAgentContext.continueTrace(traceParent);
+        }
+        return false;
+    }
+
     public List<String> getTransformedMethods() {
         if (isInitialized()) {
             return apmAgentContext.getTransformedMethods();
@@ -111,6 +145,36 @@ public class ApmAgent implements ApmAgentMBean, ApmConfigurationChangeListener {
         return Collections.EMPTY_LIST;
     }
 
+    public String getCollapsedStacks() {
+        Strategy s = this.strategy;
+        if (isInitialized() && s instanceof SamplingStrategy) {
+            return ((SamplingStrategy) s).getCollapsedStacks();
+        }
+        return "";
+    }
+
+    public Map<String, Long> getMethodSampleCounts() {
+        Strategy s = this.strategy;
+        if (isInitialized() && s instanceof SamplingStrategy) {
+            return ((SamplingStrategy) s).getMethodSampleCounts();
+        }
+        return Collections.emptyMap();
+    }
+
+    public void resetSamples() {
+        Strategy s = this.strategy;
+        if (isInitialized() && s instanceof SamplingStrategy) {
+            ((SamplingStrategy) s).resetSamples();
+        }
+    }
+
+    public String getPrometheusMetrics() {
+        if (isInitialized()) {
+            return apmAgentContext.getPrometheusMetrics();
+        }
+        return "";
+    }
+
     public List<ThreadMetrics> getThreadMetrics() {
         if (isInitialized()) {
             return apmAgentContext.getThreadMetrics();
@@ -214,6 +278,8 @@ public class ApmAgent implements ApmAgentMBean, ApmConfigurationChangeListener {
             } catch (Throwable e) {
                 LOG.warn("Failed to shutdown due " + e.getMessage(), e);
             }
+            //only now the original classes have been restored
+            apmAgentContext.closeClassBytesStore();
         }
     }
 
@@ -16,6 +16,7 @@
 package io.fabric8.apmagent;
 
 import java.util.List;
+import java.util.Map;
 
 public interface ApmAgentMBean {
 
@@ -36,4 +37,26 @@ public interface ApmAgentMBean {
      * @return List of all <className>@<methodName>
      */
     List<String> getAllMethods();
+
+    /**
+     * @return the sampled stacks in collapsed format (frames separated by ';' followed by a count),
+     * or an empty string if the sampling strategy isn't being used
+     */
+    String getCollapsedStacks();
+
+    /**
+     * @return the number of samples each method was seen at the top of the stack, highest first,
+     * or an empty map if the sampling strategy isn't being used
+     */
+    Map<String, Long> getMethodSampleCounts();
+
+    /**
+     * Clears the sampled stacks and method counts, if the sampling strategy is being used
+     */
+    void resetSamples();
+
+    /**
+     * @return the ranked global and per thread method metrics in the Prometheus text format
+     */
+    String getPrometheusMetrics();
 }
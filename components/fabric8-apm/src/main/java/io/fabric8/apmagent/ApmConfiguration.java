@@ -27,6 +27,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class ApmConfiguration implements ApmConfigurationMBean {
     public enum STRATEGY {
@@ -51,6 +53,23 @@ public class ApmConfiguration implements ApmConfigurationMBean {
     private boolean autoStartMetrics = false;
     private boolean usePlatformMBeanServer = true;
     private boolean verifyClasses = false;
+    private boolean methodIdTracing = false;
+    private int transformThreads = Runtime.getRuntime().availableProcessors();
+    private int transformBatchSize = 50;
+    private int bytecodeCacheSize = 32 * 1024 * 1024;
+    private String bytecodeCacheDirectory;
+    private String classBytesStorage = ClassBytesStore.Mode.HEAP.name();
+    private String classBytesSpillDirectory;
+    private boolean rankMBeans = true;
+    private int metricsPort = 0;
+    private String metricsHost = "localhost";
+    private String threadGroupPattern;
+    private volatile Pattern threadGroupRegex;
+    private int maxThreadMetrics = 256;
+    private long threadMetricsIdleTime = 60 * 1000;
+    private boolean callTreeRecording = false;
+    private int spanBufferSize = 256;
+    private String spanSinkFile;
     private int methodMetricDepth = 10;
     private int threadMetricDepth = 5;
     private boolean filterChanged = false;
@@ -58,9 +77,11 @@ public class ApmConfiguration implements ApmConfigurationMBean {
     private boolean threadMetricDepthChanged = false;
     private boolean strategyChanged = false;
     private int samplingInterval = 1;
+    private int samplingDepth = 64;
     private List<FilterItem> whiteFilterList = new ArrayList<>();
     private List<FilterItem> blackFilterList = new ArrayList<>();
     private List<ApmConfigurationChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+    private volatile FilterMatcher filterMatcher;
     private STRATEGY strategy = STRATEGY.TRACE;
 
     ApmConfiguration() {
@@ -207,6 +228,209 @@ public class ApmConfiguration implements ApmConfigurationMBean {
         this.verifyClasses = verifyClasses;
     }
 
+    /**
+     * When true the trace strategy injects an integer method id into instrumented methods instead of
+     * the method name, so entering and exiting a method avoids any map lookups on the method name.
+     * Only takes effect for classes transformed after it has been set.
+     */
+    public boolean isMethodIdTracing() {
+        return methodIdTracing;
+    }
+
+    public void setMethodIdTracing(boolean methodIdTracing) {
+        this.methodIdTracing = methodIdTracing;
+    }
+
+    /**
+     * @return the number of threads used to retransform classes
+     */
+    public int getTransformThreads() {
+        return transformThreads;
+    }
+
+    public void setTransformThreads(int transformThreads) {
+        this.transformThreads = transformThreads;
+    }
+
+    /**
+     * @return the number of classes passed to each call of Instrumentation.retransformClasses
+     */
+    public int getTransformBatchSize() {
+        return transformBatchSize;
+    }
+
+    public void setTransformBatchSize(int transformBatchSize) {
+        this.transformBatchSize = transformBatchSize;
+    }
+
+    /**
+     * @return the maximum number of bytes of instrumented byte code cached in memory, 0 disables the cache
+     */
+    public int getBytecodeCacheSize() {
+        return bytecodeCacheSize;
+    }
+
+    public void setBytecodeCacheSize(int bytecodeCacheSize) {
+        this.bytecodeCacheSize = bytecodeCacheSize;
+    }
+
+    /**
+     * @return the directory instrumented byte code is persisted to, so it can be reused after a restart
+     */
+    public String getBytecodeCacheDirectory() {
+        return bytecodeCacheDirectory;
+    }
+
+    public void setBytecodeCacheDirectory(String bytecodeCacheDirectory) {
+        this.bytecodeCacheDirectory = bytecodeCacheDirectory;
+    }
+
+    /**
+     * @return where the original and transformed byte code of classes is kept - one of
+     * HEAP, OFFHEAP (compressed in direct buffers) or FILE (compressed in a memory mapped spill file)
+     */
+    public String getClassBytesStorage() {
+        return classBytesStorage;
+    }
+
+    public void setClassBytesStorage(String classBytesStorage) {
+        this.classBytesStorage = classBytesStorage;
+    }
+
+    public ClassBytesStore.Mode getClassBytesStorageMode() {
+        return ClassBytesStore.Mode.getMode(classBytesStorage);
+    }
+
+    /**
+     * @return the directory for the spill file when using FILE storage, defaults to java.io.tmpdir
+     */
+    public String getClassBytesSpillDirectory() {
+        return classBytesSpillDirectory;
+    }
+
+    public void setClassBytesSpillDirectory(String classBytesSpillDirectory) {
+        this.classBytesSpillDirectory = classBytesSpillDirectory;
+    }
+
+    /**
+     * @return whether an MBean is registered per rank of the method metrics, when false the
+     * metrics are only available through the bulk Prometheus export
+     */
+    public boolean isRankMBeans() {
+        return rankMBeans;
+    }
+
+    public void setRankMBeans(boolean rankMBeans) {
+        this.rankMBeans = rankMBeans;
+    }
+
+    /**
+     * @return the port to serve the metrics in Prometheus format on, or 0 to not serve them
+     */
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    public void setMetricsPort(int metricsPort) {
+        this.metricsPort = metricsPort;
+    }
+
+    /**
+     * @return the host name or address the metrics are served on, or empty to serve them on all interfaces
+     */
+    public String getMetricsHost() {
+        return metricsHost;
+    }
+
+    public void setMetricsHost(String metricsHost) {
+        this.metricsHost = metricsHost;
+    }
+
+    /**
+     * @return a regular expression - threads whose names match it are tracked as a group named by
+     * replacing the matches with '*', e.g. with "\d+" the threads of a pool share "pool-*-thread-*"
+     */
+    public String getThreadGroupPattern() {
+        return threadGroupPattern;
+    }
+
+    public void setThreadGroupPattern(String threadGroupPattern) {
+        this.threadGroupPattern = threadGroupPattern;
+        this.threadGroupRegex = threadGroupPattern != null && !threadGroupPattern.isEmpty() ? Pattern.compile(threadGroupPattern) : null;
+    }
+
+    /**
+     * @return the name of the group the thread's metrics are tracked by, or null if the thread is tracked on its own
+     */
+    public String getThreadGroupName(String threadName) {
+        Pattern regex = threadGroupRegex;
+        if (regex != null) {
+            Matcher matcher = regex.matcher(threadName);
+            if (matcher.find()) {
+                return matcher.replaceAll("*");
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the maximum number of threads (or thread groups) tracked separately, any more share a single
+     * group - or 0 for no limit
+     */
+    public int getMaxThreadMetrics() {
+        return maxThreadMetrics;
+    }
+
+    public void setMaxThreadMetrics(int maxThreadMetrics) {
+        this.maxThreadMetrics = maxThreadMetrics;
+    }
+
+    /**
+     * @return the time in milliseconds after which the metrics of a thread that hasn't completed a method
+     * are dropped - or 0 to only drop the metrics of dead threads
+     */
+    public long getThreadMetricsIdleTime() {
+        return threadMetricsIdleTime;
+    }
+
+    public void setThreadMetricsIdleTime(long threadMetricsIdleTime) {
+        this.threadMetricsIdleTime = threadMetricsIdleTime;
+    }
+
+    /**
+     * @return whether the call trees of instrumented methods are recorded as spans, with the time spent
+     * in each call and in the call itself
+     */
+    public boolean isCallTreeRecording() {
+        return callTreeRecording;
+    }
+
+    public void setCallTreeRecording(boolean callTreeRecording) {
+        this.callTreeRecording = callTreeRecording;
+    }
+
+    /**
+     * @return the number of completed spans buffered per thread before they are handed to the sink
+     */
+    public int getSpanBufferSize() {
+        return spanBufferSize;
+    }
+
+    public void setSpanBufferSize(int spanBufferSize) {
+        this.spanBufferSize = spanBufferSize;
+    }
+
+    /**
+     * @return the file spans are appended to as JSON lines, or null to keep the recent spans in memory
+     */
+    public String getSpanSinkFile() {
+        return spanSinkFile;
+    }
+
+    public void setSpanSinkFile(String spanSinkFile) {
+        this.spanSinkFile = spanSinkFile;
+    }
+
     public int getThreadMetricDepth() {
         return threadMetricDepth;
     }
@@ -251,6 +475,17 @@ public class ApmConfiguration implements ApmConfigurationMBean {
         this.samplingInterval = samplingInterval;
     }
 
+    /**
+     * @return the maximum number of frames captured per thread by the sampling strategy
+     */
+    public int getSamplingDepth() {
+        return samplingDepth;
+    }
+
+    public void setSamplingDepth(int samplingDepth) {
+        this.samplingDepth = samplingDepth;
+    }
+
     public String getStrategy() {
         return strategy.name();
     }
@@ -277,50 +512,44 @@ public class ApmConfiguration implements ApmConfigurationMBean {
     }
 
     public boolean isAudit(String className) {
-        return isWhiteListed(className) || !isBlackListed(className);
+        return getFilterMatcher().isAudit(className);
     }
 
     public boolean isAudit(String className, String methodName) {
-        return isWhiteListed(className, methodName) || !isBlackListed(className, methodName);
+        return getFilterMatcher().isAudit(className, methodName);
     }
 
     public boolean isBlackListed(String className) {
-        for (FilterItem item : blackFilterList) {
-            if (item.matches(className)) {
-                return true;
-            }
-        }
-        return false;
+        return getFilterMatcher().isBlackListed(className);
     }
 
     public boolean isBlackListed(String className, String methodName) {
-        for (FilterItem item : blackFilterList) {
-            if (item.matches(className, methodName, true)) {
-                return true;
-            }
-        }
-        return false;
+        return getFilterMatcher().isBlackListed(className, methodName);
     }
 
     public boolean isWhiteListed(String className) {
-        if (whiteFilterList.isEmpty()) {
-            return false;
-        }
-        for (FilterItem item : whiteFilterList) {
-            if (className.matches(item.getClassName())) {
-                return true;
-            }
-        }
-        return false;
+        return getFilterMatcher().isWhiteListed(className);
     }
 
     public boolean isWhiteListed(String className, String methodName) {
-        for (FilterItem item : whiteFilterList) {
-            if (item.matches(className, methodName, false)) {
-                return true;
+        return getFilterMatcher().isWhiteListed(className, methodName);
+    }
+
+    /**
+     * @return the white and black lists compiled into a matcher, built on first use after the filters change
+     */
+    public FilterMatcher getFilterMatcher() {
+        FilterMatcher result = filterMatcher;
+        if (result == null) {
+            synchronized (this) {
+                result = filterMatcher;
+                if (result == null) {
+                    result = new FilterMatcher(whiteFilterList, blackFilterList);
+                    filterMatcher = result;
+                }
             }
         }
-        return false;
+        return result;
     }
 
     public void addChangeListener(ApmConfigurationChangeListener changeListener) {
@@ -332,6 +561,11 @@ public class ApmConfiguration implements ApmConfigurationMBean {
     }
 
     private void fireConfigurationChanged() {
+        if (filterChanged) {
+            synchronized (this) {
+                filterMatcher = null;
+            }
+        }
         for (ApmConfigurationChangeListener apmConfigurationChangeListener : this.changeListeners) {
             apmConfigurationChangeListener.configurationChanged();
         }
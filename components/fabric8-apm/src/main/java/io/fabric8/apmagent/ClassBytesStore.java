@@ -0,0 +1,270 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Keeps class file bytes compressed outside of the heap - either in direct buffers or in a memory mapped
+ * spill file - so the original and transformed byte code of every class seen by the agent doesn't
+ * sit in the old generation. Bytes are stored in slots; only the slot table lives on the heap.
+ * <p/>
+ * Space from freed slots is reclaimed by compacting the live slots into new chunks once the
+ * garbage outweighs the live data.
+ */
+public class ClassBytesStore {
+    public enum Mode {
+        HEAP,
+        OFFHEAP,
+        FILE;
+
+        static Mode getMode(String name) {
+            for (Mode v : values()) {
+                if (v.name().equalsIgnoreCase(name)) {
+                    return v;
+                }
+            }
+            return HEAP;
+        }
+    }
+
+    private static final int CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private final File spillDirectory;
+    private File spillFile;
+    private RandomAccessFile spillAccess;
+    private long spillSize;
+    private List<ByteBuffer> chunks = new ArrayList<>();
+    private int position;
+    private int[] chunkIndexes = new int[256];
+    private int[] offsets = new int[256];
+    private int[] lengths = new int[256];
+    private int[] originalLengths = new int[256];
+    private int slotCount;
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+    private long liveBytes;
+    private long garbageBytes;
+
+    /**
+     * @param spillDirectory - the directory to create the memory mapped spill file in, or null to use direct buffers
+     */
+    public ClassBytesStore(File spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * @return the slot the compressed bytes were stored in
+     */
+    public int put(byte[] data) {
+        byte[] compressed = compress(data);
+        synchronized (this) {
+            int slot = freeCount > 0 ? freeSlots[--freeCount] : newSlot();
+            write(slot, compressed, data.length);
+            return slot;
+        }
+    }
+
+    public byte[] get(int slot) {
+        byte[] compressed;
+        int originalLength;
+        synchronized (this) {
+            compressed = read(slot);
+            originalLength = originalLengths[slot];
+        }
+        return decompress(compressed, originalLength);
+    }
+
+    public synchronized void free(int slot) {
+        if (lengths[slot] < 0) {
+            return;
+        }
+        garbageBytes += lengths[slot];
+        liveBytes -= lengths[slot];
+        lengths[slot] = -1;
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+        if (garbageBytes > CHUNK_SIZE && garbageBytes > liveBytes) {
+            compact();
+        }
+    }
+
+    public synchronized long getLiveBytes() {
+        return liveBytes;
+    }
+
+    /**
+     * Releases the chunks and removes the spill file, if there is one
+     */
+    public synchronized void close() {
+        chunks = new ArrayList<>();
+        position = 0;
+        slotCount = 0;
+        freeCount = 0;
+        liveBytes = 0;
+        garbageBytes = 0;
+        closeSpillFile(spillAccess, spillFile);
+        spillAccess = null;
+        spillFile = null;
+    }
+
+    private int newSlot() {
+        if (slotCount == lengths.length) {
+            int newCapacity = slotCount * 2;
+            chunkIndexes = Arrays.copyOf(chunkIndexes, newCapacity);
+            offsets = Arrays.copyOf(offsets, newCapacity);
+            lengths = Arrays.copyOf(lengths, newCapacity);
+            originalLengths = Arrays.copyOf(originalLengths, newCapacity);
+        }
+        return slotCount++;
+    }
+
+    private void write(int slot, byte[] compressed, int originalLength) {
+        ByteBuffer chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+        if (chunk == null || position + compressed.length > chunk.capacity()) {
+            chunk = newChunk(Math.max(CHUNK_SIZE, compressed.length));
+            position = 0;
+        }
+        ByteBuffer buffer = chunk.duplicate();
+        buffer.position(position);
+        buffer.put(compressed);
+        chunkIndexes[slot] = chunks.size() - 1;
+        offsets[slot] = position;
+        lengths[slot] = compressed.length;
+        originalLengths[slot] = originalLength;
+        position += compressed.length;
+        liveBytes += compressed.length;
+    }
+
+    private byte[] read(int slot) {
+        if (slot < 0 || slot >= slotCount || lengths[slot] < 0) {
+            throw new IllegalArgumentException("No bytes stored in slot " + slot);
+        }
+        byte[] result = new byte[lengths[slot]];
+        ByteBuffer buffer = chunks.get(chunkIndexes[slot]).duplicate();
+        buffer.position(offsets[slot]);
+        buffer.get(result);
+        return result;
+    }
+
+    private ByteBuffer newChunk(int size) {
+        ByteBuffer result;
+        if (spillDirectory == null) {
+            result = ByteBuffer.allocateDirect(size);
+        } else {
+            try {
+                if (spillAccess == null) {
+                    spillFile = File.createTempFile("fabric8-apm-classes", ".bin", spillDirectory);
+                    spillFile.deleteOnExit();
+                    spillAccess = new RandomAccessFile(spillFile, "rw");
+                    spillSize = 0;
+                }
+                result = spillAccess.getChannel().map(FileChannel.MapMode.READ_WRITE, spillSize, size);
+                spillSize += size;
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not map spill file in " + spillDirectory + " due " + e.getMessage(), e);
+            }
+        }
+        chunks.add(result);
+        return result;
+    }
+
+    private void compact() {
+        List<ByteBuffer> oldChunks = chunks;
+        RandomAccessFile oldSpillAccess = spillAccess;
+        File oldSpillFile = spillFile;
+        chunks = new ArrayList<>();
+        spillAccess = null;
+        spillFile = null;
+        position = 0;
+        liveBytes = 0;
+        garbageBytes = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (lengths[slot] >= 0) {
+                byte[] compressed = new byte[lengths[slot]];
+                ByteBuffer buffer = oldChunks.get(chunkIndexes[slot]).duplicate();
+                buffer.position(offsets[slot]);
+                buffer.get(compressed);
+                write(slot, compressed, originalLengths[slot]);
+            }
+        }
+        closeSpillFile(oldSpillAccess, oldSpillFile);
+    }
+
+    private static void closeSpillFile(RandomAccessFile access, File file) {
+        if (access != null) {
+            try {
+                access.close();
+            } catch (IOException e) {
+                //ignore
+            }
+        }
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    private static byte[] compress(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 16);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] decompress(byte[] compressed, int originalLength) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] result = new byte[originalLength];
+            int count = 0;
+            while (count < originalLength && !inflater.finished()) {
+                int inflated = inflater.inflate(result, count, originalLength - count);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Truncated class bytes in store");
+                }
+                count += inflated;
+            }
+            return result;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt class bytes in store due " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
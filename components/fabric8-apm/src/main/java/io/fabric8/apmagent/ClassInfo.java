@@ -28,6 +28,9 @@ public class ClassInfo {
     private String className;
     private byte[] original;
     private byte[] transformed;
+    private ClassBytesStore bytesStore;
+    private int originalSlot = -1;
+    private int transformedSlot = -1;
     private boolean canTransform;
     private ConcurrentMap<String, MethodDescription> transformedMethods = new ConcurrentHashMap<>();
     private ConcurrentMap<String, MethodDescription> allMethods = new ConcurrentHashMap<>();
@@ -48,12 +51,47 @@ public class ClassInfo {
         this.className = className != null ? className.replace("/", ".") : null;
     }
 
-    public byte[] getOriginal() {
+    /**
+     * When set, the original and transformed bytes are kept in the store rather than on the heap,
+     * and only loaded when asked for. Any bytes already held are moved to the new store (or the heap).
+     */
+    public synchronized void setBytesStore(ClassBytesStore bytesStore) {
+        if (this.bytesStore == bytesStore) {
+            return;
+        }
+        byte[] originalBytes = getOriginal();
+        byte[] transformedBytes = getTransformed();
+        clearBytes();
+        this.bytesStore = bytesStore;
+        setOriginal(originalBytes);
+        setTransformed(transformedBytes);
+    }
+
+    /**
+     * Forgets the original and transformed bytes, e.g. once the original class has been restored
+     */
+    public synchronized void clearBytes() {
+        if (bytesStore != null) {
+            originalSlot = replace(originalSlot, null);
+            transformedSlot = replace(transformedSlot, null);
+        }
+        original = null;
+        transformed = null;
+    }
+
+    public synchronized byte[] getOriginal() {
+        if (bytesStore != null) {
+            return originalSlot >= 0 ? bytesStore.get(originalSlot) : null;
+        }
         return original;
     }
 
-    public void setOriginal(byte[] original) {
-        this.original = original;
+    public synchronized void setOriginal(byte[] original) {
+        if (bytesStore != null) {
+            originalSlot = replace(originalSlot, original);
+        } else {
+            this.original = original;
+        }
     }
 
     public Class getOriginalClass() {
@@ -64,12 +102,26 @@ public class ClassInfo {
         this.originalClass = originalClass;
     }
 
-    public byte[] getTransformed() {
+    public synchronized byte[] getTransformed() {
+        if (bytesStore != null) {
+            return transformedSlot >= 0 ? bytesStore.get(transformedSlot) : null;
+        }
         return transformed;
     }
 
-    public void setTransformed(byte[] transformed) {
-        this.transformed = transformed;
+    public synchronized void setTransformed(byte[] transformed) {
+        if (bytesStore != null) {
+            transformedSlot = replace(transformedSlot, transformed);
+        } else {
+            this.transformed = transformed;
+        }
+    }
+
+    /**
+     * @return true if transformed bytes have been set, without loading them from the store
+     */
+    public synchronized boolean hasTransformed() {
+        return bytesStore != null ? transformedSlot >= 0 : transformed != null;
     }
 
     public boolean isCanTransform() {
@@ -119,13 +171,27 @@ public class ClassInfo {
         return result;
     }
 
-    public boolean isTransformed() {
+    public synchronized boolean isTransformed() {
+        if (bytesStore != null) {
+            return transformedSlot >= 0;
+        }
         return transformed != null && transformed.length > 0;
     }
 
-    public void resetTransformed() {
+    public synchronized void resetTransformed() {
+        if (bytesStore != null) {
+            transformedSlot = replace(transformedSlot, null);
+        }
         transformed = null;
         transformedMethods.clear();
     }
 
+    private int replace(int slot, byte[] bytes) {
+        if (slot >= 0) {
+            bytesStore.free(slot);
+        }
+        //empty arrays aren't stored, which keeps isTransformed() the same as for heap storage
+        return bytes != null && bytes.length > 0 ? bytesStore.put(bytes) : -1;
+    }
+
 }
@@ -0,0 +1,259 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * The white and black lists of an {@link ApmConfiguration} compiled into a character trie of class name
+ * prefixes, plus precompiled patterns for the filters that use regular expressions. Audit results are cached,
+ * and the cache is bounded. A new matcher is built whenever the filters change.
+ * <p/>
+ * A filter matches a class if the class name starts with it or fully matches it as a regular expression,
+ * the same as {@link FilterItem#matches(String)}. Dots are treated literally when deciding whether a filter
+ * needs a pattern.
+ */
+public class FilterMatcher {
+    private static final int MAX_CACHE_SIZE = 16384;
+    private static final String REGEX_CHARS = "\\[](){}*+?^$|";
+
+    private final CompiledList whiteList;
+    private final CompiledList blackList;
+    private final ConcurrentMap<String, Boolean> classCache = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ConcurrentMap<String, Boolean>> methodCache = new ConcurrentHashMap<>();
+
+    public FilterMatcher(List<FilterItem> whiteFilterList, List<FilterItem> blackFilterList) {
+        this.whiteList = new CompiledList(whiteFilterList);
+        this.blackList = new CompiledList(blackFilterList);
+    }
+
+    public boolean isAudit(String className) {
+        Boolean result = classCache.get(className);
+        if (result == null) {
+            result = isWhiteListed(className) || !isBlackListed(className);
+            if (classCache.size() >= MAX_CACHE_SIZE) {
+                classCache.clear();
+            }
+            classCache.put(className, result);
+        }
+        return result;
+    }
+
+    public boolean isAudit(String className, String methodName) {
+        if (methodName == null) {
+            return isWhiteListed(className, null) || !isBlackListed(className, null);
+        }
+        ConcurrentMap<String, Boolean> methods = methodCache.get(className);
+        if (methods == null) {
+            if (methodCache.size() >= MAX_CACHE_SIZE) {
+                methodCache.clear();
+            }
+            methods = new ConcurrentHashMap<>();
+            ConcurrentMap<String, Boolean> existing = methodCache.putIfAbsent(className, methods);
+            if (existing != null) {
+                methods = existing;
+            }
+        }
+        Boolean result = methods.get(methodName);
+        if (result == null) {
+            result = isWhiteListed(className, methodName) || !isBlackListed(className, methodName);
+            methods.put(methodName, result);
+        }
+        return result;
+    }
+
+    public boolean isWhiteListed(String className) {
+        return whiteList.matches(className);
+    }
+
+    public boolean isWhiteListed(String className, String methodName) {
+        return whiteList.matches(className, methodName, false);
+    }
+
+    public boolean isBlackListed(String className) {
+        return blackList.matches(className);
+    }
+
+    public boolean isBlackListed(String className, String methodName) {
+        return blackList.matches(className, methodName, true);
+    }
+
+    private static boolean isRegex(String str) {
+        for (int i = 0; i < str.length(); i++) {
+            if (REGEX_CHARS.indexOf(str.charAt(i)) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Pattern compile(String regex) {
+        try {
+            return Pattern.compile(regex);
+        } catch (PatternSyntaxException e) {
+            return Pattern.compile(Pattern.quote(regex));
+        }
+    }
+
+    /**
+     * A filter item with its method name pattern compiled
+     */
+    private static class CompiledItem {
+        private final Pattern classPattern;
+        private final Pattern methodPattern;
+
+        CompiledItem(FilterItem item) {
+            String className = item.getClassName();
+            this.classPattern = className != null && isRegex(className) ? compile(className) : null;
+            String methodName = item.getMethodName();
+            this.methodPattern = methodName != null && !methodName.isEmpty() ? compile(methodName) : null;
+        }
+
+        boolean matchesMethod(String method, boolean matchIfNoFilterMethod) {
+            if (method == null || method.isEmpty()) {
+                return methodPattern == null;
+            }
+            if (methodPattern != null) {
+                return methodPattern.matcher(method).matches();
+            }
+            return matchIfNoFilterMethod;
+        }
+    }
+
+    private static class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private List<CompiledItem> items;
+
+        Node child(char c) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        Node addChild(char c) {
+            Node result = child(c);
+            if (result == null) {
+                result = new Node();
+                keys = Arrays.copyOf(keys, keys.length + 1);
+                children = Arrays.copyOf(children, children.length + 1);
+                keys[keys.length - 1] = c;
+                children[children.length - 1] = result;
+            }
+            return result;
+        }
+    }
+
+    private static class CompiledList {
+        private final Node root = new Node();
+        private final List<CompiledItem> regexItems = new ArrayList<>();
+
+        CompiledList(List<FilterItem> filterItems) {
+            for (FilterItem filterItem : filterItems) {
+                String className = filterItem.getClassName();
+                if (className == null) {
+                    continue;
+                }
+                CompiledItem item = new CompiledItem(filterItem);
+                Node node = root;
+                for (int i = 0; i < className.length(); i++) {
+                    node = node.addChild(className.charAt(i));
+                }
+                if (node.items == null) {
+                    node.items = new ArrayList<>();
+                }
+                node.items.add(item);
+                if (item.classPattern != null) {
+                    regexItems.add(item);
+                }
+            }
+        }
+
+        boolean matches(String className) {
+            Node node = root;
+            if (node.items != null) {
+                return true;
+            }
+            for (int i = 0; i < className.length(); i++) {
+                node = node.child(normalize(className.charAt(i)));
+                if (node == null) {
+                    break;
+                }
+                if (node.items != null) {
+                    return true;
+                }
+            }
+            if (!regexItems.isEmpty()) {
+                String name = className.replace('/', '.');
+                for (CompiledItem item : regexItems) {
+                    if (item.classPattern.matcher(name).matches()) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        boolean matches(String className, String method, boolean matchIfNoFilterMethod) {
+            Node node = root;
+            if (matchesAny(node.items, method, matchIfNoFilterMethod)) {
+                return true;
+            }
+            for (int i = 0; i < className.length(); i++) {
+                node = node.child(normalize(className.charAt(i)));
+                if (node == null) {
+                    break;
+                }
+                if (matchesAny(node.items, method, matchIfNoFilterMethod)) {
+                    return true;
+                }
+            }
+            if (!regexItems.isEmpty()) {
+                String name = className.replace('/', '.');
+                for (CompiledItem item : regexItems) {
+                    if (item.classPattern.matcher(name).matches() && item.matchesMethod(method, matchIfNoFilterMethod)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private static boolean matchesAny(List<CompiledItem> items, String method, boolean matchIfNoFilterMethod) {
+            if (items != null) {
+                for (int i = 0; i < items.size(); i++) {
+                    if (items.get(i).matchesMethod(method, matchIfNoFilterMethod)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private static char normalize(char c) {
+            return c == '/' ? '.' : c;
+        }
+    }
+}
@@ -15,8 +15,13 @@
  */
 package io.fabric8.apmagent.metrics;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -35,6 +40,7 @@ import javax.management.ObjectName;
 
 import io.fabric8.apmagent.ApmAgent;
 import io.fabric8.apmagent.ApmConfiguration;
+import io.fabric8.apmagent.ClassBytesStore;
 import io.fabric8.apmagent.ClassInfo;
 import io.fabric8.apmagent.MethodDescription;
 import org.jolokia.jmx.JolokiaMBeanServerUtil;
@@ -49,9 +55,17 @@ public class ApmAgentContext {
     private final ConcurrentMap<String, ClassInfo> allMethods = new ConcurrentHashMap<>();
     private AtomicBoolean initialized = new AtomicBoolean();
     private AtomicBoolean started = new AtomicBoolean();
+    private final String OTHER_THREADS = "<other threads>";
     private ConcurrentMap<Thread, ThreadMetrics> threadMetricsMap = new ConcurrentHashMap<>();
+    private ConcurrentMap<String, ThreadMetrics> threadGroupMetricsMap = new ConcurrentHashMap<>();
+    private final Set<ThreadMetrics> allThreadMetrics = Collections.newSetFromMap(new ConcurrentHashMap<ThreadMetrics, Boolean>());
     private ConcurrentMap<String, MethodMetrics> methodMetricsMap = new ConcurrentHashMap<>();
     private ConcurrentMap<Object, ObjectName> objectNameMap = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Integer> methodIdMap = new ConcurrentHashMap<>();
+    private volatile String[] methodNamesById = new String[64];
+    private volatile MethodMetrics[] methodMetricsById = new MethodMetrics[64];
+    private int nextMethodId;
+    private final ThreadLocal<ThreadMetrics> currentThreadMetrics = new ThreadLocal<>();
     private MBeanServer mBeanServer;
     private JolokiaServer jolokiaServer;
     private final ApmAgent apmAgent;
@@ -59,9 +73,11 @@ public class ApmAgentContext {
     private ObjectName configurationObjectName;
     private final ApmConfiguration configuration;
     private final MonitoredMethodMetrics monitoredMethodMetrics;
-    private AtomicBoolean doHouseKeeping = new AtomicBoolean();
     private Thread backgroundThread;
     private boolean monitorByDefault = true;
+    private volatile ClassBytesStore classBytesStore;
+    private MetricsHttpServer metricsHttpServer;
+    private volatile SpanCollector spanCollector;
 
     public ApmAgentContext(ApmAgent agent) {
         this.apmAgent = agent;
@@ -73,11 +89,10 @@ public class ApmAgentContext {
     public void enterMethod(Thread currentThread, String fullMethodName, boolean alwaysActive) {
         if (isInitialized()) {
             ThreadMetrics threadMetrics = threadMetricsMap.get(currentThread);
-            if (threadMetrics == null) {
-                threadMetrics = new ThreadMetrics(this, currentThread);
-                threadMetricsMap.put(currentThread, threadMetrics);
+            if (threadMetrics == null || threadMetrics.isDestroyed()) {
+                threadMetrics = createThreadMetrics(currentThread);
             }
-            threadMetrics.enter(fullMethodName, alwaysActive);
+            threadMetrics.enter(currentThread, fullMethodName, alwaysActive);
 
             MethodMetrics methodMetrics = methodMetricsMap.get(fullMethodName);
             if (methodMetrics == null) {
@@ -89,13 +104,166 @@ public class ApmAgentContext {
 
     }
 
+    /**
+     * Enter a method by the id baked into the instrumented byte code - see {@link #getMethodId(String)}.
+     * Unlike {@link #enterMethod(Thread, String, boolean)} this doesn't look up or hash the method name,
+     * the per thread metrics are held in a thread local and the method metrics are indexed by id.
+     */
+    public void enterMethod(int methodId) {
+        if (isInitialized()) {
+            getCurrentThreadMetrics().enter(Thread.currentThread(), methodId, false);
+
+            MethodMetrics[] array = methodMetricsById;
+            if (methodId >= array.length || array[methodId] == null) {
+                createMethodMetrics(methodId);
+            }
+        }
+    }
+
+    public void exitMethod(int methodId) {
+        if (isInitialized()) {
+            ThreadMetrics threadMetrics = currentThreadMetrics.get();
+
+            long elapsed = -1;
+            if (threadMetrics != null && !threadMetrics.isDestroyed()) {
+                elapsed = threadMetrics.exit(Thread.currentThread(), methodId, false);
+            }
+
+            if (elapsed >= 0) {
+                MethodMetrics[] array = methodMetricsById;
+                MethodMetrics methodMetrics = methodId < array.length ? array[methodId] : null;
+                if (methodMetrics != null) {
+                    methodMetrics.update(elapsed);
+                }
+            }
+        }
+    }
+
+    /**
+     * Assign (or look up) the id for a fully qualified method name. Ids are handed out when classes are
+     * transformed and are never reused, so they stay valid for the byte code they were compiled into.
+     */
+    public synchronized int getMethodId(String fullMethodName) {
+        Integer result = methodIdMap.get(fullMethodName);
+        if (result == null) {
+            result = nextMethodId++;
+            String[] names = methodNamesById;
+            if (result >= names.length) {
+                names = Arrays.copyOf(names, names.length * 2);
+            }
+            names[result] = fullMethodName;
+            methodNamesById = names;
+            methodIdMap.put(fullMethodName, result);
+        }
+        return result;
+    }
+
+    /**
+     * @return the id previously assigned to the method, or -1 if it hasn't got one
+     */
+    public int findMethodId(String fullMethodName) {
+        Integer result = methodIdMap.get(fullMethodName);
+        return result != null ? result : -1;
+    }
+
+    public String getMethodName(int methodId) {
+        String[] names = methodNamesById;
+        return methodId >= 0 && methodId < names.length ? names[methodId] : null;
+    }
+
+    private ThreadMetrics getCurrentThreadMetrics() {
+        ThreadMetrics threadMetrics = currentThreadMetrics.get();
+        if (threadMetrics == null || threadMetrics.isDestroyed()) {
+            Thread currentThread = Thread.currentThread();
+            threadMetrics = threadMetricsMap.get(currentThread);
+            if (threadMetrics == null || threadMetrics.isDestroyed()) {
+                threadMetrics = createThreadMetrics(currentThread);
+            }
+            currentThreadMetrics.set(threadMetrics);
+        }
+        return threadMetrics;
+    }
+
+    /**
+     * Threads whose names match the thread group pattern share the metrics of their group, so a pool
+     * (or a stream of short lived threads) is tracked once. Once the budget of thread metrics is used up,
+     * any further threads share the metrics of a single catch all group.
+     */
+    private synchronized ThreadMetrics createThreadMetrics(Thread thread) {
+        ThreadMetrics result = threadMetricsMap.get(thread);
+        if (result != null && !result.isDestroyed()) {
+            return result;
+        }
+        String groupName = configuration.getThreadGroupName(thread.getName());
+        if (groupName != null) {
+            result = threadGroupMetricsMap.get(groupName);
+            if (result == null && hasThreadMetricsBudget()) {
+                result = new ThreadMetrics(this, groupName);
+                threadGroupMetricsMap.put(groupName, result);
+                allThreadMetrics.add(result);
+            }
+        } else if (hasThreadMetricsBudget()) {
+            result = new ThreadMetrics(this, thread);
+            allThreadMetrics.add(result);
+        }
+        if (result == null) {
+            result = threadGroupMetricsMap.get(OTHER_THREADS);
+            if (result == null) {
+                result = new ThreadMetrics(this, OTHER_THREADS);
+                threadGroupMetricsMap.put(OTHER_THREADS, result);
+                allThreadMetrics.add(result);
+            }
+        }
+        threadMetricsMap.put(thread, result);
+        return result;
+    }
+
+    private boolean hasThreadMetricsBudget() {
+        int size = allThreadMetrics.size();
+        if (threadGroupMetricsMap.containsKey(OTHER_THREADS)) {
+            size--;
+        }
+        int max = configuration.getMaxThreadMetrics();
+        return max <= 0 || size < max;
+    }
+
+    private synchronized void removeThreadMetrics(ThreadMetrics threadMetrics) {
+        threadMetrics.destroy();
+        allThreadMetrics.remove(threadMetrics);
+        if (threadMetrics.isGroup()) {
+            threadGroupMetricsMap.remove(threadMetrics.getName(), threadMetrics);
+        } else {
+            threadMetricsMap.remove(threadMetrics.getThread(), threadMetrics);
+        }
+    }
+
+    private synchronized MethodMetrics createMethodMetrics(int methodId) {
+        String fullMethodName = getMethodName(methodId);
+        MethodMetrics methodMetrics = methodMetricsMap.get(fullMethodName);
+        if (methodMetrics == null) {
+            methodMetrics = new MethodMetrics(fullMethodName);
+            methodMetrics.setActive(isMonitorByDefault());
+            MethodMetrics existing = methodMetricsMap.putIfAbsent(fullMethodName, methodMetrics);
+            if (existing != null) {
+                methodMetrics = existing;
+            }
+        }
+        MethodMetrics[] array = methodMetricsById;
+        if (methodId >= array.length) {
+            array = Arrays.copyOf(array, Math.max(methodId + 1, array.length * 2));
+        }
+        array[methodId] = methodMetrics;
+        methodMetricsById = array;
+        return methodMetrics;
+    }
+
     public void exitMethod(Thread currentThread, String methodName, boolean alwaysActive) {
         if (isInitialized()) {
             ThreadMetrics threadMetrics = threadMetricsMap.get(currentThread);
 
             long elapsed = -1;
-            if (threadMetrics != null) {
-                elapsed = threadMetrics.exit(methodName, alwaysActive);
+            if (threadMetrics != null && !threadMetrics.isDestroyed()) {
+                elapsed = threadMetrics.exit(currentThread, methodName, alwaysActive);
             }
 
             if (elapsed >= 0) {
@@ -104,12 +272,19 @@ public class ApmAgentContext {
                     methodMetrics.update(elapsed);
                 }
             }
-            doHouseKeeping();
         }
     }
 
     public void initialize() {
         if (initialized.compareAndSet(false, true)) {
+            classBytesStore = createClassBytesStore();
+            //class infos kept from before a re-initialize move their bytes to the new store
+            for (ClassInfo classInfo : allMethods.values()) {
+                classInfo.setBytesStore(classBytesStore);
+            }
+            if (configuration.isCallTreeRecording()) {
+                spanCollector = new SpanCollector(createSpanSink());
+            }
             try {
                 agentObjectName = new ObjectName(DEFAULT_DOMAIN, "type", "apmAgent");
                 registerMBean(agentObjectName, apmAgent);
@@ -130,7 +305,7 @@ public class ApmAgentContext {
                         while (started.get()) {
                             try {
                                 Thread.sleep(HOUSE_KEEPING_TIME);
-                                doHouseKeeping.set(true);
+                                doHouseKeeping();
                             } catch (Throwable e) {
                             }
                         }
@@ -138,40 +313,67 @@ public class ApmAgentContext {
                 }, "Fabric8-ApmAgent-BackgroundThread");
                 backgroundThread.setDaemon(true);
                 backgroundThread.start();
+                startMetricsHttpServer();
             }
         }
     }
 
+    /**
+     * Ranks the method metrics and removes the metrics of dead and idle threads. Runs on the background thread,
+     * so the instrumented application threads never pay for it.
+     */
     void doHouseKeeping() {
-        //the time is going to be the elapsed time from the latest method call
-        //its not going to be terribly accurate - but then it doesn't really need to be
-        if (doHouseKeeping.compareAndSet(true, false)) {
-            try {
-                List<ThreadMetrics> threadMetricsList = getThreadMetrics();
-                for (ThreadMetrics tm : threadMetricsList) {
-                    if (tm.isDead()) {
-                        tm.destroy();
-                        threadMetricsMap.remove(tm.getThread());
-                    }
+        try {
+            long now = System.currentTimeMillis();
+            long idleTime = configuration.getThreadMetricsIdleTime();
+            for (ThreadMetrics tm : allThreadMetrics) {
+                if (tm.isDead() || (idleTime > 0 && tm.isIdle(now, idleTime))) {
+                    removeThreadMetrics(tm);
+                } else {
+                    tm.removeDeadThreadStacks();
                 }
-                monitoredMethodMetrics.calculateMethodMetrics(getMethodMetrics());
-                for (ThreadMetrics threadMetrics : threadMetricsList) {
-                    threadMetrics.calculateMethodMetrics();
+            }
+            //threads mapped to a group, or to metrics that have been removed
+            for (Thread thread : threadMetricsMap.keySet()) {
+                ThreadMetrics tm = threadMetricsMap.get(thread);
+                if (!thread.isAlive() || (tm != null && tm.isDestroyed())) {
+                    threadMetricsMap.remove(thread);
                 }
-            } catch (Throwable e) {
-                LOG.warn("Error during housekeeping due " + e.getMessage() + ". This exception is ignored.", e);
             }
+            monitoredMethodMetrics.calculateMethodMetrics(methodMetricsMap.values());
+            for (ThreadMetrics threadMetrics : allThreadMetrics) {
+                threadMetrics.calculateMethodMetrics();
+            }
+            SpanCollector collector = spanCollector;
+            if (collector != null) {
+                collector.flush();
+            }
+        } catch (Throwable e) {
+            LOG.warn("Error during housekeeping due " + e.getMessage() + ". This exception is ignored.", e);
         }
     }
 
     public void stop() {
         if (initialized.get() && started.compareAndSet(true, false)) {
+            stopMetricsHttpServer();
             for (ObjectName objectName : objectNameMap.values()) {
                 unregisterMBean(objectName);
             }
             objectNameMap.clear();
             methodMetricsMap.clear();
+            synchronized (this) {
+                methodMetricsById = new MethodMetrics[methodMetricsById.length];
+            }
+            for (ThreadMetrics threadMetrics : allThreadMetrics) {
+                threadMetrics.destroy();
+            }
+            allThreadMetrics.clear();
+            threadGroupMetricsMap.clear();
             threadMetricsMap.clear();
+            SpanCollector collector = spanCollector;
+            if (collector != null) {
+                collector.flush();
+            }
         }
     }
 
@@ -186,6 +388,91 @@ public class ApmAgentContext {
 
             }
             mBeanServer = null;
+            SpanCollector collector = spanCollector;
+            spanCollector = null;
+            if (collector != null) {
+                collector.close();
+            }
+        }
+    }
+
+    /**
+     * Releases the class bytes store. Called once the strategy has restored the original classes, so the
+     * class infos only forget their bytes - the originals are captured again if the classes are transformed again.
+     */
+    public void closeClassBytesStore() {
+        ClassBytesStore store = classBytesStore;
+        classBytesStore = null;
+        if (store != null) {
+            for (ClassInfo classInfo : allMethods.values()) {
+                classInfo.clearBytes();
+                classInfo.setBytesStore(null);
+            }
+            store.close();
+        }
+    }
+
+    private SpanSink createSpanSink() {
+        String file = configuration.getSpanSinkFile();
+        if (file != null && !file.isEmpty()) {
+            return new FileSpanSink(new File(file));
+        }
+        return new InMemorySpanSink(configuration.getSpanBufferSize() * 16);
+    }
+
+    /**
+     * @return a recorder for the call trees of the thread, or null if call trees aren't recorded
+     */
+    SpanRecorder createSpanRecorder(Thread thread) {
+        SpanCollector collector = spanCollector;
+        if (collector != null) {
+            return new SpanRecorder(collector, thread.getName(), configuration.getSpanBufferSize());
+        }
+        return null;
+    }
+
+    /**
+     * @return the collector of the recorded call trees, or null if call trees aren't recorded
+     */
+    public SpanCollector getSpanCollector() {
+        return spanCollector;
+    }
+
+    /**
+     * @return the W3C traceparent header value for the current call on this thread, or null if there isn't one
+     */
+    public String getTraceParent() {
+        SpanRecorder spanRecorder = getCurrentSpanRecorder();
+        return spanRecorder != null ? spanRecorder.getTraceParent() : null;
+    }
+
+    /**
+     * Make the current (or next) call tree on this thread part of the trace of a W3C traceparent header
+     */
+    public boolean continueTrace(String traceParent) {
+        SpanRecorder spanRecorder = getCurrentSpanRecorder();
+        return spanRecorder != null && spanRecorder.continueTrace(traceParent);
+    }
+
+    private SpanRecorder getCurrentSpanRecorder() {
+        if (isInitialized() && spanCollector != null) {
+            return getCurrentThreadMetrics().getStack(Thread.currentThread()).getSpanRecorder();
+        }
+        return null;
+    }
+
+    private ClassBytesStore createClassBytesStore() {
+        switch (configuration.getClassBytesStorageMode()) {
+            case OFFHEAP:
+                return new ClassBytesStore(null);
+            case FILE:
+                String directory = configuration.getClassBytesSpillDirectory();
+                if (directory == null || directory.isEmpty()) {
+                    directory = System.getProperty("java.io.tmpdir");
+                }
+                return new ClassBytesStore(new File(directory));
+            default:
+                return null;
         }
     }
 
@@ -196,6 +483,7 @@ public class ApmAgentContext {
         if (result == null) {
             ClassInfo classInfo = new ClassInfo();
             classInfo.setClassName(key);
+            classInfo.setBytesStore(classBytesStore);
             result = allMethods.putIfAbsent(key, classInfo);
             if (result == null) {
                 result = classInfo;
@@ -225,7 +513,7 @@ public class ApmAgentContext {
     }
 
     public List<ThreadMetrics> getThreadMetrics() {
-        List<ThreadMetrics> result = new ArrayList<>(threadMetricsMap.values());
+        List<ThreadMetrics> result = new ArrayList<>(allThreadMetrics);
 
         Collections.sort(result, new Comparator<ThreadMetrics>() {
             @Override
@@ -240,6 +528,48 @@ public class ApmAgentContext {
         return MethodMetrics.sortedMetrics(methodMetricsMap.values());
     }
 
+    /**
+     * Writes the ranked global and per thread method metrics in one go, in the Prometheus text format
+     */
+    public void writePrometheusMetrics(Writer writer) throws IOException {
+        PrometheusExporter exporter = new PrometheusExporter(writer);
+        exporter.writeMethodMetrics(monitoredMethodMetrics.getRankedMetrics());
+        exporter.writeThreadMethodMetrics(new ArrayList<>(allThreadMetrics));
+        writer.flush();
+    }
+
+    public String getPrometheusMetrics() {
+        StringWriter writer = new StringWriter();
+        try {
+            writePrometheusMetrics(writer);
+        } catch (IOException e) {
+            //can't happen with a StringWriter
+            throw new IllegalStateException(e);
+        }
+        return writer.toString();
+    }
+
+    private void startMetricsHttpServer() {
+        int port = configuration.getMetricsPort();
+        if (port > 0) {
+            try {
+                metricsHttpServer = new MetricsHttpServer(this, configuration.getMetricsHost(), port);
+                metricsHttpServer.start();
+                LOG.info("Serving APM metrics on {}:{}", configuration.getMetricsHost(), port);
+            } catch (Throwable e) {
+                LOG.warn("Failed to start metrics http server on port " + port + " due " + e.getMessage() + ". This exception is ignored.", e);
+            }
+        }
+    }
+
+    private void stopMetricsHttpServer() {
+        MetricsHttpServer server = metricsHttpServer;
+        metricsHttpServer = null;
+        if (server != null) {
+            server.stop();
+        }
+    }
+
     public boolean isInitialized() {
         return initialized.get();
     }
@@ -258,7 +588,7 @@ public class ApmAgentContext {
 
     public void setActive(String fullMethodName, boolean flag) {
         if (isInitialized()) {
-            for (ThreadMetrics threadMetrics : threadMetricsMap.values()) {
+            for (ThreadMetrics threadMetrics : allThreadMetrics) {
                 threadMetrics.setActive(fullMethodName, flag);
             }
 
@@ -334,14 +664,23 @@ public class ApmAgentContext {
     }
 
     public void threadMetricsDepthChanged() {
-        for (ThreadMetrics threadMetrics : threadMetricsMap.values()) {
+        for (ThreadMetrics threadMetrics : allThreadMetrics) {
             threadMetrics.setMonitorSize(configuration.getThreadMetricDepth());
         }
     }
 
     private void remove(MethodDescription methodDescription) {
         methodMetricsMap.remove(methodDescription.getFullMethodName());
-        for (ThreadMetrics threadMetrics : threadMetricsMap.values()) {
+        int methodId = findMethodId(methodDescription.getFullMethodName());
+        if (methodId >= 0) {
+            synchronized (this) {
+                MethodMetrics[] array = methodMetricsById;
+                if (methodId < array.length) {
+                    array[methodId] = null;
+                }
+            }
+        }
+        for (ThreadMetrics threadMetrics : allThreadMetrics) {
             threadMetrics.remove(methodDescription.getFullMethodName());
         }
     }
@@ -378,9 +717,8 @@ public class ApmAgentContext {
         }
     }
 
-    void registerMethodMetricsMBean(String threadName, long threadId, int rank, MethodMetricsProxy threadMetrics) {
+    void registerMethodMetricsMBean(String threadIdentity, int rank, MethodMetricsProxy threadMetrics) {
         try {
-            String threadIdentity = threadName + "[" + threadId + "]";
             ObjectName objectName = new ObjectName(DEFAULT_DOMAIN + ":"
                                                        + "type=ThreadContextMetrics"
                                                        + ",threadName=" + ObjectName.quote(threadIdentity)
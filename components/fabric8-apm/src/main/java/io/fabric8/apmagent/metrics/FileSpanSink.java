@@ -0,0 +1,98 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent.metrics;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Appends spans to a file, one JSON object per line.
+ */
+public class FileSpanSink implements SpanSink {
+    private static final Logger LOG = LoggerFactory.getLogger(FileSpanSink.class);
+    private final File file;
+    private Writer writer;
+
+    public FileSpanSink(File file) {
+        this.file = file;
+    }
+
+    @Override
+    public synchronized void write(List<Span> spans) throws IOException {
+        if (writer == null) {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), Charset.forName("UTF-8")));
+        }
+        StringBuilder line = new StringBuilder(256);
+        for (Span span : spans) {
+            line.setLength(0);
+            line.append("{\"traceId\":\"").append(span.getTraceId());
+            line.append("\",\"spanId\":\"").append(Span.toHex(span.getSpanId()));
+            line.append("\",\"parentSpanId\":\"").append(span.getParentSpanId() != 0 ? Span.toHex(span.getParentSpanId()) : "");
+            line.append("\",\"method\":\"");
+            escape(line, span.getMethodName());
+            line.append("\",\"thread\":\"");
+            escape(line, span.getThreadName());
+            line.append("\",\"start\":").append(span.getStartTime());
+            line.append(",\"totalTime\":").append(span.getTotalTime());
+            line.append(",\"selfTime\":").append(span.getSelfTime());
+            line.append(",\"depth\":").append(span.getDepth());
+            line.append("}\n");
+            writer.write(line.toString());
+        }
+        writer.flush();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close " + file + " due " + e.getMessage() + ". This exception is ignored.", e);
+            }
+            writer = null;
+        }
+    }
+
+    private static void escape(StringBuilder builder, String value) {
+        if (value == null) {
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < 0x20) {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent.metrics;
+
+import com.codahale.metrics.Snapshot;
+
+import java.io.OutputStream;
+import java.io.PrintWriter;
+
+/**
+ * A point in time view of the buckets of a {@link StripedTimer}.
+ * Values are reported as the mid point of the bucket they were recorded in.
+ */
+public class HistogramSnapshot extends Snapshot {
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+
+    HistogramSnapshot(long[] counts, long count, long sum) {
+        this.counts = counts;
+        this.count = count;
+        this.sum = sum;
+    }
+
+    @Override
+    public double getValue(double quantile) {
+        if (quantile < 0.0 || quantile > 1.0 || Double.isNaN(quantile)) {
+            throw new IllegalArgumentException(quantile + " is not in [0..1]");
+        }
+        if (count == 0) {
+            return 0.0;
+        }
+        long rank = (long) Math.ceil(quantile * count);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank && counts[i] > 0) {
+                return value(i);
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * @return the representative value of each non empty bucket
+     */
+    @Override
+    public long[] getValues() {
+        int size = 0;
+        for (long c : counts) {
+            if (c > 0) {
+                size++;
+            }
+        }
+        long[] result = new long[size];
+        int j = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                result[j++] = value(i);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.min(count, Integer.MAX_VALUE);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public long getMax() {
+        for (int i = counts.length - 1; i >= 0; i--) {
+            if (counts[i] > 0) {
+                return value(i);
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public double getMean() {
+        return count > 0 ? (double) sum / count : 0.0;
+    }
+
+    @Override
+    public long getMin() {
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                return value(i);
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public double getStdDev() {
+        if (count <= 1) {
+            return 0;
+        }
+        double mean = getMean();
+        double variance = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                double diff = value(i) - mean;
+                variance += counts[i] * diff * diff;
+            }
+        }
+        return Math.sqrt(variance / (count - 1));
+    }
+
+    @Override
+    public void dump(OutputStream output) {
+        PrintWriter out = new PrintWriter(output);
+        try {
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    out.printf("%d %d%n", value(i), counts[i]);
+                }
+            }
+        } finally {
+            out.flush();
+        }
+    }
+
+    private static long value(int index) {
+        return StripedTimer.bucketLowerBound(index) + StripedTimer.bucketWidth(index) / 2;
+    }
+}
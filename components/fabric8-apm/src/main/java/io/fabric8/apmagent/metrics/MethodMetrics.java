@@ -15,17 +15,14 @@
  */
 package io.fabric8.apmagent.metrics;
 
-import com.codahale.metrics.Timer;
-
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
+import java.util.PriorityQueue;
 import java.util.concurrent.TimeUnit;
 
 public class MethodMetrics {
-    protected final Timer timer;
+    protected final StripedTimer timer;
     private final String name;
     private final double rateFactor;
     private final double durationFactor;
@@ -38,8 +35,18 @@ public class MethodMetrics {
      * @param name - the fully qualified method name
      */
     public MethodMetrics(String name) {
+        this(name, new StripedTimer());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param name  - the fully qualified method name
+     * @param timer - the timer to record durations with
+     */
+    protected MethodMetrics(String name, StripedTimer timer) {
         this.name = name;
-        this.timer = new Timer();
+        this.timer = timer;
 
         this.rateFactor = TimeUnit.SECONDS.toSeconds(1);
         this.durationFactor = 1.0 / TimeUnit.MILLISECONDS.toNanos(1);
@@ -118,12 +125,13 @@ public class MethodMetrics {
     }
 
     /**
-     * average amount of time for a method multiplied by the number of times called
+     * average amount of time for a method multiplied by the number of times called, over the recent window
      *
      * @return estimated load
      */
     public double getLoad() {
-        return timer.getSnapshot().size() * getMean();
+        //count * mean is the total recorded time, which doesn't need a snapshot
+        return timer.getWindowSum() * durationFactor;
     }
 
     public int getPercentage() {
@@ -148,25 +156,60 @@ public class MethodMetrics {
         return "MethodMetrics:" + getName();
     }
 
-    public static List<? extends MethodMetrics> sortedMetrics(Collection<? extends MethodMetrics> collection) {
-        ArrayList<? extends MethodMetrics> list = new ArrayList<>(collection);
+    public static <T extends MethodMetrics> List<T> sortedMetrics(Collection<T> collection) {
+        return topMetrics(collection, Integer.MAX_VALUE);
+    }
 
-        Collections.sort(list, new Comparator<MethodMetrics>() {
-            @Override
-            public int compare(MethodMetrics methodMetrics1, MethodMetrics methodMetrics2) {
-                return (int) ((int) methodMetrics2.getLoad() - (int) methodMetrics1.getLoad());
+    /**
+     * Ranks the metrics by load, highest first, keeping only the top entries. The load of each
+     * method is calculated once and the ranking uses a min heap bounded by the size, so the cost
+     * is O(n log size). The percentage of each returned entry is set relative to the total load.
+     *
+     * @param collection - the metrics to rank
+     * @param size       - the maximum number of entries to return
+     * @return the top entries by load
+     */
+    public static <T extends MethodMetrics> List<T> topMetrics(Collection<T> collection, int size) {
+        if (size <= 0) {
+            return new ArrayList<>();
+        }
+        PriorityQueue<RankedMethodMetrics<T>> heap = new PriorityQueue<>(Math.min(size, collection.size()) + 1);
+        double totalLoad = 0;
+        for (T methodMetrics : collection) {
+            double load = methodMetrics.getLoad();
+            totalLoad += load;
+            if (heap.size() < size) {
+                heap.add(new RankedMethodMetrics<>(methodMetrics, load));
+            } else if (load > heap.peek().load) {
+                heap.poll();
+                heap.add(new RankedMethodMetrics<>(methodMetrics, load));
             }
-        });
-        //calculate the percentage
-        int totalLoad = 0;
-        for (MethodMetrics m : list) {
-            totalLoad += m.getLoad();
         }
-        for (MethodMetrics m : list) {
-            int percentage = (int) ((m.getLoad() * 100) / totalLoad);
-            m.setPercentage(percentage);
+        List<T> result = new ArrayList<>(heap.size());
+        for (int i = 0; i < heap.size(); i++) {
+            result.add(null);
+        }
+        for (int i = heap.size() - 1; i >= 0; i--) {
+            RankedMethodMetrics<T> ranked = heap.poll();
+            int percentage = totalLoad > 0 ? (int) ((ranked.load * 100) / totalLoad) : 0;
+            ranked.methodMetrics.setPercentage(percentage);
+            result.set(i, ranked.methodMetrics);
         }
-        return list;
+        return result;
     }
-}
 
+    private static class RankedMethodMetrics<T extends MethodMetrics> implements Comparable<RankedMethodMetrics<T>> {
+        private final T methodMetrics;
+        private final double load;
+
+        RankedMethodMetrics(T methodMetrics, double load) {
+            this.methodMetrics = methodMetrics;
+            this.load = load;
+        }
+
+        @Override
+        public int compareTo(RankedMethodMetrics<T> other) {
+            return Double.compare(load, other.load);
+        }
+    }
+}
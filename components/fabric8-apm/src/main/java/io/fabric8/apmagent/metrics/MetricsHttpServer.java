@@ -0,0 +1,82 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Serves the metrics of an {@link ApmAgentContext} on /metrics in the Prometheus text format
+ */
+class MetricsHttpServer implements HttpHandler {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private final ApmAgentContext apmAgentContext;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * @param host - the host name or address to bind to, or null or empty to bind to all interfaces
+     */
+    MetricsHttpServer(ApmAgentContext apmAgentContext, String host, int port) throws IOException {
+        this.apmAgentContext = apmAgentContext;
+        InetSocketAddress address = host != null && !host.isEmpty() ? new InetSocketAddress(host, port) : new InetSocketAddress(port);
+        this.server = HttpServer.create(address, 0);
+        this.server.createContext("/metrics", this);
+        this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Fabric8-ApmAgent-MetricsHttpServer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.server.setExecutor(executor);
+    }
+
+    void start() {
+        server.start();
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            StringWriter writer = new StringWriter();
+            apmAgentContext.writePrometheusMetrics(writer);
+            byte[] body = writer.toString().getBytes(UTF8);
+            exchange.getResponseHeaders().set("Content-Type", PrometheusExporter.CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(body);
+        } finally {
+            exchange.close();
+        }
+    }
+}
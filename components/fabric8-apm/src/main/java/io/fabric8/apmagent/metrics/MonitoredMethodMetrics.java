@@ -15,6 +15,8 @@
  */
 package io.fabric8.apmagent.metrics;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 
@@ -22,6 +24,7 @@ public class MonitoredMethodMetrics {
     protected final ApmAgentContext apmAgentContext;
     private int monitorSize;
     private final List<MethodMetricsProxy> proxyList = new CopyOnWriteArrayList<>();
+    private volatile List<? extends MethodMetrics> rankedMetrics = Collections.emptyList();
 
     MonitoredMethodMetrics(ApmAgentContext apmAgentContext) {
         this.apmAgentContext = apmAgentContext;
@@ -34,17 +37,23 @@ public class MonitoredMethodMetrics {
     public synchronized void setMonitorSize(int monitorSize) {
         this.monitorSize = monitorSize;
         //if we've downsized, remove
-
-        while (proxyList.size() > monitorSize) {
-            MethodMetricsProxy methodMetricsProxy = proxyList.get(proxyList.size() - 1);
-            proxyList.remove(proxyList.size() - 1);
-            apmAgentContext.unregisterMethodMetricsMBean(methodMetricsProxy);
-        }
+        trimProxies(monitorSize);
     }
 
-    public void calculateMethodMetrics(List<? extends MethodMetrics> methodMetricsList) {
+    /**
+     * Ranks the metrics and exposes the top {@link #getMonitorSize()} of them by load.
+     * Only the top entries are kept while ranking, so the whole collection is never sorted.
+     */
+    public void calculateMethodMetrics(Collection<? extends MethodMetrics> methodMetrics) {
+        List<? extends MethodMetrics> methodMetricsList = MethodMetrics.topMetrics(methodMetrics, monitorSize);
+        rankedMetrics = methodMetricsList;
+        if (!apmAgentContext.getConfiguration().isRankMBeans()) {
+            //the ranking is only read through the bulk export
+            trimProxies(0);
+            return;
+        }
         if (methodMetricsList.size() < proxyList.size()) {
-            setMonitorSize(methodMetricsList.size());
+            trimProxies(methodMetricsList.size());
         }
         if (methodMetricsList.size() > proxyList.size() && proxyList.size() < monitorSize) {
             int extra = monitorSize - proxyList.size();
@@ -63,6 +72,21 @@ public class MonitoredMethodMetrics {
         }
     }
 
+    /**
+     * @return the metrics ranked by the last call to {@link #calculateMethodMetrics(Collection)}, highest load first
+     */
+    public List<? extends MethodMetrics> getRankedMetrics() {
+        return rankedMetrics;
+    }
+
+    private synchronized void trimProxies(int size) {
+        while (proxyList.size() > size) {
+            MethodMetricsProxy methodMetricsProxy = proxyList.get(proxyList.size() - 1);
+            proxyList.remove(proxyList.size() - 1);
+            apmAgentContext.unregisterMethodMetricsMBean(methodMetricsProxy);
+        }
+    }
+
     protected MethodMetricsProxy createProxy(int rank) {
         MethodMetricsProxy result = new MethodMetricsProxy();
         apmAgentContext.registerMethodMetricsMBean(rank, result);
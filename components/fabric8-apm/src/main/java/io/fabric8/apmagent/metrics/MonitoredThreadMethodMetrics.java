@@ -16,18 +16,19 @@
 package io.fabric8.apmagent.metrics;
 
 public class MonitoredThreadMethodMetrics extends MonitoredMethodMetrics {
-    private Thread thread;
+    private final ThreadMetrics threadMetrics;
 
-    MonitoredThreadMethodMetrics(Thread thread, ApmAgentContext apmAgentContext) {
+    MonitoredThreadMethodMetrics(ThreadMetrics threadMetrics, ApmAgentContext apmAgentContext) {
         super(apmAgentContext);
-        this.thread = thread;
+        this.threadMetrics = threadMetrics;
     }
 
     @Override
     protected ThreadContextMethodMetricsProxy createProxy(int rank) {
         ThreadContextMethodMetricsProxy result = new ThreadContextMethodMetricsProxy();
-        result.setThread(thread);
-        apmAgentContext.registerMethodMetricsMBean(thread.getName(), thread.getId(), rank, result);
+        result.setThread(threadMetrics.getThread());
+        result.setThreadName(threadMetrics.getName());
+        apmAgentContext.registerMethodMetricsMBean(threadMetrics.getName(), rank, result);
         return result;
     }
 }
@@ -0,0 +1,99 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Writes the ranked global and per thread method metrics in the Prometheus text exposition format,
+ * so a scraper gets the whole table in one response rather than reading one MBean per rank.
+ */
+class PrometheusExporter {
+    static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final double[] QUANTILES = {0.5, 0.75, 0.95, 0.98, 0.99, 0.999};
+    //the timings are in nanoseconds, but Prometheus expects base units
+    private static final double DURATION_FACTOR = 1.0 / 1000000000;
+
+    private final Writer writer;
+
+    PrometheusExporter(Writer writer) {
+        this.writer = writer;
+    }
+
+    void writeMethodMetrics(List<? extends MethodMetrics> methodMetricsList) throws IOException {
+        writeHeader("apm_method_duration_seconds", "summary", "Duration of instrumented method calls in seconds");
+        for (MethodMetrics methodMetrics : methodMetricsList) {
+            writeSummary("apm_method_duration_seconds", methodMetrics, labels(null, methodMetrics));
+        }
+        writeHeader("apm_method_load_percentage", "gauge", "Share of the total load of the ranked methods");
+        for (MethodMetrics methodMetrics : methodMetricsList) {
+            writeSample("apm_method_load_percentage", labels(null, methodMetrics), methodMetrics.getPercentage());
+        }
+        writeHeader("apm_method_rate", "gauge", "One minute rate of calls per second");
+        for (MethodMetrics methodMetrics : methodMetricsList) {
+            writeSample("apm_method_rate", labels(null, methodMetrics), methodMetrics.getOneMinuteRate());
+        }
+    }
+
+    void writeThreadMethodMetrics(List<ThreadMetrics> threadMetricsList) throws IOException {
+        writeHeader("apm_thread_method_duration_seconds", "summary", "Duration of instrumented method calls per thread in seconds");
+        for (ThreadMetrics threadMetrics : threadMetricsList) {
+            String thread = threadMetrics.getName();
+            for (MethodMetrics methodMetrics : threadMetrics.getRankedMethodMetrics()) {
+                writeSummary("apm_thread_method_duration_seconds", methodMetrics, labels(thread, methodMetrics));
+            }
+        }
+    }
+
+    private void writeSummary(String name, MethodMetrics methodMetrics, String labels) throws IOException {
+        HistogramSnapshot snapshot = methodMetrics.timer.getSnapshot();
+        for (double quantile : QUANTILES) {
+            String quantileLabels = labels.substring(0, labels.length() - 1) + ",quantile=\"" + quantile + "\"}";
+            writeSample(name, quantileLabels, snapshot.getValue(quantile) * DURATION_FACTOR);
+        }
+        //the quantiles are over the recent window, but the sum and count of a summary are totals
+        writeSample(name + "_sum", labels, methodMetrics.timer.getSum() * DURATION_FACTOR);
+        writeSample(name + "_count", labels, methodMetrics.timer.getCount());
+    }
+
+    private void writeHeader(String name, String type, String help) throws IOException {
+        writer.write("# HELP " + name + " " + help + "\n");
+        writer.write("# TYPE " + name + " " + type + "\n");
+    }
+
+    private void writeSample(String name, String labels, double value) throws IOException {
+        writer.write(name);
+        writer.write(labels);
+        writer.write(' ');
+        writer.write(Double.toString(value));
+        writer.write('\n');
+    }
+
+    private static String labels(String thread, MethodMetrics methodMetrics) {
+        StringBuilder result = new StringBuilder("{");
+        if (thread != null) {
+            result.append("thread=\"").append(escape(thread)).append("\",");
+        }
+        result.append("method=\"").append(escape(methodMetrics.getName())).append("\"}");
+        return result.toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent.metrics;
+
+/**
+ * A completed call of an instrumented method, linked to its caller by the parent span id.
+ * The spans of a call tree share a trace id, which can be carried across processes with
+ * {@link io.fabric8.apmagent.ApmAgent#getTraceParent()} and {@link io.fabric8.apmagent.ApmAgent#continueTrace(String)}.
+ */
+public class Span {
+    private final String traceId;
+    private final long spanId;
+    private final long parentSpanId;
+    private final String methodName;
+    private final String threadName;
+    private final long startTime;
+    private final long totalTime;
+    private final long selfTime;
+    private final int depth;
+
+    Span(String traceId, long spanId, long parentSpanId, String methodName, String threadName, long startTime, long totalTime, long selfTime, int depth) {
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.parentSpanId = parentSpanId;
+        this.methodName = methodName;
+        this.threadName = threadName;
+        this.startTime = startTime;
+        this.totalTime = totalTime;
+        this.selfTime = selfTime;
+        this.depth = depth;
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public long getSpanId() {
+        return spanId;
+    }
+
+    /**
+     * @return the span id of the caller, or 0 if this is the root of a trace
+     */
+    public long getParentSpanId() {
+        return parentSpanId;
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    public String getThreadName() {
+        return threadName;
+    }
+
+    /**
+     * @return the start time in microseconds since the epoch
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @return the time in nanoseconds from entering to leaving the method
+     */
+    public long getTotalTime() {
+        return totalTime;
+    }
+
+    /**
+     * @return the total time in nanoseconds less the total time of the instrumented methods it called
+     */
+    public long getSelfTime() {
+        return selfTime;
+    }
+
+    /**
+     * @return the depth in the call tree on this thread, 0 for the root
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    public static String toHex(long id) {
+        String hex = Long.toHexString(id);
+        StringBuilder result = new StringBuilder(16);
+        for (int i = hex.length(); i < 16; i++) {
+            result.append('0');
+        }
+        return result.append(hex).toString();
+    }
+
+    public String toString() {
+        return "Span:" + methodName + "[" + traceId + "/" + toHex(spanId) + "]";
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent.metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A copy of the span records buffered by a {@link SpanRecorder}. The instrumented thread only copies
+ * its arrays - the {@link Span}s are created on the background thread when the batch is written.
+ */
+class SpanBatch {
+    private final String threadName;
+    private final String[] traceIds;
+    private final String[] names;
+    private final long[] spanIds;
+    private final long[] parentSpanIds;
+    private final long[] startTimes;
+    private final long[] totalTimes;
+    private final long[] selfTimes;
+    private final int[] depths;
+
+    SpanBatch(String threadName, int count, String[] traceIds, String[] names, long[] spanIds, long[] parentSpanIds,
+              long[] startTimes, long[] totalTimes, long[] selfTimes, int[] depths) {
+        this.threadName = threadName;
+        this.traceIds = Arrays.copyOf(traceIds, count);
+        this.names = Arrays.copyOf(names, count);
+        this.spanIds = Arrays.copyOf(spanIds, count);
+        this.parentSpanIds = Arrays.copyOf(parentSpanIds, count);
+        this.startTimes = Arrays.copyOf(startTimes, count);
+        this.totalTimes = Arrays.copyOf(totalTimes, count);
+        this.selfTimes = Arrays.copyOf(selfTimes, count);
+        this.depths = Arrays.copyOf(depths, count);
+    }
+
+    int size() {
+        return names.length;
+    }
+
+    void addTo(List<Span> spans) {
+        for (int i = 0; i < names.length; i++) {
+            spans.add(new Span(traceIds[i], spanIds[i], parentSpanIds[i], names[i], threadName, startTimes[i], totalTimes[i], selfTimes[i], depths[i]));
+        }
+    }
+
+    List<Span> toSpans() {
+        List<Span> result = new ArrayList<>(names.length);
+        addTo(result);
+        return result;
+    }
+}
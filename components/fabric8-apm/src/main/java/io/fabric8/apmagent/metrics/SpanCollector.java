@@ -0,0 +1,87 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.fabric8.apmagent.ApmAgent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hands the batches of spans from the instrumented threads to the sink. The threads only ever
+ * offer to a bounded queue - if the sink falls behind, batches are dropped and counted.
+ * The {@link Span}s are only created here, on the background thread.
+ */
+public class SpanCollector {
+    private static final Logger LOG = LoggerFactory.getLogger(ApmAgent.class);
+    private static final int MAX_QUEUED_BATCHES = 1024;
+    private final BlockingQueue<SpanBatch> queue = new ArrayBlockingQueue<>(MAX_QUEUED_BATCHES);
+    private final AtomicLong droppedSpans = new AtomicLong();
+    private volatile SpanSink sink;
+
+    public SpanCollector(SpanSink sink) {
+        this.sink = sink;
+    }
+
+    public SpanSink getSink() {
+        return sink;
+    }
+
+    public void setSink(SpanSink sink) {
+        this.sink = sink;
+    }
+
+    public long getDroppedSpans() {
+        return droppedSpans.get();
+    }
+
+    void add(SpanBatch batch) {
+        if (!queue.offer(batch)) {
+            droppedSpans.addAndGet(batch.size());
+        }
+    }
+
+    /**
+     * Writes all the queued spans to the sink - called from the background thread
+     */
+    void flush() {
+        List<SpanBatch> batches = new ArrayList<>();
+        queue.drainTo(batches);
+        if (batches.isEmpty()) {
+            return;
+        }
+        List<Span> spans = new ArrayList<>();
+        for (SpanBatch batch : batches) {
+            batch.addTo(spans);
+        }
+        try {
+            sink.write(spans);
+        } catch (Throwable e) {
+            droppedSpans.addAndGet(spans.size());
+            LOG.warn("Failed to write " + spans.size() + " spans due " + e.getMessage() + ". This exception is ignored.", e);
+        }
+    }
+
+    void close() {
+        flush();
+        sink.close();
+    }
+}
@@ -0,0 +1,205 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent.metrics;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the call tree of a single thread. Open calls are kept on a primitive stack alongside the
+ * {@link ThreadContextMethodMetricsStack}, completed calls go into a fixed size buffer of span records.
+ * The buffer is copied to the {@link SpanCollector} when it is full, or when a root call completes and
+ * the buffer hasn't been handed off for a second - so a busy thread hands off whole buffers, not a batch
+ * per call. Only ever used by its own thread.
+ */
+class SpanRecorder {
+    private static final Random RANDOM = new Random();
+    static final long FLUSH_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+    private final SpanCollector collector;
+    private final String threadName;
+    private final Random random;
+
+    //completed spans
+    private final String[] traceIds;
+    private final String[] names;
+    private final long[] spanIds;
+    private final long[] parentSpanIds;
+    private final long[] startTimes;
+    private final long[] totalTimes;
+    private final long[] selfTimes;
+    private final int[] depths;
+    private int count;
+    private long lastFlushTime = System.nanoTime();
+    //the first buffered span of the current call tree
+    private int treeStart;
+
+    //open spans
+    private long[] openSpanIds = new long[8];
+    private long[] openChildTimes = new long[8];
+    private int depth;
+
+    private String traceId;
+    private long rootParentSpanId;
+    private long rootStartNanos;
+    private long rootStartMicros;
+    private String pendingTraceId;
+    private long pendingParentSpanId;
+
+    SpanRecorder(SpanCollector collector, String threadName, int bufferSize) {
+        this.collector = collector;
+        this.threadName = threadName;
+        this.random = new Random(RANDOM.nextLong());
+        int size = Math.max(1, bufferSize);
+        this.traceIds = new String[size];
+        this.names = new String[size];
+        this.spanIds = new long[size];
+        this.parentSpanIds = new long[size];
+        this.startTimes = new long[size];
+        this.totalTimes = new long[size];
+        this.selfTimes = new long[size];
+        this.depths = new int[size];
+    }
+
+    void enter(long startTime) {
+        if (depth == 0) {
+            if (pendingTraceId != null) {
+                traceId = pendingTraceId;
+                rootParentSpanId = pendingParentSpanId;
+                pendingTraceId = null;
+            } else {
+                traceId = newTraceId();
+                rootParentSpanId = 0;
+            }
+            rootStartNanos = startTime;
+            rootStartMicros = System.currentTimeMillis() * 1000;
+            treeStart = count;
+        }
+        if (depth == openSpanIds.length) {
+            openSpanIds = Arrays.copyOf(openSpanIds, depth * 2);
+            openChildTimes = Arrays.copyOf(openChildTimes, depth * 2);
+        }
+        openSpanIds[depth] = newSpanId();
+        openChildTimes[depth] = 0;
+        depth++;
+    }
+
+    void exit(String methodName, long startTime, long elapsed) {
+        if (depth == 0) {
+            return;
+        }
+        depth--;
+        long parentSpanId;
+        if (depth > 0) {
+            parentSpanId = openSpanIds[depth - 1];
+            openChildTimes[depth - 1] += elapsed;
+        } else {
+            parentSpanId = rootParentSpanId;
+        }
+        traceIds[count] = traceId;
+        names[count] = methodName;
+        spanIds[count] = openSpanIds[depth];
+        parentSpanIds[count] = parentSpanId;
+        startTimes[count] = rootStartMicros + (startTime - rootStartNanos) / 1000;
+        totalTimes[count] = elapsed;
+        selfTimes[count] = Math.max(0, elapsed - openChildTimes[depth]);
+        depths[count] = depth;
+        count++;
+        if (count == names.length || (depth == 0 && startTime + elapsed - lastFlushTime > FLUSH_INTERVAL)) {
+            flush(startTime + elapsed);
+        }
+    }
+
+    /**
+     * Drops the open calls, e.g. when the method stack got out of step
+     */
+    void reset() {
+        depth = 0;
+        count = 0;
+        treeStart = 0;
+        Arrays.fill(traceIds, null);
+        Arrays.fill(names, null);
+    }
+
+    /**
+     * @return the W3C traceparent header value for the current call, or null if there isn't one
+     */
+    String getTraceParent() {
+        if (depth == 0) {
+            return null;
+        }
+        return "00-" + traceId + "-" + Span.toHex(openSpanIds[depth - 1]) + "-01";
+    }
+
+    /**
+     * Continue the trace of a W3C traceparent header - either the current call tree,
+     * or if there isn't one, the next one recorded. Calls of the current tree which completed before
+     * the buffer was last handed off keep the trace id they were recorded with.
+     *
+     * @return false if the header couldn't be parsed
+     */
+    boolean continueTrace(String traceParent) {
+        String[] parts = traceParent != null ? traceParent.trim().split("-") : new String[0];
+        if (parts.length < 4 || parts[1].length() != 32 || parts[2].length() != 16) {
+            return false;
+        }
+        if (!isHex(parts[1]) || !isHex(parts[2])) {
+            return false;
+        }
+        //the ids are unsigned, so parse in two halves
+        long parentSpanId = (Long.parseLong(parts[2].substring(0, 8), 16) << 32) | Long.parseLong(parts[2].substring(8), 16);
+        String id = parts[1].toLowerCase();
+        if (depth > 0) {
+            //the spans of this tree which are still buffered move to the trace too
+            for (int i = treeStart; i < count; i++) {
+                traceIds[i] = id;
+            }
+            traceId = id;
+            rootParentSpanId = parentSpanId;
+        } else {
+            pendingTraceId = id;
+            pendingParentSpanId = parentSpanId;
+        }
+        return true;
+    }
+
+    private void flush(long now) {
+        collector.add(new SpanBatch(threadName, count, traceIds, names, spanIds, parentSpanIds, startTimes, totalTimes, selfTimes, depths));
+        Arrays.fill(traceIds, 0, count, null);
+        Arrays.fill(names, 0, count, null);
+        count = 0;
+        treeStart = 0;
+        lastFlushTime = now;
+    }
+
+    private static boolean isHex(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (Character.digit(value.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String newTraceId() {
+        return Span.toHex(random.nextLong()) + Span.toHex(random.nextLong());
+    }
+
+    private long newSpanId() {
+        long result = random.nextLong();
+        return result != 0 ? result : 1;
+    }
+}
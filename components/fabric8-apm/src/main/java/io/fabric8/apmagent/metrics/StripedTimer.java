@@ -0,0 +1,259 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent.metrics;
+
+import com.codahale.metrics.EWMA;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A timer that records durations into a fixed log-linear histogram, with one stripe of counters per
+ * (hashed) thread. Recording is a couple of atomic increments on the stripe owned by the calling thread -
+ * there are no CAS loops, reservoirs or meters to contend on. The stripes are only merged when the
+ * snapshot or rates are read.
+ * <p/>
+ * The buckets used for the snapshot, and the sum used for the load, cover a recent window rather than the
+ * life time of the timer: they are halved every {@link #DECAY_INTERVAL}, so like the exponentially decaying
+ * reservoir they replace, a call counts for less the longer ago it was made. The count and sum stay totals.
+ */
+public class StripedTimer {
+    static final int SUB_BUCKET_BITS = 4;
+    static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    //durations above 2^40 nanos (~18 minutes) all go into the last bucket
+    static final int MAX_EXPONENT = 40;
+    static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+    private static final int COUNT_INDEX = BUCKET_COUNT;
+    private static final int SUM_INDEX = BUCKET_COUNT + 1;
+    private static final int WINDOW_SUM_INDEX = BUCKET_COUNT + 2;
+    private static final int STRIPE_LENGTH = BUCKET_COUNT + 3;
+    private static final int MAX_STRIPES = 16;
+    private static final long TICK_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+    //a half life close to that of the exponentially decaying reservoir with its default alpha of 0.015
+    static final long DECAY_INTERVAL = TimeUnit.SECONDS.toNanos(45);
+
+    private final AtomicReferenceArray<AtomicLongArray> stripes;
+    private final int stripeMask;
+    private final long startTime;
+    private final EWMA m1Rate = EWMA.oneMinuteEWMA();
+    private final EWMA m5Rate = EWMA.fiveMinuteEWMA();
+    private final EWMA m15Rate = EWMA.fifteenMinuteEWMA();
+    private long lastTick;
+    private long lastTickCount;
+    private long lastDecay;
+
+    /**
+     * Creates a timer striped by the number of available processors
+     */
+    public StripedTimer() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param concurrency - the expected number of concurrent writers, use 1 for timers only updated by one thread
+     */
+    public StripedTimer(int concurrency) {
+        int size = 1;
+        while (size < concurrency && size < MAX_STRIPES) {
+            size <<= 1;
+        }
+        this.stripes = new AtomicReferenceArray<>(size);
+        this.stripeMask = size - 1;
+        this.startTime = System.nanoTime();
+        this.lastTick = startTime;
+        this.lastDecay = startTime;
+    }
+
+    public void update(long duration, TimeUnit unit) {
+        long nanos = unit.toNanos(duration);
+        if (nanos >= 0) {
+            AtomicLongArray stripe = getStripe();
+            stripe.getAndIncrement(bucketIndex(nanos));
+            stripe.getAndAdd(SUM_INDEX, nanos);
+            stripe.getAndAdd(WINDOW_SUM_INDEX, nanos);
+            stripe.getAndIncrement(COUNT_INDEX);
+        }
+    }
+
+    public long getCount() {
+        long result = 0;
+        for (int i = 0; i < stripes.length(); i++) {
+            AtomicLongArray stripe = stripes.get(i);
+            if (stripe != null) {
+                result += stripe.get(COUNT_INDEX);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the sum of all the recorded durations in nanoseconds
+     */
+    public long getSum() {
+        return sum(SUM_INDEX);
+    }
+
+    /**
+     * @return the decayed sum of the recently recorded durations in nanoseconds
+     */
+    public long getWindowSum() {
+        decayIfNecessary(System.nanoTime());
+        return sum(WINDOW_SUM_INDEX);
+    }
+
+    public double getMeanRate() {
+        long count = getCount();
+        if (count == 0) {
+            return 0.0;
+        }
+        double elapsed = System.nanoTime() - startTime;
+        return count / elapsed * TimeUnit.SECONDS.toNanos(1);
+    }
+
+    public double getOneMinuteRate() {
+        tickIfNecessary();
+        return m1Rate.getRate(TimeUnit.SECONDS);
+    }
+
+    public double getFiveMinuteRate() {
+        tickIfNecessary();
+        return m5Rate.getRate(TimeUnit.SECONDS);
+    }
+
+    public double getFifteenMinuteRate() {
+        tickIfNecessary();
+        return m15Rate.getRate(TimeUnit.SECONDS);
+    }
+
+    /**
+     * @return a snapshot of the recent window merged from all the stripes
+     */
+    public HistogramSnapshot getSnapshot() {
+        decayIfNecessary(System.nanoTime());
+        long[] counts = new long[BUCKET_COUNT];
+        long count = 0;
+        long sum = 0;
+        for (int i = 0; i < stripes.length(); i++) {
+            AtomicLongArray stripe = stripes.get(i);
+            if (stripe != null) {
+                for (int j = 0; j < BUCKET_COUNT; j++) {
+                    long value = stripe.get(j);
+                    counts[j] += value;
+                    count += value;
+                }
+                sum += stripe.get(WINDOW_SUM_INDEX);
+            }
+        }
+        return new HistogramSnapshot(counts, count, sum);
+    }
+
+    /**
+     * Halves the buckets and the window sum once for every {@link #DECAY_INTERVAL} since they were last halved.
+     * Values recorded concurrently are not lost, as the halves are subtracted rather than set.
+     */
+    synchronized void decayIfNecessary(long now) {
+        long age = now - lastDecay;
+        if (age >= DECAY_INTERVAL) {
+            lastDecay = now - age % DECAY_INTERVAL;
+            int shift = (int) Math.min(age / DECAY_INTERVAL, 63);
+            for (int i = 0; i < stripes.length(); i++) {
+                AtomicLongArray stripe = stripes.get(i);
+                if (stripe != null) {
+                    for (int j = 0; j < BUCKET_COUNT; j++) {
+                        decay(stripe, j, shift);
+                    }
+                    decay(stripe, WINDOW_SUM_INDEX, shift);
+                }
+            }
+        }
+    }
+
+    private static void decay(AtomicLongArray stripe, int index, int shift) {
+        long value = stripe.get(index);
+        if (value > 0) {
+            stripe.getAndAdd(index, (value >> shift) - value);
+        }
+    }
+
+    private long sum(int index) {
+        long result = 0;
+        for (int i = 0; i < stripes.length(); i++) {
+            AtomicLongArray stripe = stripes.get(i);
+            if (stripe != null) {
+                result += stripe.get(index);
+            }
+        }
+        return result;
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) Math.max(value, 0);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long bucketLowerBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        return (long) (SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT) << shift;
+    }
+
+    static long bucketWidth(int index) {
+        return index < SUB_BUCKET_COUNT ? 1 : 1L << (index / SUB_BUCKET_COUNT - 1);
+    }
+
+    private AtomicLongArray getStripe() {
+        int index = (int) Thread.currentThread().getId() & stripeMask;
+        AtomicLongArray stripe = stripes.get(index);
+        if (stripe == null) {
+            //only allocated the first time a thread hashes to this stripe
+            stripes.compareAndSet(index, null, new AtomicLongArray(STRIPE_LENGTH));
+            stripe = stripes.get(index);
+        }
+        return stripe;
+    }
+
+    private synchronized void tickIfNecessary() {
+        long now = System.nanoTime();
+        long age = now - lastTick;
+        if (age > TICK_INTERVAL) {
+            lastTick = now - age % TICK_INTERVAL;
+            long count = getCount();
+            long delta = count - lastTickCount;
+            lastTickCount = count;
+            long requiredTicks = age / TICK_INTERVAL;
+            for (long i = 0; i < requiredTicks; i++) {
+                if (i == 0) {
+                    m1Rate.update(delta);
+                    m5Rate.update(delta);
+                    m15Rate.update(delta);
+                }
+                m1Rate.tick();
+                m5Rate.tick();
+                m15Rate.tick();
+            }
+        }
+    }
+}
@@ -15,53 +15,68 @@
  */
 package io.fabric8.apmagent.metrics;
 
-import com.codahale.metrics.Timer;
-
-import java.util.concurrent.atomic.AtomicReference;
-
 public class ThreadContextMethodMetrics extends MethodMetrics {
-    private final Thread thread;
-    private final AtomicReference<ThreadContextMethodMetricsStack> stackRef;
-    private Timer.Context timerContext;
+    private final ThreadMetrics threadMetrics;
 
-    public ThreadContextMethodMetrics(Thread thread, AtomicReference<ThreadContextMethodMetricsStack> stackRef, String name) {
-        super(name);
-        this.thread = thread;
-        this.stackRef = stackRef;
+    public ThreadContextMethodMetrics(ThreadMetrics threadMetrics, String name) {
+        //only ever updated by its own thread unless shared by a group, so a single stripe is enough
+        super(name, threadMetrics.isGroup() ? new StripedTimer() : new StripedTimer(1));
+        this.threadMetrics = threadMetrics;
     }
 
     public String getThreadName() {
-        return thread.getName();
+        Thread thread = threadMetrics.getThread();
+        return thread != null ? thread.getName() : threadMetrics.getName();
     }
 
     public long getThreadId() {
-        return thread.getId();
+        Thread thread = threadMetrics.getThread();
+        return thread != null ? thread.getId() : -1;
     }
 
-    public void onEnter() {
-        timerContext = timer.time();
-        stackRef.get().push(this);
+    public void onEnter(Thread owner) {
+        //the start time lives on the stack rather than in a Timer.Context
+        //so that entering a method doesn't allocate
+        long startTime = System.nanoTime();
+        ThreadContextMethodMetricsStack stack = threadMetrics.getStack(owner);
+        stack.push(this, startTime);
+        SpanRecorder spanRecorder = stack.getSpanRecorder();
+        if (spanRecorder != null) {
+            spanRecorder.enter(startTime);
+        }
     }
 
-    public long onExit() {
+    public long onExit(Thread owner) {
         long result = -1;
-        ThreadContextMethodMetrics last = stackRef.get().pop();
+        ThreadContextMethodMetricsStack stack = threadMetrics.getStack(owner);
+        ThreadContextMethodMetrics last = stack.pop();
         if (last == this) {
-            result = timerContext.stop();
+            result = stop(this, stack);
         } else {
             //the exit could have jumped a few methods if its
             //caused by an exception
             while (last != null && last != this) {
-                result = last.timerContext.stop();
-                last = stackRef.get().pop();
+                result = stop(last, stack);
+                last = stack.pop();
             }
             if (last == this) {
-                result = timerContext.stop();
+                result = stop(this, stack);
             }
         }
         return result;
     }
 
+    private static long stop(ThreadContextMethodMetrics methodMetrics, ThreadContextMethodMetricsStack stack) {
+        long startTime = stack.getPoppedStartTime();
+        long elapsed = System.nanoTime() - startTime;
+        methodMetrics.update(elapsed);
+        SpanRecorder spanRecorder = stack.getSpanRecorder();
+        if (spanRecorder != null) {
+            spanRecorder.exit(methodMetrics.getName(), startTime, elapsed);
+        }
+        return elapsed;
+    }
+
     public String toString() {
         return "ThreadContextMethodMetrics:" + getName();
     }
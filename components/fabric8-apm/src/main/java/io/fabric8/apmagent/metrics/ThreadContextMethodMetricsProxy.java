@@ -17,6 +17,7 @@ package io.fabric8.apmagent.metrics;
 
 public class ThreadContextMethodMetricsProxy extends MethodMetricsProxy implements ThreadContextMethodMetricsProxyMBean {
     private Thread thread;
+    private String threadName;
 
     public Thread getThread() {
         return thread;
@@ -26,10 +27,20 @@ public class ThreadContextMethodMetricsProxy extends MethodMetricsProxy implemen
         this.thread = thread;
     }
 
+    /**
+     * @param threadName - the name to report when there is no thread, e.g. for a group of threads
+     */
+    public void setThreadName(String threadName) {
+        this.threadName = threadName;
+    }
+
     @Override
     public String getThreadName() {
         Thread t = thread;
-        return t != null ? t.getName() : " NOT SET";
+        if (t != null) {
+            return t.getName();
+        }
+        return threadName != null ? threadName : " NOT SET";
     }
 
     @Override
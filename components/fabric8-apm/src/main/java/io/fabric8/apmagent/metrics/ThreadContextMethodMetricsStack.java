@@ -18,30 +18,59 @@ package io.fabric8.apmagent.metrics;
 class ThreadContextMethodMetricsStack {
 
     private ThreadContextMethodMetrics[] stack;
+    private long[] startTimes;
     private int pointer;
+    private final SpanRecorder spanRecorder;
 
-    ThreadContextMethodMetricsStack() {
+    ThreadContextMethodMetricsStack(SpanRecorder spanRecorder) {
         stack = new ThreadContextMethodMetrics[2];
+        startTimes = new long[2];
+        this.spanRecorder = spanRecorder;
     }
 
-    ThreadContextMethodMetrics push(ThreadContextMethodMetrics value) {
+    /**
+     * @return the recorder of the call tree, or null if call trees aren't recorded
+     */
+    SpanRecorder getSpanRecorder() {
+        return spanRecorder;
+    }
+
+    ThreadContextMethodMetrics push(ThreadContextMethodMetrics value, long startTime) {
         if (pointer + 1 >= stack.length) {
             resizeStack(stack.length * 2);
         }
+        startTimes[pointer] = startTime;
         stack[pointer++] = value;
         return value;
     }
 
     ThreadContextMethodMetrics pop() {
+        if (pointer == 0) {
+            return null;
+        }
         final ThreadContextMethodMetrics result = stack[--pointer];
         stack[pointer] = null;
         return result;
     }
 
+    boolean isEmpty() {
+        return pointer == 0;
+    }
+
+    /**
+     * @return the start time recorded for the entry removed by the last {@link #pop()}
+     */
+    long getPoppedStartTime() {
+        return startTimes[pointer];
+    }
+
     private void resizeStack(int newCapacity) {
         ThreadContextMethodMetrics[] newStack = new ThreadContextMethodMetrics[newCapacity];
         System.arraycopy(stack, 0, newStack, 0, Math.min(pointer, newCapacity));
         stack = newStack;
+        long[] newStartTimes = new long[newCapacity];
+        System.arraycopy(startTimes, 0, newStartTimes, 0, Math.min(pointer, newCapacity));
+        startTimes = newStartTimes;
     }
 
     public String toString() {
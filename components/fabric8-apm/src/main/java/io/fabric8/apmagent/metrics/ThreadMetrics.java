@@ -20,81 +20,222 @@ import io.fabric8.apmagent.ApmConfiguration;
 import java.lang.management.ManagementFactory;
 import java.lang.management.ThreadInfo;
 import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * The method metrics of a single thread or, when threads are grouped by name, of every thread in a group
+ * (e.g. all the threads of a pool). Groups keep a call stack per thread, but share the method metrics.
+ * <p/>
+ * The calls are always recorded against the thread passed in (which the sampling strategy does on behalf
+ * of the sampled threads), never against the calling thread.
+ */
 public class ThreadMetrics {
     private final AtomicReference<ThreadContextMethodMetricsStack> methodStackRef;
+    private final ConcurrentMap<Thread, ThreadContextMethodMetricsStack> threadStacks;
     private final ApmAgentContext apmAgentContext;
-    private final ThreadInfo threadInfo;
     private final Thread thread;
+    private final String groupName;
     private final ThreadMXBean threadMXBean;
     private final ConcurrentMap<String, ThreadContextMethodMetrics> methods = new ConcurrentHashMap<>();
     private final MonitoredThreadMethodMetrics monitoredThreadMethodMetrics;
+    private volatile ThreadContextMethodMetrics[] methodsById = new ThreadContextMethodMetrics[0];
+    private volatile boolean destroyed;
+    private long lastCount;
+    private long lastActiveTime = System.currentTimeMillis();
 
     public ThreadMetrics(ApmAgentContext apmAgentContext, Thread thread) {
-        this.methodStackRef = new AtomicReference<>(new ThreadContextMethodMetricsStack());
+        this(apmAgentContext, thread, null);
+    }
+
+    /**
+     * Creates metrics shared by all the threads in a group
+     */
+    public ThreadMetrics(ApmAgentContext apmAgentContext, String groupName) {
+        this(apmAgentContext, null, groupName);
+    }
+
+    private ThreadMetrics(ApmAgentContext apmAgentContext, Thread thread, String groupName) {
         this.apmAgentContext = apmAgentContext;
+        this.methodStackRef = thread != null ? new AtomicReference<>(newStack(thread, null)) : null;
+        this.threadStacks = thread != null ? null : new ConcurrentHashMap<Thread, ThreadContextMethodMetricsStack>();
         this.threadMXBean = ManagementFactory.getThreadMXBean();
-        this.threadInfo = threadMXBean.getThreadInfo(thread.getId());
         this.thread = thread;
+        this.groupName = groupName;
         ApmConfiguration configuration = apmAgentContext.getConfiguration();
-        this.monitoredThreadMethodMetrics = new MonitoredThreadMethodMetrics(thread, apmAgentContext);
+        this.monitoredThreadMethodMetrics = new MonitoredThreadMethodMetrics(this, apmAgentContext);
         this.monitoredThreadMethodMetrics.setMonitorSize(configuration.getThreadMetricDepth());
     }
 
     public String getName() {
-        return thread.getName() + "[" + thread.getId() + "]";
+        return thread != null ? thread.getName() + "[" + thread.getId() + "]" : groupName;
     }
 
+    /**
+     * @return the thread, or null if these are the metrics of a group of threads
+     */
     Thread getThread() {
         return thread;
     }
 
+    public boolean isGroup() {
+        return thread == null;
+    }
+
     public boolean isDead() {
-        return !thread.isAlive();
+        return thread != null && !thread.isAlive();
     }
 
     public long getCpuTime() {
-        return threadMXBean.getThreadCpuTime(thread.getId());
+        return thread != null ? threadMXBean.getThreadCpuTime(thread.getId()) : -1;
     }
 
     public long getUserTime() {
-        return threadMXBean.getThreadUserTime(thread.getId());
+        return thread != null ? threadMXBean.getThreadUserTime(thread.getId()) : -1;
     }
 
     public ThreadInfo getThreadInfo() {
-        return threadInfo;
+        return thread != null ? threadMXBean.getThreadInfo(thread.getId()) : null;
+    }
+
+    /**
+     * Called from housekeeping - a thread is idle if it isn't in the middle of a call and none of its methods
+     * has completed for the idle time
+     */
+    boolean isIdle(long now, long idleTime) {
+        if (isInCall()) {
+            lastActiveTime = now;
+            return false;
+        }
+        long count = 0;
+        for (ThreadContextMethodMetrics threadContextMethodMetrics : methods.values()) {
+            count += threadContextMethodMetrics.getCount();
+        }
+        if (count != lastCount) {
+            lastCount = count;
+            lastActiveTime = now;
+        }
+        return now - lastActiveTime > idleTime;
+    }
+
+    /**
+     * Called from housekeeping - the stacks are only updated by their own threads, so this may be slightly
+     * out of date, but a call which has been running for a while will be seen
+     */
+    boolean isInCall() {
+        if (threadStacks != null) {
+            for (ThreadContextMethodMetricsStack stack : threadStacks.values()) {
+                if (!stack.isEmpty()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return !methodStackRef.get().isEmpty();
+    }
+
+    /**
+     * Called from housekeeping - drops the call stacks of the threads of a group that have died
+     */
+    void removeDeadThreadStacks() {
+        if (threadStacks != null) {
+            for (Thread stackThread : threadStacks.keySet()) {
+                if (!stackThread.isAlive()) {
+                    threadStacks.remove(stackThread);
+                }
+            }
+        }
+    }
+
+    ThreadContextMethodMetricsStack getStack(Thread owner) {
+        if (threadStacks != null) {
+            ThreadContextMethodMetricsStack stack = threadStacks.get(owner);
+            if (stack == null) {
+                stack = newStack(owner, null);
+                threadStacks.put(owner, stack);
+            }
+            return stack;
+        }
+        return methodStackRef.get();
+    }
+
+    private void resetStack(Thread owner) {
+        if (threadStacks != null) {
+            threadStacks.put(owner, newStack(owner, threadStacks.get(owner)));
+        } else {
+            methodStackRef.set(newStack(thread, methodStackRef.get()));
+        }
+    }
+
+    private ThreadContextMethodMetricsStack newStack(Thread owner, ThreadContextMethodMetricsStack previous) {
+        SpanRecorder spanRecorder = previous != null ? previous.getSpanRecorder() : null;
+        if (spanRecorder != null) {
+            spanRecorder.reset();
+        } else {
+            spanRecorder = apmAgentContext.createSpanRecorder(owner);
+        }
+        return new ThreadContextMethodMetricsStack(spanRecorder);
     }
 
     public void setMonitorSize(int monitorSize) {
         monitoredThreadMethodMetrics.setMonitorSize(monitorSize);
     }
 
-    public void enter(String methodName, boolean alwaysActive) {
+    public void enter(Thread owner, String methodName, boolean alwaysActive) {
         ThreadContextMethodMetrics threadContextMethodMetrics = methods.get(methodName);
         if (threadContextMethodMetrics == null) {
-            threadContextMethodMetrics = new ThreadContextMethodMetrics(thread, this.methodStackRef, methodName);
+            threadContextMethodMetrics = new ThreadContextMethodMetrics(this, methodName);
             threadContextMethodMetrics.setActive(apmAgentContext.isMonitorByDefault());
             methods.putIfAbsent(methodName, threadContextMethodMetrics);
         }
         if (alwaysActive || threadContextMethodMetrics.isActive()) {
-            threadContextMethodMetrics.onEnter();
+            threadContextMethodMetrics.onEnter(owner);
+        }
+    }
+
+    /**
+     * Enter a method identified by the id assigned from {@link ApmAgentContext#getMethodId(String)}.
+     * Once a method has been seen by this thread, this is a plain array lookup.
+     */
+    public void enter(Thread owner, int methodId, boolean alwaysActive) {
+        ThreadContextMethodMetrics[] array = methodsById;
+        ThreadContextMethodMetrics threadContextMethodMetrics = methodId < array.length ? array[methodId] : null;
+        if (threadContextMethodMetrics == null) {
+            threadContextMethodMetrics = createMethodMetrics(methodId);
+        }
+        if (alwaysActive || threadContextMethodMetrics.isActive()) {
+            threadContextMethodMetrics.onEnter(owner);
         }
     }
 
-    public long exit(String methodName, boolean alwaysActive) {
+    public long exit(Thread owner, int methodId, boolean alwaysActive) {
+        long result = -1;
+        ThreadContextMethodMetrics[] array = methodsById;
+        ThreadContextMethodMetrics threadContextMethodMetrics = methodId < array.length ? array[methodId] : null;
+        if (threadContextMethodMetrics != null) {
+            if (alwaysActive || threadContextMethodMetrics.isActive()) {
+                result = threadContextMethodMetrics.onExit(owner);
+            }
+        } else {
+            //something weird happended reset the stack
+            resetStack(owner);
+        }
+        return result;
+    }
+
+    public long exit(Thread owner, String methodName, boolean alwaysActive) {
         long result = -1;
         ThreadContextMethodMetrics threadContextMethodMetrics = methods.get(methodName);
         if (threadContextMethodMetrics != null) {
             if (alwaysActive || threadContextMethodMetrics.isActive()) {
-                result = threadContextMethodMetrics.onExit();
+                result = threadContextMethodMetrics.onExit(owner);
             }
         } else {
             //something weird happended reset the stack
-            methodStackRef.set(new ThreadContextMethodMetricsStack());
+            resetStack(owner);
         }
         return result;
     }
@@ -104,17 +245,34 @@ public class ThreadMetrics {
     }
 
     public void destroy() {
+        destroyed = true;
         monitoredThreadMethodMetrics.destroy();
     }
 
+    public boolean isDestroyed() {
+        return destroyed;
+    }
+
     public ThreadContextMethodMetrics remove(String fullMethodName) {
         ThreadContextMethodMetrics result = methods.remove(fullMethodName);
+        int methodId = apmAgentContext.findMethodId(fullMethodName);
+        if (methodId >= 0) {
+            synchronized (this) {
+                ThreadContextMethodMetrics[] array = methodsById;
+                if (methodId < array.length) {
+                    array[methodId] = null;
+                }
+            }
+        }
         return result;
     }
 
     public void calculateMethodMetrics() {
-        List<ThreadContextMethodMetrics> list = (List<ThreadContextMethodMetrics>) MethodMetrics.sortedMetrics(this.methods.values());
-        monitoredThreadMethodMetrics.calculateMethodMetrics(list);
+        monitoredThreadMethodMetrics.calculateMethodMetrics(this.methods.values());
+    }
+
+    public List<? extends MethodMetrics> getRankedMethodMetrics() {
+        return monitoredThreadMethodMetrics.getRankedMetrics();
     }
 
     public void setActive(String methodName, boolean flag) {
@@ -124,6 +282,26 @@ public class ThreadMetrics {
         }
     }
 
+    private synchronized ThreadContextMethodMetrics createMethodMetrics(int methodId) {
+        String methodName = apmAgentContext.getMethodName(methodId);
+        ThreadContextMethodMetrics threadContextMethodMetrics = methods.get(methodName);
+        if (threadContextMethodMetrics == null) {
+            threadContextMethodMetrics = new ThreadContextMethodMetrics(this, methodName);
+            threadContextMethodMetrics.setActive(apmAgentContext.isMonitorByDefault());
+            ThreadContextMethodMetrics existing = methods.putIfAbsent(methodName, threadContextMethodMetrics);
+            if (existing != null) {
+                threadContextMethodMetrics = existing;
+            }
+        }
+        ThreadContextMethodMetrics[] array = methodsById;
+        if (methodId >= array.length) {
+            array = Arrays.copyOf(array, Math.max(methodId + 1, array.length * 2));
+        }
+        array[methodId] = threadContextMethodMetrics;
+        methodsById = array;
+        return threadContextMethodMetrics;
+    }
+
     public boolean isActive(String methodName) {
         ThreadContextMethodMetrics threadContextMethodMetrics = methods.get(methodName);
         return threadContextMethodMetrics != null ? threadContextMethodMetrics.isActive() : false;
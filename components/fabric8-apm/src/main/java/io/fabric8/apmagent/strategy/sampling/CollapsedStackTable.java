@@ -0,0 +1,133 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent.strategy.sampling;
+
+import java.util.Arrays;
+
+/**
+ * A fixed size open addressing table counting how often each distinct stack (as a sequence of
+ * frame ids from {@link FrameTable}) has been sampled. All storage is allocated up front, so
+ * adding a sample doesn't allocate. Once the table is three quarters full new stacks are dropped
+ * and counted by {@link #getDropped()}.
+ */
+class CollapsedStackTable {
+    private final int capacity;
+    private final int maxDepth;
+    private final int[] frames;
+    private final int[] depths;
+    private final int[] hashes;
+    private final long[] counts;
+    private int size;
+    private long dropped;
+
+    /**
+     * @param capacity - the number of slots, rounded up to a power of two
+     * @param maxDepth - the maximum number of frames kept per stack
+     */
+    CollapsedStackTable(int capacity, int maxDepth) {
+        int slots = 1;
+        while (slots < capacity) {
+            slots <<= 1;
+        }
+        this.capacity = slots;
+        this.maxDepth = maxDepth;
+        this.frames = new int[slots * maxDepth];
+        this.depths = new int[slots];
+        this.hashes = new int[slots];
+        this.counts = new long[slots];
+    }
+
+    /**
+     * @param stack - frame ids, top of the stack first
+     * @param depth - the number of valid entries in stack
+     */
+    void add(int[] stack, int depth) {
+        depth = Math.min(depth, maxDepth);
+        int hash = hash(stack, depth);
+        int mask = capacity - 1;
+        int index = hash & mask;
+        while (counts[index] != 0) {
+            if (hashes[index] == hash && depths[index] == depth && sameStack(index, stack, depth)) {
+                counts[index]++;
+                return;
+            }
+            index = (index + 1) & mask;
+        }
+        if (size >= (capacity >> 2) * 3) {
+            dropped++;
+            return;
+        }
+        System.arraycopy(stack, 0, frames, index * maxDepth, depth);
+        depths[index] = depth;
+        hashes[index] = hash;
+        counts[index] = 1;
+        size++;
+    }
+
+    /**
+     * Renders the table in the collapsed stack format used by flame graph tools -
+     * one line per stack with frames from the root separated by ';', followed by the count
+     */
+    String toCollapsedString(FrameTable frameTable) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < capacity; i++) {
+            if (counts[i] != 0) {
+                int offset = i * maxDepth;
+                for (int j = depths[i] - 1; j >= 0; j--) {
+                    result.append(frameTable.getName(frames[offset + j]));
+                    if (j > 0) {
+                        result.append(';');
+                    }
+                }
+                result.append(' ').append(counts[i]).append('\n');
+            }
+        }
+        return result.toString();
+    }
+
+    int size() {
+        return size;
+    }
+
+    long getDropped() {
+        return dropped;
+    }
+
+    void clear() {
+        Arrays.fill(counts, 0);
+        size = 0;
+        dropped = 0;
+    }
+
+    private boolean sameStack(int index, int[] stack, int depth) {
+        int offset = index * maxDepth;
+        for (int i = 0; i < depth; i++) {
+            if (frames[offset + i] != stack[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(int[] stack, int depth) {
+        int result = 1;
+        for (int i = 0; i < depth; i++) {
+            result = 31 * result + stack[i];
+        }
+        //spread the bits, as the low bits are used to index the table
+        return result ^ (result >>> 16);
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent.strategy.sampling;
+
+import io.fabric8.apmagent.ApmConfiguration;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Interns sampled stack frames to integer ids, so each distinct class/method pair only has its
+ * name built and its audit filter evaluated once, rather than on every sample.
+ */
+class FrameTable {
+    private static final byte AUDIT_UNKNOWN = 0;
+    private static final byte AUDIT_YES = 1;
+    private static final byte AUDIT_NO = 2;
+
+    private final Map<String, Map<String, Integer>> ids = new HashMap<>();
+    private String[] classNames = new String[256];
+    private String[] methodNames = new String[256];
+    private String[] names = new String[256];
+    private byte[] audit = new byte[256];
+    private int size;
+
+    int intern(String className, String methodName) {
+        Map<String, Integer> methods = ids.get(className);
+        if (methods == null) {
+            methods = new HashMap<>();
+            ids.put(className, methods);
+        }
+        Integer id = methods.get(methodName);
+        if (id == null) {
+            id = add(className, methodName);
+            methods.put(methodName, id);
+        }
+        return id;
+    }
+
+    /**
+     * @return the name of the frame in the form className.methodName
+     */
+    String getName(int id) {
+        return names[id];
+    }
+
+    boolean isAudit(int id, ApmConfiguration configuration) {
+        byte result = audit[id];
+        if (result == AUDIT_UNKNOWN) {
+            result = configuration.isAudit(classNames[id], methodNames[id]) ? AUDIT_YES : AUDIT_NO;
+            audit[id] = result;
+        }
+        return result == AUDIT_YES;
+    }
+
+    /**
+     * Forget the cached audit results, e.g. when the filters have changed
+     */
+    void resetAudit() {
+        Arrays.fill(audit, AUDIT_UNKNOWN);
+    }
+
+    int size() {
+        return size;
+    }
+
+    private int add(String className, String methodName) {
+        if (size == names.length) {
+            int newCapacity = size * 2;
+            classNames = Arrays.copyOf(classNames, newCapacity);
+            methodNames = Arrays.copyOf(methodNames, newCapacity);
+            names = Arrays.copyOf(names, newCapacity);
+            audit = Arrays.copyOf(audit, newCapacity);
+        }
+        classNames[size] = className;
+        methodNames[size] = methodName;
+        names[size] = className + "." + methodName;
+        return size++;
+    }
+}
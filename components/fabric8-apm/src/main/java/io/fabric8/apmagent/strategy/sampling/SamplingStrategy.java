@@ -23,19 +23,34 @@ import java.lang.management.ManagementFactory;
 import java.lang.management.ThreadInfo;
 import java.lang.management.ThreadMXBean;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class SamplingStrategy implements Strategy, Runnable {
     private static final long CLEANUP_INTERVAL = 1000;
+    private static final int STACK_TABLE_SIZE = 16384;
+    private static final int NO_METHOD = -1;
     private ApmAgentContext context;
     private ApmConfiguration configuration;
     private AtomicBoolean initialized = new AtomicBoolean();
     private AtomicBoolean started = new AtomicBoolean();
+    private AtomicBoolean filterChanged = new AtomicBoolean();
     private Thread samplingThread;
-    private final Map<Long, String> currentMethods = new HashMap<>();
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    private final FrameTable frameTable = new FrameTable();
+    private CollapsedStackTable stackTable;
+    private long[] sampleCounts = new long[256];
+    private int[] stackBuffer;
+    private Thread[] threadBuffer = new Thread[64];
+    private Thread[] threads = new Thread[0];
+    private long[] threadIds = new long[0];
+    private int[] currentMethods = new int[0];
 
     public SamplingStrategy(ApmAgentContext context) {
         this.context = context;
@@ -45,6 +60,9 @@ public class SamplingStrategy implements Strategy, Runnable {
     @Override
     public void initialize() throws Exception {
         if (initialized.compareAndSet(false, true)) {
+            int depth = Math.max(1, configuration.getSamplingDepth());
+            stackBuffer = new int[depth];
+            stackTable = new CollapsedStackTable(STACK_TABLE_SIZE, depth);
             samplingThread = new Thread(this, "Fabric8-ApmAgent-SamplingStrategy");
             samplingThread.setDaemon(true);
             configuration.addChangeListener(this);
@@ -77,7 +95,64 @@ public class SamplingStrategy implements Strategy, Runnable {
 
     @Override
     public void configurationChanged() {
+        if (configuration.isFilterChanged()) {
+            filterChanged.set(true);
+        }
+    }
+
+    /**
+     * @return the sampled stacks in the collapsed format used by flame graph tools
+     */
+    public String getCollapsedStacks() {
+        CollapsedStackTable table = stackTable;
+        if (table == null) {
+            return "";
+        }
+        synchronized (table) {
+            return table.toCollapsedString(frameTable);
+        }
+    }
+
+    /**
+     * @return the number of samples each method was seen at the top of the stack, highest first
+     */
+    public Map<String, Long> getMethodSampleCounts() {
+        CollapsedStackTable table = stackTable;
+        Map<String, Long> result = new LinkedHashMap<>();
+        if (table != null) {
+            Map<String, Long> counts = new HashMap<>();
+            synchronized (table) {
+                for (int i = 0; i < frameTable.size(); i++) {
+                    if (sampleCounts[i] > 0) {
+                        counts.put(frameTable.getName(i), sampleCounts[i]);
+                    }
+                }
+            }
+            List<Map.Entry<String, Long>> entries = new ArrayList<>(counts.entrySet());
+            Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+                @Override
+                public int compare(Map.Entry<String, Long> entry1, Map.Entry<String, Long> entry2) {
+                    return entry2.getValue().compareTo(entry1.getValue());
+                }
+            });
+            for (Map.Entry<String, Long> entry : entries) {
+                result.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return result;
+    }
 
+    /**
+     * Clears the sampled stacks and method counts, so sampling starts again from nothing
+     */
+    public void resetSamples() {
+        CollapsedStackTable table = stackTable;
+        if (table != null) {
+            synchronized (table) {
+                table.clear();
+                Arrays.fill(sampleCounts, 0);
+            }
+        }
     }
 
     @Override
@@ -85,17 +160,17 @@ public class SamplingStrategy implements Strategy, Runnable {
         long lastTime = 0;
         while (started.get()) {
             try {
-                for (Map.Entry<Thread, StackTraceElement[]> threadEntry : Thread.getAllStackTraces().entrySet()) {
-                    if (threadEntry.getKey() != Thread.currentThread()) {
-                        addMeasurement(threadEntry.getKey(), threadEntry.getValue());
-                    }
-                }
                 long currentTime = System.currentTimeMillis();
-
                 if ((currentTime - lastTime) > CLEANUP_INTERVAL) {
-                    cleanup();
+                    refreshThreads();
                     lastTime = currentTime;
                 }
+                if (filterChanged.compareAndSet(true, false)) {
+                    synchronized (stackTable) {
+                        frameTable.resetAudit();
+                    }
+                }
+                sample();
                 Thread.sleep(configuration.getSamplingInterval());
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
@@ -103,49 +178,93 @@ public class SamplingStrategy implements Strategy, Runnable {
         }
     }
 
-    private void cleanup() {
-        List<ThreadInfo> removeList = null;
-        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
-        for (Long id : currentMethods.keySet()) {
-            ThreadInfo threadInfo = threadMXBean.getThreadInfo(id);
-            if (threadInfo != null) {
-                if (threadInfo.getThreadState() == Thread.State.TERMINATED) {
-                    if (removeList == null) {
-                        removeList = new ArrayList<>();
-                    }
-                    removeList.add(threadInfo);
+    /**
+     * Only the threads found by {@link #refreshThreads()} are sampled, and only to the configured
+     * depth. Frames are interned to ids, so a sample only costs table lookups and counter updates.
+     */
+    private void sample() {
+        if (threadIds.length == 0) {
+            return;
+        }
+        ThreadInfo[] threadInfos = threadMXBean.getThreadInfo(threadIds, stackBuffer.length);
+        synchronized (stackTable) {
+            for (int i = 0; i < threadInfos.length; i++) {
+                ThreadInfo threadInfo = threadInfos[i];
+                if (threadInfo != null) {
+                    addMeasurement(i, threadInfo.getStackTrace());
                 }
             }
         }
-        if (removeList != null) {
-            for (ThreadInfo threadInfo : removeList) {
-                currentMethods.remove(threadInfo.getThreadId());
+    }
+
+    private void addMeasurement(int index, StackTraceElement[] stackTraceElements) {
+        if (stackTraceElements == null || stackTraceElements.length == 0) {
+            return;
+        }
+        int depth = Math.min(stackTraceElements.length, stackBuffer.length);
+        int currentMethod = NO_METHOD;
+        for (int i = 0; i < depth; i++) {
+            StackTraceElement element = stackTraceElements[i];
+            int id = frameTable.intern(element.getClassName(), element.getMethodName());
+            stackBuffer[i] = id;
+            if (currentMethod == NO_METHOD && frameTable.isAudit(id, configuration)) {
+                currentMethod = id;
             }
         }
-    }
+        stackTable.add(stackBuffer, depth);
+        int top = stackBuffer[0];
+        if (top >= sampleCounts.length) {
+            sampleCounts = Arrays.copyOf(sampleCounts, Math.max(top + 1, sampleCounts.length * 2));
+        }
+        sampleCounts[top]++;
 
-    private void addMeasurement(Thread thread, StackTraceElement[] stackTraceElements) {
-        if (thread != null && thread.isAlive() &&
-                stackTraceElements != null && stackTraceElements.length > 0) {
-            StackTraceElement topOfStack = stackTraceElements[0];
-            String currentMethod = getCurrentMethod(topOfStack);
-            if (configuration.isAudit(topOfStack.getClassName(), topOfStack.getMethodName())) {
-                String lastMethod = currentMethods.put(thread.getId(), currentMethod);
-                if (lastMethod == null) {
-                    context.enterMethod(thread, currentMethod, true);
-                } else if (!lastMethod.equals(currentMethod)) {
-                    context.exitMethod(thread, lastMethod, true);
-                } else {
-                    //we are still in the currentMethod
-                }
+        int lastMethod = currentMethods[index];
+        if (currentMethod != lastMethod) {
+            Thread thread = threads[index];
+            currentMethods[index] = currentMethod;
+            if (lastMethod != NO_METHOD) {
+                context.exitMethod(thread, frameTable.getName(lastMethod), true);
+            }
+            if (currentMethod != NO_METHOD) {
+                context.enterMethod(thread, frameTable.getName(currentMethod), true);
             }
         }
     }
 
-    private String getCurrentMethod(StackTraceElement topOfStack) {
-        StringBuilder stringBuilder = new StringBuilder(topOfStack.getClassName().length() + topOfStack.getMethodName().length() + 1);
-        stringBuilder.append(topOfStack.getClassName()).append(".").append(topOfStack.getMethodName());
-        return stringBuilder.toString();
+    /**
+     * Enumerates the live threads (without materializing their stacks) and carries over
+     * the current method of the threads that were already being sampled.
+     */
+    private void refreshThreads() {
+        ThreadGroup root = Thread.currentThread().getThreadGroup();
+        while (root.getParent() != null) {
+            root = root.getParent();
+        }
+        int count;
+        while ((count = root.enumerate(threadBuffer, true)) == threadBuffer.length) {
+            threadBuffer = new Thread[threadBuffer.length * 2];
+        }
+        Map<Long, Integer> previous = new HashMap<>();
+        for (int i = 0; i < threadIds.length; i++) {
+            previous.put(threadIds[i], currentMethods[i]);
+        }
+        Thread[] newThreads = new Thread[count];
+        long[] newThreadIds = new long[count];
+        int[] newCurrentMethods = new int[count];
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            Thread thread = threadBuffer[i];
+            threadBuffer[i] = null;
+            if (thread != Thread.currentThread() && thread.isAlive()) {
+                Integer currentMethod = previous.get(thread.getId());
+                newThreads[size] = thread;
+                newThreadIds[size] = thread.getId();
+                newCurrentMethods[size] = currentMethod != null ? currentMethod : NO_METHOD;
+                size++;
+            }
+        }
+        threads = Arrays.copyOf(newThreads, size);
+        threadIds = Arrays.copyOf(newThreadIds, size);
+        currentMethods = Arrays.copyOf(newCurrentMethods, size);
     }
 }
-
@@ -23,12 +23,17 @@ import org.objectweb.asm.Type;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.objectweb.asm.Opcodes.ASM5;
 
 public class ApmClassVisitor extends ClassVisitor {
     private static final Logger LOG = LoggerFactory.getLogger(ApmAgent.class);
     private final TraceStrategy traceStrategy;
     private final ClassInfo classInfo;
+    private final List<String[]> methods = new ArrayList<>();
+    private final List<String[]> transformedMethods = new ArrayList<>();
 
     public ApmClassVisitor(TraceStrategy traceStrategy, ClassVisitor cv, ClassInfo classInfo) {
         super(ASM5, cv);
@@ -54,12 +59,20 @@ public class ApmClassVisitor extends ClassVisitor {
         try {
             String methodDescription = getDescription(desc);
             classInfo.addMethod(name, methodDescription);
+            methods.add(new String[]{name, methodDescription});
 
             if (canProfileMethod(name, desc) && traceStrategy.isAudit(classInfo.getClassName(), name)) {
                 MethodVisitor mv = super.visitMethod(access, name, desc, signature, exceptions);
 
-                ApmMethodVisitor methodVisitor = new ApmMethodVisitor(mv, classInfo.getClassName(), name + methodDescription);
+                ApmMethodVisitor methodVisitor;
+                if (traceStrategy.isMethodIdTracing()) {
+                    int methodId = traceStrategy.getMethodId(classInfo.getClassName() + "@" + name + methodDescription);
+                    methodVisitor = new ApmMethodVisitor(mv, methodId);
+                } else {
+                    methodVisitor = new ApmMethodVisitor(mv, classInfo.getClassName(), name + methodDescription);
+                }
                 classInfo.addTransformedMethod(name, methodDescription);
+                transformedMethods.add(new String[]{name, methodDescription});
                 return methodVisitor;
             }
 
@@ -71,6 +84,20 @@ public class ApmClassVisitor extends ClassVisitor {
         return super.visitMethod(access, name, desc, signature, exceptions);
     }
 
+    /**
+     * @return the name and description of every method visited
+     */
+    List<String[]> getMethods() {
+        return methods;
+    }
+
+    /**
+     * @return the name and description of every method instrumented
+     */
+    List<String[]> getTransformedMethods() {
+        return transformedMethods;
+    }
+
     private boolean canProfileMethod(String methodName, String methodDescriptor) {
         if (methodDescriptor != null) {
 
@@ -21,27 +21,46 @@ import static org.objectweb.asm.Opcodes.*;
 
 public class ApmMethodVisitor extends MethodVisitor {
     private final String fullMethodName;
+    private final int methodId;
 
     public ApmMethodVisitor(MethodVisitor mv, String className, String methodName) {
         super(ASM5, mv);
         this.fullMethodName = className + "@" + methodName;
+        this.methodId = -1;
+    }
+
+    /**
+     * Instruments the method with calls passing a precomputed method id rather than the method name
+     */
+    public ApmMethodVisitor(MethodVisitor mv, int methodId) {
+        super(ASM5, mv);
+        this.fullMethodName = null;
+        this.methodId = methodId;
     }
 
     @Override
     public void visitCode() {
         super.visitCode();
-        super.visitLdcInsn(fullMethodName);
-        super.visitMethodInsn(INVOKESTATIC, "io/fabric8/apmagent/ApmAgent",
-                                 "enterMethod", "(Ljava/lang/String;)V", false);
+        visitAgentCall("enterMethod");
     }
 
     @Override
     public void visitInsn(int opcode) {
         if ((opcode >= IRETURN && opcode <= RETURN) || opcode == ATHROW) {
+            visitAgentCall("exitMethod");
+        }
+        super.visitInsn(opcode);
+    }
+
+    private void visitAgentCall(String agentMethod) {
+        if (fullMethodName != null) {
             super.visitLdcInsn(fullMethodName);
             super.visitMethodInsn(INVOKESTATIC, "io/fabric8/apmagent/ApmAgent",
-                                     "exitMethod", "(Ljava/lang/String;)V", false);
+                                     agentMethod, "(Ljava/lang/String;)V", false);
+        } else {
+            super.visitLdcInsn(methodId);
+            super.visitMethodInsn(INVOKESTATIC, "io/fabric8/apmagent/ApmAgent",
+                                     agentMethod, "(I)V", false);
         }
-        super.visitInsn(opcode);
     }
 }
@@ -0,0 +1,214 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent.strategy.trace;
+
+import io.fabric8.apmagent.ClassInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Caches instrumented byte code keyed by a digest of the original class bytes and the filter configuration,
+ * so classes that are retransformed again with the same configuration don't have to be rewritten by ASM.
+ * Entries are held in memory up to a byte budget (least recently used are evicted first) and can optionally
+ * be written to a directory, so the cache survives a restart.
+ */
+class BytecodeCache {
+    private static final Logger LOG = LoggerFactory.getLogger(BytecodeCache.class);
+    private static final int FILE_VERSION = 1;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final long maxBytes;
+    private final File directory;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+
+    /**
+     * @param maxBytes  - the maximum number of transformed bytes kept in memory
+     * @param directory - the directory to persist entries to, or null to only cache in memory
+     */
+    BytecodeCache(long maxBytes, File directory) {
+        this.maxBytes = maxBytes;
+        this.directory = directory;
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            LOG.warn("Could not create byte code cache directory {}", directory);
+        }
+    }
+
+    String createKey(byte[] original, String configurationKey) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(original);
+            digest.update(configurationKey.getBytes(UTF8));
+            byte[] bytes = digest.digest();
+            char[] result = new char[bytes.length * 2];
+            for (int i = 0; i < bytes.length; i++) {
+                result[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+                result[i * 2 + 1] = HEX[bytes[i] & 0xf];
+            }
+            return new String(result);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param persistent - whether the entry may be read from the cache directory
+     */
+    Entry get(String key, boolean persistent) {
+        Entry result;
+        synchronized (this) {
+            result = entries.get(key);
+        }
+        if (result == null && persistent && directory != null) {
+            result = read(key);
+            if (result != null) {
+                addToMemory(key, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param persistent - whether the entry may be written to the cache directory
+     */
+    void put(String key, Entry entry, boolean persistent) {
+        addToMemory(key, entry);
+        if (persistent && directory != null) {
+            write(key, entry);
+        }
+    }
+
+    private synchronized void addToMemory(String key, Entry entry) {
+        if (entry.transformed.length > maxBytes) {
+            return;
+        }
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            size -= previous.transformed.length;
+        }
+        size += entry.transformed.length;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (size > maxBytes && iterator.hasNext()) {
+            size -= iterator.next().transformed.length;
+            iterator.remove();
+        }
+    }
+
+    private Entry read(String key) {
+        File file = new File(directory, key + ".apm");
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            if (in.readInt() != FILE_VERSION) {
+                return null;
+            }
+            List<String[]> methods = readMethods(in);
+            List<String[]> transformedMethods = readMethods(in);
+            byte[] transformed = new byte[in.readInt()];
+            in.readFully(transformed);
+            return new Entry(transformed, methods, transformedMethods);
+        } catch (IOException e) {
+            LOG.debug("Could not read cached byte code from " + file + " due " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    private void write(String key, Entry entry) {
+        File file = new File(directory, key + ".apm");
+        File tmp = new File(directory, key + ".tmp" + Thread.currentThread().getId());
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp))) {
+            out.writeInt(FILE_VERSION);
+            writeMethods(out, entry.methods);
+            writeMethods(out, entry.transformedMethods);
+            out.writeInt(entry.transformed.length);
+            out.write(entry.transformed);
+        } catch (IOException e) {
+            LOG.debug("Could not write cached byte code to " + file + " due " + e.getMessage(), e);
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+        }
+    }
+
+    private static List<String[]> readMethods(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<String[]> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(new String[]{in.readUTF(), in.readUTF()});
+        }
+        return result;
+    }
+
+    private static void writeMethods(DataOutputStream out, List<String[]> methods) throws IOException {
+        out.writeInt(methods.size());
+        for (String[] method : methods) {
+            out.writeUTF(method[0]);
+            out.writeUTF(method[1]);
+        }
+    }
+
+    /**
+     * The instrumented byte code of a class, together with the methods the {@link ApmClassVisitor}
+     * recorded on the {@link ClassInfo} while producing it, so a cache hit can replay them.
+     */
+    static class Entry {
+        private final byte[] transformed;
+        private final List<String[]> methods;
+        private final List<String[]> transformedMethods;
+
+        Entry(byte[] transformed, List<String[]> methods, List<String[]> transformedMethods) {
+            this.transformed = transformed;
+            this.methods = methods;
+            this.transformedMethods = transformedMethods;
+        }
+
+        byte[] getTransformed() {
+            return transformed;
+        }
+
+        void applyTo(ClassInfo classInfo) {
+            for (String[] method : methods) {
+                classInfo.addMethod(method[0], method[1]);
+            }
+            for (String[] method : transformedMethods) {
+                classInfo.addTransformedMethod(method[0], method[1]);
+            }
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BytecodeCache[entries=" + entries.size() + ", size=" + size + "]";
+    }
+}
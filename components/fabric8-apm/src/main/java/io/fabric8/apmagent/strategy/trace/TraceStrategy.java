@@ -24,6 +24,7 @@ import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.util.CheckClassAdapter;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
@@ -32,10 +33,15 @@ import java.lang.instrument.IllegalClassFormatException;
 import java.lang.instrument.Instrumentation;
 import java.lang.instrument.UnmodifiableClassException;
 import java.security.ProtectionDomain;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class TraceStrategy implements Strategy, ClassFileTransformer {
     private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(TraceStrategy.class);
@@ -43,11 +49,12 @@ public class TraceStrategy implements Strategy, ClassFileTransformer {
     private ApmAgentContext context;
     private ApmConfiguration configuration;
     private Instrumentation instrumentation;
-    private BlockingQueue<Class<?>> blockingQueue = new LinkedBlockingDeque<>();
     private AtomicBoolean initialized = new AtomicBoolean();
     private AtomicBoolean started = new AtomicBoolean();
     private AtomicBoolean cleanUp = new AtomicBoolean();
-    private Thread transformThread;
+    private ExecutorService transformExecutor;
+    private BytecodeCache bytecodeCache;
+    private volatile String configurationKey;
 
     public TraceStrategy(ApmAgentContext context, Instrumentation instrumentation) {
         this.context = context;
@@ -58,6 +65,12 @@ public class TraceStrategy implements Strategy, ClassFileTransformer {
     @Override
     public void initialize() throws Exception {
         if (initialized.compareAndSet(false, true)) {
+            if (configuration.getBytecodeCacheSize() > 0) {
+                String directory = configuration.getBytecodeCacheDirectory();
+                bytecodeCache = new BytecodeCache(configuration.getBytecodeCacheSize(),
+                                                  directory != null && !directory.isEmpty() ? new File(directory) : null);
+            }
+            updateConfigurationKey();
             configuration.addChangeListener(this);
         }
     }
@@ -83,11 +96,7 @@ public class TraceStrategy implements Strategy, ClassFileTransformer {
             stop();
             configuration.removeChangeListener(this);
             instrumentation.removeTransformer(this);
-            Thread t = transformThread;
-            transformThread = null;
-            if (t != null && !t.isInterrupted()) {
-                t.interrupt();
-            }
+            ExecutorService executor = shutDownTransformExecutor();
             cleanUp.set(true);
             try {
                 //clean up
@@ -95,6 +104,9 @@ public class TraceStrategy implements Strategy, ClassFileTransformer {
             } catch (Throwable e) {
                 LOG.warn("Failed to shutdown due " + e.getMessage() + ". This exception is ignored.", e);
             }
+            if (executor != null) {
+                executor.shutdownNow();
+            }
         }
     }
 
@@ -106,12 +118,20 @@ public class TraceStrategy implements Strategy, ClassFileTransformer {
         return configuration.isAudit(className, methodName);
     }
 
+    public boolean isMethodIdTracing() {
+        return configuration.isMethodIdTracing();
+    }
+
+    public int getMethodId(String fullMethodName) {
+        return context.getMethodId(fullMethodName);
+    }
+
     @Override
     public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined, ProtectionDomain protectionDomain, byte[] classfileBuffer) throws IllegalClassFormatException {
         byte[] buffer = null;
         ClassInfo classInfo = context.getClassInfo(className);
         classInfo.setOriginalClass(classBeingRedefined);
-        if (classInfo.getTransformed() == null) {
+        if (!classInfo.hasTransformed()) {
             //we haven't been transformed before
             classInfo.setOriginal(classfileBuffer);
         }
@@ -123,22 +143,13 @@ public class TraceStrategy implements Strategy, ClassFileTransformer {
                     //remove metrics from methods no longer defined
                     context.resetMethods(classInfo);
                 }
-                ClassReader cr = new ClassReader(classBufferToRedefine);
-
-                ClassWriter cw = new ClassWriter(cr, ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
-
-                ApmClassVisitor visitor = new ApmClassVisitor(this, cw, classInfo);
-                cr.accept(visitor, ClassReader.SKIP_FRAMES);
-                buffer = cw.toByteArray();
-                if (!verifyClass(className, buffer)) {
-                    classInfo.setCanTransform(false);
-                    buffer = null;
-                }
+                buffer = instrumentClass(className, classInfo, classBufferToRedefine);
                 classInfo.setTransformed(buffer);
             }
         } else {
-            if (classInfo.getOriginal() != null) {
-                buffer = classInfo.getOriginal();
+            byte[] original = classInfo.getOriginal();
+            if (original != null) {
+                buffer = original;
                 context.resetAll(classInfo);
             }
         }
@@ -147,29 +158,20 @@ public class TraceStrategy implements Strategy, ClassFileTransformer {
 
     @Override
     public void configurationChanged() {
+        if (configuration.isFilterChanged()) {
+            updateConfigurationKey();
+        }
         if (started.get()) {
             if (configuration.isFilterChanged()) {
                 List<ClassInfo> deltas = context.buildDeltaList();
                 if (deltas != null && !deltas.isEmpty()) {
+                    List<Class<?>> classes = new ArrayList<>(deltas.size());
                     for (ClassInfo classInfo : deltas) {
-                        if (configuration.isAsyncTransformation()) {
-                            try {
-                                blockingQueue.put(classInfo.getOriginalClass());
-                            } catch (InterruptedException e) {
-                                Thread.currentThread().interrupt();
-                                break;
-                            }
-                        } else {
-                            try {
-                                instrumentation.retransformClasses(new Class[]{classInfo.getOriginalClass()});
-                            } catch (Throwable e) {
-                                LOG.warn("Could not transform " + classInfo.getClassName() + " due " + e.getMessage(), e);
-                            }
+                        if (classInfo.getOriginalClass() != null) {
+                            classes.add(classInfo.getOriginalClass());
                         }
                     }
-                    if (configuration.isAsyncTransformation() && !blockingQueue.isEmpty()) {
-                        startTransformThread();
-                    }
+                    retransform(classes, !configuration.isAsyncTransformation());
                 }
             }
         }
@@ -199,27 +201,105 @@ public class TraceStrategy implements Strategy, ClassFileTransformer {
 
         instrumentation.addTransformer(this, true);
 
+        List<Class<?>> classes = new ArrayList<>();
         for (Class<?> c : instrumentation.getAllLoadedClasses()) {
             if (isInstrumentClass(c)) {
-                if (configuration.isAsyncTransformation()) {
-                    try {
-                        blockingQueue.put(c);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        break;
-                    }
-                } else {
-                    try {
-                        instrumentation.retransformClasses(new Class[]{c});
-                    } catch (Throwable e) {
-                        LOG.error("Could not transform " + c.getName(), e);
+                classes.add(c);
+            }
+        }
+        //when cleaning up, wait for the original classes to be restored before returning
+        retransform(classes, cleanUp.get() || !configuration.isAsyncTransformation());
+    }
+
+    /**
+     * Retransforms the classes in batches. Outside of clean up, the batches are spread over the transform
+     * executor - the ASM rewriting happens in {@link #transform} on the thread that calls
+     * {@link Instrumentation#retransformClasses}, so the batches are rewritten in parallel.
+     *
+     * @param wait - whether to wait for all the batches to complete
+     */
+    private void retransform(List<Class<?>> classes, boolean wait) {
+        int batchSize = Math.max(1, configuration.getTransformBatchSize());
+        List<Future<?>> futures = new ArrayList<>();
+        ExecutorService executor = cleanUp.get() ? null : getTransformExecutor();
+        for (int i = 0; i < classes.size(); i += batchSize) {
+            final List<Class<?>> batch = classes.subList(i, Math.min(i + batchSize, classes.size()));
+            if (executor != null) {
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        retransformBatch(batch);
                     }
+                }));
+            } else {
+                retransformBatch(batch);
+            }
+        }
+        if (wait) {
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (ExecutionException e) {
+                    LOG.warn("Failed to transform classes due " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    private void retransformBatch(List<Class<?>> batch) {
+        try {
+            instrumentation.retransformClasses(batch.toArray(new Class[batch.size()]));
+        } catch (Throwable e) {
+            //one bad class fails the whole batch, so retry them one at a time
+            for (Class<?> c : batch) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                try {
+                    instrumentation.retransformClasses(new Class[]{c});
+                } catch (Throwable ex) {
+                    LOG.error("Could not transform " + c.getName(), ex);
                 }
             }
         }
-        if (configuration.isAsyncTransformation() && !blockingQueue.isEmpty()) {
-            startTransformThread();
+    }
+
+    private byte[] instrumentClass(String className, ClassInfo classInfo, byte[] original) {
+        BytecodeCache cache = bytecodeCache;
+        String key = null;
+        //ids are assigned per run, so byte code with ids baked in can only be reused in memory
+        boolean persistent = !configuration.isMethodIdTracing();
+        if (cache != null) {
+            key = cache.createKey(original, configurationKey);
+            BytecodeCache.Entry entry = cache.get(key, persistent);
+            if (entry != null) {
+                entry.applyTo(classInfo);
+                return entry.getTransformed();
+            }
+        }
+
+        ClassReader cr = new ClassReader(original);
+
+        ClassWriter cw = new ClassWriter(cr, ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
+
+        ApmClassVisitor visitor = new ApmClassVisitor(this, cw, classInfo);
+        cr.accept(visitor, ClassReader.SKIP_FRAMES);
+        byte[] buffer = cw.toByteArray();
+        if (!verifyClass(className, buffer)) {
+            classInfo.setCanTransform(false);
+            return null;
         }
+        if (cache != null) {
+            cache.put(key, new BytecodeCache.Entry(buffer, visitor.getMethods(), visitor.getTransformedMethods()), persistent);
+        }
+        return buffer;
+    }
+
+    private void updateConfigurationKey() {
+        configurationKey = configuration.getWhiteList() + "|" + configuration.getBlackList() + "|" + configuration.isMethodIdTracing();
     }
 
     private boolean isInstrumentClass(Class c) {
@@ -239,32 +319,28 @@ public class TraceStrategy implements Strategy, ClassFileTransformer {
         return true;
     }
 
-    private synchronized void startTransformThread() {
-        if (configuration.isAsyncTransformation() && transformThread == null) {
-            transformThread = new Thread(new Runnable() {
+    private synchronized ExecutorService getTransformExecutor() {
+        if (transformExecutor == null) {
+            final AtomicInteger count = new AtomicInteger();
+            transformExecutor = Executors.newFixedThreadPool(Math.max(1, configuration.getTransformThreads()), new ThreadFactory() {
                 @Override
-                public void run() {
-                    while (initialized.get() && !blockingQueue.isEmpty()) {
-                        try {
-                            Class<?> aClass = blockingQueue.take();
-                            if (aClass != null) {
-                                if (isInstrumentClass(aClass)) {
-                                    try {
-                                        instrumentation.retransformClasses(new Class[]{aClass});
-                                    } catch (Throwable e) {
-                                        LOG.error("Could not transform " + aClass.getName(), e);
-                                    }
-                                }
-                            }
-                        } catch (InterruptedException e) {
-                            shutDown();
-                        }
-                    }
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "Fabric8-ApmAgent-Transform-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
                 }
             });
-            transformThread.setDaemon(true);
-            transformThread.start();
         }
+        return transformExecutor;
+    }
+
+    private synchronized ExecutorService shutDownTransformExecutor() {
+        ExecutorService result = transformExecutor;
+        transformExecutor = null;
+        if (result != null) {
+            result.shutdown();
+        }
+        return result;
     }
 
     private boolean verifyClass(String className, byte[] transformed) {
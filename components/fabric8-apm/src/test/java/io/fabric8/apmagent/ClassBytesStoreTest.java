@@ -0,0 +1,119 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ClassBytesStoreTest {
+    private final Random random = new Random(42);
+
+    @Test
+    public void testPutAndGet() {
+        ClassBytesStore store = new ClassBytesStore(null);
+        byte[] data = "some class bytes, some class bytes, some class bytes".getBytes();
+        int slot = store.put(data);
+        assertArrayEquals(data, store.get(slot));
+        assertTrue(store.getLiveBytes() > 0);
+        store.close();
+    }
+
+    @Test
+    public void testFreedSlotsAreReused() {
+        ClassBytesStore store = new ClassBytesStore(null);
+        int slot = store.put(randomBytes(100));
+        store.free(slot);
+        assertEquals(0, store.getLiveBytes());
+        assertEquals(slot, store.put(randomBytes(100)));
+        store.close();
+    }
+
+    @Test
+    public void testCompactionKeepsLiveSlots() {
+        checkCompaction(new ClassBytesStore(null));
+    }
+
+    @Test
+    public void testCompactionOfSpillFile() {
+        checkCompaction(new ClassBytesStore(new File(System.getProperty("java.io.tmpdir"))));
+    }
+
+    @Test
+    public void testClassInfoMovesBytesBetweenStores() {
+        ClassBytesStore store1 = new ClassBytesStore(null);
+        ClassBytesStore store2 = new ClassBytesStore(null);
+        ClassInfo classInfo = new ClassInfo();
+        byte[] original = randomBytes(1000);
+        byte[] transformed = randomBytes(1200);
+        classInfo.setOriginal(original);
+        classInfo.setBytesStore(store1);
+        classInfo.setTransformed(transformed);
+        assertArrayEquals(original, classInfo.getOriginal());
+
+        classInfo.setBytesStore(store2);
+        assertEquals(0, store1.getLiveBytes());
+        assertArrayEquals(original, classInfo.getOriginal());
+        assertArrayEquals(transformed, classInfo.getTransformed());
+
+        classInfo.clearBytes();
+        assertEquals(0, store2.getLiveBytes());
+        assertNull(classInfo.getOriginal());
+        assertFalse(classInfo.hasTransformed());
+        store1.close();
+        store2.close();
+    }
+
+    private void checkCompaction(ClassBytesStore store) {
+        // random bytes don't compress, so 100 * 64k is more than a chunk
+        List<byte[]> data = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            byte[] bytes = randomBytes(64 * 1024);
+            data.add(bytes);
+            slots.add(store.put(bytes));
+        }
+        long live = store.getLiveBytes();
+        for (int i = 0; i < 100; i++) {
+            if (i % 10 != 0) {
+                store.free(slots.get(i));
+            }
+        }
+        assertTrue(store.getLiveBytes() < live / 5);
+        for (int i = 0; i < 100; i += 10) {
+            assertArrayEquals(data.get(i), store.get(slots.get(i)));
+        }
+        // the store keeps working after compacting
+        int slot = store.put(data.get(1));
+        assertArrayEquals(data.get(1), store.get(slot));
+        store.close();
+    }
+
+    private byte[] randomBytes(int size) {
+        byte[] answer = new byte[size];
+        random.nextBytes(answer);
+        return answer;
+    }
+}
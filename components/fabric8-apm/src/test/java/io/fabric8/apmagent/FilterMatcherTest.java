@@ -0,0 +1,156 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FilterMatcherTest {
+
+    @Test
+    public void testPrefixMatching() {
+        FilterMatcher matcher = new FilterMatcher(items("com.acme.service", "org.foo"), empty());
+        assertTrue(matcher.isWhiteListed("com.acme.service.OrderService"));
+        assertTrue(matcher.isWhiteListed("com/acme/service/OrderService"));
+        assertTrue(matcher.isWhiteListed("org.foo"));
+        assertTrue(matcher.isWhiteListed("org.foobar.Baz"));
+        assertFalse(matcher.isWhiteListed("com.acme.Main"));
+        assertFalse(matcher.isWhiteListed("org.fo"));
+        assertFalse(matcher.isWhiteListed("net.other.Thing"));
+    }
+
+    @Test
+    public void testSharedPrefixes() {
+        FilterMatcher matcher = new FilterMatcher(items("com.acme.a", "com.acme.b", "com.acme.bc"), empty());
+        assertTrue(matcher.isWhiteListed("com.acme.a.X"));
+        assertTrue(matcher.isWhiteListed("com.acme.b.X"));
+        assertTrue(matcher.isWhiteListed("com.acme.bc.X"));
+        assertFalse(matcher.isWhiteListed("com.acme.c.X"));
+    }
+
+    @Test
+    public void testRegexMatching() {
+        FilterMatcher matcher = new FilterMatcher(items("com\\.acme\\..*Service"), empty());
+        assertTrue(matcher.isWhiteListed("com.acme.OrderService"));
+        assertTrue(matcher.isWhiteListed("com/acme/OrderService"));
+        assertFalse(matcher.isWhiteListed("com.acme.OrderServiceImpl"));
+        assertFalse(matcher.isWhiteListed("org.acme.OrderService"));
+    }
+
+    @Test
+    public void testInvalidRegexIsTreatedLiterally() {
+        FilterMatcher matcher = new FilterMatcher(items("com.acme.[broken"), empty());
+        assertTrue(matcher.isWhiteListed("com.acme.[broken"));
+        assertFalse(matcher.isWhiteListed("com.acme.b"));
+    }
+
+    @Test
+    public void testMethodFilters() {
+        List<FilterItem> white = Arrays.asList(item("com.acme.A", "get.*"));
+        List<FilterItem> black = Arrays.asList(item("com.acme", null));
+        FilterMatcher matcher = new FilterMatcher(white, black);
+        assertTrue(matcher.isAudit("com.acme.A", "getName"));
+        assertFalse(matcher.isAudit("com.acme.A", "setName"));
+        assertFalse(matcher.isAudit("com.acme.B", "getName"));
+        assertTrue(matcher.isAudit("org.other.C", "run"));
+        assertTrue(matcher.isBlackListed("com.acme.B", "anything"));
+        assertFalse(matcher.isWhiteListed("com.acme.A", null));
+    }
+
+    @Test
+    public void testAuditUsesWhiteListBeforeBlackList() {
+        FilterMatcher matcher = new FilterMatcher(items("com.acme.keep"), items("com.acme"));
+        assertTrue(matcher.isAudit("com.acme.keep.Service"));
+        assertFalse(matcher.isAudit("com.acme.drop.Service"));
+        assertTrue(matcher.isAudit("org.other.Service"));
+        // cached results are the same
+        assertTrue(matcher.isAudit("com.acme.keep.Service"));
+        assertFalse(matcher.isAudit("com.acme.drop.Service"));
+    }
+
+    @Test
+    public void testSameResultsAsFilterItems() {
+        List<FilterItem> filters = new ArrayList<>();
+        filters.add(item("com.acme.service", null));
+        filters.add(item("com.acme.dao", "find.*"));
+        filters.add(item("org\\.foo\\..*Impl", null));
+        filters.add(item("org.foo.Bar", "run"));
+        filters.add(item("java.", ""));
+        FilterMatcher matcher = new FilterMatcher(filters, empty());
+        FilterMatcher blackMatcher = new FilterMatcher(empty(), filters);
+
+        String[] classNames = {"com.acme.service.A", "com/acme/dao/UserDao", "com.acme.Other", "org.foo.ServiceImpl",
+            "org.foo.Bar", "org.foo.Barn", "java.lang.String", "javax.Foo", "net.Baz"};
+        String[] methods = {null, "", "run", "findAll", "save"};
+        for (String className : classNames) {
+            assertEquals(className, matchesAny(filters, className), matcher.isWhiteListed(className));
+            for (String method : methods) {
+                for (boolean matchIfNoFilterMethod : new boolean[]{true, false}) {
+                    boolean expected = matchesAny(filters, className, method, matchIfNoFilterMethod);
+                    boolean actual = matchIfNoFilterMethod
+                        ? blackMatcher.isBlackListed(className, method)
+                        : matcher.isWhiteListed(className, method);
+                    assertEquals(className + "#" + method, expected, actual);
+                }
+            }
+        }
+    }
+
+    private static boolean matchesAny(List<FilterItem> filters, String className) {
+        for (FilterItem filter : filters) {
+            if (filter.matches(className)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matchesAny(List<FilterItem> filters, String className, String method, boolean matchIfNoFilterMethod) {
+        for (FilterItem filter : filters) {
+            if (filter.matches(className, method, matchIfNoFilterMethod)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<FilterItem> empty() {
+        return Collections.emptyList();
+    }
+
+    private static List<FilterItem> items(String... classNames) {
+        List<FilterItem> result = new ArrayList<>();
+        for (String className : classNames) {
+            result.add(item(className, null));
+        }
+        return result;
+    }
+
+    private static FilterItem item(String className, String methodName) {
+        FilterItem item = new FilterItem();
+        item.setClassName(className);
+        item.setMethodName(methodName);
+        return item;
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent.metrics;
+
+import io.fabric8.apmagent.ApmAgent;
+import io.fabric8.apmagent.ApmConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MethodIdTracingTest {
+    private ApmAgentContext context;
+
+    @Before
+    public void setUp() {
+        ApmConfiguration configuration = ApmAgent.INSTANCE.getConfiguration();
+        configuration.setUsePlatformMBeanServer(true);
+        context = new ApmAgentContext(ApmAgent.INSTANCE);
+        context.initialize();
+    }
+
+    @After
+    public void tearDown() {
+        context.shutDown();
+    }
+
+    @Test
+    public void testMethodIdsAreStable() {
+        assertEquals(-1, context.findMethodId("com.acme.Foo@run()V"));
+        int run = context.getMethodId("com.acme.Foo@run()V");
+        int stop = context.getMethodId("com.acme.Foo@stop()V");
+        assertNotEquals(run, stop);
+        assertEquals(run, context.getMethodId("com.acme.Foo@run()V"));
+        assertEquals(run, context.findMethodId("com.acme.Foo@run()V"));
+        assertEquals("com.acme.Foo@run()V", context.getMethodName(run));
+        assertEquals("com.acme.Foo@stop()V", context.getMethodName(stop));
+        assertNull(context.getMethodName(-1));
+        assertNull(context.getMethodName(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testManyMethodIds() {
+        int[] ids = new int[500];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = context.getMethodId("com.acme.Foo@m" + i + "()V");
+        }
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals("com.acme.Foo@m" + i + "()V", context.getMethodName(ids[i]));
+            context.enterMethod(ids[i]);
+        }
+        for (int i = ids.length - 1; i >= 0; i--) {
+            context.exitMethod(ids[i]);
+        }
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(1, getMethodMetrics("com.acme.Foo@m" + i + "()V").getCount());
+        }
+    }
+
+    @Test
+    public void testEnterAndExitById() throws Exception {
+        int outer = context.getMethodId("com.acme.Foo@outer()V");
+        int inner = context.getMethodId("com.acme.Foo@inner()V");
+
+        context.enterMethod(outer);
+        context.enterMethod(inner);
+        Thread.sleep(5);
+        context.exitMethod(inner);
+        context.enterMethod(inner);
+        context.exitMethod(inner);
+        context.exitMethod(outer);
+
+        MethodMetrics outerMetrics = getMethodMetrics("com.acme.Foo@outer()V");
+        MethodMetrics innerMetrics = getMethodMetrics("com.acme.Foo@inner()V");
+        assertEquals(1, outerMetrics.getCount());
+        assertEquals(2, innerMetrics.getCount());
+        assertTrue(outerMetrics.getLoad() >= innerMetrics.getLoad());
+        assertTrue(innerMetrics.getMax() >= 5);
+    }
+
+    @Test
+    public void testRecursiveCallsAreTimedSeparately() throws Exception {
+        int recursive = context.getMethodId("com.acme.Foo@recurse()V");
+
+        context.enterMethod(recursive);
+        Thread.sleep(20);
+        context.enterMethod(recursive);
+        context.exitMethod(recursive);
+        context.exitMethod(recursive);
+
+        MethodMetrics metrics = getMethodMetrics("com.acme.Foo@recurse()V");
+        assertEquals(2, metrics.getCount());
+        // the outer call includes the sleep, the inner one doesn't
+        assertTrue(metrics.getMax() >= 20);
+        assertTrue(metrics.getMin() < 20);
+    }
+
+    @Test
+    public void testIdAndNameTracingShareMethodMetrics() {
+        int id = context.getMethodId("com.acme.Foo@shared()V");
+        context.enterMethod(id);
+        context.exitMethod(id);
+        Thread thread = Thread.currentThread();
+        context.enterMethod(thread, "com.acme.Foo@shared()V", false);
+        context.exitMethod(thread, "com.acme.Foo@shared()V", false);
+
+        assertEquals(2, getMethodMetrics("com.acme.Foo@shared()V").getCount());
+    }
+
+    private MethodMetrics getMethodMetrics(String methodName) {
+        for (MethodMetrics methodMetrics : context.getMethodMetrics()) {
+            if (methodName.equals(methodMetrics.getName())) {
+                return methodMetrics;
+            }
+        }
+        fail("No metrics for " + methodName);
+        return null;
+    }
+}
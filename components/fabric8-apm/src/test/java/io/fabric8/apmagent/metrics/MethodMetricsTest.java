@@ -0,0 +1,112 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent.metrics;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MethodMetricsTest {
+
+    @Test
+    public void testTopMetricsKeepsTheHighestLoads() {
+        List<MethodMetrics> metrics = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            metrics.add(metrics("m" + i, i, 1000000L));
+        }
+        Collections.shuffle(metrics);
+
+        List<MethodMetrics> top = MethodMetrics.topMetrics(metrics, 5);
+        assertEquals(5, top.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals("m" + (100 - i), top.get(i).getName());
+        }
+    }
+
+    @Test
+    public void testSortedMetricsReturnsEverythingInOrder() {
+        List<MethodMetrics> metrics = new ArrayList<>();
+        metrics.add(metrics("low", 1, 1000000L));
+        metrics.add(metrics("high", 3, 1000000L));
+        metrics.add(metrics("middle", 2, 1000000L));
+        metrics.add(metrics("idle", 0, 0));
+
+        List<MethodMetrics> sorted = MethodMetrics.sortedMetrics(metrics);
+        assertEquals(4, sorted.size());
+        assertEquals("high", sorted.get(0).getName());
+        assertEquals("middle", sorted.get(1).getName());
+        assertEquals("low", sorted.get(2).getName());
+        assertEquals("idle", sorted.get(3).getName());
+    }
+
+    @Test
+    public void testPercentagesAreRelativeToTheTotalLoad() {
+        List<MethodMetrics> metrics = new ArrayList<>();
+        MethodMetrics half = metrics("half", 5, 1000000L);
+        MethodMetrics quarter = metrics("quarter", 1, 2500000L);
+        metrics.add(half);
+        metrics.add(quarter);
+        metrics.add(metrics("rest", 25, 100000L));
+
+        // only two are returned, but the percentages still use the load of all of them
+        List<MethodMetrics> top = MethodMetrics.topMetrics(metrics, 2);
+        assertEquals(2, top.size());
+        assertSame(half, top.get(0));
+        assertEquals(50, half.getPercentage());
+        assertEquals(25, top.get(1).getPercentage());
+    }
+
+    @Test
+    public void testEmptyAndZeroSize() {
+        List<MethodMetrics> metrics = new ArrayList<>();
+        assertTrue(MethodMetrics.topMetrics(metrics, 10).isEmpty());
+        metrics.add(metrics("idle", 0, 0));
+        assertTrue(MethodMetrics.topMetrics(metrics, 0).isEmpty());
+
+        List<MethodMetrics> top = MethodMetrics.topMetrics(metrics, 10);
+        assertEquals(1, top.size());
+        assertEquals(0, top.get(0).getPercentage());
+    }
+
+    @Test
+    public void testLoadIsOverTheRecentWindow() {
+        MethodMetrics startup = metrics("startup", 100, 1000000L);
+        startup.timer.decayIfNecessary(System.nanoTime() + 3 * StripedTimer.DECAY_INTERVAL);
+        MethodMetrics recent = metrics("recent", 20, 1000000L);
+
+        // startup was called more in total, but only an eighth of its load still counts
+        assertTrue(startup.getCount() > recent.getCount());
+        assertEquals(12.5, startup.getLoad(), 0.001);
+        List<MethodMetrics> top = MethodMetrics.topMetrics(Arrays.asList(startup, recent), 1);
+        assertSame(recent, top.get(0));
+        assertEquals(61, recent.getPercentage());
+    }
+
+    private static MethodMetrics metrics(String name, int calls, long nanos) {
+        MethodMetrics result = new MethodMetrics(name);
+        for (int i = 0; i < calls; i++) {
+            result.update(nanos);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent.metrics;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class PrometheusExporterTest {
+
+    @Test
+    public void testMethodMetricsAreWrittenInSeconds() throws Exception {
+        MethodMetrics methodMetrics = new MethodMetrics("com.acme.Foo@bar");
+        methodMetrics.update(TimeUnit.MILLISECONDS.toNanos(10));
+        methodMetrics.update(TimeUnit.MILLISECONDS.toNanos(30));
+
+        StringWriter writer = new StringWriter();
+        new PrometheusExporter(writer).writeMethodMetrics(Arrays.asList(methodMetrics));
+        String text = writer.toString();
+
+        assertTrue(text, text.startsWith("# HELP apm_method_duration_seconds "));
+        assertTrue(text, text.contains("# TYPE apm_method_duration_seconds summary\n"));
+        assertTrue(text, text.contains("# TYPE apm_method_load_percentage gauge\n"));
+        assertTrue(text, text.contains("# TYPE apm_method_rate gauge\n"));
+
+        Map<String, Double> samples = parseSamples(text);
+        assertEquals(2.0, samples.get("apm_method_duration_seconds_count{method=\"com.acme.Foo@bar\"}"), 0);
+        assertEquals(0.04, samples.get("apm_method_duration_seconds_sum{method=\"com.acme.Foo@bar\"}"), 0.002);
+        Double max = samples.get("apm_method_duration_seconds{method=\"com.acme.Foo@bar\",quantile=\"0.999\"}");
+        assertNotNull(text, max);
+        assertEquals(0.03, max, 0.002);
+    }
+
+    @Test
+    public void testLabelsAreEscaped() throws Exception {
+        MethodMetrics methodMetrics = new MethodMetrics("a\"b\\c");
+        methodMetrics.update(1000);
+
+        StringWriter writer = new StringWriter();
+        new PrometheusExporter(writer).writeMethodMetrics(Arrays.asList(methodMetrics));
+
+        assertTrue(writer.toString(), writer.toString().contains("apm_method_duration_seconds_count{method=\"a\\\"b\\\\c\"} 1.0\n"));
+    }
+
+    private static Map<String, Double> parseSamples(String text) {
+        Map<String, Double> answer = new HashMap<>();
+        for (String line : text.split("\n")) {
+            if (!line.startsWith("#")) {
+                int idx = line.lastIndexOf(' ');
+                answer.put(line.substring(0, idx), Double.parseDouble(line.substring(idx + 1)));
+            }
+        }
+        return answer;
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent.metrics;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SpanRecorderTest {
+    private InMemorySpanSink sink;
+    private SpanCollector collector;
+    private long time;
+
+    @Before
+    public void setUp() {
+        sink = new InMemorySpanSink(100);
+        collector = new SpanCollector(sink);
+        time = System.nanoTime();
+    }
+
+    @Test
+    public void testParentAndChildIds() {
+        SpanRecorder recorder = new SpanRecorder(collector, "main", 3);
+        recordTree(recorder);
+
+        List<Span> spans = flushedSpans();
+        assertEquals(3, spans.size());
+        Span grandChild = spans.get(0);
+        Span child = spans.get(1);
+        Span root = spans.get(2);
+        assertEquals("root", root.getMethodName());
+        assertEquals(0, root.getParentSpanId());
+        assertEquals(root.getSpanId(), child.getParentSpanId());
+        assertEquals(child.getSpanId(), grandChild.getParentSpanId());
+        assertEquals(root.getTraceId(), grandChild.getTraceId());
+        assertEquals(2, grandChild.getDepth());
+        assertEquals(100, root.getTotalTime());
+        assertEquals(50, root.getSelfTime());
+        assertEquals(30, child.getSelfTime());
+    }
+
+    @Test
+    public void testBufferIsOnlyHandedOffWhenFull() {
+        SpanRecorder recorder = new SpanRecorder(collector, "main", 4);
+        recordTree(recorder);
+        assertTrue(flushedSpans().isEmpty());
+
+        recordTree(recorder);
+        List<Span> spans = flushedSpans();
+        assertEquals(4, spans.size());
+        // the two trees have their own trace ids
+        assertTrue(!spans.get(0).getTraceId().equals(spans.get(3).getTraceId()));
+    }
+
+    @Test
+    public void testRootCompletingAfterTheFlushIntervalHandsOffTheBuffer() {
+        SpanRecorder recorder = new SpanRecorder(collector, "main", 100);
+        time += 2 * SpanRecorder.FLUSH_INTERVAL;
+        recordTree(recorder);
+        assertEquals(3, flushedSpans().size());
+    }
+
+    @Test
+    public void testContinueTraceOfCurrentTree() {
+        String traceId = "0af7651916cd43dd8448eb211c80319c";
+        SpanRecorder recorder = new SpanRecorder(collector, "main", 2);
+        assertNull(recorder.getTraceParent());
+
+        recorder.enter(time);
+        recorder.enter(time + 10);
+        recorder.exit("child", time + 10, 10);
+        assertTrue(recorder.continueTrace("00-" + traceId + "-b7ad6b7169203331-01"));
+        assertTrue(recorder.getTraceParent().startsWith("00-" + traceId + "-"));
+        recorder.exit("root", time, 30);
+
+        List<Span> spans = flushedSpans();
+        assertEquals(2, spans.size());
+        for (Span span : spans) {
+            assertEquals(traceId, span.getTraceId());
+        }
+        assertEquals(0xb7ad6b7169203331L, spans.get(1).getParentSpanId());
+    }
+
+    @Test
+    public void testInvalidTraceParent() {
+        SpanRecorder recorder = new SpanRecorder(collector, "main", 2);
+        assertTrue(!recorder.continueTrace("00-xyz-b7ad6b7169203331-01"));
+        assertTrue(!recorder.continueTrace(null));
+    }
+
+    private void recordTree(SpanRecorder recorder) {
+        recorder.enter(time);
+        recorder.enter(time + 10);
+        recorder.enter(time + 20);
+        recorder.exit("grandChild", time + 20, 20);
+        recorder.exit("child", time + 10, 50);
+        recorder.exit("root", time, 100);
+    }
+
+    private List<Span> flushedSpans() {
+        collector.flush();
+        List<Span> answer = sink.getSpans();
+        sink.clear();
+        return answer;
+    }
+}
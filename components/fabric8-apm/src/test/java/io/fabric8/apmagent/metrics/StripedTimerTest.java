@@ -0,0 +1,138 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent.metrics;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StripedTimerTest {
+
+    @Test
+    public void testSmallValuesHaveTheirOwnBuckets() {
+        for (int value = 0; value < StripedTimer.SUB_BUCKET_COUNT; value++) {
+            assertEquals(value, StripedTimer.bucketIndex(value));
+            assertEquals(value, StripedTimer.bucketLowerBound(value));
+            assertEquals(1, StripedTimer.bucketWidth(value));
+        }
+    }
+
+    @Test
+    public void testBucketsContainTheirValues() {
+        long[] values = {16, 17, 31, 32, 33, 1000, 1023, 1024, 123456789L, 1L << 39, (1L << 41) - 1};
+        for (long value : values) {
+            int index = StripedTimer.bucketIndex(value);
+            long lower = StripedTimer.bucketLowerBound(index);
+            long width = StripedTimer.bucketWidth(index);
+            assertTrue(value + " >= " + lower, value >= lower);
+            assertTrue(value + " < " + (lower + width), value < lower + width);
+            // the relative error is bounded by the number of sub buckets
+            assertTrue(width <= Math.max(1, lower / StripedTimer.SUB_BUCKET_COUNT));
+        }
+    }
+
+    @Test
+    public void testBucketsAreContiguous() {
+        for (int index = 0; index < StripedTimer.BUCKET_COUNT - 1; index++) {
+            assertEquals(StripedTimer.bucketLowerBound(index) + StripedTimer.bucketWidth(index), StripedTimer.bucketLowerBound(index + 1));
+        }
+    }
+
+    @Test
+    public void testHugeAndNegativeValues() {
+        assertEquals(StripedTimer.BUCKET_COUNT - 1, StripedTimer.bucketIndex(Long.MAX_VALUE));
+        assertEquals(0, StripedTimer.bucketIndex(-5));
+
+        StripedTimer timer = new StripedTimer(1);
+        timer.update(-1, TimeUnit.NANOSECONDS);
+        assertEquals(0, timer.getCount());
+    }
+
+    @Test
+    public void testSnapshot() {
+        StripedTimer timer = new StripedTimer(1);
+        for (int i = 1; i <= 100; i++) {
+            timer.update(i, TimeUnit.MILLISECONDS);
+        }
+        HistogramSnapshot snapshot = timer.getSnapshot();
+        assertEquals(100, snapshot.getCount());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(5050), timer.getSum());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(50), snapshot.getValue(0.5), TimeUnit.MILLISECONDS.toNanos(50) / 8);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(99), snapshot.getValue(0.99), TimeUnit.MILLISECONDS.toNanos(99) / 8);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), snapshot.getMax(), TimeUnit.MILLISECONDS.toNanos(100) / 8);
+    }
+
+    @Test
+    public void testStripesAreMerged() throws Exception {
+        final StripedTimer timer = new StripedTimer(4);
+        final int threads = 8;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 1000; j++) {
+                        timer.update(j, TimeUnit.MICROSECONDS);
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(threads * 1000, timer.getCount());
+        assertEquals(threads * 1000, timer.getSnapshot().getCount());
+    }
+
+    @Test
+    public void testSnapshotAndWindowSumDecay() {
+        StripedTimer timer = new StripedTimer(1);
+        for (int i = 0; i < 100; i++) {
+            timer.update(1, TimeUnit.MILLISECONDS);
+        }
+        long now = System.nanoTime();
+        timer.decayIfNecessary(now + StripedTimer.DECAY_INTERVAL);
+        assertEquals(50, timer.getSnapshot().getCount());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(50), timer.getWindowSum());
+        // the totals are not decayed
+        assertEquals(100, timer.getCount());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), timer.getSum());
+
+        timer.decayIfNecessary(now + 100 * StripedTimer.DECAY_INTERVAL);
+        assertEquals(0, timer.getSnapshot().getCount());
+        assertEquals(0, timer.getWindowSum());
+        assertEquals(100, timer.getCount());
+    }
+
+    @Test
+    public void testPercentilesFollowRecentCalls() {
+        StripedTimer timer = new StripedTimer(1);
+        for (int i = 0; i < 1000; i++) {
+            timer.update(1, TimeUnit.MILLISECONDS);
+        }
+        timer.decayIfNecessary(System.nanoTime() + 4 * StripedTimer.DECAY_INTERVAL);
+        for (int i = 0; i < 100; i++) {
+            timer.update(100, TimeUnit.MILLISECONDS);
+        }
+        // the 1000 fast calls now only weigh as much as 62, so the slow calls are the median
+        HistogramSnapshot snapshot = timer.getSnapshot();
+        assertEquals(162, snapshot.getCount());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), snapshot.getMedian(), TimeUnit.MILLISECONDS.toNanos(100) / 8);
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent.metrics;
+
+import io.fabric8.apmagent.ApmAgent;
+import io.fabric8.apmagent.ApmConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ThreadMetricsTest {
+    private ApmConfiguration configuration;
+    private ApmAgentContext context;
+    // the configuration is shared by every test in the JVM, so lets restore what we change
+    private boolean usePlatformMBeanServer;
+    private String threadGroupPattern;
+    private long threadMetricsIdleTime;
+
+    @Before
+    public void setUp() {
+        configuration = ApmAgent.INSTANCE.getConfiguration();
+        usePlatformMBeanServer = configuration.isUsePlatformMBeanServer();
+        threadGroupPattern = configuration.getThreadGroupPattern();
+        threadMetricsIdleTime = configuration.getThreadMetricsIdleTime();
+        configuration.setUsePlatformMBeanServer(true);
+        context = new ApmAgentContext(ApmAgent.INSTANCE);
+        context.initialize();
+    }
+
+    @After
+    public void tearDown() {
+        context.shutDown();
+        configuration.setUsePlatformMBeanServer(usePlatformMBeanServer);
+        configuration.setThreadGroupPattern(threadGroupPattern);
+        configuration.setThreadMetricsIdleTime(threadMetricsIdleTime);
+    }
+
+    @Test
+    public void testGroupedThreadsSampledFromAnotherThreadKeepTheirOwnStacks() {
+        configuration.setThreadGroupPattern("\\d+");
+        Thread worker1 = new Thread("worker-1");
+        Thread worker2 = new Thread("worker-2");
+
+        // the sampler records the calls of both threads from its own thread
+        context.enterMethod(worker1, "a", true);
+        context.enterMethod(worker2, "b", true);
+        context.exitMethod(worker1, "a", true);
+
+        assertEquals(1, getCount("a"));
+        assertEquals(0, getCount("b"));
+
+        context.exitMethod(worker2, "b", true);
+        assertEquals(1, getCount("b"));
+        assertEquals(1, context.getThreadMetrics().size());
+    }
+
+    @Test
+    public void testThreadInACallIsNotIdle() throws Exception {
+        configuration.setThreadMetricsIdleTime(1);
+        Thread thread = Thread.currentThread();
+
+        context.enterMethod(thread, "slow", true);
+        Thread.sleep(10);
+        context.doHouseKeeping();
+        assertFalse(context.getThreadMetrics().isEmpty());
+
+        context.exitMethod(thread, "slow", true);
+        assertEquals(1, getCount("slow"));
+
+        context.doHouseKeeping();
+        Thread.sleep(10);
+        context.doHouseKeeping();
+        assertTrue(context.getThreadMetrics().isEmpty());
+    }
+
+    private long getCount(String methodName) {
+        for (MethodMetrics methodMetrics : context.getMethodMetrics()) {
+            if (methodName.equals(methodMetrics.getName())) {
+                return methodMetrics.getCount();
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent.strategy.sampling;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+public class CollapsedStackTableTest {
+
+    @Test
+    public void testCountsDistinctStacks() {
+        FrameTable frames = new FrameTable();
+        int main = frames.intern("com.acme.Main", "main");
+        int foo = frames.intern("com.acme.Foo", "foo");
+        int bar = frames.intern("com.acme.Bar", "bar");
+
+        CollapsedStackTable table = new CollapsedStackTable(16, 8);
+        // top of the stack first
+        table.add(new int[]{foo, main}, 2);
+        table.add(new int[]{foo, main}, 2);
+        table.add(new int[]{bar, foo, main}, 3);
+        table.add(new int[]{main, 99, 99}, 1);
+
+        assertEquals(3, table.size());
+        assertEquals(0, table.getDropped());
+        assertEquals(lines("com.acme.Main.main;com.acme.Foo.foo 2",
+            "com.acme.Main.main;com.acme.Foo.foo;com.acme.Bar.bar 1",
+            "com.acme.Main.main 1"), lines(table.toCollapsedString(frames).split("\n")));
+    }
+
+    @Test
+    public void testDeepStacksAreTruncated() {
+        FrameTable frames = new FrameTable();
+        int a = frames.intern("A", "a");
+        int b = frames.intern("B", "b");
+        int c = frames.intern("C", "c");
+
+        CollapsedStackTable table = new CollapsedStackTable(16, 2);
+        table.add(new int[]{a, b, c}, 3);
+        table.add(new int[]{a, b}, 2);
+        assertEquals(1, table.size());
+        assertEquals("B.b;A.a 2\n", table.toCollapsedString(frames));
+    }
+
+    @Test
+    public void testNewStacksAreDroppedWhenFull() {
+        CollapsedStackTable table = new CollapsedStackTable(10, 4);
+        // rounded up to 16 slots, of which 12 may be used
+        for (int i = 0; i < 20; i++) {
+            table.add(new int[]{i}, 1);
+        }
+        assertEquals(12, table.size());
+        assertEquals(8, table.getDropped());
+
+        // stacks already in the table are still counted
+        table.add(new int[]{0}, 1);
+        assertEquals(12, table.size());
+        assertEquals(8, table.getDropped());
+
+        table.clear();
+        assertEquals(0, table.size());
+        assertEquals(0, table.getDropped());
+        assertEquals("", table.toCollapsedString(new FrameTable()));
+        table.add(new int[]{1}, 1);
+        assertEquals(1, table.size());
+    }
+
+    private static Set<String> lines(String... lines) {
+        return new HashSet<>(Arrays.asList(lines));
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent.strategy.sampling;
+
+import io.fabric8.apmagent.ApmAgent;
+import io.fabric8.apmagent.ApmConfiguration;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FrameTableTest {
+
+    @Test
+    public void testInternReturnsTheSameIdForTheSameFrame() {
+        FrameTable table = new FrameTable();
+        int a = table.intern("com.acme.Foo", "run");
+        int b = table.intern("com.acme.Foo", "stop");
+        int c = table.intern("com.acme.Bar", "run");
+        assertEquals(a, table.intern("com.acme.Foo", "run"));
+        assertNotEquals(a, b);
+        assertNotEquals(a, c);
+        assertNotEquals(b, c);
+        assertEquals(3, table.size());
+        assertEquals("com.acme.Foo.run", table.getName(a));
+        assertEquals("com.acme.Foo.stop", table.getName(b));
+        assertEquals("com.acme.Bar.run", table.getName(c));
+    }
+
+    @Test
+    public void testTableGrows() {
+        FrameTable table = new FrameTable();
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, table.intern("com.acme.C" + (i % 10), "m" + i));
+        }
+        assertEquals(1000, table.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, table.intern("com.acme.C" + (i % 10), "m" + i));
+            assertEquals("com.acme.C" + (i % 10) + ".m" + i, table.getName(i));
+        }
+    }
+
+    @Test
+    public void testAuditResultsAreCachedUntilReset() {
+        ApmConfiguration configuration = ApmAgent.INSTANCE.getConfiguration();
+        String blackList = configuration.getBlackList();
+        try {
+            FrameTable table = new FrameTable();
+            int jdk = table.intern("java.lang.Thread", "run");
+            int app = table.intern("com.acme.Foo", "run");
+            assertFalse(table.isAudit(jdk, configuration));
+            assertTrue(table.isAudit(app, configuration));
+
+            configuration.addToBlackList("com.acme");
+            assertTrue(table.isAudit(app, configuration));
+            table.resetAudit();
+            assertFalse(table.isAudit(app, configuration));
+            assertFalse(table.isAudit(jdk, configuration));
+        } finally {
+            configuration.setBlackList(blackList);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent.strategy.sampling;
+
+import io.fabric8.apmagent.ApmAgent;
+import io.fabric8.apmagent.metrics.ApmAgentContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SamplingStrategyTest {
+    private static final String SPIN_METHOD = SamplingStrategyTest.class.getName() + ".spin";
+
+    // only plain arithmetic in the loop, so the spinning method is the top of the stack
+    private volatile boolean spinning = true;
+    private SamplingStrategy strategy;
+    private Thread spinner;
+
+    @Before
+    public void setUp() throws Exception {
+        strategy = new SamplingStrategy(new ApmAgentContext(ApmAgent.INSTANCE));
+        spinner = new Thread("spinner") {
+            @Override
+            public void run() {
+                spin();
+            }
+        };
+        spinner.setDaemon(true);
+        spinner.start();
+        strategy.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        spinning = false;
+        spinner.join();
+        strategy.stop();
+        strategy.shutDown();
+    }
+
+    @Test
+    public void testMethodSampleCountsAreHighestFirst() throws Exception {
+        Map<String, Long> counts = waitForSamples();
+        assertTrue(counts.get(SPIN_METHOD) > 0);
+
+        List<Long> values = new ArrayList<>(counts.values());
+        for (int i = 1; i < values.size(); i++) {
+            assertTrue("counts should be highest first: " + counts, values.get(i - 1) >= values.get(i));
+        }
+    }
+
+    @Test
+    public void testResetSamples() throws Exception {
+        waitForSamples();
+        spinning = false;
+        spinner.join();
+
+        strategy.resetSamples();
+        assertFalse(strategy.getMethodSampleCounts().containsKey(SPIN_METHOD));
+        assertFalse(strategy.getCollapsedStacks().contains(SPIN_METHOD));
+    }
+
+    private Map<String, Long> waitForSamples() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        Map<String, Long> counts = strategy.getMethodSampleCounts();
+        while (!counts.containsKey(SPIN_METHOD) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            counts = strategy.getMethodSampleCounts();
+        }
+        assertTrue("the spinning thread was never sampled: " + counts, counts.containsKey(SPIN_METHOD));
+        return counts;
+    }
+
+    private void spin() {
+        long value = 0;
+        while (spinning) {
+            value = value * 31 + 7;
+        }
+        if (value == 42) {
+            spinning = true;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent.strategy.trace;
+
+import io.fabric8.apmagent.ClassInfo;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BytecodeCacheTest {
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("apm-bytecode-cache", "");
+        directory.delete();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testKeyDependsOnBytesAndConfiguration() {
+        BytecodeCache cache = new BytecodeCache(1024, null);
+        byte[] bytes = {1, 2, 3, 4};
+        String key = cache.createKey(bytes, "config");
+        assertEquals(40, key.length());
+        assertEquals(key, cache.createKey(new byte[]{1, 2, 3, 4}, "config"));
+        assertNotEquals(key, cache.createKey(new byte[]{1, 2, 3, 5}, "config"));
+        assertNotEquals(key, cache.createKey(bytes, "other"));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntriesAreEvicted() {
+        BytecodeCache cache = new BytecodeCache(250, null);
+        BytecodeCache.Entry a = entry(100);
+        BytecodeCache.Entry b = entry(100);
+        BytecodeCache.Entry c = entry(100);
+        cache.put("a", a, false);
+        cache.put("b", b, false);
+        assertSame(a, cache.get("a", false));
+        cache.put("c", c, false);
+
+        assertSame(a, cache.get("a", false));
+        assertNull(cache.get("b", false));
+        assertSame(c, cache.get("c", false));
+    }
+
+    @Test
+    public void testReplacingAnEntryKeepsTheSizeRight() {
+        BytecodeCache cache = new BytecodeCache(250, null);
+        cache.put("a", entry(100), false);
+        cache.put("a", entry(100), false);
+        cache.put("a", entry(100), false);
+        BytecodeCache.Entry b = entry(100);
+        cache.put("b", b, false);
+        assertNotNull(cache.get("a", false));
+        assertSame(b, cache.get("b", false));
+    }
+
+    @Test
+    public void testEntriesLargerThanTheBudgetAreNotKept() {
+        BytecodeCache cache = new BytecodeCache(50, null);
+        cache.put("a", entry(100), false);
+        assertNull(cache.get("a", false));
+    }
+
+    @Test
+    public void testPersistentEntriesSurviveANewCache() {
+        List<String[]> methods = new ArrayList<>();
+        methods.add(new String[]{"foo", "()V"});
+        methods.add(new String[]{"bar", "(I)I"});
+        List<String[]> transformedMethods = new ArrayList<>();
+        transformedMethods.add(new String[]{"foo", "()V"});
+        byte[] transformed = {9, 8, 7, 6, 5};
+
+        BytecodeCache cache = new BytecodeCache(1024, directory);
+        cache.put("key", new BytecodeCache.Entry(transformed, methods, transformedMethods), true);
+        cache.put("memoryOnly", entry(10), false);
+
+        BytecodeCache restarted = new BytecodeCache(1024, directory);
+        assertNull(restarted.get("memoryOnly", true));
+        assertNull(restarted.get("key", false));
+        BytecodeCache.Entry entry = restarted.get("key", true);
+        assertNotNull(entry);
+        assertArrayEquals(transformed, entry.getTransformed());
+        // now held in memory as well
+        assertSame(entry, restarted.get("key", false));
+
+        ClassInfo classInfo = new ClassInfo();
+        classInfo.setClassName("com.acme.Foo");
+        entry.applyTo(classInfo);
+        assertEquals(2, classInfo.getAllMethodNames().size());
+        assertTrue(classInfo.getAllMethodNames().containsAll(Arrays.asList("foo", "bar")));
+        assertEquals(1, classInfo.getAllTransformedMethodNames().size());
+        assertTrue(classInfo.getAllTransformedMethodNames().contains("foo"));
+    }
+
+    @Test
+    public void testCorruptFilesAreIgnored() throws IOException {
+        BytecodeCache cache = new BytecodeCache(1024, directory);
+        File file = new File(directory, "broken.apm");
+        assertTrue(file.createNewFile());
+        assertNull(cache.get("broken", true));
+        assertFalse(new File(directory, "missing.apm").exists());
+        assertNull(cache.get("missing", true));
+    }
+
+    private static BytecodeCache.Entry entry(int size) {
+        return new BytecodeCache.Entry(new byte[size], new ArrayList<String[]>(), new ArrayList<String[]>());
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.cdi;
+
+import io.fabric8.kubernetes.api.model.EndpointAddress;
+import io.fabric8.kubernetes.api.model.EndpointPort;
+import io.fabric8.kubernetes.api.model.EndpointSubset;
+import io.fabric8.kubernetes.api.model.Endpoints;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+import io.fabric8.utils.Strings;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the {@link Endpoints} of the injected services up to date by watching them, so that producing
+ * the endpoints of a service is a map lookup rather than a request to the API server.
+ * <p/>
+ * If the endpoints of a service cannot be watched the loaded endpoints are used until the time to live expires,
+ * after which they are loaded and watching is tried again.
+ */
+public class EndpointRegistry {
+
+    public static final long DEFAULT_TIME_TO_LIVE = 60 * 1000L;
+
+    private final KubernetesClient client;
+    private final long timeToLive;
+    private final ConcurrentMap<String, WatchedEndpoints> endpoints = new ConcurrentHashMap<>();
+
+    public EndpointRegistry(KubernetesClient client) {
+        this(client, DEFAULT_TIME_TO_LIVE);
+    }
+
+    public EndpointRegistry(KubernetesClient client, long timeToLive) {
+        this.client = client;
+        this.timeToLive = timeToLive;
+    }
+
+    public KubernetesClient getClient() {
+        return client;
+    }
+
+    /**
+     * Returns a read only snapshot of the current endpoint URLs of the service using the given protocol,
+     * optionally only for the named port
+     */
+    public List<String> getEndpoints(String serviceName, String serviceNamespace, String serviceProtocol, String servicePort) {
+        String namespace = Strings.isNotBlank(serviceNamespace) ? serviceNamespace : client.getNamespace();
+        String protocol = serviceProtocol != null ? serviceProtocol : Services.DEFAULT_PROTO;
+        return toEndpointUrls(getEndpoints(serviceName, namespace), protocol, servicePort);
+    }
+
+    /**
+     * Returns the current endpoints of the service, loading and watching them the first time
+     */
+    public Endpoints getEndpoints(String serviceName, String namespace) {
+        String key = namespace + "/" + serviceName;
+        WatchedEndpoints answer = endpoints.get(key);
+        if (answer == null || answer.isExpired()) {
+            answer = watchEndpoints(key, serviceName, namespace);
+        }
+        return answer.endpoints;
+    }
+
+    /**
+     * Stops watching all the endpoints
+     */
+    public void close() {
+        for (String key : endpoints.keySet()) {
+            WatchedEndpoints watched = endpoints.remove(key);
+            if (watched != null) {
+                watched.close();
+            }
+        }
+    }
+
+    protected synchronized WatchedEndpoints watchEndpoints(final String key, String serviceName, String namespace) {
+        WatchedEndpoints answer = endpoints.get(key);
+        if (answer != null) {
+            if (!answer.isExpired()) {
+                return answer;
+            }
+            answer.close();
+        }
+        final WatchedEndpoints watched = new WatchedEndpoints();
+        watched.endpoints = client.endpoints().inNamespace(namespace).withName(serviceName).get();
+        try {
+            watched.watch = client.endpoints().inNamespace(namespace).withName(serviceName).watch(new Watcher<Endpoints>() {
+                @Override
+                public void eventReceived(Action action, Endpoints resource) {
+                    switch (action) {
+                        case ADDED:
+                        case MODIFIED:
+                            watched.endpoints = resource;
+                            break;
+                        case DELETED:
+                            watched.endpoints = null;
+                            break;
+                        case ERROR:
+                            onWatchClosed(key, watched);
+                            break;
+                    }
+                }
+
+                @Override
+                public void onClose(KubernetesClientException cause) {
+                    onWatchClosed(key, watched);
+                }
+            });
+        } catch (Exception e) {
+            // we could not watch the endpoints so lets use the ones we loaded until they expire
+            watched.expires = System.currentTimeMillis() + timeToLive;
+        }
+        endpoints.put(key, watched);
+        return watched;
+    }
+
+    protected void onWatchClosed(String key, WatchedEndpoints watched) {
+        // the watch may close before it has been registered so lets make sure it is not used either way
+        watched.expires = 0;
+        if (endpoints.remove(key, watched)) {
+            // we may have missed changes so lets load them again on the next lookup
+            watched.close();
+        }
+    }
+
+    protected static List<String> toEndpointUrls(Endpoints endpoints, String protocol, String servicePort) {
+        List<String> answer = new ArrayList<>();
+        if (endpoints != null && endpoints.getSubsets() != null) {
+            for (EndpointSubset subset : endpoints.getSubsets()) {
+                for (EndpointAddress address : subset.getAddresses()) {
+                    for (EndpointPort endpointPort : subset.getPorts()) {
+                        if (servicePort == null || servicePort.equals(endpointPort.getName())) {
+                            answer.add(protocol + "://" + address.getIp() + ":" + endpointPort.getPort());
+                        }
+                    }
+                }
+            }
+        }
+        return Collections.unmodifiableList(answer);
+    }
+
+    protected static class WatchedEndpoints {
+        private volatile Endpoints endpoints;
+        private Watch watch;
+        private volatile long expires = Long.MAX_VALUE;
+
+        boolean isExpired() {
+            return expires <= System.currentTimeMillis();
+        }
+
+        void close() {
+            if (watch != null) {
+                try {
+                    watch.close();
+                } catch (Exception e) {
+                    // ignore
+                }
+            }
+        }
+    }
+}
@@ -15,47 +15,60 @@
  */
 package io.fabric8.cdi;
 
-import io.fabric8.kubernetes.api.KubernetesHelper;
-import io.fabric8.kubernetes.api.model.EndpointAddress;
-import io.fabric8.kubernetes.api.model.EndpointPort;
-import io.fabric8.kubernetes.api.model.EndpointSubset;
-import io.fabric8.kubernetes.api.model.Endpoints;
+import io.fabric8.kubernetes.api.ServiceUrlResolver;
 import io.fabric8.kubernetes.client.KubernetesClient;
 import io.fabric8.utils.Strings;
 import io.fabric8.utils.URLUtils;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public class Services {
 
     public static final String DEFAULT_PROTO = "tcp";
 
+    private static ServiceUrlResolver serviceUrlResolver;
+    private static EndpointRegistry endpointRegistry;
+
     public static String toServiceUrl(String serviceName, String serviceProtocol, String servicePortName, String servicePath, boolean serviceExternal) {
-        KubernetesClient client = KubernetesHolder.getClient();
-        String serviceNamespace = client.getNamespace();
+        ServiceUrlResolver resolver = getServiceUrlResolver();
+        String serviceNamespace = resolver.getClient().getNamespace();
         String actualProtocol = Strings.isNullOrBlank(serviceProtocol) ? DEFAULT_PROTO : serviceProtocol;
-        return URLUtils.pathJoin(KubernetesHelper.getServiceURL(client, serviceName, serviceNamespace, actualProtocol, servicePortName, serviceExternal), servicePath);
+        return URLUtils.pathJoin(resolver.getServiceURL(serviceName, serviceNamespace, actualProtocol, servicePortName, serviceExternal), servicePath);
     }
 
-    public static List<String> toServiceEndpointUrl(String serviceId, String serviceProtocol, String servicePort) {
-        List<String> endpoints = new ArrayList<>();
+    /**
+     * Returns the resolver which caches the service URLs for the current client
+     */
+    public synchronized static ServiceUrlResolver getServiceUrlResolver() {
         KubernetesClient client = KubernetesHolder.getClient();
-        String namespace = client.getNamespace();
-        String actualProtocol = serviceProtocol != null ? serviceProtocol : DEFAULT_PROTO;
-
-        Endpoints item = KubernetesHolder.getClient().endpoints().inNamespace(namespace).withName(serviceId).get();
-        if (item != null) {
-            for (EndpointSubset subset : item.getSubsets()) {
-                for (EndpointAddress address : subset.getAddresses()) {
-                    for (EndpointPort endpointPort : subset.getPorts()) {
-                        if (servicePort == null || servicePort.equals(endpointPort.getName())) {
-                            endpoints.add(actualProtocol + "://" + address.getIp() + ":" + endpointPort.getPort());
-                        }
-                    }
-                }
+        if (serviceUrlResolver == null || serviceUrlResolver.getClient() != client) {
+            if (serviceUrlResolver != null) {
+                serviceUrlResolver.close();
             }
+            serviceUrlResolver = new ServiceUrlResolver(client);
         }
-        return endpoints;
+        return serviceUrlResolver;
+    }
+
+    /**
+     * Returns the registry which watches the endpoints of the services for the current client
+     */
+    public synchronized static EndpointRegistry getEndpointRegistry() {
+        KubernetesClient client = KubernetesHolder.getClient();
+        if (endpointRegistry == null || endpointRegistry.getClient() != client) {
+            if (endpointRegistry != null) {
+                endpointRegistry.close();
+            }
+            endpointRegistry = new EndpointRegistry(client);
+        }
+        return endpointRegistry;
+    }
+
+    /**
+     * Returns a read only snapshot of the current endpoint URLs of the service
+     */
+    public static List<String> toServiceEndpointUrl(String serviceId, String serviceProtocol, String servicePort) {
+        EndpointRegistry registry = getEndpointRegistry();
+        return registry.getEndpoints(serviceId, registry.getClient().getNamespace(), serviceProtocol, servicePort);
     }
 }
@@ -0,0 +1,118 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.cdi;
+
+import io.fabric8.kubernetes.api.model.Endpoints;
+import io.fabric8.kubernetes.api.model.EndpointsBuilder;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+import io.fabric8.kubernetes.client.mock.KubernetesMockClient;
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.easymock.EasyMock;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class EndpointRegistryTest {
+
+    private final KubernetesMockClient mock = new KubernetesMockClient();
+    private final Capture<Watcher<Endpoints>> watcher = new Capture<>(CaptureType.LAST);
+
+    @Test
+    public void testEndpointsAreASnapshot() {
+        mock.endpoints().inNamespace("default").withName("service1").get().andReturn(createEndpoints("10.0.0.1", "10.0.0.2")).once();
+        mock.endpoints().inNamespace("default").withName("service1").watch(EasyMock.capture(watcher)).andReturn(createWatch()).once();
+        EndpointRegistry registry = new EndpointRegistry(mock.replay());
+
+        List<String> endpoints = registry.getEndpoints("service1", "default", "tcp", null);
+        Assert.assertEquals(Arrays.asList("tcp://10.0.0.1:8080", "tcp://10.0.0.2:8080"), endpoints);
+
+        watcher.getValue().eventReceived(Watcher.Action.MODIFIED, createEndpoints("10.0.0.1"));
+
+        // the endpoints already injected do not change but the next lookup sees the change without a request
+        Assert.assertEquals(Arrays.asList("tcp://10.0.0.1:8080", "tcp://10.0.0.2:8080"), endpoints);
+        Assert.assertEquals(Arrays.asList("tcp://10.0.0.1:8080"), registry.getEndpoints("service1", "default", "tcp", null));
+        registry.close();
+    }
+
+    @Test
+    public void testEndpointsAreLoadedAgainAfterTheWatchCloses() {
+        mock.endpoints().inNamespace("default").withName("service1").get().andReturn(createEndpoints("10.0.0.1")).once();
+        mock.endpoints().inNamespace("default").withName("service1").get().andReturn(createEndpoints("10.0.0.2")).once();
+        mock.endpoints().inNamespace("default").withName("service1").watch(EasyMock.capture(watcher)).andReturn(createWatch()).times(2);
+        EndpointRegistry registry = new EndpointRegistry(mock.replay());
+
+        Assert.assertEquals(Arrays.asList("tcp://10.0.0.1:8080"), registry.getEndpoints("service1", "default", "tcp", null));
+        watcher.getValue().onClose(new KubernetesClientException("closed"));
+        Assert.assertEquals(Arrays.asList("tcp://10.0.0.2:8080"), registry.getEndpoints("service1", "default", "tcp", null));
+        registry.close();
+    }
+
+    @Test
+    public void testLoadedEndpointsAreCachedIfTheWatchFails() {
+        mock.endpoints().inNamespace("default").withName("service1").get().andReturn(createEndpoints("10.0.0.1")).once();
+        mock.endpoints().inNamespace("default").withName("service1").watch(EasyMock.<Watcher<Endpoints>>anyObject()).andThrow(new KubernetesClientException("forbidden")).once();
+        EndpointRegistry registry = new EndpointRegistry(mock.replay(), 60 * 60 * 1000L);
+
+        Assert.assertEquals(Arrays.asList("tcp://10.0.0.1:8080"), registry.getEndpoints("service1", "default", "tcp", null));
+        Assert.assertEquals(Arrays.asList("tcp://10.0.0.1:8080"), registry.getEndpoints("service1", "default", "tcp", null));
+        registry.close();
+    }
+
+    @Test
+    public void testCachedEndpointsExpireIfTheWatchFails() {
+        mock.endpoints().inNamespace("default").withName("service1").get().andReturn(createEndpoints("10.0.0.1")).once();
+        mock.endpoints().inNamespace("default").withName("service1").get().andReturn(createEndpoints("10.0.0.2")).once();
+        mock.endpoints().inNamespace("default").withName("service1").watch(EasyMock.<Watcher<Endpoints>>anyObject()).andThrow(new KubernetesClientException("forbidden")).times(2);
+        EndpointRegistry registry = new EndpointRegistry(mock.replay(), 0);
+
+        Assert.assertEquals(Arrays.asList("tcp://10.0.0.1:8080"), registry.getEndpoints("service1", "default", "tcp", null));
+        Assert.assertEquals(Arrays.asList("tcp://10.0.0.2:8080"), registry.getEndpoints("service1", "default", "tcp", null));
+        registry.close();
+    }
+
+    private static Endpoints createEndpoints(String... ips) {
+        EndpointsBuilder builder = new EndpointsBuilder()
+                .withNewMetadata()
+                .withName("service1")
+                .withNamespace("default")
+                .endMetadata();
+        for (String ip : ips) {
+            builder = builder.addNewSubset()
+                    .addNewPort()
+                    .withName("port")
+                    .withPort(8080)
+                    .endPort()
+                    .addNewAddresse()
+                    .withIp(ip)
+                    .endAddresse()
+                    .endSubset();
+        }
+        return builder.build();
+    }
+
+    private static Watch createWatch() {
+        return new Watch() {
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
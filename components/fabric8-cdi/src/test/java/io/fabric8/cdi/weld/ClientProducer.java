@@ -19,13 +19,19 @@ import io.fabric8.kubernetes.api.model.Endpoints;
 import io.fabric8.kubernetes.api.model.EndpointsBuilder;
 import io.fabric8.kubernetes.api.model.EndpointsListBuilder;
 import io.fabric8.kubernetes.api.model.RootPathsBuilder;
+import io.fabric8.kubernetes.api.model.Service;
 import io.fabric8.kubernetes.api.model.ServiceBuilder;
 import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
 import io.fabric8.kubernetes.client.mock.KubernetesMockClient;
 import io.fabric8.kubernetes.client.utils.Utils;
+import io.fabric8.openshift.api.model.Route;
 import io.fabric8.openshift.api.model.RouteListBuilder;
 import io.fabric8.openshift.client.OpenShiftClient;
 import io.fabric8.openshift.client.mock.OpenShiftMockClient;
+import org.easymock.Capture;
+import org.easymock.CaptureType;
 import org.easymock.EasyMock;
 import org.easymock.IAnswer;
 
@@ -38,6 +44,37 @@ import java.net.URL;
 @Singleton
 public class ClientProducer {
 
+    // the client is held statically by KubernetesHolder so lets keep the watcher of whichever mock is used
+    private static final Capture<Watcher<Endpoints>> SERVICE2_ENDPOINTS_WATCHER = new Capture<>(CaptureType.LAST);
+
+    /**
+     * Returns the watcher of the endpoints of service2 so that tests can change them
+     */
+    public static Watcher<Endpoints> getService2EndpointsWatcher() {
+        return SERVICE2_ENDPOINTS_WATCHER.hasCaptured() ? SERVICE2_ENDPOINTS_WATCHER.getValue() : null;
+    }
+
+    /**
+     * Returns the endpoints which service2 changes to, with only the first of its two addresses
+     */
+    public static Endpoints createService2EndpointsB() {
+        return new EndpointsBuilder()
+                .withNewMetadata()
+                .withName("service2")
+                .withNamespace("default")
+                .endMetadata()
+                .addNewSubset()
+                .addNewPort()
+                .withName("port")
+                .withPort(8080)
+                .endPort()
+                .addNewAddresse()
+                .withIp("10.0.0.1")
+                .endAddresse()
+                .endSubset()
+                .build();
+    }
+
     @Produces
     @Alternative
     public KubernetesClient getKubernetesClient() throws MalformedURLException {
@@ -61,6 +98,9 @@ public class ClientProducer {
                         "/swaggerapi/")
                 .build()).anyTimes();
 
+        //The service URLs are cached and the services watched so that changes invalidate them
+        mock.services().inNamespace("default").watch(EasyMock.<Watcher<Service>>anyObject()).andReturn(createWatch()).anyTimes();
+
         mock.services().inNamespace("default").withName("service1").get().andReturn(
                 new ServiceBuilder()
                         .withNewMetadata().withName("service1").endMetadata()
@@ -183,22 +223,6 @@ public class ClientProducer {
                 .endSubset()
                 .build();
 
-        Endpoints service2EndpointsB = new EndpointsBuilder()
-                .withNewMetadata()
-                .withName("service2")
-                .withNamespace("default")
-                .endMetadata()
-                .addNewSubset()
-                .addNewPort()
-                .withName("port")
-                .withPort(8080)
-                .endPort()
-                .addNewAddresse()
-                .withIp("10.0.0.1")
-                .endAddresse()
-                .endSubset()
-                .build();
-
         Endpoints multiPortEndpoint = new EndpointsBuilder()
                 .withNewMetadata()
                     .withName("multiport")
@@ -221,16 +245,17 @@ public class ClientProducer {
 
         mock.endpoints().inNamespace("default").withName("service2").get().andReturn(
                 service2EndpointsA
-        ).once();
-
-        mock.endpoints().inNamespace("default").withName("service2").get().andReturn(
-                service2EndpointsB
         ).anyTimes();
 
         mock.endpoints().inNamespace("default").withName("multiport").get().andReturn(
                 multiPortEndpoint
         ).anyTimes();
 
+        //The endpoints are watched once loaded, the endpoints of service2 are changed through its watcher
+        mock.endpoints().inNamespace("default").withName("service1").watch(EasyMock.<Watcher<Endpoints>>anyObject()).andReturn(createWatch()).anyTimes();
+        mock.endpoints().inNamespace("default").withName("service2").watch(EasyMock.capture(SERVICE2_ENDPOINTS_WATCHER)).andReturn(createWatch()).anyTimes();
+        mock.endpoints().inNamespace("default").withName("multiport").watch(EasyMock.<Watcher<Endpoints>>anyObject()).andReturn(createWatch()).anyTimes();
+
         mock.adapt(OpenShiftClient.class).andReturn(getOpenShiftClient()).anyTimes();
 
         mock.getNamespace().andAnswer(new IAnswer<String>() {
@@ -250,7 +275,16 @@ public class ClientProducer {
 
         mock.routes().inNamespace("default").list().andReturn(new RouteListBuilder().build()).anyTimes();
         mock.routes().inNamespace("default").withName(EasyMock.<String>anyObject()).get().andReturn(null).anyTimes();
+        mock.routes().inNamespace("default").watch(EasyMock.<Watcher<Route>>anyObject()).andReturn(createWatch()).anyTimes();
 
         return mock.replay();
     }
+
+    private static Watch createWatch() {
+        return new Watch() {
+            @Override
+            public void close() {
+            }
+        };
+    }
 }
@@ -17,6 +17,8 @@ package io.fabric8.cdi.weld.internal.endpoints;
 
 import io.fabric8.cdi.Fabric8Extension;
 import io.fabric8.cdi.weld.ClientProducer;
+import io.fabric8.kubernetes.api.model.Endpoints;
+import io.fabric8.kubernetes.client.Watcher;
 import org.jboss.weld.environment.se.Weld;
 import org.jboss.weld.environment.se.WeldContainer;
 import org.junit.After;
@@ -88,6 +90,10 @@ public class EnpointsInternalTest {
         Assert.assertTrue(endpoints.contains("tcp://10.0.0.1:8080"));
         Assert.assertTrue(endpoints.contains("tcp://10.0.0.2:8080"));
 
+        Watcher<Endpoints> watcher = ClientProducer.getService2EndpointsWatcher();
+        Assert.assertNotNull("The endpoints of service2 should be watched", watcher);
+        watcher.eventReceived(Watcher.Action.MODIFIED, ClientProducer.createService2EndpointsB());
+
         endpoints = new ArrayList<>(obj.getService().get());
 
         Assert.assertTrue(endpoints.contains("tcp://10.0.0.1:8080"));
@@ -24,6 +24,7 @@ import io.fabric8.gerrit.CreateRepositoryDTO;
 import io.fabric8.kubernetes.api.Controller;
 import io.fabric8.kubernetes.api.KubernetesHelper;
 import io.fabric8.kubernetes.api.ServiceNames;
+import io.fabric8.kubernetes.api.ServiceUrlResolver;
 import io.fabric8.kubernetes.api.builds.Builds;
 import io.fabric8.kubernetes.api.model.LocalObjectReference;
 import io.fabric8.kubernetes.api.model.ObjectMeta;
@@ -178,6 +179,7 @@ public class DevOpsConnector {
 
     private GitRepoClient gitRepoClient;
     private KubernetesClient kubernetes;
+    private ServiceUrlResolver serviceUrlResolver;
     private String jenkinsJobUrl;
     private ProjectDTO taigaProject;
     private TaigaClient taiga;
@@ -420,7 +422,7 @@ public class DevOpsConnector {
         }
         for (String namespace : namespaceList) {
             try {
-                return KubernetesHelper.getServiceURL(getKubernetes(), serviceName, namespace, "http", serviceExternal);
+                return getServiceUrlResolver().getServiceURL(serviceName, namespace, "http", serviceExternal);
             } catch (Exception e) {
                 // ignore
             }
@@ -475,6 +477,18 @@ public class DevOpsConnector {
         return kubernetes;
     }
 
+    /**
+     * Returns the resolver which caches the service URLs looked up by this connector
+     */
+    public ServiceUrlResolver getServiceUrlResolver() {
+        KubernetesClient client = getKubernetes();
+        if (serviceUrlResolver == null || serviceUrlResolver.getClient() != client) {
+            // the connector runs for a short time so the cached URLs just expire rather than being watched
+            serviceUrlResolver = new ServiceUrlResolver(client, ServiceUrlResolver.DEFAULT_TIME_TO_LIVE, false);
+        }
+        return serviceUrlResolver;
+    }
+
     public GitRepoClient getGitRepoClient() {
         if (gitRepoClient == null) {
             gitRepoClient = GitRepoKubernetes.createGitRepoClient(getKubernetes(), username, password);
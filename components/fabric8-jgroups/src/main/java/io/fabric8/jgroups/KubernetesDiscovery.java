@@ -20,9 +20,13 @@ import io.fabric8.kubernetes.api.KubernetesHelper;
 import io.fabric8.kubernetes.api.model.Container;
 import io.fabric8.kubernetes.api.model.ContainerPort;
 import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodList;
 import io.fabric8.kubernetes.client.ConfigBuilder;
 import io.fabric8.kubernetes.client.DefaultKubernetesClient;
 import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
 import io.fabric8.utils.Filter;
 import io.fabric8.utils.Strings;
 import org.jgroups.Address;
@@ -30,12 +34,14 @@ import org.jgroups.Event;
 import org.jgroups.Message;
 import org.jgroups.PhysicalAddress;
 import org.jgroups.annotations.MBean;
+import org.jgroups.annotations.ManagedAttribute;
 import org.jgroups.annotations.Property;
 import org.jgroups.protocols.Discovery;
 import org.jgroups.protocols.PingData;
 import org.jgroups.protocols.PingHeader;
 import org.jgroups.stack.IpAddress;
 import org.jgroups.util.BoundedList;
+import org.jgroups.util.Buffer;
 import org.jgroups.util.Responses;
 import org.jgroups.util.Tuple;
 import org.slf4j.Logger;
@@ -43,6 +49,8 @@ import org.slf4j.LoggerFactory;
 
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 @MBean(description = "Kubernetes discovery protocol")
 public class KubernetesDiscovery extends Discovery {
@@ -52,10 +60,51 @@ public class KubernetesDiscovery extends Discovery {
     @Property
     private String address;
 
+    @Property(description = "Whether the addresses of the cluster members are kept up to date by watching the pods " +
+            "rather than listing the pods on every discovery round")
+    private boolean watch_pods = false;
+
+    @Property(description = "When watching the pods, whether discovery requests are only sent to the pods which are " +
+            "not members of the current view (other than on the initial discovery)")
+    private boolean send_to_new_members_only = false;
+
+    @Property(description = "Whether only ready pods are discovered rather than all running pods; do not enable this if " +
+            "the readiness of the pods depends on them having joined the cluster")
+    private boolean ready_pods_only = false;
+
+    @Property(description = "The number of discovery requests sent by each thread; when there are more cluster members " +
+            "the requests are sent in parallel batches. 0 sends all the requests from the calling thread")
+    private int discovery_batch_size = 0;
+
+    @ManagedAttribute(description = "The number of discovery rounds")
+    private final AtomicLong discovery_rounds = new AtomicLong();
+
+    @ManagedAttribute(description = "The time in milliseconds taken by the last discovery round to find and message the members")
+    private volatile long last_discovery_time;
+
+    @ManagedAttribute(description = "The total time in milliseconds taken by the discovery rounds")
+    private final AtomicLong total_discovery_time = new AtomicLong();
+
+    @ManagedAttribute(description = "The number of pod addresses found by the last discovery round")
+    private volatile int members_found;
+
+    @ManagedAttribute(description = "The number of discovery requests sent")
+    private final AtomicLong discovery_requests_sent = new AtomicLong();
+
+    @ManagedAttribute(description = "The number of times the pods were listed from the API server")
+    private final AtomicLong api_calls = new AtomicLong();
+
+    @ManagedAttribute(description = "The number of discovery rounds which used the watched pods rather than listing them")
+    private final AtomicLong api_calls_saved = new AtomicLong();
+
     private KubernetesClient client;
     private List<PhysicalAddress> kubernetesHosts = Collections.emptyList();
     private BoundedList<PhysicalAddress> dynamic_hosts = new BoundedList<>(2000);
-    
+
+    private final Map<String, List<PhysicalAddress>> podAddresses = new ConcurrentHashMap<>();
+    private Watch podWatch;
+    private volatile long podWatchGeneration;
+
     @Override
     public void init() throws Exception {
         super.init();
@@ -66,22 +115,25 @@ public class KubernetesDiscovery extends Discovery {
         }
     }
 
+    @Override
+    public void stop() {
+        super.stop();
+        closePodWatch();
+    }
+
     public Object down(Event evt) {
         Object retval = super.down(evt);
         switch (evt.getType()) {
             case Event.VIEW_CHANGE:
                 for (Address logical_addr : members) {
                     PhysicalAddress physical_addr = (PhysicalAddress) down_prot.down(new Event(Event.GET_PHYSICAL_ADDRESS, logical_addr));
-                    if (physical_addr != null && !kubernetesHosts.contains(physical_addr)) {
-                        dynamic_hosts.addIfAbsent(physical_addr);
-                    }
+                    addDynamicHost(physical_addr);
                 }
                 break;
             case Event.SET_PHYSICAL_ADDRESS:
                 Tuple<Address, PhysicalAddress> tuple = (Tuple<Address, PhysicalAddress>) evt.getArg();
                 PhysicalAddress physical_addr = tuple.getVal2();
-                if (physical_addr != null && !kubernetesHosts.contains(physical_addr))
-                    dynamic_hosts.addIfAbsent(physical_addr);
+                addDynamicHost(physical_addr);
                 break;
         }
         return retval;
@@ -89,23 +141,48 @@ public class KubernetesDiscovery extends Discovery {
 
     public void discoveryRequestReceived(Address sender, String logical_name, PhysicalAddress physical_addr) {
         super.discoveryRequestReceived(sender, logical_name, physical_addr);
-        if (physical_addr != null) {
-            if (!kubernetesHosts.contains(physical_addr))
-                dynamic_hosts.addIfAbsent(physical_addr);
+        addDynamicHost(physical_addr);
+    }
+
+    protected void addDynamicHost(PhysicalAddress physical_addr) {
+        if (physical_addr != null && !kubernetesHosts.contains(physical_addr)) {
+            dynamic_hosts.addIfAbsent(physical_addr);
         }
     }
 
+    /**
+     * Returns the addresses of the members which were not found from the pods, such as the senders of discovery requests
+     */
+    public List<PhysicalAddress> getDynamicHosts() {
+        return new ArrayList<>(dynamic_hosts);
+    }
+
     @Override
     public void findMembers(List<Address> members, boolean initial_discovery, Responses responses) {
-        kubernetesHosts = findKubernetesHosts();
-        
+        long start = System.currentTimeMillis();
+        kubernetesHosts = watch_pods ? watchKubernetesHosts() : findKubernetesHosts();
+        members_found = kubernetesHosts.size();
+
         PhysicalAddress physical_addr = (PhysicalAddress) down(new Event(Event.GET_PHYSICAL_ADDRESS, local_addr));
         // https://issues.jboss.org/browse/JGRP-1670
         PingData data = new PingData(local_addr, false, org.jgroups.util.UUID.get(local_addr), physical_addr);
-        PingHeader hdr = new PingHeader(PingHeader.GET_MBRS_REQ).clusterName(cluster_name);
+        final PingHeader hdr = new PingHeader(PingHeader.GET_MBRS_REQ).clusterName(cluster_name);
 
         Set<PhysicalAddress> cluster_members = new HashSet<>(kubernetesHosts);
-        cluster_members.addAll(dynamic_hosts);
+        if (watch_pods) {
+            // the watched pods are the cluster members so lets forget any dynamic hosts which have gone away
+            dynamic_hosts.retainAll(cluster_members);
+            if (send_to_new_members_only && !initial_discovery && this.members != null) {
+                for (Address member : this.members) {
+                    PhysicalAddress member_addr = (PhysicalAddress) down_prot.down(new Event(Event.GET_PHYSICAL_ADDRESS, member));
+                    if (member_addr != null) {
+                        cluster_members.remove(member_addr);
+                    }
+                }
+            }
+        } else {
+            cluster_members.addAll(dynamic_hosts);
+        }
 
         if (use_disk_cache) {
             // this only makes sense if we have PDC below us
@@ -116,36 +193,196 @@ public class KubernetesDiscovery extends Discovery {
                         cluster_members.add(phys_addr);
         }
 
-        for (final PhysicalAddress addr : cluster_members) {
-            if (physical_addr != null && addr.equals(physical_addr)) // no need to send the request to myself
-                continue;
+        if (physical_addr != null) // no need to send the request to myself
+            cluster_members.remove(physical_addr);
+
+        // the discovery request is the same for every member so lets only marshal it once
+        final Buffer buffer = marshal(data);
+        List<PhysicalAddress> targets = new ArrayList<>(cluster_members);
+        int batchSize = discovery_batch_size > 0 ? discovery_batch_size : targets.size();
+        for (int from = batchSize; from < targets.size(); from += batchSize) {
+            final List<PhysicalAddress> batch = targets.subList(from, Math.min(from + batchSize, targets.size()));
+            timer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    sendDiscoveryRequests(batch, hdr, buffer);
+                }
+            });
+        }
+        sendDiscoveryRequests(targets.subList(0, Math.min(batchSize, targets.size())), hdr, buffer);
+
+        long elapsed = System.currentTimeMillis() - start;
+        last_discovery_time = elapsed;
+        total_discovery_time.addAndGet(elapsed);
+        discovery_rounds.incrementAndGet();
+    }
+
+    protected void sendDiscoveryRequests(List<PhysicalAddress> addresses, PingHeader hdr, Buffer buffer) {
+        for (PhysicalAddress addr : addresses) {
             // the message needs to be DONT_BUNDLE, see explanation above
             final Message msg = new Message(addr).setFlag(Message.Flag.INTERNAL, Message.Flag.DONT_BUNDLE, Message.Flag.OOB)
-                    .putHeader(this.id, hdr).setBuffer(marshal(data));
+                    .putHeader(this.id, hdr).setBuffer(buffer);
             log.trace("%s: sending discovery request to %s", local_addr, msg.getDest());
             down_prot.down(new Event(Event.MSG, msg));
+            discovery_requests_sent.incrementAndGet();
         }
     }
 
+    @ManagedAttribute(description = "The average time in milliseconds taken by a discovery round")
+    public long getAverageDiscoveryTime() {
+        long rounds = discovery_rounds.get();
+        return rounds > 0 ? total_discovery_time.get() / rounds : 0;
+    }
+
 
     public List<PhysicalAddress> findKubernetesHosts() {
         List<PhysicalAddress> addresses = new ArrayList<>();
         Map<String, String> labels = Collections.singletonMap(Constants.JGROUPS_CLUSTER_NAME, cluster_name);
 
-        for (Pod pod : client.pods().withLabels(labels).list().getItems()) {
-            List<Container> containers = KubernetesHelper.getContainers(pod);
-            for (Container container : containers) {
-
-                for (ContainerPort port : container.getPorts()) {
-                    if (Constants.JGROUPS_TCP_PORT.equals(port.getName())) {
-                        try {
-                            String ip = pod.getStatus().getPodIP();
-                            if (ip != null) {
-                                addresses.add(new IpAddress(ip, port.getContainerPort()));
-                            }
-                        } catch (Exception ex) {
-                            LOGGER.warn("Failed to create Address {}.", pod.getStatus().getPodIP());
+        api_calls.incrementAndGet();
+        for (Pod pod : listPods(labels).getItems()) {
+            if (isMemberPod(pod)) {
+                addresses.addAll(getPodAddresses(pod));
+            }
+        }
+        return addresses;
+    }
+
+    /**
+     * Returns the addresses of the member pods of the cluster which are kept up to date by watching the pods;
+     * the pods are only listed the first time and whenever the watch has been closed
+     */
+    public synchronized List<PhysicalAddress> watchKubernetesHosts() {
+        if (podWatch == null) {
+            Map<String, String> labels = Collections.singletonMap(Constants.JGROUPS_CLUSTER_NAME, cluster_name);
+            api_calls.incrementAndGet();
+            PodList podList = listPods(labels);
+            podAddresses.clear();
+            for (Pod pod : podList.getItems()) {
+                updatePod(pod);
+            }
+            String resourceVersion = podList.getMetadata() != null ? podList.getMetadata().getResourceVersion() : null;
+            final long generation = ++podWatchGeneration;
+            try {
+                podWatch = watchPods(labels, resourceVersion, new Watcher<Pod>() {
+                    @Override
+                    public void eventReceived(Action action, Pod pod) {
+                        if (generation != podWatchGeneration) {
+                            return;
+                        }
+                        switch (action) {
+                            case ADDED:
+                            case MODIFIED:
+                                updatePod(pod);
+                                break;
+                            case DELETED:
+                                removePod(pod);
+                                break;
+                            case ERROR:
+                                LOGGER.warn("Error watching pods of cluster {} so they will be listed again", cluster_name);
+                                podWatchClosed(generation);
+                                break;
+                        }
+                    }
+
+                    @Override
+                    public void onClose(KubernetesClientException e) {
+                        if (e != null) {
+                            LOGGER.warn("Watch of pods of cluster {} closed due {}. The pods will be listed again.", cluster_name, e.getMessage());
                         }
+                        podWatchClosed(generation);
+                    }
+                });
+            } catch (Exception e) {
+                LOGGER.warn("Failed to watch pods of cluster " + cluster_name + " due " + e.getMessage() + ". The pods will be listed again on the next discovery.", e);
+            }
+        } else {
+            api_calls_saved.incrementAndGet();
+        }
+        List<PhysicalAddress> answer = new ArrayList<>();
+        for (List<PhysicalAddress> addresses : podAddresses.values()) {
+            answer.addAll(addresses);
+        }
+        return answer;
+    }
+
+    protected PodList listPods(Map<String, String> labels) {
+        return client.pods().withLabels(labels).list();
+    }
+
+    protected Watch watchPods(Map<String, String> labels, String resourceVersion, Watcher<Pod> watcher) {
+        return client.pods().withLabels(labels).watch(resourceVersion, watcher);
+    }
+
+    protected void updatePod(Pod pod) {
+        String name = KubernetesHelper.getName(pod);
+        if (name == null) {
+            return;
+        }
+        List<PhysicalAddress> addresses = isMemberPod(pod) ? getPodAddresses(pod) : Collections.<PhysicalAddress>emptyList();
+        if (addresses.isEmpty()) {
+            removePod(pod);
+        } else {
+            podAddresses.put(name, addresses);
+        }
+    }
+
+    protected void removePod(Pod pod) {
+        String name = KubernetesHelper.getName(pod);
+        if (name != null) {
+            List<PhysicalAddress> addresses = podAddresses.remove(name);
+            if (addresses != null) {
+                dynamic_hosts.removeAll(addresses);
+            }
+        }
+    }
+
+    private synchronized void podWatchClosed(long generation) {
+        if (generation == podWatchGeneration) {
+            closePodWatch();
+        }
+    }
+
+    private synchronized void closePodWatch() {
+        podWatchGeneration++;
+        if (podWatch != null) {
+            try {
+                podWatch.close();
+            } catch (Exception e) {
+                LOGGER.debug("Failed to close pod watch due " + e.getMessage() + ". This exception is ignored.", e);
+            }
+            podWatch = null;
+        }
+    }
+
+    /**
+     * Returns true if the pod is running, or ready if {@link #ready_pods_only} is enabled, and is not being deleted
+     */
+    protected boolean isMemberPod(Pod pod) {
+        if (pod.getMetadata() != null && pod.getMetadata().getDeletionTimestamp() != null) {
+            return false;
+        }
+        return ready_pods_only ? KubernetesHelper.isPodReady(pod) : KubernetesHelper.isPodRunning(pod);
+    }
+
+    private static List<PhysicalAddress> getPodAddresses(Pod pod) {
+        List<PhysicalAddress> addresses = new ArrayList<>();
+        String ip = pod.getStatus() != null ? pod.getStatus().getPodIP() : null;
+        if (Strings.isNullOrBlank(ip)) {
+            return addresses;
+        }
+        List<Container> containers = KubernetesHelper.getContainers(pod);
+        for (Container container : containers) {
+            List<ContainerPort> ports = container.getPorts();
+            if (ports == null) {
+                continue;
+            }
+            for (ContainerPort port : ports) {
+                if (Constants.JGROUPS_TCP_PORT.equals(port.getName())) {
+                    try {
+                        addresses.add(new IpAddress(ip, port.getContainerPort()));
+                    } catch (Exception ex) {
+                        LOGGER.warn("Failed to create Address {}.", ip);
                     }
                 }
             }
@@ -153,6 +390,28 @@ public class KubernetesDiscovery extends Discovery {
         return addresses;
     }
 
+    public boolean isReadyPodsOnly() {
+        return ready_pods_only;
+    }
+
+    /**
+     * Sets whether only ready pods are discovered rather than all running pods
+     */
+    public void setReadyPodsOnly(boolean ready_pods_only) {
+        this.ready_pods_only = ready_pods_only;
+    }
+
+    public boolean isWatchPods() {
+        return watch_pods;
+    }
+
+    /**
+     * Sets whether the pods are watched rather than listed on every discovery round
+     */
+    public void setWatchPods(boolean watch_pods) {
+        this.watch_pods = watch_pods;
+    }
+
     @Override
     public boolean isDynamic() {
         return true;
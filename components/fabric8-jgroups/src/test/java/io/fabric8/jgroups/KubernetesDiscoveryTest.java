@@ -0,0 +1,182 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.jgroups;
+
+import io.fabric8.kubernetes.api.model.ListMeta;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import io.fabric8.kubernetes.api.model.PodList;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+import org.jgroups.PhysicalAddress;
+import org.jgroups.stack.IpAddress;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class KubernetesDiscoveryTest {
+    private final List<Pod> pods = new ArrayList<>();
+    private Watcher<Pod> watcher;
+    private int listCount;
+    private KubernetesDiscovery discovery;
+
+    @Before
+    public void init() {
+        discovery = new KubernetesDiscovery() {
+            @Override
+            protected PodList listPods(Map<String, String> labels) {
+                listCount++;
+                PodList answer = new PodList();
+                ListMeta listMeta = new ListMeta();
+                listMeta.setResourceVersion("1");
+                answer.setMetadata(listMeta);
+                answer.setItems(new ArrayList<>(pods));
+                return answer;
+            }
+
+            @Override
+            protected Watch watchPods(Map<String, String> labels, String resourceVersion, Watcher<Pod> podWatcher) {
+                watcher = podWatcher;
+                return new Watch() {
+                    @Override
+                    public void close() {
+                    }
+                };
+            }
+        };
+    }
+
+    @Test
+    public void testRunningPodsAreDiscoveredByDefault() throws Exception {
+        pods.add(createPod("ready", "10.0.0.1", true));
+        pods.add(createPod("starting", "10.0.0.2", false));
+        pods.add(createPendingPod("pending"));
+        pods.add(deleting(createPod("stopping", "10.0.0.3", true)));
+
+        // pods which are running but not ready yet must be found, as their readiness may depend on joining the cluster
+        assertEquals(addresses("10.0.0.1", "10.0.0.2"), new HashSet<>(discovery.findKubernetesHosts()));
+    }
+
+    @Test
+    public void testReadyPodsOnly() throws Exception {
+        discovery.setReadyPodsOnly(true);
+        pods.add(createPod("ready", "10.0.0.1", true));
+        pods.add(createPod("starting", "10.0.0.2", false));
+        pods.add(deleting(createPod("stopping", "10.0.0.3", true)));
+
+        assertEquals(addresses("10.0.0.1"), new HashSet<>(discovery.findKubernetesHosts()));
+    }
+
+    @Test
+    public void testWatchedPodsFollowTheirReadiness() throws Exception {
+        discovery.setReadyPodsOnly(true);
+        pods.add(createPod("a", "10.0.0.1", true));
+        pods.add(createPod("b", "10.0.0.2", false));
+
+        assertEquals(addresses("10.0.0.1"), new HashSet<>(discovery.watchKubernetesHosts()));
+        assertNotNull(watcher);
+
+        watcher.eventReceived(Watcher.Action.MODIFIED, createPod("b", "10.0.0.2", true));
+        assertEquals(addresses("10.0.0.1", "10.0.0.2"), new HashSet<>(discovery.watchKubernetesHosts()));
+
+        watcher.eventReceived(Watcher.Action.MODIFIED, createPod("a", "10.0.0.1", false));
+        assertEquals(addresses("10.0.0.2"), new HashSet<>(discovery.watchKubernetesHosts()));
+
+        // the pods are only listed until the watch closes
+        assertEquals(1, listCount);
+        watcher.onClose(null);
+        discovery.watchKubernetesHosts();
+        assertEquals(2, listCount);
+    }
+
+    @Test
+    public void testDeletedPodsAreRemovedFromTheDynamicHosts() throws Exception {
+        pods.add(createPod("a", "10.0.0.1", true));
+        pods.add(createPod("b", "10.0.0.2", true));
+        discovery.watchKubernetesHosts();
+
+        discovery.addDynamicHost(new IpAddress("10.0.0.1", 7800));
+        discovery.addDynamicHost(new IpAddress("10.0.0.2", 7800));
+        assertEquals(2, discovery.getDynamicHosts().size());
+
+        watcher.eventReceived(Watcher.Action.DELETED, createPod("a", "10.0.0.1", true));
+        assertEquals(addresses("10.0.0.2"), new HashSet<>(discovery.watchKubernetesHosts()));
+        assertEquals(addresses("10.0.0.2"), new HashSet<>(discovery.getDynamicHosts()));
+
+        // a pod which starts terminating is removed before it is deleted
+        watcher.eventReceived(Watcher.Action.MODIFIED, deleting(createPod("b", "10.0.0.2", true)));
+        assertTrue(discovery.watchKubernetesHosts().isEmpty());
+        assertTrue(discovery.getDynamicHosts().isEmpty());
+    }
+
+    @Test
+    public void testUpdateAndRemovePod() throws Exception {
+        discovery.updatePod(createPod("a", "10.0.0.1", true));
+        discovery.addDynamicHost(new IpAddress("10.0.0.1", 7800));
+
+        discovery.removePod(createPod("a", "10.0.0.1", true));
+        assertTrue(discovery.getDynamicHosts().isEmpty());
+        assertTrue(discovery.isMemberPod(createPod("b", "10.0.0.2", false)));
+        discovery.setReadyPodsOnly(true);
+        assertFalse(discovery.isMemberPod(createPod("b", "10.0.0.2", false)));
+    }
+
+    protected static HashSet<PhysicalAddress> addresses(String... ips) throws Exception {
+        HashSet<PhysicalAddress> answer = new HashSet<>();
+        for (String ip : Arrays.asList(ips)) {
+            answer.add(new IpAddress(ip, 7800));
+        }
+        return answer;
+    }
+
+    protected static Pod createPod(String name, String ip, boolean ready) {
+        return new PodBuilder()
+                .withNewMetadata().withName(name).endMetadata()
+                .withNewSpec()
+                    .addNewContainer()
+                        .withName("jgroups")
+                        .addNewPort().withName(Constants.JGROUPS_TCP_PORT).withContainerPort(7800).endPort()
+                    .endContainer()
+                .endSpec()
+                .withNewStatus()
+                    .withPhase("Running")
+                    .withPodIP(ip)
+                    .addNewCondition().withType("Ready").withStatus(ready ? "True" : "False").endCondition()
+                .endStatus()
+                .build();
+    }
+
+    protected static Pod createPendingPod(String name) {
+        Pod pod = createPod(name, null, false);
+        pod.getStatus().setPhase("Pending");
+        return pod;
+    }
+
+    protected static Pod deleting(Pod pod) {
+        pod.getMetadata().setDeletionTimestamp("2015-11-01T00:00:00Z");
+        return pod;
+    }
+}
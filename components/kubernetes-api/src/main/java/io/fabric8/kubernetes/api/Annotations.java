@@ -38,6 +38,10 @@ public class Annotations {
         public static final String PREFIX = "fabric8.io/project-";
     }
 
+    public static class Apply {
+        public static final String CONFIG_HASH = "fabric8.io/config-hash";
+    }
+
     public static class Tests {
         public static final String SESSION_ID = "fabric8.io/test-session-id";
         public static final String TEST_CASE_STATUS = "fabric8.io/test-status-";
@@ -0,0 +1,120 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.api;
+
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.Namespace;
+import io.fabric8.kubernetes.api.model.PersistentVolumeClaim;
+import io.fabric8.kubernetes.api.model.Secret;
+import io.fabric8.kubernetes.api.model.Service;
+import io.fabric8.kubernetes.api.model.ServiceAccount;
+import io.fabric8.openshift.api.model.BuildConfig;
+import io.fabric8.openshift.api.model.ImageStream;
+import io.fabric8.openshift.api.model.OAuthClient;
+import io.fabric8.openshift.api.model.Route;
+import io.fabric8.openshift.api.model.Template;
+import io.fabric8.utils.Strings;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Groups the entities to apply by the namespace they are applied to and then into tiers, where each entity only depends on the entities
+ * in the earlier tiers of its namespace:
+ * <ol>
+ * <li>Namespaces</li>
+ * <li>ServiceAccounts, Secrets, PersistentVolumeClaims, ImageStreams, OAuthClients and Templates</li>
+ * <li>Services</li>
+ * <li>ReplicationControllers, DeploymentConfigs, DaemonSets, Pods, BuildConfigs and anything else</li>
+ * <li>Routes</li>
+ * </ol>
+ * So secrets are created before the replication controllers which mount them, and services before the pods
+ * which use their environment variables - while the entities within a tier can be applied concurrently.
+ */
+public class ApplyGraph {
+    public static final int TIER_COUNT = 5;
+
+    private final Map<String, List<List<HasMetadata>>> namespaces = new LinkedHashMap<>();
+
+    public ApplyGraph(List<? extends HasMetadata> entities, String defaultNamespace) {
+        for (HasMetadata entity : entities) {
+            String namespace = null;
+            if (entity instanceof Namespace) {
+                namespace = KubernetesHelper.getName(entity);
+            }
+            if (Strings.isNullOrBlank(namespace)) {
+                namespace = getApplyNamespace(entity, defaultNamespace);
+            }
+            List<List<HasMetadata>> tiers = namespaces.get(namespace);
+            if (tiers == null) {
+                tiers = new ArrayList<>(TIER_COUNT);
+                for (int i = 0; i < TIER_COUNT; i++) {
+                    tiers.add(new ArrayList<HasMetadata>());
+                }
+                namespaces.put(namespace, tiers);
+            }
+            tiers.get(getTier(entity)).add(entity);
+        }
+    }
+
+    /**
+     * Returns the namespace the {@link Controller} applies the entity to: Secrets, Routes and BuildConfigs are applied
+     * to their own namespace if they have one, everything else to the namespace of the controller
+     */
+    public static String getApplyNamespace(HasMetadata entity, String defaultNamespace) {
+        if (entity instanceof Secret || entity instanceof Route || entity instanceof BuildConfig) {
+            String namespace = KubernetesHelper.getNamespace(entity);
+            if (Strings.isNotBlank(namespace)) {
+                return namespace;
+            }
+        }
+        return defaultNamespace;
+    }
+
+    /**
+     * Returns the tier of the entity, entities are only applied once all the entities of the earlier tiers in their namespace
+     * have been applied
+     */
+    public static int getTier(Object entity) {
+        if (entity instanceof Namespace) {
+            return 0;
+        } else if (entity instanceof ServiceAccount || entity instanceof Secret || entity instanceof PersistentVolumeClaim
+                || entity instanceof ImageStream || entity instanceof OAuthClient || entity instanceof Template) {
+            return 1;
+        } else if (entity instanceof Service) {
+            return 2;
+        } else if (entity instanceof Route) {
+            return 4;
+        } else {
+            return 3;
+        }
+    }
+
+    public Set<String> getNamespaces() {
+        return namespaces.keySet();
+    }
+
+    /**
+     * Returns the entities of the tier in the namespace in the order they were given
+     */
+    public List<HasMetadata> getEntities(String namespace, int tier) {
+        List<List<HasMetadata>> tiers = namespaces.get(namespace);
+        return tiers != null ? tiers.get(tier) : new ArrayList<HasMetadata>();
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.api;
+
+/**
+ * The outcome of applying a single entity
+ */
+public class ApplyResult {
+    private final String kind;
+    private final String namespace;
+    private final String name;
+    private final long elapsedMillis;
+    private final Exception error;
+
+    public ApplyResult(String kind, String namespace, String name, long elapsedMillis, Exception error) {
+        this.kind = kind;
+        this.namespace = namespace;
+        this.name = name;
+        this.elapsedMillis = elapsedMillis;
+        this.error = error;
+    }
+
+    public String getKind() {
+        return kind;
+    }
+
+    public String getNamespace() {
+        return namespace;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * Returns the error applying the entity or null if it was applied
+     */
+    public Exception getError() {
+        return error;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    @Override
+    public String toString() {
+        return "ApplyResult{" + kind + " " + namespace + "/" + name + " " + (isSuccess() ? "applied" : "failed: " + error) + " in " + elapsedMillis + " ms}";
+    }
+}
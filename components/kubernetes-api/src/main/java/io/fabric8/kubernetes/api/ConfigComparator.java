@@ -0,0 +1,303 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.api;
+
+import io.fabric8.kubernetes.api.model.ObjectMeta;
+import io.fabric8.utils.Objects;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Compares the user configuration of 2 object trees for {@link UserConfigurationCompare}.
+ * <p/>
+ * The property accessors of each DTO class are looked up once and kept as method handles. Collections are
+ * compared as multisets by bucketing the items of one side by a hash of their configuration, which is consistent
+ * with {@link #configEqual(Object, Object)} and memoized for the lifetime of the comparator, so large lists of
+ * containers, env vars or volumes don't need to be compared pairwise.
+ */
+class ConfigComparator {
+    private static final transient Logger LOG = LoggerFactory.getLogger(UserConfigurationCompare.class);
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final ConcurrentMap<Class<?>, PropertyAccessor[]> accessorCache = new ConcurrentHashMap<>();
+
+    private final Set<String> ignoredProperties;
+    private final Map<Object, Integer> hashes = new IdentityHashMap<>();
+
+    ConfigComparator(Set<String> ignoredProperties) {
+        this.ignoredProperties = ignoredProperties;
+    }
+
+    public boolean configEqual(Object entity1, Object entity2) {
+        if (entity1 == entity2) {
+            return true;
+        } else if (entity1 == null || entity2 == null) {
+            return false;
+        } else if (entity1 instanceof Map) {
+            return configEqualMap((Map) entity1, UserConfigurationCompare.castTo(Map.class, entity2));
+        } else if (entity2 instanceof Map) {
+            return configEqualMap((Map) entity1, UserConfigurationCompare.castTo(Map.class, entity2));
+        } else if (entity2 instanceof ObjectMeta) {
+            return configEqualObjectMeta((ObjectMeta) entity1, UserConfigurationCompare.castTo(ObjectMeta.class, entity2));
+        } else if (entity1 instanceof Collection && entity2 instanceof Collection) {
+            return collectionsEqual((Collection) entity1, (Collection) entity2);
+        } else {
+            Class<?> aClass = UserConfigurationCompare.getCommonDenominator(entity1.getClass(), entity2.getClass());
+            if (aClass != null) {
+                Object castEntity2 = UserConfigurationCompare.castTo(aClass, entity2);
+                if (castEntity2 == null) {
+                    return false;
+                } else if (isDTO(aClass)) {
+                    return configEqualKubernetesDTO(entity1, entity2, aClass);
+                }
+            }
+            return Objects.equal(entity1, entity2);
+        }
+    }
+
+    /**
+     * Compares the collections as multisets; each item on the left must match a different item on the right
+     */
+    public boolean collectionsEqual(Collection<?> left, Collection<?> right) {
+        if (left.size() != right.size()) {
+            return false;
+        }
+        Map<Integer, List<Object>> buckets = new HashMap<>();
+        for (Object item : right) {
+            Integer hash = configHash(item);
+            List<Object> bucket = buckets.get(hash);
+            if (bucket == null) {
+                bucket = new ArrayList<>(1);
+                buckets.put(hash, bucket);
+            }
+            bucket.add(item);
+        }
+        for (Object item : left) {
+            List<Object> bucket = buckets.get(configHash(item));
+            if (bucket == null || !removeMatch(item, bucket)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean removeMatch(Object item, List<Object> bucket) {
+        for (int i = 0, size = bucket.size(); i < size; i++) {
+            if (configEqual(item, bucket.get(i))) {
+                bucket.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean configEqualKubernetesDTO(Object entity1, Object entity2, Class<?> clazz) {
+        PropertyAccessor[] accessors = getAccessors(clazz);
+        if (accessors == null) {
+            return false;
+        }
+        try {
+            for (PropertyAccessor accessor : accessors) {
+                if (!configEqual(accessor.get(entity1), accessor.get(entity2))) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    public boolean configEqualObjectMeta(ObjectMeta entity1, ObjectMeta entity2) {
+        if (entity1 == entity2) {
+            return true;
+        } else if (entity1 == null || entity2 == null) {
+            return false;
+        }
+        // TODO should we ignore annotations?
+        return Objects.equal(entity1.getName(), entity2.getName()) &&
+                Objects.equal(entity1.getNamespace(), entity2.getNamespace()) &&
+                configEqualMap(entity1.getLabels(), entity2.getLabels()) &&
+                configEqualMap(entity1.getAnnotations(), entity2.getAnnotations());
+    }
+
+    public boolean configEqualMap(Map entity1, Map entity2) {
+        if (entity1 == entity2) {
+            return true;
+        } else if (entity1 == null || entity2 == null) {
+            return false;
+        }
+        int size1 = UserConfigurationCompare.size(entity1);
+        int size2 = UserConfigurationCompare.size(entity2);
+        if (size1 != size2) {
+            return false;
+        }
+        Set<Map.Entry> entries = entity1.entrySet();
+        for (Map.Entry entry : entries) {
+            Object key = entry.getKey();
+            Object value = entry.getValue();
+            Object value2 = entity2.get(key);
+            if (!configEqual(value, value2)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a hash of the user configuration, so that any 2 objects which are {@link #configEqual(Object, Object)}
+     * have the same hash
+     */
+    public int configHash(Object entity) {
+        if (entity == null) {
+            return 0;
+        }
+        if (!(entity instanceof Map || entity instanceof Collection || entity instanceof ObjectMeta || isDTO(entity.getClass()))) {
+            return entity.hashCode();
+        }
+        Integer answer = hashes.get(entity);
+        if (answer == null) {
+            answer = calculateConfigHash(entity);
+            hashes.put(entity, answer);
+        }
+        return answer;
+    }
+
+    private int calculateConfigHash(Object entity) {
+        if (entity instanceof Map) {
+            return mapHash((Map) entity);
+        } else if (entity instanceof ObjectMeta) {
+            ObjectMeta metadata = (ObjectMeta) entity;
+            int answer = Objects.hashCode(metadata.getName());
+            answer = 31 * answer + Objects.hashCode(metadata.getNamespace());
+            answer = 31 * answer + mapHash(metadata.getLabels());
+            return 31 * answer + mapHash(metadata.getAnnotations());
+        } else if (entity instanceof Collection) {
+            // the order of the items doesn't matter
+            int answer = 0;
+            for (Object item : (Collection) entity) {
+                answer += configHash(item);
+            }
+            return answer;
+        } else {
+            PropertyAccessor[] accessors = getAccessors(entity.getClass());
+            if (accessors == null) {
+                return 0;
+            }
+            int answer = 1;
+            for (PropertyAccessor accessor : accessors) {
+                try {
+                    answer = 31 * answer + configHash(accessor.get(entity));
+                } catch (Throwable e) {
+                    // a property which can't be read doesn't take part in the hash
+                }
+            }
+            return answer;
+        }
+    }
+
+    private int mapHash(Map map) {
+        int answer = 0;
+        if (map != null) {
+            Set<Map.Entry> entries = map.entrySet();
+            for (Map.Entry entry : entries) {
+                // a missing entry compares equal to a null value
+                if (entry.getValue() != null) {
+                    answer += Objects.hashCode(entry.getKey()) ^ configHash(entry.getValue());
+                }
+            }
+        }
+        return answer;
+    }
+
+    private static boolean isDTO(Class<?> aClass) {
+        Package aPackage = aClass.getPackage();
+        return aPackage != null && aPackage.getName().startsWith("io.fabric8");
+    }
+
+    /**
+     * Returns the accessors of the properties of the class which are compared or null if the class cannot be introspected
+     */
+    private PropertyAccessor[] getAccessors(Class<?> clazz) {
+        PropertyAccessor[] answer = accessorCache.get(clazz);
+        if (answer == null) {
+            BeanInfo beanInfo;
+            try {
+                beanInfo = Introspector.getBeanInfo(clazz);
+            } catch (IntrospectionException e) {
+                LOG.warn("Failed to get beanInfo for " + clazz.getName() + ". " + e, e);
+                return null;
+            }
+            List<PropertyAccessor> list = new ArrayList<>();
+            for (PropertyDescriptor propertyDescriptor : beanInfo.getPropertyDescriptors()) {
+                String name = propertyDescriptor.getName();
+                Method readMethod = propertyDescriptor.getReadMethod();
+                if (readMethod != null && !ignoredProperties.contains(name)) {
+                    list.add(new PropertyAccessor(readMethod));
+                }
+            }
+            answer = list.toArray(new PropertyAccessor[list.size()]);
+            accessorCache.putIfAbsent(clazz, answer);
+        }
+        return answer;
+    }
+
+    private static class PropertyAccessor {
+        private final Method readMethod;
+        private final MethodHandle handle;
+
+        PropertyAccessor(Method readMethod) {
+            this.readMethod = readMethod;
+            MethodHandle methodHandle = null;
+            try {
+                readMethod.setAccessible(true);
+                methodHandle = MethodHandles.lookup().unreflect(readMethod).asType(GETTER_TYPE);
+            } catch (Exception e) {
+                LOG.debug("Falling back to reflection for " + readMethod + ". " + e, e);
+            }
+            this.handle = methodHandle;
+        }
+
+        Object get(Object entity) throws Throwable {
+            try {
+                if (handle != null) {
+                    return (Object) handle.invokeExact(entity);
+                }
+                return readMethod.invoke(entity);
+            } catch (Throwable e) {
+                LOG.warn("Failed to invoke method " + readMethod + " on " + entity + ". " + e, e);
+                throw e;
+            }
+        }
+    }
+}
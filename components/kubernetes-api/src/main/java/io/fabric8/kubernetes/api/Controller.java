@@ -20,29 +20,42 @@ import io.fabric8.kubernetes.api.extensions.Templates;
 import io.fabric8.kubernetes.api.model.HasMetadata;
 import io.fabric8.kubernetes.api.model.KubernetesList;
 import io.fabric8.kubernetes.api.model.Namespace;
+import io.fabric8.kubernetes.api.model.NamespaceList;
 import io.fabric8.kubernetes.api.model.ObjectMeta;
 import io.fabric8.kubernetes.api.model.PersistentVolumeClaim;
+import io.fabric8.kubernetes.api.model.PersistentVolumeClaimList;
 import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodList;
 import io.fabric8.kubernetes.api.model.PodSpec;
 import io.fabric8.kubernetes.api.model.PodTemplateSpec;
 import io.fabric8.kubernetes.api.model.ReplicationController;
+import io.fabric8.kubernetes.api.model.ReplicationControllerList;
 import io.fabric8.kubernetes.api.model.ReplicationControllerSpec;
 import io.fabric8.kubernetes.api.model.Secret;
+import io.fabric8.kubernetes.api.model.SecretList;
 import io.fabric8.kubernetes.api.model.SecretVolumeSource;
 import io.fabric8.kubernetes.api.model.Service;
 import io.fabric8.kubernetes.api.model.ServiceAccount;
+import io.fabric8.kubernetes.api.model.ServiceAccountList;
+import io.fabric8.kubernetes.api.model.ServiceList;
 import io.fabric8.kubernetes.api.model.Volume;
 import io.fabric8.kubernetes.api.model.extensions.DaemonSet;
+import io.fabric8.kubernetes.api.model.extensions.DaemonSetList;
 import io.fabric8.kubernetes.client.DefaultKubernetesClient;
 import io.fabric8.kubernetes.client.KubernetesClient;
 import io.fabric8.kubernetes.client.dsl.ClientOperation;
 import io.fabric8.kubernetes.client.dsl.ClientResource;
+import io.fabric8.kubernetes.client.dsl.Gettable;
 import io.fabric8.openshift.api.model.BuildConfig;
+import io.fabric8.openshift.api.model.BuildConfigList;
 import io.fabric8.openshift.api.model.DeploymentConfig;
 import io.fabric8.openshift.api.model.ImageStream;
 import io.fabric8.openshift.api.model.OAuthClient;
+import io.fabric8.openshift.api.model.OAuthClientList;
 import io.fabric8.openshift.api.model.Route;
+import io.fabric8.openshift.api.model.RouteList;
 import io.fabric8.openshift.api.model.Template;
+import io.fabric8.openshift.api.model.TemplateList;
 import io.fabric8.openshift.client.OpenShiftClient;
 import io.fabric8.utils.Files;
 import io.fabric8.utils.IOHelpers;
@@ -58,8 +71,21 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static io.fabric8.kubernetes.api.KubernetesHelper.getKind;
 import static io.fabric8.kubernetes.api.KubernetesHelper.getName;
@@ -75,6 +101,11 @@ import static io.fabric8.kubernetes.api.KubernetesHelper.toItemList;
 public class Controller {
     private static final transient Logger LOG = LoggerFactory.getLogger(Controller.class);
 
+    /**
+     * The maximum number of entities which are parsed ahead of being applied by {@link #applyStream(ManifestReader, String)}
+     */
+    public static final int STREAM_BUFFER_SIZE = 64;
+
     private final KubernetesClient kubernetesClient;
 
     private boolean throwExceptionOnError = true;
@@ -93,6 +124,10 @@ public class Controller {
     private String namesapce = KubernetesHelper.defaultNamespace();
     private boolean requireSecretsCreatedBeforeReplicationControllers;
     private boolean rollingUpgradePreserveScale = true;
+    private int applyParallelism = 1;
+    private boolean prefetchLiveState;
+    private final ThreadLocal<LiveStateSnapshot> liveStateSnapshot = new ThreadLocal<>();
+    private boolean configHashAnnotations;
 
     public Controller() {
         this(new DefaultKubernetesClient());
@@ -134,10 +169,13 @@ public class Controller {
 
     /**
      * Applies the given JSON to the underlying REST APIs in a single operation without needing to explicitly parse first.
+     * <p/>
+     * The entities are applied as they are read from the file; see {@link #applyStream(ManifestReader, String)}
      */
     public String applyJson(File json) throws Exception {
-        Object dto = loadJson(json);
-        apply(dto, "REST call");
+        try (ManifestReader reader = ManifestReader.forJson(new FileInputStream(json))) {
+            applyStream(reader, "REST call");
+        }
         return "";
     }
 
@@ -153,11 +191,13 @@ public class Controller {
 
     /**
      * Applies the given YAML to the underlying REST APIs in a single operation without needing to explicitly parse first.
+     * <p/>
+     * The entities are applied as they are read from the file; see {@link #applyStream(ManifestReader, String)}
      */
     public String applyYaml(File yaml) throws Exception {
-        String json = convertYamlToJson(yaml);
-        Object dto = loadJson(json);
-        apply(dto, "REST call");
+        try (ManifestReader reader = ManifestReader.forYaml(new FileInputStream(yaml))) {
+            applyStream(reader, "REST call");
+        }
         return "";
     }
 
@@ -170,25 +210,95 @@ public class Controller {
         return jsonObject.toString();
     }
 
-    private String convertYamlToJson(File yamlFile) throws FileNotFoundException {
-        Yaml yaml = new Yaml();
-        FileInputStream fstream = new FileInputStream(yamlFile);
-
-        Map<String, Object> map = (Map<String, Object>) yaml.load(fstream);
-        JSONObject jsonObject = new JSONObject(map);
-
-        return jsonObject.toString();
-    }
-
     /**
      * Applies the given JSON to the underlying REST APIs in a single operation without needing to explicitly parse first.
+     * <p/>
+     * The entities are applied as they are read from the stream; see {@link #applyStream(ManifestReader, String)}
      */
     public String applyJson(InputStream json) throws Exception {
-        Object dto = loadJson(json);
-        apply(dto, "REST call");
+        try (ManifestReader reader = ManifestReader.forJson(json)) {
+            applyStream(reader, "REST call");
+        }
         return "";
     }
 
+    /**
+     * Applies the entities of the reader.
+     * <p/>
+     * If the entities are applied one at a time they are parsed on a separate thread and applied as soon as they are
+     * read, with at most {@link #STREAM_BUFFER_SIZE} parsed entities waiting to be applied; the parser thread has
+     * stopped using the reader by the time this method returns, so the caller can close it. Otherwise all the entities
+     * are read first as applying them in parallel or prefetching the live state needs all of the entities.
+     */
+    public List<ApplyResult> applyStream(final ManifestReader reader, String sourceName) throws Exception {
+        if (applyParallelism > 1 || prefetchLiveState) {
+            List<HasMetadata> entities = new ArrayList<>();
+            HasMetadata entity;
+            while ((entity = reader.next()) != null) {
+                entities.add(entity);
+            }
+            return applyEntities(entities, sourceName);
+        }
+        final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(STREAM_BUFFER_SIZE);
+        final Object endOfStream = new Object();
+        Thread parserThread = new Thread("fabric8-apply-reader") {
+            @Override
+            public void run() {
+                try {
+                    try {
+                        HasMetadata entity;
+                        while ((entity = reader.next()) != null) {
+                            queue.put(entity);
+                        }
+                        queue.put(endOfStream);
+                    } catch (IOException | RuntimeException e) {
+                        queue.put(e);
+                    } catch (Error e) {
+                        queue.put(new IOException("Failed to read entities: " + e, e));
+                        throw e;
+                    }
+                } catch (InterruptedException e) {
+                    // the entities are no longer being applied
+                }
+            }
+        };
+        parserThread.setDaemon(true);
+        parserThread.start();
+        List<ApplyResult> answer = new ArrayList<>();
+        try {
+            while (true) {
+                Object value = queue.take();
+                if (value == endOfStream) {
+                    return answer;
+                } else if (value instanceof Exception) {
+                    throw (Exception) value;
+                }
+                HasMetadata entity = (HasMetadata) value;
+                ApplyResult result = applyEntityWithResult(entity, sourceName, getNamespace());
+                answer.add(result);
+                if (!result.isSuccess()) {
+                    throw result.getError();
+                }
+            }
+        } finally {
+            parserThread.interrupt();
+            // the caller closes the reader once we return and the parser is not thread safe,
+            // so lets wait until the parser thread has stopped using it
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    parserThread.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
     /**
      * Applies the given DTOs onto the Kubernetes master
      */
@@ -255,13 +365,13 @@ public class Controller {
                 LOG.debug("Only processing Services right now so ignoring OAuthClient: " + id);
                 return;
             }
-            OAuthClient old = openShiftClient.oAuthClients().withName(id).get();
+            OAuthClient old = getLiveEntity(OAuthClient.class, null, id, openShiftClient.oAuthClients().withName(id));
             if (isRunning(old)) {
                 if (isIgnoreRunningOAuthClients()) {
                     LOG.info("Not updating the OAuthClient which are shared across namespaces as its already running");
                     return;
                 }
-                if (UserConfigurationCompare.configEqual(entity, old)) {
+                if (isConfigEqual(entity, old, openShiftClient.oAuthClients().withName(id))) {
                     LOG.info("OAuthClient has not changed so not doing anything");
                 } else {
                     if (isRecreateMode()) {
@@ -271,6 +381,7 @@ public class Controller {
                         try {
                             Object answer = openShiftClient.oAuthClients().withName(id).replace(entity);
                             LOG.info("Updated OAuthClient result: " + answer);
+                            updateLiveState(entity, null, answer);
                         } catch (Exception e) {
                             onApplyError("Failed to update OAuthClient from " + sourceName + ". " + e + ". " + entity, e);
                         }
@@ -288,8 +399,10 @@ public class Controller {
 
     protected void doCreateOAuthClient(OAuthClient entity, String sourceName) {
         Object result = null;
+        stampConfigHash(entity);
         try {
             result = kubernetesClient.adapt(OpenShiftClient.class).oAuthClients().create(entity);
+            updateLiveState(entity, null, result);
         } catch (Exception e) {
             onApplyError("Failed to create OAuthClient from " + sourceName + ". " + e + ". " + entity, e);
         }
@@ -312,9 +425,9 @@ public class Controller {
             String namespace = getNamespace();
             String id = getName(entity);
             Objects.notNull(id, "No name for " + entity + " " + sourceName);
-            Template old = openShiftClient.templates().inNamespace(namespace).withName(id).get();
+            Template old = getLiveEntity(Template.class, namespace, id, openShiftClient.templates().inNamespace(namespace).withName(id));
             if (isRunning(old)) {
-                if (UserConfigurationCompare.configEqual(entity, old)) {
+                if (isConfigEqual(entity, old, openShiftClient.templates().inNamespace(namespace).withName(id))) {
                     LOG.info("Template has not changed so not doing anything");
                 } else {
                     boolean recreateMode = isRecreateMode();
@@ -328,6 +441,7 @@ public class Controller {
                         try {
                             Object answer = openShiftClient.templates().inNamespace(namespace).withName(id).replace(entity);
                             LOG.info("Updated Template: " + answer);
+                            updateLiveState(entity, namespace, answer);
                         } catch (Exception e) {
                             onApplyError("Failed to update Template from " + sourceName + ". " + e + ". " + entity, e);
                         }
@@ -345,9 +459,11 @@ public class Controller {
 
     protected void doCreateTemplate(Template entity, String namespace, String sourceName) {
         LOG.info("Creating a Template from " + sourceName + " namespace " + namespace + " name " + getName(entity));
+        stampConfigHash(entity);
         try {
             Object answer = kubernetesClient.adapt(OpenShiftClient.class).templates().inNamespace(namespace).create(entity);
             logGeneratedEntity("Created Template: ", namespace, entity, answer);
+            updateLiveState(entity, namespace, answer);
         } catch (Exception e) {
             onApplyError("Failed to Template entity from " + sourceName + ". " + e + ". " + entity, e);
         }
@@ -364,9 +480,9 @@ public class Controller {
             LOG.debug("Only processing Services right now so ignoring ServiceAccount: " + id);
             return;
         }
-        ServiceAccount old = kubernetesClient.serviceAccounts().inNamespace(namespace).withName(id).get();
+        ServiceAccount old = getLiveEntity(ServiceAccount.class, namespace, id, kubernetesClient.serviceAccounts().inNamespace(namespace).withName(id));
         if (isRunning(old)) {
-            if (UserConfigurationCompare.configEqual(serviceAccount, old)) {
+            if (isConfigEqual(serviceAccount, old, kubernetesClient.serviceAccounts().inNamespace(namespace).withName(id))) {
                 LOG.info("ServiceAccount has not changed so not doing anything");
             } else {
                 if (isRecreateMode()) {
@@ -377,6 +493,7 @@ public class Controller {
                     try {
                         Object answer = kubernetesClient.serviceAccounts().inNamespace(namespace).withName(id).replace(serviceAccount);
                         logGeneratedEntity("Updated ServiceAccount: ", namespace, serviceAccount, answer);
+                        updateLiveState(serviceAccount, namespace, answer);
                     } catch (Exception e) {
                         onApplyError("Failed to update ServiceAccount from " + sourceName + ". " + e + ". " + serviceAccount, e);
                     }
@@ -394,6 +511,7 @@ public class Controller {
     protected void doCreateServiceAccount(ServiceAccount serviceAccount, String namespace, String sourceName) {
         LOG.info("Creating a ServiceAccount from " + sourceName + " namespace " + namespace + " name " + getName
                 (serviceAccount));
+        stampConfigHash(serviceAccount);
         try {
             Object answer;
             if (Strings.isNotBlank(namespace)) {
@@ -402,6 +520,7 @@ public class Controller {
                 answer = kubernetesClient.serviceAccounts().inNamespace(getNamespace()).create(serviceAccount);
             }
             logGeneratedEntity("Created ServiceAccount: ", namespace, serviceAccount, answer);
+            updateLiveState(serviceAccount, namespace, answer);
         } catch (Exception e) {
             onApplyError("Failed to create ServiceAccount from " + sourceName + ". " + e + ". " + serviceAccount, e);
         }
@@ -416,11 +535,11 @@ public class Controller {
             return;
         }
 
-        Secret old = kubernetesClient.secrets().inNamespace(namespace).withName(id).get();
+        Secret old = getLiveEntity(Secret.class, namespace, id, kubernetesClient.secrets().inNamespace(namespace).withName(id));
         // check if the secret already exists or not
         if (isRunning(old)) {
             // if the secret already exists and is the same, then do nothing
-            if (UserConfigurationCompare.configEqual(secret, old)) {
+            if (isConfigEqual(secret, old, kubernetesClient.secrets().inNamespace(namespace).withName(id))) {
                 LOG.info("Secret has not changed so not doing anything");
                 return;
             } else {
@@ -432,6 +551,7 @@ public class Controller {
                     try {
                         Object answer = kubernetesClient.secrets().inNamespace(namespace).withName(id).replace(secret);
                         logGeneratedEntity("Updated Secret:", namespace, secret, answer);
+                        updateLiveState(secret, namespace, answer);
                     } catch (Exception e) {
                         onApplyError("Failed to update secret from " + sourceName + ". " + e + ". " + secret, e);
                     }
@@ -449,6 +569,7 @@ public class Controller {
 
     protected void doCreateSecret(Secret secret, String namespace, String sourceName) {
         LOG.info("Creating a Secret from " + sourceName + " namespace " + namespace + " name " + getName(secret));
+        stampConfigHash(secret);
         try {
             Object answer;
             if (Strings.isNotBlank(namespace)) {
@@ -457,6 +578,7 @@ public class Controller {
                 answer = kubernetesClient.secrets().inNamespace(getNamespace()).create(secret);
             }
             logGeneratedEntity("Created Secret: ", namespace, secret, answer);
+            updateLiveState(secret, namespace, answer);
         } catch (Exception e) {
             onApplyError("Failed to create Secret from " + sourceName + ". " + e + ". " + secret, e);
         }
@@ -587,11 +709,13 @@ public class Controller {
         if (Strings.isNullOrBlank(namespace)) {
             namespace = getNamespace();
         }
-        Route route = openShiftClient.routes().inNamespace(namespace).withName(id).get();
+        Route route = getLiveEntity(Route.class, namespace, id, openShiftClient.routes().inNamespace(namespace).withName(id));
         if (route == null) {
             try {
                 LOG.info("Creating Route " + namespace + ":" + id + " " + KubernetesHelper.summaryText(entity));
-                openShiftClient.routes().inNamespace(namespace).create(entity);
+                stampConfigHash(entity);
+                Object answer = openShiftClient.routes().inNamespace(namespace).create(entity);
+                updateLiveState(entity, namespace, answer);
             } catch (Exception e) {
                 onApplyError("Failed to create Route from " + sourceName + ". " + e + ". " + entity, e);
             }
@@ -608,9 +732,9 @@ public class Controller {
             namespace = getNamespace();
         }
         applyNamespace(namespace);
-        BuildConfig old = openShiftClient.buildConfigs().inNamespace(namespace).withName(id).get();
+        BuildConfig old = getLiveEntity(BuildConfig.class, namespace, id, openShiftClient.buildConfigs().inNamespace(namespace).withName(id));
         if (isRunning(old)) {
-            if (UserConfigurationCompare.configEqual(entity, old)) {
+            if (isConfigEqual(entity, old, openShiftClient.buildConfigs().inNamespace(namespace).withName(id))) {
                 LOG.info("BuildConfig has not changed so not doing anything");
             } else {
                 if (isRecreateMode()) {
@@ -626,6 +750,7 @@ public class Controller {
                         metadata.setResourceVersion(resourceVersion);
                         Object answer = openShiftClient.buildConfigs().inNamespace(namespace).withName(id).replace(entity);
                         logGeneratedEntity("Updated BuildConfig: ", namespace, entity, answer);
+                        updateLiveState(entity, namespace, answer);
                     } catch (Exception e) {
                         onApplyError("Failed to update BuildConfig from " + sourceName + ". " + e + ". " + entity, e);
                     }
@@ -641,8 +766,10 @@ public class Controller {
     }
 
     public void doCreateBuildConfig(BuildConfig entity, String namespace ,String sourceName) {
+        stampConfigHash(entity);
         try {
-            kubernetesClient.adapt(OpenShiftClient.class).buildConfigs().inNamespace(namespace).create(entity);
+            Object answer = kubernetesClient.adapt(OpenShiftClient.class).buildConfigs().inNamespace(namespace).create(entity);
+            updateLiveState(entity, namespace, answer);
         } catch (Exception e) {
             onApplyError("Failed to create BuildConfig from " + sourceName + ". " + e, e);
         }
@@ -667,10 +794,334 @@ public class Controller {
     public void applyList(KubernetesList list, String sourceName) throws Exception {
         List<HasMetadata> entities = list.getItems();
         if (entities != null) {
-            for (Object entity : entities) {
-                applyEntity(entity, sourceName);
+            applyEntities(entities, sourceName);
+        }
+    }
+
+    /**
+     * Applies the given entities returning the result and timing of each one.
+     *
+     * If the apply parallelism is more than 1 then the entities are applied in the dependency order of {@link ApplyGraph},
+     * with up to that many entities of a namespace being applied at once; otherwise they are applied one at a time in order.
+     */
+    public List<ApplyResult> applyEntities(List<? extends HasMetadata> entities, String sourceName) throws Exception {
+        if (!prefetchLiveState) {
+            return doApplyEntities(entities, sourceName);
+        }
+        // the snapshot is held per thread, so concurrent or nested applies each use their own
+        LiveStateSnapshot previous = liveStateSnapshot.get();
+        liveStateSnapshot.set(createLiveStateSnapshot(entities));
+        try {
+            return doApplyEntities(entities, sourceName);
+        } finally {
+            if (previous != null) {
+                liveStateSnapshot.set(previous);
+            } else {
+                liveStateSnapshot.remove();
+            }
+        }
+    }
+
+    protected List<ApplyResult> doApplyEntities(List<? extends HasMetadata> entities, String sourceName) throws Exception {
+        if (applyParallelism <= 1) {
+            List<ApplyResult> answer = new ArrayList<>();
+            for (HasMetadata entity : entities) {
+                ApplyResult result = applyEntityWithResult(entity, sourceName, getNamespace());
+                answer.add(result);
+                if (!result.isSuccess()) {
+                    throw result.getError();
+                }
+            }
+            return answer;
+        }
+        return applyEntitiesConcurrently(new ApplyGraph(entities, getNamespace()), sourceName);
+    }
+
+    protected List<ApplyResult> applyEntitiesConcurrently(ApplyGraph graph, final String sourceName) throws Exception {
+        long start = System.currentTimeMillis();
+        final List<ApplyResult> answer = Collections.synchronizedList(new ArrayList<ApplyResult>());
+        Set<String> namespaces = graph.getNamespaces();
+        if (namespaces.isEmpty()) {
+            // there is nothing to apply and a thread pool can't have no threads
+            return answer;
+        }
+        Set<String> failedNamespaces = new HashSet<>();
+        Exception firstError = null;
+        // the workers use the snapshot of the apply which started them
+        final LiveStateSnapshot snapshot = liveStateSnapshot.get();
+        ExecutorService executor = Executors.newFixedThreadPool(applyParallelism * namespaces.size(), new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "fabric8-apply-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            // other entities create their namespace on demand, so lets apply the namespaces one at a time
+            // before the workers start, rather than have the workers race to create them
+            for (String namespace : namespaces) {
+                List<HasMetadata> namespaceEntities = graph.getEntities(namespace, 0);
+                for (HasMetadata entity : namespaceEntities) {
+                    ApplyResult result = applyEntityWithResult(entity, sourceName, namespace);
+                    answer.add(result);
+                    if (!result.isSuccess()) {
+                        failedNamespaces.add(namespace);
+                        if (firstError == null) {
+                            firstError = result.getError();
+                        }
+                    }
+                }
+                if (namespaceEntities.isEmpty() && Strings.isNotBlank(namespace)) {
+                    try {
+                        applyNamespace(namespace);
+                    } catch (Exception e) {
+                        failedNamespaces.add(namespace);
+                        if (firstError == null) {
+                            firstError = e;
+                        }
+                    }
+                }
+            }
+            for (int tier = 1; tier < ApplyGraph.TIER_COUNT && (firstError == null || !throwExceptionOnError); tier++) {
+                List<Future<?>> futures = new ArrayList<>();
+                final List<ApplyResult> tierResults = Collections.synchronizedList(new ArrayList<ApplyResult>());
+                for (final String namespace : namespaces) {
+                    List<HasMetadata> entities = graph.getEntities(namespace, tier);
+                    if (entities.isEmpty() || failedNamespaces.contains(namespace)) {
+                        continue;
+                    }
+                    // a few workers per namespace take the entities off a queue, so one namespace can't hog the threads
+                    final Queue<HasMetadata> queue = new ConcurrentLinkedQueue<>(entities);
+                    int workers = Math.min(applyParallelism, entities.size());
+                    for (int i = 0; i < workers; i++) {
+                        futures.add(executor.submit(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (snapshot != null) {
+                                    liveStateSnapshot.set(snapshot);
+                                }
+                                try {
+                                    HasMetadata entity;
+                                    while ((entity = queue.poll()) != null) {
+                                        tierResults.add(applyEntityWithResult(entity, sourceName, namespace));
+                                    }
+                                } finally {
+                                    liveStateSnapshot.remove();
+                                }
+                            }
+                        }));
+                    }
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+                for (ApplyResult result : tierResults) {
+                    if (!result.isSuccess()) {
+                        // lets not apply anything which could depend on the failed entity
+                        failedNamespaces.add(result.getNamespace());
+                        if (firstError == null) {
+                            firstError = result.getError();
+                        }
+                    }
+                }
+                answer.addAll(tierResults);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        LOG.info("Applied " + answer.size() + " entities from " + sourceName + " in " + (System.currentTimeMillis() - start) + " ms");
+        if (firstError != null && throwExceptionOnError) {
+            throw firstError;
+        }
+        return answer;
+    }
+
+    /**
+     * Lists each kind of entity in each namespace they will be applied to, so that applying them
+     * takes one request per kind rather than one per entity to find the live entities
+     */
+    public LiveStateSnapshot createLiveStateSnapshot(List<? extends HasMetadata> entities) {
+        long start = System.currentTimeMillis();
+        LiveStateSnapshot snapshot = new LiveStateSnapshot();
+        Set<String> keys = new HashSet<>();
+        // entities are applied to namespaces which are created on demand
+        keys.add(LiveStateSnapshot.createKey(Namespace.class, null));
+        listLiveState(snapshot, Namespace.class, null);
+        for (HasMetadata entity : entities) {
+            Class<? extends HasMetadata> kind = entity.getClass();
+            String namespace;
+            if (entity instanceof Namespace || entity instanceof OAuthClient) {
+                namespace = null;
+            } else {
+                namespace = ApplyGraph.getApplyNamespace(entity, getNamespace());
+            }
+            if (keys.add(LiveStateSnapshot.createKey(kind, namespace))) {
+                listLiveState(snapshot, kind, namespace);
+            }
+        }
+        LOG.info("Loaded " + snapshot.getListCount() + " lists of live entities in " + (System.currentTimeMillis() - start) + " ms");
+        return snapshot;
+    }
+
+    /**
+     * Adds the live entities of the kind in the namespace to the snapshot; kinds which cannot be listed are left out
+     * so that they are looked up one at a time instead
+     */
+    protected void listLiveState(LiveStateSnapshot snapshot, Class<? extends HasMetadata> kind, String namespace) {
+        try {
+            if (kind == Namespace.class) {
+                NamespaceList list = kubernetesClient.namespaces().list();
+                snapshot.addList(kind, namespace, list.getItems(), list.getMetadata());
+            } else if (kind == Service.class) {
+                ServiceList list = kubernetesClient.services().inNamespace(namespace).list();
+                snapshot.addList(kind, namespace, list.getItems(), list.getMetadata());
+            } else if (kind == ReplicationController.class) {
+                ReplicationControllerList list = kubernetesClient.replicationControllers().inNamespace(namespace).list();
+                snapshot.addList(kind, namespace, list.getItems(), list.getMetadata());
+            } else if (kind == Pod.class) {
+                PodList list = kubernetesClient.pods().inNamespace(namespace).list();
+                snapshot.addList(kind, namespace, list.getItems(), list.getMetadata());
+            } else if (kind == Secret.class) {
+                SecretList list = kubernetesClient.secrets().inNamespace(namespace).list();
+                snapshot.addList(kind, namespace, list.getItems(), list.getMetadata());
+            } else if (kind == ServiceAccount.class) {
+                ServiceAccountList list = kubernetesClient.serviceAccounts().inNamespace(namespace).list();
+                snapshot.addList(kind, namespace, list.getItems(), list.getMetadata());
+            } else if (kind == PersistentVolumeClaim.class) {
+                PersistentVolumeClaimList list = kubernetesClient.persistentVolumeClaims().inNamespace(namespace).list();
+                snapshot.addList(kind, namespace, list.getItems(), list.getMetadata());
+            } else if (kind == DaemonSet.class) {
+                DaemonSetList list = kubernetesClient.extensions().daemonSets().inNamespace(namespace).list();
+                snapshot.addList(kind, namespace, list.getItems(), list.getMetadata());
+            } else if (kind == Route.class) {
+                RouteList list = kubernetesClient.adapt(OpenShiftClient.class).routes().inNamespace(namespace).list();
+                snapshot.addList(kind, namespace, list.getItems(), list.getMetadata());
+            } else if (kind == BuildConfig.class) {
+                BuildConfigList list = kubernetesClient.adapt(OpenShiftClient.class).buildConfigs().inNamespace(namespace).list();
+                snapshot.addList(kind, namespace, list.getItems(), list.getMetadata());
+            } else if (kind == Template.class) {
+                TemplateList list = kubernetesClient.adapt(OpenShiftClient.class).templates().inNamespace(namespace).list();
+                snapshot.addList(kind, namespace, list.getItems(), list.getMetadata());
+            } else if (kind == OAuthClient.class) {
+                OAuthClientList list = kubernetesClient.adapt(OpenShiftClient.class).oAuthClients().list();
+                snapshot.addList(kind, namespace, list.getItems(), list.getMetadata());
             }
+        } catch (Exception e) {
+            // the entities of this kind will be looked up one at a time instead
+            LOG.debug("Could not list " + kind.getSimpleName() + " in namespace " + namespace + " due " + e, e);
+        }
+    }
+
+    /**
+     * Returns the live entity from the snapshot if one has been loaded for its kind and namespace,
+     * otherwise gets it from the server
+     */
+    protected <T extends HasMetadata> T getLiveEntity(Class<T> kind, String namespace, String name, Gettable<T> resource) {
+        LiveStateSnapshot snapshot = liveStateSnapshot.get();
+        if (snapshot != null && snapshot.contains(kind, namespace)) {
+            return snapshot.get(kind, namespace, name);
+        }
+        return resource.get();
+    }
+
+    /**
+     * Records an entity which has just been created or replaced in the live state snapshot of the current apply, if any,
+     * so that another entity of the same kind and name later in the apply is compared with it rather than created again
+     */
+    protected void updateLiveState(HasMetadata entity, String namespace, Object answer) {
+        LiveStateSnapshot snapshot = liveStateSnapshot.get();
+        if (snapshot == null) {
+            return;
+        }
+        if (entity instanceof Namespace || entity instanceof OAuthClient) {
+            namespace = null;
+        } else if (Strings.isNullOrBlank(namespace)) {
+            namespace = getNamespace();
+        }
+        if (answer != null && answer.getClass() == entity.getClass()) {
+            snapshot.update((HasMetadata) answer, namespace);
+        } else {
+            snapshot.update(entity, namespace);
+        }
+    }
+
+    protected ApplyResult applyEntityWithResult(HasMetadata entity, String sourceName, String namespace) {
+        long start = System.currentTimeMillis();
+        Exception error = null;
+        try {
+            applyEntity(entity, sourceName);
+        } catch (Exception e) {
+            error = e;
         }
+        long elapsed = System.currentTimeMillis() - start;
+        LOG.debug("Applied " + getKind(entity) + " " + namespace + "/" + getName(entity) + " in " + elapsed + " ms");
+        return new ApplyResult(getKind(entity), namespace, getName(entity), elapsed, error);
+    }
+
+    /**
+     * Returns true if the user configuration of the entity has not changed from the live entity.
+     * <p/>
+     * If {@link #isConfigHashAnnotations()} is enabled the entity is annotated with the hash of its configuration
+     * before it is created or updated, so that later applies only need to compare the hash with the annotation
+     * on the live entity; the entities are only compared in depth if the live entity has no hash annotation yet.
+     */
+    protected boolean isConfigEqual(HasMetadata entity, HasMetadata old) {
+        if (!configHashAnnotations) {
+            return UserConfigurationCompare.configEqual(entity, old);
+        }
+        String oldHash = getConfigHash(old);
+        boolean answer;
+        if (oldHash != null) {
+            answer = oldHash.equals(UserConfigurationCompare.configHash(entity));
+        } else {
+            answer = UserConfigurationCompare.configEqual(entity, old);
+        }
+        stampConfigHash(entity);
+        return answer;
+    }
+
+    /**
+     * Returns true if the user configuration of the entity has not changed from the live entity, like
+     * {@link #isConfigEqual(HasMetadata, HasMetadata)}.
+     * <p/>
+     * If the live entity is unchanged but has no hash annotation yet, it is replaced once with the annotation added,
+     * so that the next apply doesn't need to compare the entities in depth again.
+     */
+    protected <T extends HasMetadata> boolean isConfigEqual(T entity, T old, ClientResource<T, ?> resource) {
+        boolean answer = isConfigEqual(entity, old);
+        if (answer && configHashAnnotations && getConfigHash(old) == null) {
+            Map<String, String> annotations = KubernetesHelper.getOrCreateAnnotations(old);
+            annotations.put(Annotations.Apply.CONFIG_HASH, getConfigHash(entity));
+            try {
+                Object result = resource.replace(old);
+                updateLiveState(old, KubernetesHelper.getNamespace(old), result);
+            } catch (Exception e) {
+                annotations.remove(Annotations.Apply.CONFIG_HASH);
+                LOG.warn("Failed to annotate " + getKind(old) + " " + getName(old) + " with its config hash due " + e.getMessage() + ". This exception is ignored.", e);
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Annotates the entity with the hash of its configuration if {@link #isConfigHashAnnotations()} is enabled,
+     * which is done before it is created or updated
+     */
+    protected void stampConfigHash(HasMetadata entity) {
+        if (configHashAnnotations) {
+            KubernetesHelper.getOrCreateAnnotations(entity).put(Annotations.Apply.CONFIG_HASH, UserConfigurationCompare.configHash(entity));
+        }
+    }
+
+    protected static String getConfigHash(HasMetadata entity) {
+        ObjectMeta metadata = entity.getMetadata();
+        if (metadata != null && metadata.getAnnotations() != null) {
+            return metadata.getAnnotations().get(Annotations.Apply.CONFIG_HASH);
+        }
+        return null;
     }
 
     public void applyService(Service service, String sourceName) throws Exception {
@@ -681,9 +1132,9 @@ public class Controller {
             LOG.debug("Ignoring Service: " + namespace + ":" + id);
             return;
         }
-        Service old = kubernetesClient.services().inNamespace(namespace).withName(id).get();
+        Service old = getLiveEntity(Service.class, namespace, id, kubernetesClient.services().inNamespace(namespace).withName(id));
         if (isRunning(old)) {
-            if (UserConfigurationCompare.configEqual(service, old)) {
+            if (isConfigEqual(service, old, kubernetesClient.services().inNamespace(namespace).withName(id))) {
                 LOG.info("Service has not changed so not doing anything");
             } else {
                 if (isRecreateMode()) {
@@ -695,6 +1146,7 @@ public class Controller {
                     try {
                         Object answer = kubernetesClient.services().inNamespace(namespace).withName(id).replace(service);
                         logGeneratedEntity("Updated Service: ", namespace, service, answer);
+                        updateLiveState(service, namespace, answer);
                     } catch (Exception e) {
                         onApplyError("Failed to update Service from " + sourceName + ". " + e + ". " + service, e);
                     }
@@ -718,9 +1170,9 @@ public class Controller {
             LOG.debug("Ignoring " + kind + ": " + namespace + ":" + id);
             return;
         }
-        T old = resources.inNamespace(namespace).withName(id).get();
+        T old = getLiveEntity((Class<T>) resource.getClass(), namespace, id, resources.inNamespace(namespace).withName(id));
         if (isRunning(old)) {
-            if (UserConfigurationCompare.configEqual(resource, old)) {
+            if (isConfigEqual(resource, old, resources.inNamespace(namespace).withName(id))) {
                 LOG.info(kind + " has not changed so not doing anything");
             } else {
                 if (isRecreateMode()) {
@@ -732,6 +1184,7 @@ public class Controller {
                     try {
                         Object answer = resources.inNamespace(namespace).withName(id).replace(resource);
                         logGeneratedEntity("Updated " + kind + ": ", namespace, resource, answer);
+                        updateLiveState(resource, namespace, answer);
                     } catch (Exception e) {
                         onApplyError("Failed to update " + kind + " from " + sourceName + ". " + e + ". " + resource, e);
                     }
@@ -749,6 +1202,7 @@ public class Controller {
     protected <T extends HasMetadata,L,D> void doCreateResource(T resource, String namespace ,String sourceName, ClientOperation<T, L, D, ClientResource<T, D>> resources) throws Exception {
         String kind = getKind(resource);
         LOG.info("Creating a " + kind + " from " + sourceName + " namespace " + namespace + " name " + getName(resource));
+        stampConfigHash(resource);
         try {
             Object answer;
             if (Strings.isNotBlank(namespace)) {
@@ -757,6 +1211,7 @@ public class Controller {
                 answer = resources.inNamespace(getNamespace()).create(resource);
             }
             logGeneratedEntity("Created " + kind + ": ", namespace, resource, answer);
+            updateLiveState(resource, namespace, answer);
         } catch (Exception e) {
             onApplyError("Failed to create " + kind + " from " + sourceName + ". " + e + ". " + resource, e);
         }
@@ -764,6 +1219,7 @@ public class Controller {
 
     protected void doCreateService(Service service, String namespace, String sourceName) {
         LOG.info("Creating a Service from " + sourceName + " namespace " + namespace + " name " + getName(service));
+        stampConfigHash(service);
         try {
             Object answer;
             if (Strings.isNotBlank(namespace)) {
@@ -772,6 +1228,7 @@ public class Controller {
                 answer = kubernetesClient.services().inNamespace(getNamespace()).create(service);
             }
             logGeneratedEntity("Created Service: ", namespace, service, answer);
+            updateLiveState(service, namespace, answer);
         } catch (Exception e) {
             onApplyError("Failed to create Service from " + sourceName + ". " + e + ". " + service, e);
         }
@@ -791,11 +1248,13 @@ public class Controller {
         LOG.info("Using namespace: " + namespace);
         String name = getName(entity);
         Objects.notNull(name, "No name for " + entity );
-        Namespace old = kubernetesClient.namespaces().withName(name).get();
+        Namespace old = getLiveEntity(Namespace.class, null, name, kubernetesClient.namespaces().withName(name));
         if (!isRunning(old)) {
             try {
+                stampConfigHash(entity);
                 Object answer = kubernetesClient.namespaces().create(entity);
                 logGeneratedEntity("Created namespace: ", namespace, entity, answer);
+                updateLiveState(entity, null, answer);
                 return true;
             } catch (Exception e) {
                 onApplyError("Failed to create namespace: " + name + " due " + e.getMessage(), e);
@@ -812,9 +1271,9 @@ public class Controller {
             LOG.debug("Only processing Services right now so ignoring ReplicationController: " + namespace + ":" + id);
             return;
         }
-        ReplicationController old = kubernetesClient.replicationControllers().inNamespace(namespace).withName(id).get();
+        ReplicationController old = getLiveEntity(ReplicationController.class, namespace, id, kubernetesClient.replicationControllers().inNamespace(namespace).withName(id));
         if (isRunning(old)) {
-            if (UserConfigurationCompare.configEqual(replicationController, old)) {
+            if (isConfigEqual(replicationController, old, kubernetesClient.replicationControllers().inNamespace(namespace).withName(id))) {
                 LOG.info("ReplicationController has not changed so not doing anything");
             } else {
                 ReplicationControllerSpec newSpec = replicationController.getSpec();
@@ -829,7 +1288,8 @@ public class Controller {
                         }
                     }
                     LOG.info("rollingUpgradePreserveScale " + rollingUpgradePreserveScale + " new replicas is " + (newSpec != null ? newSpec.getReplicas() : "<null>"));
-                    kubernetesClient.replicationControllers().inNamespace(namespace).withName(id).rolling().replace(replicationController);
+                    Object answer = kubernetesClient.replicationControllers().inNamespace(namespace).withName(id).rolling().replace(replicationController);
+                    updateLiveState(replicationController, namespace, answer);
                 } else if (isRecreateMode()) {
                     LOG.info("Deleting ReplicationController: " + id);
                     kubernetesClient.replicationControllers().inNamespace(namespace).withName(id).delete();
@@ -839,6 +1299,7 @@ public class Controller {
                     try {
                         Object answer = kubernetesClient.replicationControllers().inNamespace(namespace).withName(id).replace(replicationController);
                         logGeneratedEntity("Updated replicationController: ", namespace, replicationController, answer);
+                        updateLiveState(replicationController, namespace, answer);
 
                         if (deletePodsOnReplicationControllerUpdate) {
                             kubernetesClient.pods().inNamespace(namespace).withLabels(newSpec.getSelector()).delete();
@@ -862,6 +1323,7 @@ public class Controller {
 
     protected void doCreateReplicationController(ReplicationController replicationController, String namespace, String sourceName) {
         LOG.info("Creating a ReplicationController from " + sourceName + " namespace " + namespace + " name " + getName(replicationController));
+        stampConfigHash(replicationController);
         try {
             // lets check that if secrets are required they exist
             ReplicationControllerSpec spec = replicationController.getSpec();
@@ -879,6 +1341,7 @@ public class Controller {
                 answer =  kubernetesClient.replicationControllers().inNamespace(getNamespace()).create(replicationController);
             }
             logGeneratedEntity("Created ReplicationController: ", namespace, replicationController, answer);
+            updateLiveState(replicationController, namespace, answer);
         } catch (Exception e) {
             onApplyError("Failed to create ReplicationController from " + sourceName + ". " + e + ". " + replicationController, e);
         }
@@ -912,9 +1375,9 @@ public class Controller {
             LOG.debug("Only processing Services right now so ignoring Pod: " + namespace + ":" + id);
             return;
         }
-        Pod old = kubernetesClient.pods().inNamespace(namespace).withName(id).get();
+        Pod old = getLiveEntity(Pod.class, namespace, id, kubernetesClient.pods().inNamespace(namespace).withName(id));
         if (isRunning(old)) {
-            if (UserConfigurationCompare.configEqual(pod, old)) {
+            if (isConfigEqual(pod, old, kubernetesClient.pods().inNamespace(namespace).withName(id))) {
                 LOG.info("Pod has not changed so not doing anything");
             } else {
                 if (isRecreateMode()) {
@@ -926,6 +1389,7 @@ public class Controller {
                     try {
                         Object answer = kubernetesClient.pods().inNamespace(namespace).withName(id).replace(pod);
                         LOG.info("Updated Pod result: " + answer);
+                        updateLiveState(pod, namespace, answer);
                     } catch (Exception e) {
                         onApplyError("Failed to update Pod from " + sourceName + ". " + e + ". " + pod, e);
                     }
@@ -942,6 +1406,7 @@ public class Controller {
 
     protected void doCreatePod(Pod pod, String namespace, String sourceName) {
         LOG.info("Creating a Pod from " + sourceName + " namespace " + namespace + " name " + getName(pod));
+        stampConfigHash(pod);
         try {
             PodSpec podSpec = pod.getSpec();
             if (podSpec != null) {
@@ -954,6 +1419,7 @@ public class Controller {
                 answer = kubernetesClient.pods().inNamespace(getNamespace()).create(pod);
             }
             LOG.info("Created Pod result: " + answer);
+            updateLiveState(pod, namespace, answer);
         } catch (Exception e) {
             onApplyError("Failed to create Pod from " + sourceName + ". " + e + ". " + pod, e);
         }
@@ -1126,6 +1592,42 @@ public class Controller {
         this.rollingUpgrade = rollingUpgrade;
     }
 
+    public int getApplyParallelism() {
+        return applyParallelism;
+    }
+
+    /**
+     * Sets the maximum number of entities of a namespace which are applied at once; the default of 1 applies
+     * the entities one at a time in the order they are given
+     */
+    public void setApplyParallelism(int applyParallelism) {
+        this.applyParallelism = applyParallelism;
+    }
+
+    public boolean isPrefetchLiveState() {
+        return prefetchLiveState;
+    }
+
+    /**
+     * When enabled the live entities are listed once per kind and namespace before applying a list of entities,
+     * rather than being requested one at a time
+     */
+    public void setPrefetchLiveState(boolean prefetchLiveState) {
+        this.prefetchLiveState = prefetchLiveState;
+    }
+
+    public boolean isConfigHashAnnotations() {
+        return configHashAnnotations;
+    }
+
+    /**
+     * When enabled the applied entities are annotated with a hash of their configuration which is used
+     * to detect unchanged entities on later applies without comparing them in depth
+     */
+    public void setConfigHashAnnotations(boolean configHashAnnotations) {
+        this.configHashAnnotations = configHashAnnotations;
+    }
+
     public boolean isRollingUpgradePreserveScale() {
         return rollingUpgradePreserveScale;
     }
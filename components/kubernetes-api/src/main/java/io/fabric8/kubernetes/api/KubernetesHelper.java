@@ -1522,6 +1522,9 @@ public final class KubernetesHelper {
             LOG.warn("Cannot instantiate replication controller: " + getName(replicationController) + " due to missing ReplicationController.Spec!");
         } else {
             Map<String, String> replicaSelector = replicationControllerSpec.getSelector();
+            if (pods instanceof LabelIndex) {
+                return ((LabelIndex<Pod>) pods).select(replicaSelector);
+            }
             Filter<Pod> podFilter = KubernetesHelper.createPodFilter(replicaSelector);
             return Filters.filter(pods, podFilter);
         }
@@ -1533,10 +1536,45 @@ public final class KubernetesHelper {
      */
     public static List<Pod> getPodsForService(Service service, Iterable<Pod> pods) {
         Map<String, String> selector = getSelector(service);
+        if (pods instanceof LabelIndex) {
+            return ((LabelIndex<Pod>) pods).select(selector);
+        }
         Filter<Pod> podFilter = KubernetesHelper.createPodFilter(selector);
         return Filters.filter(pods, podFilter);
     }
 
+    /**
+     * Returns a map indexed by replication controller name of the pods for each replication controller
+     * using a {@link LabelIndex} of the pods
+     */
+    public static Map<String, List<Pod>> getPodsForReplicationControllers(Iterable<ReplicationController> replicationControllers, Iterable<Pod> pods) {
+        LabelIndex<Pod> podIndex = toLabelIndex(pods);
+        Map<String, List<Pod>> answer = new LinkedHashMap<>();
+        for (ReplicationController replicationController : replicationControllers) {
+            answer.put(getName(replicationController), getPodsForReplicationController(replicationController, podIndex));
+        }
+        return answer;
+    }
+
+    /**
+     * Returns a map indexed by service name of the pods for each service using a {@link LabelIndex} of the pods
+     */
+    public static Map<String, List<Pod>> getPodsForServices(Iterable<Service> services, Iterable<Pod> pods) {
+        LabelIndex<Pod> podIndex = toLabelIndex(pods);
+        Map<String, List<Pod>> answer = new LinkedHashMap<>();
+        for (Service service : services) {
+            answer.put(getName(service), getPodsForService(service, podIndex));
+        }
+        return answer;
+    }
+
+    protected static LabelIndex<Pod> toLabelIndex(Iterable<Pod> pods) {
+        if (pods instanceof LabelIndex) {
+            return (LabelIndex<Pod>) pods;
+        }
+        return new LabelIndex<>(pods);
+    }
+
     /**
      * Looks up the service endpoints in DNS.
      * <p/>
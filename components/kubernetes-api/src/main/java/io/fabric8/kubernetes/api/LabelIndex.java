@@ -0,0 +1,138 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.api;
+
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.ObjectMeta;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An inverted index of the labels of a number of pods, services or replication controllers so that label selectors
+ * can be evaluated by intersecting the bitsets of the matching objects for each label, rather than checking
+ * the selector against the labels of every object.
+ * <p/>
+ * The index is a snapshot of the given objects; create a new index when they change. As the index is also
+ * an {@link Iterable} of the objects it can be passed to methods such as
+ * {@link KubernetesHelper#getPodsForService(io.fabric8.kubernetes.api.model.Service, Iterable)} which then use
+ * the index rather than filtering the objects.
+ */
+public class LabelIndex<T extends HasMetadata> implements Iterable<T> {
+    private final List<T> items = new ArrayList<>();
+    private final Map<String, Map<String, BitSet>> index = new HashMap<>();
+    private final Map<String, BitSet> keyIndex = new HashMap<>();
+    private final BitSet labelled = new BitSet();
+
+    public LabelIndex(Iterable<? extends T> objects) {
+        for (T item : objects) {
+            int id = items.size();
+            items.add(item);
+            ObjectMeta metadata = item.getMetadata();
+            Map<String, String> labels = metadata != null ? metadata.getLabels() : null;
+            if (labels != null) {
+                labelled.set(id);
+                for (Map.Entry<String, String> entry : labels.entrySet()) {
+                    String key = entry.getKey();
+                    String value = entry.getValue();
+                    if (value == null) {
+                        continue;
+                    }
+                    Map<String, BitSet> values = index.get(key);
+                    if (values == null) {
+                        values = new HashMap<>();
+                        index.put(key, values);
+                    }
+                    getOrCreate(values, value).set(id);
+                    getOrCreate(keyIndex, key).set(id);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of indexed objects
+     */
+    public int size() {
+        return items.size();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return items.iterator();
+    }
+
+    /**
+     * Returns the objects matching the given label selector with the same semantics as
+     * {@link KubernetesHelper#filterLabels(Map, Map)}; an empty or null selector matches all objects
+     */
+    public List<T> select(Map<String, String> selector) {
+        BitSet matches = match(selector);
+        List<T> answer = new ArrayList<>(matches.cardinality());
+        for (int id = matches.nextSetBit(0); id >= 0; id = matches.nextSetBit(id + 1)) {
+            answer.add(items.get(id));
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the ids of the objects, in the order they were indexed, which match the given label selector
+     */
+    public BitSet match(Map<String, String> selector) {
+        BitSet answer = new BitSet(items.size());
+        if (selector == null || selector.isEmpty()) {
+            answer.set(0, items.size());
+            return answer;
+        }
+        answer.or(labelled);
+        for (Map.Entry<String, String> entry : selector.entrySet()) {
+            String key = entry.getKey();
+            String value = entry.getValue();
+            if (value == null) {
+                // a null value only matches objects without the label
+                BitSet withKey = keyIndex.get(key);
+                if (withKey != null) {
+                    answer.andNot(withKey);
+                }
+            } else {
+                Map<String, BitSet> values = index.get(key);
+                BitSet withValue = values != null ? values.get(value) : null;
+                if (withValue == null) {
+                    answer.clear();
+                    return answer;
+                }
+                answer.and(withValue);
+            }
+            if (answer.isEmpty()) {
+                break;
+            }
+        }
+        return answer;
+    }
+
+    private static BitSet getOrCreate(Map<String, BitSet> map, String key) {
+        BitSet answer = map.get(key);
+        if (answer == null) {
+            answer = new BitSet();
+            map.put(key, answer);
+        }
+        return answer;
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.api;
+
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.ListMeta;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A snapshot of the live entities of some kinds in some namespaces, taken with a single list request
+ * per kind and namespace, so that the {@link Controller} can decide whether to create, replace or skip
+ * each entity without requesting it individually.
+ */
+public class LiveStateSnapshot {
+    private final ConcurrentMap<String, Map<String, HasMetadata>> entities = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> resourceVersions = new ConcurrentHashMap<>();
+
+    /**
+     * Adds the listed entities of a kind; the namespace is null for kinds which are not namespaced
+     */
+    public void addList(Class<? extends HasMetadata> kind, String namespace, List<? extends HasMetadata> items, ListMeta metadata) {
+        Map<String, HasMetadata> map = new ConcurrentHashMap<>();
+        if (items != null) {
+            for (HasMetadata item : items) {
+                String name = KubernetesHelper.getName(item);
+                if (name != null) {
+                    map.put(name, item);
+                }
+            }
+        }
+        String key = createKey(kind, namespace);
+        entities.put(key, map);
+        if (metadata != null && metadata.getResourceVersion() != null) {
+            resourceVersions.put(key, metadata.getResourceVersion());
+        }
+    }
+
+    /**
+     * Records an entity which has been created or updated since the snapshot was taken
+     */
+    public void update(HasMetadata entity, String namespace) {
+        Map<String, HasMetadata> map = entities.get(createKey(entity.getClass(), namespace));
+        String name = KubernetesHelper.getName(entity);
+        if (map != null && name != null) {
+            map.put(name, entity);
+        }
+    }
+
+    /**
+     * Returns true if the snapshot has the entities of the kind in the namespace
+     */
+    public boolean contains(Class<?> kind, String namespace) {
+        return entities.containsKey(createKey(kind, namespace));
+    }
+
+    /**
+     * Returns the live entity or null if there is none; only valid if the snapshot {@link #contains(Class, String)} the kind and namespace
+     */
+    public <T extends HasMetadata> T get(Class<T> kind, String namespace, String name) {
+        Map<String, HasMetadata> map = entities.get(createKey(kind, namespace));
+        return map != null && name != null ? kind.cast(map.get(name)) : null;
+    }
+
+    /**
+     * Returns the resourceVersion of the list of the kind in the namespace, which can be used to watch for changes since the snapshot
+     */
+    public String getResourceVersion(Class<?> kind, String namespace) {
+        return resourceVersions.get(createKey(kind, namespace));
+    }
+
+    /**
+     * Returns the number of lists in the snapshot
+     */
+    public int getListCount() {
+        return entities.size();
+    }
+
+    protected static String createKey(Class<?> kind, String namespace) {
+        return kind.getName() + "/" + (namespace != null ? namespace : "");
+    }
+}
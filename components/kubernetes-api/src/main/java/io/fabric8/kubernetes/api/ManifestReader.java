@@ -0,0 +1,154 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.api;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.KubernetesResource;
+import io.fabric8.utils.Files;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the entities of a Kubernetes JSON or YAML manifest one at a time using the Jackson streaming parser,
+ * so that a large manifest does not have to be loaded into memory before its entities can be used.
+ * <p/>
+ * The items of a <code>List</code> document, the elements of a top level array and each document of a
+ * multi-document YAML stream are returned as they are parsed; any other document such as a <code>Template</code>
+ * is returned as a single entity.
+ */
+public class ManifestReader implements Closeable {
+    private static final ObjectMapper JSON_MAPPER = new ObjectMapper();
+    private static final ObjectMapper YAML_MAPPER = new ObjectMapper(new YAMLFactory());
+
+    private final ObjectMapper mapper;
+    private final JsonParser parser;
+    private boolean inObject;
+    private boolean inArray;
+    private boolean readItems;
+    private TokenBuffer buffer;
+
+    public ManifestReader(ObjectMapper mapper, InputStream in) throws IOException {
+        this.mapper = mapper;
+        this.parser = mapper.getFactory().createParser(in);
+    }
+
+    public static ManifestReader forJson(InputStream in) throws IOException {
+        return new ManifestReader(JSON_MAPPER, in);
+    }
+
+    public static ManifestReader forYaml(InputStream in) throws IOException {
+        return new ManifestReader(YAML_MAPPER, in);
+    }
+
+    /**
+     * Returns a reader of the given JSON or YAML file depending on its extension
+     */
+    public static ManifestReader forFile(File file) throws IOException {
+        String ext = Files.getFileExtension(file);
+        if ("yaml".equalsIgnoreCase(ext) || "yml".equalsIgnoreCase(ext)) {
+            return forYaml(new FileInputStream(file));
+        } else if ("json".equalsIgnoreCase(ext)) {
+            return forJson(new FileInputStream(file));
+        } else {
+            throw new IllegalArgumentException("Unknown file type " + ext);
+        }
+    }
+
+    /**
+     * Returns the next entity or null if there are no more entities
+     */
+    public HasMetadata next() throws IOException {
+        while (true) {
+            if (inArray) {
+                JsonToken token = parser.nextToken();
+                if (token == null) {
+                    return null;
+                } else if (token == JsonToken.END_ARRAY) {
+                    inArray = false;
+                } else if (token == JsonToken.START_OBJECT) {
+                    HasMetadata answer = toEntity(mapper.readValue(parser, KubernetesResource.class));
+                    if (answer != null) {
+                        return answer;
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            } else if (inObject) {
+                JsonToken token = parser.nextToken();
+                if (token == null) {
+                    return null;
+                } else if (token == JsonToken.END_OBJECT) {
+                    inObject = false;
+                    if (!readItems) {
+                        buffer.writeEndObject();
+                        HasMetadata answer = toEntity(mapper.readValue(buffer.asParser(mapper), KubernetesResource.class));
+                        if (answer != null) {
+                            buffer = null;
+                            return answer;
+                        }
+                    }
+                    buffer = null;
+                } else {
+                    String name = parser.getCurrentName();
+                    JsonToken value = parser.nextToken();
+                    if ("items".equals(name) && value == JsonToken.START_ARRAY) {
+                        // the other properties of a list are not needed
+                        readItems = true;
+                        inArray = true;
+                    } else if (!readItems) {
+                        buffer.writeFieldName(name);
+                        buffer.copyCurrentStructure(parser);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                JsonToken token = parser.nextToken();
+                if (token == null) {
+                    return null;
+                } else if (token == JsonToken.START_OBJECT) {
+                    inObject = true;
+                    readItems = false;
+                    buffer = new TokenBuffer(mapper, false);
+                    buffer.writeStartObject();
+                } else if (token == JsonToken.START_ARRAY) {
+                    inArray = true;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+
+    protected static HasMetadata toEntity(Object value) {
+        if (value instanceof HasMetadata) {
+            return (HasMetadata) value;
+        }
+        return null;
+    }
+}
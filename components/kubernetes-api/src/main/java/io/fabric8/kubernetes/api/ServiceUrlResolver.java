@@ -0,0 +1,253 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.api;
+
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.Service;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+import io.fabric8.openshift.api.model.Route;
+import io.fabric8.openshift.client.OpenShiftClient;
+import io.fabric8.utils.Objects;
+import io.fabric8.utils.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resolves service URLs like {@link KubernetesHelper#getServiceURL(KubernetesClient, String, String, String, String, boolean)}
+ * caching the URLs so that resolving the same service again is a map lookup rather than several requests to the API server.
+ * <p/>
+ * A cached URL expires after the time to live. If watching is enabled the services and routes of each namespace used
+ * are also watched so that the URL of a service is resolved again as soon as the service or its route changes.
+ */
+public class ServiceUrlResolver {
+    private static final transient Logger LOG = LoggerFactory.getLogger(ServiceUrlResolver.class);
+
+    public static final long DEFAULT_TIME_TO_LIVE = 60 * 1000L;
+
+    private final KubernetesClient client;
+    private final long timeToLive;
+    private final boolean watch;
+    private final ConcurrentMap<String, CachedServiceUrl> cache = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, List<Watch>> namespaceWatches = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicLong> namespaceGenerations = new ConcurrentHashMap<>();
+
+    public ServiceUrlResolver(KubernetesClient client) {
+        this(client, DEFAULT_TIME_TO_LIVE, true);
+    }
+
+    public ServiceUrlResolver(KubernetesClient client, long timeToLive, boolean watch) {
+        this.client = client;
+        this.timeToLive = timeToLive;
+        this.watch = watch;
+    }
+
+    public KubernetesClient getClient() {
+        return client;
+    }
+
+    public String getServiceURL(String serviceName, String serviceNamespace, String serviceProtocol, boolean serviceExternal) {
+        return getServiceURL(serviceName, serviceNamespace, serviceProtocol, null, serviceExternal);
+    }
+
+    /**
+     * Returns the URL to access the service
+     *
+     * @throws IllegalArgumentException if the URL cannot be found for the serviceName and namespace
+     */
+    public String getServiceURL(String serviceName, String serviceNamespace, String serviceProtocol, String servicePortName, boolean serviceExternal) {
+        String namespace = Strings.isNotBlank(serviceNamespace) ? serviceNamespace : client.getNamespace();
+        String key = namespace + "/" + serviceName + "/" + servicePortName + "/" + serviceProtocol + "/" + serviceExternal;
+        CachedServiceUrl cached = cache.get(key);
+        long now = System.currentTimeMillis();
+        if (cached != null && cached.getExpires() > now) {
+            return cached.getUrl();
+        }
+        if (watch && Strings.isNotBlank(namespace)) {
+            watchNamespace(namespace);
+        }
+        AtomicLong generation = getGeneration(namespace);
+        long oldGeneration = generation.get();
+        String answer = resolveServiceURL(serviceName, namespace, serviceProtocol, servicePortName, serviceExternal);
+        CachedServiceUrl value = new CachedServiceUrl(namespace, serviceName, answer, now + timeToLive);
+        cache.put(key, value);
+        if (generation.get() != oldGeneration) {
+            // the namespace was invalidated while we were resolving the URL so it may be stale
+            cache.remove(key, value);
+        }
+        return answer;
+    }
+
+    protected String resolveServiceURL(String serviceName, String namespace, String serviceProtocol, String servicePortName, boolean serviceExternal) {
+        return KubernetesHelper.getServiceURL(client, serviceName, namespace, serviceProtocol, servicePortName, serviceExternal);
+    }
+
+    /**
+     * Removes the cached URLs of the given service
+     */
+    public void invalidate(String namespace, String serviceName) {
+        getGeneration(namespace).incrementAndGet();
+        for (Iterator<CachedServiceUrl> iter = cache.values().iterator(); iter.hasNext(); ) {
+            CachedServiceUrl cached = iter.next();
+            if (Objects.equal(namespace, cached.getNamespace()) && (serviceName == null || Objects.equal(serviceName, cached.getServiceName()))) {
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all the cached URLs
+     */
+    public void clear() {
+        for (AtomicLong generation : namespaceGenerations.values()) {
+            generation.incrementAndGet();
+        }
+        cache.clear();
+    }
+
+    /**
+     * Stops watching the services and routes and removes all the cached URLs
+     */
+    public void close() {
+        for (Map.Entry<String, List<Watch>> entry : namespaceWatches.entrySet()) {
+            if (namespaceWatches.remove(entry.getKey(), entry.getValue())) {
+                closeWatches(entry.getValue());
+            }
+        }
+        clear();
+    }
+
+    protected void watchNamespace(final String namespace) {
+        if (namespaceWatches.containsKey(namespace)) {
+            return;
+        }
+        final List<Watch> watches = new CopyOnWriteArrayList<>();
+        if (namespaceWatches.putIfAbsent(namespace, watches) != null) {
+            return;
+        }
+        try {
+            watches.add(client.services().inNamespace(namespace).watch(new Watcher<Service>() {
+                @Override
+                public void eventReceived(Action action, Service service) {
+                    onChange(namespace, service);
+                }
+
+                @Override
+                public void onClose(KubernetesClientException cause) {
+                    onWatchClosed(namespace, watches);
+                }
+            }));
+            if (KubernetesHelper.isOpenShift(client)) {
+                watches.add(client.adapt(OpenShiftClient.class).routes().inNamespace(namespace).watch(new Watcher<Route>() {
+                    @Override
+                    public void eventReceived(Action action, Route route) {
+                        onChange(namespace, route);
+                    }
+
+                    @Override
+                    public void onClose(KubernetesClientException cause) {
+                        onWatchClosed(namespace, watches);
+                    }
+                }));
+            }
+        } catch (Exception e) {
+            // the cached URLs of the namespace will just expire after the time to live
+            LOG.warn("Failed to watch services in namespace " + namespace + " due " + e.getMessage() + ". This exception is ignored.", e);
+        }
+    }
+
+    protected void onChange(String namespace, HasMetadata resource) {
+        if (resource != null) {
+            invalidate(namespace, KubernetesHelper.getName(resource));
+        } else {
+            invalidate(namespace, null);
+        }
+    }
+
+    protected void onWatchClosed(String namespace, List<Watch> watches) {
+        if (namespaceWatches.remove(namespace, watches)) {
+            // we may have missed changes so lets watch again on the next lookup
+            closeWatches(watches);
+            invalidate(namespace, null);
+        }
+    }
+
+    /**
+     * Returns the generation of the namespace which is incremented whenever its cached URLs are invalidated
+     */
+    private AtomicLong getGeneration(String namespace) {
+        String key = namespace != null ? namespace : "";
+        AtomicLong answer = namespaceGenerations.get(key);
+        if (answer == null) {
+            AtomicLong generation = new AtomicLong();
+            answer = namespaceGenerations.putIfAbsent(key, generation);
+            if (answer == null) {
+                answer = generation;
+            }
+        }
+        return answer;
+    }
+
+    private void closeWatches(List<Watch> watches) {
+        for (Watch watch : watches) {
+            try {
+                watch.close();
+            } catch (Exception e) {
+                LOG.debug("Failed to close watch due " + e.getMessage() + ". This exception is ignored.", e);
+            }
+        }
+    }
+
+    private static class CachedServiceUrl {
+        private final String namespace;
+        private final String serviceName;
+        private final String url;
+        private final long expires;
+
+        CachedServiceUrl(String namespace, String serviceName, String url, long expires) {
+            this.namespace = namespace;
+            this.serviceName = serviceName;
+            this.url = url;
+            this.expires = expires;
+        }
+
+        public String getNamespace() {
+            return namespace;
+        }
+
+        public String getServiceName() {
+            return serviceName;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public long getExpires() {
+            return expires;
+        }
+    }
+}
@@ -15,18 +15,18 @@
  */
 package io.fabric8.kubernetes.api;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import io.fabric8.kubernetes.api.model.ObjectMeta;
-import io.fabric8.utils.Objects;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.validation.constraints.NotNull;
-import java.beans.BeanInfo;
-import java.beans.IntrospectionException;
-import java.beans.Introspector;
-import java.beans.PropertyDescriptor;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 
 /**
@@ -36,6 +36,10 @@ public class UserConfigurationCompare {
     private static final transient Logger LOG = LoggerFactory.getLogger(UserConfigurationCompare.class);
 
     protected static final Set<String> ignoredProperties = new HashSet<>(Collections.singletonList("status"));
+    protected static final Set<String> hashedMetadataProperties = new HashSet<>(Arrays.asList("name", "namespace", "labels", "annotations"));
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
 
 
     /**
@@ -47,53 +51,74 @@ public class UserConfigurationCompare {
      * @return true if the configurations are equal.
      */
     public static boolean configEqual(Object entity1, Object entity2) {
-        if (entity1 == entity2) {
-            return true;
-        } else if (entity1 == null || entity2 == null) {
-            return false;
-        } else if (entity1 instanceof Map) {
-            return configEqualMap((Map) entity1, castTo(Map.class, entity2));
-        } else if (entity2 instanceof Map) {
-            return configEqualMap((Map) entity1, castTo(Map.class, entity2));
-        } else if (entity2 instanceof ObjectMeta) {
-            return configEqualObjectMeta((ObjectMeta) entity1, castTo(ObjectMeta.class, entity2));
-        } else if (entity1 instanceof Collection && entity2 instanceof Collection) {
-            return collectionsEqual((Collection) entity1, (Collection) entity2);
-        } else {
-            Class<?> aClass = getCommonDenominator(entity1.getClass(), entity2.getClass());
-            if (aClass != null) {
-                Object castEntity2 = castTo(aClass, entity2);
-                if (castEntity2 == null) {
-                    return false;
-                } else if (aClass.getPackage().getName().startsWith("io.fabric8")) {
-                    return configEqualKubernetesDTO(entity1, entity2, aClass);
+        return new ConfigComparator(ignoredProperties).configEqual(entity1, entity2);
+    }
+
+    /**
+     * Returns a stable hash of the <b>user</b> configuration of an entity which can be stored on the entity
+     * in the {@link Annotations.Apply#CONFIG_HASH} annotation.
+     * <p/>
+     * Like {@link #configEqual(Object, Object)} the status, any metadata other than the name, namespace, labels
+     * and annotations and the hash annotation itself are ignored; the properties are hashed in sorted order so the hash
+     * does not depend on the order in which the entity was defined.
+     */
+    public static String configHash(Object entity) {
+        JsonNode tree = OBJECT_MAPPER.valueToTree(entity);
+        if (tree instanceof ObjectNode) {
+            ObjectNode objectNode = (ObjectNode) tree;
+            for (String name : ignoredProperties) {
+                objectNode.remove(name);
+            }
+            JsonNode metadata = objectNode.get("metadata");
+            if (metadata instanceof ObjectNode) {
+                ((ObjectNode) metadata).retain(hashedMetadataProperties);
+                JsonNode annotations = metadata.get("annotations");
+                if (annotations instanceof ObjectNode) {
+                    ((ObjectNode) annotations).remove(Annotations.Apply.CONFIG_HASH);
                 }
             }
-            return Objects.equal(entity1, entity2);
         }
-    }
-
-    static <L,R> boolean collectionsEqual(Collection<L> left, Collection<R> right) {
-        return subCollection(left, right) && subCollection(right, left);
-    }
-
-
-    static <L, R> boolean itemExists(L item, Collection<R> collection) {
-        for (R candidate : collection) {
-            if (configEqual(item, candidate)) {
-                return true;
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] bytes = digest.digest(OBJECT_MAPPER.writeValueAsBytes(sortFields(tree)));
+            char[] answer = new char[bytes.length * 2];
+            for (int i = 0; i < bytes.length; i++) {
+                answer[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+                answer[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
             }
+            return new String(answer);
+        } catch (NoSuchAlgorithmException | JsonProcessingException e) {
+            throw new IllegalStateException("Failed to hash the configuration of " + entity + ". " + e, e);
         }
-        return false;
     }
 
-    static <L, R> boolean subCollection(Collection<L> left, Collection<R> right) {
-        for (L candidate : left) {
-            if (!itemExists(candidate, right)) {
-                return false;
+    private static JsonNode sortFields(JsonNode node) {
+        if (node instanceof ObjectNode) {
+            ObjectNode answer = OBJECT_MAPPER.createObjectNode();
+            Iterator<String> iter = node.fieldNames();
+            SortedSet<String> names = new TreeSet<>();
+            while (iter.hasNext()) {
+                names.add(iter.next());
+            }
+            for (String name : names) {
+                answer.set(name, sortFields(node.get(name)));
+            }
+            return answer;
+        } else if (node instanceof ArrayNode) {
+            ArrayNode answer = OBJECT_MAPPER.createArrayNode();
+            for (JsonNode child : node) {
+                answer.add(sortFields(child));
             }
+            return answer;
         }
-        return true;
+        return node;
+    }
+
+    /**
+     * Returns true if both collections contain the same items with the same number of occurrences in any order
+     */
+    static <L,R> boolean collectionsEqual(Collection<L> left, Collection<R> right) {
+        return new ConfigComparator(ignoredProperties).collectionsEqual(left, right);
     }
 
     static Class getCommonDenominator(Class left, Class right) {
@@ -115,56 +140,11 @@ public class UserConfigurationCompare {
      * This method will ignore properties {@link #ignoredProperties} such as status or timestamp properties
      */
     protected static boolean configEqualKubernetesDTO(@NotNull Object entity1, @NotNull Object entity2, @NotNull Class<?> clazz) {
-        // lets iterate through the objects making sure we've not
-        BeanInfo beanInfo = null;
-        try {
-            beanInfo = Introspector.getBeanInfo(clazz);
-        } catch (IntrospectionException e) {
-            LOG.warn("Failed to get beanInfo for " + clazz.getName() + ". " + e, e);
-            return false;
-        }
-        try {
-            PropertyDescriptor[] propertyDescriptors = beanInfo.getPropertyDescriptors();
-            for (PropertyDescriptor propertyDescriptor : propertyDescriptors) {
-                String name = propertyDescriptor.getName();
-                if (ignoredProperties.contains(name)) {
-                    continue;
-                }
-                Method readMethod = propertyDescriptor.getReadMethod();
-                if (readMethod != null) {
-                    Object value1 = invokeMethod(entity1, readMethod);
-                    Object value2 = invokeMethod(entity2, readMethod);
-                    if (!configEqual(value1, value2)) {
-                        return false;
-                    }
-                }
-            }
-            return true;
-        } catch (Exception e) {
-            return false;
-        }
-    }
-
-    protected static Object invokeMethod(@NotNull Object entity, Method readMethod) throws InvocationTargetException, IllegalAccessException {
-        try {
-            return readMethod.invoke(entity);
-        } catch (Exception e) {
-            LOG.warn("Failed to invoke method " + readMethod + " on " + entity + ". " + e, e);
-            throw e;
-        }
+        return new ConfigComparator(ignoredProperties).configEqualKubernetesDTO(entity1, entity2, clazz);
     }
 
     protected static boolean configEqualObjectMeta(ObjectMeta entity1, ObjectMeta entity2) {
-        if (entity1 == entity2) {
-            return true;
-        } else if (entity1 == null || entity2 == null) {
-            return false;
-        }
-        // TODO should we ignore annotations?
-        return Objects.equal(entity1.getName(), entity2.getName()) &&
-                Objects.equal(entity1.getNamespace(), entity2.getNamespace()) &&
-                configEqualMap(entity1.getLabels(), entity2.getLabels()) &&
-                configEqualMap(entity1.getAnnotations(), entity2.getAnnotations());
+        return new ConfigComparator(ignoredProperties).configEqualObjectMeta(entity1, entity2);
     }
 
     protected static <T> T castTo(Class<T> clazz, Object entity) {
@@ -179,26 +159,7 @@ public class UserConfigurationCompare {
     }
 
     protected static boolean configEqualMap(Map entity1, Map entity2) {
-        if (entity1 == entity2) {
-            return true;
-        } else if (entity1 == null || entity2 == null) {
-            return false;
-        }
-        int size1 = size(entity1);
-        int size2 = size(entity2);
-        if (size1 != size2) {
-            return false;
-        }
-        Set<Map.Entry> entries = entity1.entrySet();
-        for (Map.Entry entry : entries) {
-            Object key = entry.getKey();
-            Object value = entry.getValue();
-            Object value2 = entity2.get(key);
-            if (!configEqual(value, value2)) {
-                return false;
-            }
-        }
-        return true;
+        return new ConfigComparator(ignoredProperties).configEqualMap(entity1, entity2);
     }
 
     protected static boolean configEqualList(List v1, List v2) {
@@ -16,6 +16,11 @@
 package io.fabric8.kubernetes.api.builds;
 
 
+import io.fabric8.kubernetes.api.KubernetesHelper;
+import io.fabric8.kubernetes.api.model.ListMeta;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
 import io.fabric8.openshift.api.model.Build;
 import io.fabric8.openshift.api.model.BuildList;
 import io.fabric8.openshift.client.OpenShiftClient;
@@ -23,22 +28,47 @@ import io.fabric8.utils.Strings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 
+/**
+ * Notifies a {@link BuildListener} when builds finish, either by polling the builds via {@link #schedule(long)}
+ * or by watching them via {@link #watch()}.
+ * <p/>
+ * The UIDs of the finished builds are remembered so that each build is only notified once; at most
+ * {@link #getMaxSeenBuildIds()} UIDs are kept, evicting the least recently seen ones.
+ */
 public class BuildWatcher {
     private static final transient Logger LOG = LoggerFactory.getLogger(BuildWatcher.class);
 
+    public static final int DEFAULT_MAX_SEEN_BUILD_IDS = 10000;
+
     private final OpenShiftClient client;
     private final BuildListener buildListener;
     private final String namespace;
     private final String fabric8ConsoleLink;
-    private boolean loading = true;
-    private Set<String> seenBuildIds = Collections.<String>synchronizedSet(new HashSet<String>());
+    private volatile boolean loading = true;
+    private volatile int maxSeenBuildIds = DEFAULT_MAX_SEEN_BUILD_IDS;
+    private final Set<String> seenBuildIds = Collections.synchronizedSet(Collections.newSetFromMap(new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > maxSeenBuildIds;
+        }
+    }));
+    private long initialReconnectDelay = 1000;
+    private long maxReconnectDelay = 60000;
+    private Timer reconnectTimer;
+    private Watch watch;
+    private String resourceVersion;
+    private int reconnectAttempts;
+    private int watchGeneration;
+    private boolean watching;
 
     public BuildWatcher(OpenShiftClient client, BuildListener buildListener, String namespace, String fabric8ConsoleLink) {
         this.client = client;
@@ -66,7 +96,7 @@ public class BuildWatcher {
 
     public void poll() {
         boolean foundBuild = false;
-        BuildList buildList = client.builds().inNamespace(namespace).list();
+        BuildList buildList = listBuilds();
         if (buildList != null) {
             List<Build> items = buildList.getItems();
             if (items != null) {
@@ -81,7 +111,207 @@ public class BuildWatcher {
         }
     }
 
+    /**
+     * Lists the builds once and then watches the builds, so that the listener is notified as soon as a build
+     * finishes. If the watch is closed it is reopened from the last resource version seen with an exponential
+     * backoff between {@link #getInitialReconnectDelay()} and {@link #getMaxReconnectDelay()}.
+     */
+    public void watch() {
+        synchronized (this) {
+            if (watching) {
+                return;
+            }
+            watching = true;
+            reconnectTimer = new Timer("BuildWatcher-" + namespace, true);
+        }
+        connect();
+    }
+
+    /**
+     * Stops watching the builds
+     */
+    public synchronized void close() {
+        watching = false;
+        closeWatch();
+        if (reconnectTimer != null) {
+            reconnectTimer.cancel();
+            reconnectTimer = null;
+        }
+    }
+
+    protected void connect() {
+        notifyBuildsFinished(connectWatch());
+    }
+
+    /**
+     * Opens the watch, listing the builds first if there is no resource version to watch from.
+     * The finished builds are returned so that the listener is notified once the lock is released.
+     */
+    private synchronized List<BuildFinishedEvent> connectWatch() {
+        List<BuildFinishedEvent> events = new ArrayList<>();
+        if (!watching) {
+            return events;
+        }
+        try {
+            if (resourceVersion == null) {
+                BuildList buildList = listBuilds();
+                List<Build> items = buildList != null ? buildList.getItems() : null;
+                if (items != null) {
+                    for (Build build : items) {
+                        BuildFinishedEvent event = createBuildFinishedEvent(build);
+                        if (event != null) {
+                            events.add(event);
+                        }
+                    }
+                }
+                loading = false;
+                ListMeta listMeta = buildList != null ? buildList.getMetadata() : null;
+                resourceVersion = listMeta != null ? listMeta.getResourceVersion() : null;
+            }
+            final int generation = ++watchGeneration;
+            watch = watchBuilds(resourceVersion, new Watcher<Build>() {
+                @Override
+                public void eventReceived(Action action, Build build) {
+                    onBuildEvent(generation, action, build);
+                }
+
+                @Override
+                public void onClose(KubernetesClientException cause) {
+                    onWatchClosed(generation, cause);
+                }
+            });
+        } catch (KubernetesClientException e) {
+            if (e.getCode() == 410) {
+                // the resource version is too old so lets list the builds again
+                resourceVersion = null;
+            }
+            LOG.warn("Failed to watch builds in namespace " + namespace + " due " + e.getMessage() + ". This exception is ignored.", e);
+            scheduleReconnect();
+        } catch (Exception e) {
+            LOG.warn("Failed to watch builds in namespace " + namespace + " due " + e.getMessage() + ". This exception is ignored.", e);
+            scheduleReconnect();
+        }
+        return events;
+    }
+
+    protected void onBuildEvent(int generation, Watcher.Action action, Build build) {
+        BuildFinishedEvent event = updateFromBuildEvent(generation, action, build);
+        if (event != null) {
+            notifyBuildsFinished(Collections.singletonList(event));
+        }
+    }
+
+    /**
+     * Updates the watch state from a build event, returning the event to notify once the lock is released
+     * if the build has just finished.
+     */
+    private synchronized BuildFinishedEvent updateFromBuildEvent(int generation, Watcher.Action action, Build build) {
+        if (generation != watchGeneration) {
+            return null;
+        }
+        if (action == Watcher.Action.ERROR) {
+            // lets list the builds again in case we missed any events
+            resourceVersion = null;
+            closeWatch();
+            scheduleReconnect();
+            return null;
+        }
+        // the watch is only known to work once it delivers an event, so lets not reset the backoff before then
+        reconnectAttempts = 0;
+        if (build == null) {
+            return null;
+        }
+        String version = KubernetesHelper.getResourceVersion(build);
+        if (version != null) {
+            resourceVersion = version;
+        }
+        if (action == Watcher.Action.DELETED) {
+            return null;
+        }
+        return createBuildFinishedEvent(build);
+    }
+
+    protected synchronized void onWatchClosed(int generation, KubernetesClientException cause) {
+        if (generation == watchGeneration && watching) {
+            LOG.debug("Watch of builds in namespace " + namespace + " closed" + (cause != null ? " due " + cause.getMessage() : ""));
+            watch = null;
+            scheduleReconnect();
+        }
+    }
+
+    protected void scheduleReconnect() {
+        if (!watching || reconnectTimer == null) {
+            return;
+        }
+        reconnectTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                connect();
+            }
+        }, nextReconnectDelay());
+    }
+
+    /**
+     * Returns the delay before reconnecting, which doubles with each attempt since the last watch event was received
+     */
+    protected synchronized long nextReconnectDelay() {
+        long delay = initialReconnectDelay << Math.min(reconnectAttempts, 16);
+        if (delay <= 0 || delay > maxReconnectDelay) {
+            delay = maxReconnectDelay;
+        }
+        reconnectAttempts++;
+        return delay;
+    }
+
+    protected BuildList listBuilds() {
+        return client.builds().inNamespace(namespace).list();
+    }
+
+    protected Watch watchBuilds(String resourceVersion, Watcher<Build> watcher) {
+        return client.builds().inNamespace(namespace).watch(resourceVersion, watcher);
+    }
+
+    private void closeWatch() {
+        Watch oldWatch = watch;
+        watch = null;
+        watchGeneration++;
+        if (oldWatch != null) {
+            try {
+                oldWatch.close();
+            } catch (Exception e) {
+                LOG.debug("Failed to close watch of builds due " + e.getMessage() + ". This exception is ignored.", e);
+            }
+        }
+    }
+
     protected void buildPolled(Build build) {
+        BuildFinishedEvent event = createBuildFinishedEvent(build);
+        if (event != null) {
+            buildListener.onBuildFinished(event);
+        }
+    }
+
+    /**
+     * Notifies the listener of builds found while watching, which happens without holding the lock so
+     * that a slow listener does not block the watch events or {@link #close()}
+     */
+    private void notifyBuildsFinished(List<BuildFinishedEvent> events) {
+        for (BuildFinishedEvent event : events) {
+            try {
+                buildListener.onBuildFinished(event);
+            } catch (Exception e) {
+                LOG.warn("Failed to notify finished build " + event.getUid() + " due " + e.getMessage() + ". This exception is ignored.", e);
+            }
+        }
+    }
+
+    /**
+     * Returns the event to notify if the build has finished and has not been seen before, otherwise null
+     */
+    private BuildFinishedEvent createBuildFinishedEvent(Build build) {
+        if (build.getStatus() == null) {
+            return null;
+        }
         String status = build.getStatus().getPhase();
         if (status != null) {
             if (Builds.isFinished(status)) {
@@ -92,12 +322,40 @@ public class BuildWatcher {
                     if (seenBuildIds.add(uid)) {
                         String name = Builds.getName(build);
                         String buildLink = Builds.createConsoleBuildLink(this.fabric8ConsoleLink, name);
-                        BuildFinishedEvent event = new BuildFinishedEvent(uid, build, loading, buildLink);
-                        buildListener.onBuildFinished(event);
+                        return new BuildFinishedEvent(uid, build, loading, buildLink);
                     }
                 }
             }
         }
+        return null;
+    }
+
+    public int getMaxSeenBuildIds() {
+        return maxSeenBuildIds;
+    }
+
+    /**
+     * Sets the maximum number of finished build UIDs which are remembered so that they are not notified again.
+     * When polling this should be more than the number of builds kept in the namespace.
+     */
+    public void setMaxSeenBuildIds(int maxSeenBuildIds) {
+        this.maxSeenBuildIds = maxSeenBuildIds;
+    }
+
+    public long getInitialReconnectDelay() {
+        return initialReconnectDelay;
+    }
+
+    public void setInitialReconnectDelay(long initialReconnectDelay) {
+        this.initialReconnectDelay = initialReconnectDelay;
+    }
+
+    public long getMaxReconnectDelay() {
+        return maxReconnectDelay;
+    }
+
+    public void setMaxReconnectDelay(long maxReconnectDelay) {
+        this.maxReconnectDelay = maxReconnectDelay;
     }
 
     /**
@@ -0,0 +1,198 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.api.cache;
+
+import io.fabric8.kubernetes.api.KubernetesHelper;
+import io.fabric8.kubernetes.api.model.ListMeta;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodList;
+import io.fabric8.kubernetes.api.model.ReplicationController;
+import io.fabric8.kubernetes.api.model.ReplicationControllerList;
+import io.fabric8.kubernetes.api.model.ReplicationControllerSpec;
+import io.fabric8.kubernetes.api.model.Service;
+import io.fabric8.kubernetes.api.model.ServiceList;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+import io.fabric8.utils.Strings;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A thread safe cache of the pods, services and replication controllers of the namespaces which can be shared
+ * by clients which repeatedly look up resources, rather than listing them from the server each time via the
+ * methods of {@link KubernetesHelper}.
+ * <p/>
+ * Each kind and namespace is listed on first use and then kept up to date by a watch; see {@link ResourceCache}
+ * for the resync policy.
+ */
+public class KubernetesCache {
+    private final KubernetesClient kubernetes;
+    private final long resyncPeriod;
+    private final ConcurrentMap<String, ResourceCache<Pod>> podCaches = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ResourceCache<Service>> serviceCaches = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ResourceCache<ReplicationController>> replicationControllerCaches = new ConcurrentHashMap<>();
+
+    public KubernetesCache(KubernetesClient kubernetes) {
+        this(kubernetes, ResourceCache.DEFAULT_RESYNC_PERIOD);
+    }
+
+    public KubernetesCache(KubernetesClient kubernetes, long resyncPeriod) {
+        this.kubernetes = kubernetes;
+        this.resyncPeriod = resyncPeriod;
+    }
+
+    public ResourceCache<Pod> pods(final String namespace) {
+        String key = getNamespaceKey(namespace);
+        ResourceCache<Pod> answer = podCaches.get(key);
+        if (answer == null) {
+            answer = new ResourceCache<Pod>("Pod", namespace, resyncPeriod) {
+                @Override
+                protected ListMeta list(List<Pod> items) {
+                    PodList list = kubernetes.pods().inNamespace(namespace).list();
+                    items.addAll(list.getItems());
+                    return list.getMetadata();
+                }
+
+                @Override
+                protected Watch watch(String resourceVersion, Watcher<Pod> watcher) {
+                    return kubernetes.pods().inNamespace(namespace).watch(resourceVersion, watcher);
+                }
+            };
+            ResourceCache<Pod> old = podCaches.putIfAbsent(key, answer);
+            if (old != null) {
+                answer = old;
+            }
+        }
+        return answer;
+    }
+
+    public ResourceCache<Service> services(final String namespace) {
+        String key = getNamespaceKey(namespace);
+        ResourceCache<Service> answer = serviceCaches.get(key);
+        if (answer == null) {
+            answer = new ResourceCache<Service>("Service", namespace, resyncPeriod) {
+                @Override
+                protected ListMeta list(List<Service> items) {
+                    ServiceList list = kubernetes.services().inNamespace(namespace).list();
+                    items.addAll(list.getItems());
+                    return list.getMetadata();
+                }
+
+                @Override
+                protected Watch watch(String resourceVersion, Watcher<Service> watcher) {
+                    return kubernetes.services().inNamespace(namespace).watch(resourceVersion, watcher);
+                }
+            };
+            ResourceCache<Service> old = serviceCaches.putIfAbsent(key, answer);
+            if (old != null) {
+                answer = old;
+            }
+        }
+        return answer;
+    }
+
+    public ResourceCache<ReplicationController> replicationControllers(final String namespace) {
+        String key = getNamespaceKey(namespace);
+        ResourceCache<ReplicationController> answer = replicationControllerCaches.get(key);
+        if (answer == null) {
+            answer = new ResourceCache<ReplicationController>("ReplicationController", namespace, resyncPeriod) {
+                @Override
+                protected ListMeta list(List<ReplicationController> items) {
+                    ReplicationControllerList list = kubernetes.replicationControllers().inNamespace(namespace).list();
+                    items.addAll(list.getItems());
+                    return list.getMetadata();
+                }
+
+                @Override
+                protected Watch watch(String resourceVersion, Watcher<ReplicationController> watcher) {
+                    return kubernetes.replicationControllers().inNamespace(namespace).watch(resourceVersion, watcher);
+                }
+            };
+            ResourceCache<ReplicationController> old = replicationControllerCaches.putIfAbsent(key, answer);
+            if (old != null) {
+                answer = old;
+            }
+        }
+        return answer;
+    }
+
+    public Map<String, Pod> getPodMap(String namespace) {
+        return pods(namespace).getMap();
+    }
+
+    /**
+     * Returns the pods matching the given label selector such as <code>"component=broker,provider=fabric8"</code>
+     * indexed by name
+     */
+    public Map<String, Pod> getSelectedPodMap(String namespace, String selector) {
+        Map<String, Pod> answer = new LinkedHashMap<>();
+        for (Pod pod : pods(namespace).select(KubernetesHelper.toLabelsMap(selector))) {
+            answer.put(KubernetesHelper.getName(pod), pod);
+        }
+        return answer;
+    }
+
+    public Map<String, Service> getServiceMap(String namespace) {
+        return services(namespace).getMap();
+    }
+
+    public Map<String, ReplicationController> getReplicationControllerMap(String namespace) {
+        return replicationControllers(namespace).getMap();
+    }
+
+    /**
+     * Returns the pods in the namespace of the service which are selected by the service
+     */
+    public List<Pod> getPodsForService(Service service) {
+        return pods(KubernetesHelper.getNamespace(service)).select(KubernetesHelper.getSelector(service));
+    }
+
+    /**
+     * Returns the pods in the namespace of the replication controller which are selected by the replication controller
+     */
+    public List<Pod> getPodsForReplicationController(ReplicationController replicationController) {
+        ReplicationControllerSpec spec = replicationController.getSpec();
+        if (spec == null) {
+            return new ArrayList<>();
+        }
+        return pods(KubernetesHelper.getNamespace(replicationController)).select(spec.getSelector());
+    }
+
+    /**
+     * Stops watching all the resources
+     */
+    public void close() {
+        for (ResourceCache<?> cache : podCaches.values()) {
+            cache.close();
+        }
+        for (ResourceCache<?> cache : serviceCaches.values()) {
+            cache.close();
+        }
+        for (ResourceCache<?> cache : replicationControllerCaches.values()) {
+            cache.close();
+        }
+    }
+
+    protected static String getNamespaceKey(String namespace) {
+        return Strings.isNotBlank(namespace) ? namespace : "";
+    }
+}
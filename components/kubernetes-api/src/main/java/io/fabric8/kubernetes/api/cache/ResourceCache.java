@@ -0,0 +1,340 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.api.cache;
+
+import io.fabric8.kubernetes.api.KubernetesHelper;
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.ListMeta;
+import io.fabric8.kubernetes.api.model.ObjectMeta;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+import io.fabric8.utils.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A local cache of the resources of one kind in a namespace which is listed once from the server and then kept up
+ * to date by watching the resources.
+ * <p/>
+ * The labels of the resources are kept in an inverted index so that label selector queries only visit the matching
+ * resources. The cache is listed again on the next query if the watch is closed or after the resync period,
+ * in case any watch events were missed.
+ * <p/>
+ * The returned resources are the cached instances, shared by all the callers, so they must be treated as read only.
+ * The label index keeps its own copy of the labels of each resource, so a caller modifying a returned resource
+ * can't corrupt the index.
+ */
+public abstract class ResourceCache<T extends HasMetadata> {
+    private static final transient Logger LOG = LoggerFactory.getLogger(ResourceCache.class);
+
+    public static final long DEFAULT_RESYNC_PERIOD = 5 * 60 * 1000L;
+
+    private final String kind;
+    private final String namespace;
+    private final long resyncPeriod;
+    private final Map<String, T> resources = new LinkedHashMap<>();
+    private final Map<String, Map<String, Set<String>>> labelIndex = new HashMap<>();
+    private final Map<String, Map<String, String>> indexedLabels = new HashMap<>();
+    private Watch watch;
+    private String resourceVersion;
+    private long lastSync;
+    private boolean stale = true;
+    private int generation;
+
+    protected ResourceCache(String kind, String namespace, long resyncPeriod) {
+        this.kind = kind;
+        this.namespace = namespace;
+        this.resyncPeriod = resyncPeriod;
+    }
+
+    @Override
+    public String toString() {
+        return "ResourceCache{" +
+                "kind='" + kind + '\'' +
+                ", namespace='" + namespace + '\'' +
+                ", resourceVersion='" + resourceVersion + '\'' +
+                '}';
+    }
+
+    /**
+     * Lists the resources from the server into the given list, returning the metadata of the list
+     */
+    protected abstract ListMeta list(List<T> items);
+
+    /**
+     * Watches the resources on the server for changes after the given resource version
+     */
+    protected abstract Watch watch(String resourceVersion, Watcher<T> watcher);
+
+    /**
+     * Returns the resource with the given name or null if there is no such resource
+     */
+    public synchronized T get(String name) {
+        sync();
+        return resources.get(name);
+    }
+
+    /**
+     * Returns all the resources
+     */
+    public synchronized List<T> list() {
+        sync();
+        return new ArrayList<>(resources.values());
+    }
+
+    /**
+     * Returns a map of the resources indexed by name
+     */
+    public synchronized Map<String, T> getMap() {
+        sync();
+        return new LinkedHashMap<>(resources);
+    }
+
+    /**
+     * Returns the resources whose labels contain all of the given labels; an empty or null selector matches
+     * all resources
+     */
+    public synchronized List<T> select(Map<String, String> selector) {
+        sync();
+        if (selector == null || selector.isEmpty()) {
+            return new ArrayList<>(resources.values());
+        }
+        List<Set<String>> postings = new ArrayList<>(selector.size());
+        Set<String> smallest = null;
+        for (Map.Entry<String, String> entry : selector.entrySet()) {
+            Map<String, Set<String>> values = labelIndex.get(entry.getKey());
+            Set<String> names = values != null ? values.get(entry.getValue()) : null;
+            if (names == null) {
+                return new ArrayList<>();
+            }
+            postings.add(names);
+            if (smallest == null || names.size() < smallest.size()) {
+                smallest = names;
+            }
+        }
+        List<T> answer = new ArrayList<>(smallest.size());
+        for (String name : smallest) {
+            boolean matches = true;
+            for (Set<String> names : postings) {
+                if (names != smallest && !names.contains(name)) {
+                    matches = false;
+                    break;
+                }
+            }
+            if (matches) {
+                answer.add(resources.get(name));
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Returns true if the next query will list the resources from the server again
+     */
+    public synchronized boolean isStale() {
+        return stale || System.currentTimeMillis() - lastSync > resyncPeriod;
+    }
+
+    /**
+     * Forces the resources to be listed from the server again on the next query
+     */
+    public synchronized void invalidate() {
+        stale = true;
+    }
+
+    public synchronized String getResourceVersion() {
+        return resourceVersion;
+    }
+
+    public String getKind() {
+        return kind;
+    }
+
+    public String getNamespace() {
+        return namespace;
+    }
+
+    /**
+     * Stops watching the resources
+     */
+    public synchronized void close() {
+        closeWatch();
+        stale = true;
+    }
+
+    protected void sync() {
+        if (!isStale()) {
+            return;
+        }
+        closeWatch();
+        List<T> items = new ArrayList<>();
+        ListMeta listMeta = list(items);
+        resources.clear();
+        labelIndex.clear();
+        indexedLabels.clear();
+        for (T item : items) {
+            String name = KubernetesHelper.getName(item);
+            if (Strings.isNotBlank(name)) {
+                resources.put(name, item);
+                indexLabels(name, item);
+            }
+        }
+        resourceVersion = listMeta != null ? listMeta.getResourceVersion() : null;
+        lastSync = System.currentTimeMillis();
+        stale = false;
+        final int watchGeneration = ++generation;
+        try {
+            watch = watch(resourceVersion, new Watcher<T>() {
+                @Override
+                public void eventReceived(Action action, T resource) {
+                    onEvent(watchGeneration, action, resource);
+                }
+
+                @Override
+                public void onClose(KubernetesClientException cause) {
+                    onWatchClosed(watchGeneration, cause);
+                }
+            });
+        } catch (Exception e) {
+            // without a watch the resources are listed again on every query
+            LOG.warn("Failed to watch " + kind + " in namespace " + namespace + " due " + e.getMessage() + ". This exception is ignored.", e);
+            stale = true;
+        }
+    }
+
+    protected synchronized void onEvent(int watchGeneration, Watcher.Action action, T resource) {
+        if (watchGeneration != generation || resource == null) {
+            return;
+        }
+        if (action == Watcher.Action.ERROR) {
+            stale = true;
+            return;
+        }
+        String name = KubernetesHelper.getName(resource);
+        if (Strings.isNullOrBlank(name)) {
+            return;
+        }
+        String version = KubernetesHelper.getResourceVersion(resource);
+        T old = resources.get(name);
+        if (old != null && isOlder(version, KubernetesHelper.getResourceVersion(old))) {
+            return;
+        }
+        if (old != null) {
+            unindexLabels(name);
+        }
+        if (action == Watcher.Action.DELETED) {
+            resources.remove(name);
+        } else {
+            resources.put(name, resource);
+            indexLabels(name, resource);
+        }
+        if (version != null) {
+            resourceVersion = version;
+        }
+    }
+
+    protected synchronized void onWatchClosed(int watchGeneration, KubernetesClientException cause) {
+        if (watchGeneration == generation) {
+            LOG.debug("Watch of " + kind + " in namespace " + namespace + " closed" + (cause != null ? " due " + cause.getMessage() : ""));
+            watch = null;
+            stale = true;
+        }
+    }
+
+    /**
+     * Returns true if the resource version is known to be older than the current version. Resource versions are
+     * opaque so only numeric versions are compared
+     */
+    protected static boolean isOlder(String version, String currentVersion) {
+        if (version == null || currentVersion == null) {
+            return false;
+        }
+        try {
+            return Long.parseLong(version) < Long.parseLong(currentVersion);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private void closeWatch() {
+        Watch oldWatch = watch;
+        watch = null;
+        generation++;
+        if (oldWatch != null) {
+            try {
+                oldWatch.close();
+            } catch (Exception e) {
+                LOG.debug("Failed to close watch of " + kind + " in namespace " + namespace + " due " + e.getMessage() + ". This exception is ignored.", e);
+            }
+        }
+    }
+
+    private void indexLabels(String name, T resource) {
+        Map<String, String> labels = new HashMap<>(getLabels(resource));
+        indexedLabels.put(name, labels);
+        for (Map.Entry<String, String> entry : labels.entrySet()) {
+            Map<String, Set<String>> values = labelIndex.get(entry.getKey());
+            if (values == null) {
+                values = new HashMap<>();
+                labelIndex.put(entry.getKey(), values);
+            }
+            Set<String> names = values.get(entry.getValue());
+            if (names == null) {
+                names = new HashSet<>();
+                values.put(entry.getValue(), names);
+            }
+            names.add(name);
+        }
+    }
+
+    private void unindexLabels(String name) {
+        Map<String, String> labels = indexedLabels.remove(name);
+        if (labels == null) {
+            return;
+        }
+        for (Map.Entry<String, String> entry : labels.entrySet()) {
+            Map<String, Set<String>> values = labelIndex.get(entry.getKey());
+            if (values != null) {
+                Set<String> names = values.get(entry.getValue());
+                if (names != null) {
+                    names.remove(name);
+                    if (names.isEmpty()) {
+                        values.remove(entry.getValue());
+                        if (values.isEmpty()) {
+                            labelIndex.remove(entry.getKey());
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static Map<String, String> getLabels(HasMetadata resource) {
+        ObjectMeta metadata = resource.getMetadata();
+        Map<String, String> labels = metadata != null ? metadata.getLabels() : null;
+        return labels != null ? labels : Collections.<String, String>emptyMap();
+    }
+}
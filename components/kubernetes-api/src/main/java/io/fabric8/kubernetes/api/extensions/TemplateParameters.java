@@ -0,0 +1,312 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.api.extensions;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import io.fabric8.openshift.api.model.Parameter;
+import io.fabric8.utils.Strings;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The resolved parameters of a template, which substitutes the <code>${NAME}</code> expressions
+ * in a tree of JSON nodes in a single pass.
+ * <p/>
+ * Parameter values may refer to other parameters, these are resolved up front (failing on cycles).
+ * Blank parameters with <code>generate: expression</code> get a random value from their <code>from</code>
+ * expression, such as <code>[a-zA-Z0-9]{16}</code>, which is how OpenShift generates passwords.
+ */
+public class TemplateParameters {
+    private static final String GENERATE_EXPRESSION = "expression";
+    private static final int MAX_GENERATED_LENGTH = 1024;
+    private static final Random RANDOM = new SecureRandom();
+
+    private final Map<String, String> values = new HashMap<>();
+    private final Map<String, String> substitutions = new HashMap<>();
+
+    public TemplateParameters(List<Parameter> parameters, boolean failOnMissingParameterValue) {
+        Map<String, String> rawValues = new LinkedHashMap<>();
+        for (Parameter parameter : parameters) {
+            String name = parameter.getName();
+            String value = parameter.getValue();
+            if (Strings.isNullOrBlank(value) && GENERATE_EXPRESSION.equals(parameter.getGenerate())) {
+                value = generateValue(parameter.getFrom());
+            }
+            if (Strings.isNullOrBlank(value)) {
+                if (failOnMissingParameterValue) {
+                    throw new IllegalArgumentException("No value available for parameter name: " + name);
+                } else {
+                    value = "";
+                }
+            }
+            rawValues.put(name, value);
+        }
+        for (String name : rawValues.keySet()) {
+            resolve(name, rawValues, new ArrayList<String>());
+        }
+    }
+
+    /**
+     * @return the resolved value of the parameter or null if there is no such parameter
+     */
+    public String getValue(String name) {
+        return values.get(name);
+    }
+
+    public Map<String, String> getValues() {
+        return values;
+    }
+
+    /**
+     * Replaces the parameter expressions in the given text; any expressions which are not parameters are left as they are
+     */
+    public String substitute(String text) {
+        if (text == null || text.indexOf("${") < 0) {
+            return text;
+        }
+        // the same labels and values tend to turn up over and over again in a template
+        String answer = substitutions.get(text);
+        if (answer == null) {
+            answer = replace(text, values);
+            substitutions.put(text, answer);
+        }
+        return answer;
+    }
+
+    /**
+     * Replaces the parameter expressions in all the field names and text values of the tree, returning the new root
+     */
+    public JsonNode substitute(JsonNode node) {
+        if (node == null) {
+            return null;
+        }
+        if (node.isTextual()) {
+            String text = node.textValue();
+            String answer = substitute(text);
+            return answer == text ? node : TextNode.valueOf(answer);
+        } else if (node.isArray()) {
+            ArrayNode array = (ArrayNode) node;
+            for (int i = 0, size = array.size(); i < size; i++) {
+                JsonNode child = array.get(i);
+                JsonNode answer = substitute(child);
+                if (answer != child) {
+                    array.set(i, answer);
+                }
+            }
+        } else if (node.isObject()) {
+            ObjectNode object = (ObjectNode) node;
+            boolean renamed = false;
+            Iterator<Map.Entry<String, JsonNode>> iter = object.fields();
+            while (iter.hasNext()) {
+                Map.Entry<String, JsonNode> entry = iter.next();
+                JsonNode child = entry.getValue();
+                JsonNode answer = substitute(child);
+                if (answer != child) {
+                    entry.setValue(answer);
+                }
+                renamed |= entry.getKey().contains("${");
+            }
+            if (renamed) {
+                // rebuild the object to keep the order of the fields
+                Map<String, JsonNode> fields = new LinkedHashMap<>();
+                Iterator<Map.Entry<String, JsonNode>> fieldIter = object.fields();
+                while (fieldIter.hasNext()) {
+                    Map.Entry<String, JsonNode> entry = fieldIter.next();
+                    fields.put(substitute(entry.getKey()), entry.getValue());
+                }
+                object.removeAll();
+                object.setAll(fields);
+            }
+        }
+        return node;
+    }
+
+    private String resolve(String name, Map<String, String> rawValues, List<String> path) {
+        String answer = values.get(name);
+        if (answer != null) {
+            return answer;
+        }
+        if (path.contains(name)) {
+            StringBuilder cycle = new StringBuilder();
+            for (String element : path.subList(path.indexOf(name), path.size())) {
+                cycle.append(element).append(" -> ");
+            }
+            throw new IllegalArgumentException("Template parameters refer to each other in a cycle: " + cycle + name);
+        }
+        String value = rawValues.get(name);
+        if (value.indexOf("${") >= 0) {
+            path.add(name);
+            Map<String, String> references = new HashMap<>();
+            for (String reference : findReferences(value)) {
+                if (rawValues.containsKey(reference)) {
+                    references.put(reference, resolve(reference, rawValues, path));
+                }
+            }
+            path.remove(path.size() - 1);
+            value = replace(value, references);
+        }
+        values.put(name, value);
+        return value;
+    }
+
+    private static List<String> findReferences(String text) {
+        List<String> answer = new ArrayList<>();
+        int idx = text.indexOf("${");
+        while (idx >= 0) {
+            int end = text.indexOf('}', idx + 2);
+            if (end < 0) {
+                break;
+            }
+            answer.add(text.substring(idx + 2, end));
+            idx = text.indexOf("${", end + 1);
+        }
+        return answer;
+    }
+
+    /**
+     * Replaces the expressions in one pass over the text, so the replaced values are never scanned again
+     */
+    private static String replace(String text, Map<String, String> replacements) {
+        StringBuilder buffer = null;
+        int last = 0;
+        int idx = text.indexOf("${");
+        while (idx >= 0) {
+            int end = text.indexOf('}', idx + 2);
+            if (end < 0) {
+                break;
+            }
+            String value = replacements.get(text.substring(idx + 2, end));
+            if (value != null) {
+                if (buffer == null) {
+                    buffer = new StringBuilder(text.length() + 32);
+                }
+                buffer.append(text, last, idx).append(value);
+                last = end + 1;
+                idx = text.indexOf("${", last);
+            } else {
+                idx = text.indexOf("${", idx + 2);
+            }
+        }
+        if (buffer == null) {
+            return text;
+        }
+        buffer.append(text, last, text.length());
+        return buffer.toString();
+    }
+
+    /**
+     * Generates a value from an OpenShift style expression: literal characters, character classes
+     * such as <code>[a-zA-Z0-9_]</code>, <code>\w</code>, <code>\d</code>, <code>\a</code> (letters) and
+     * <code>\A</code> (symbols), each optionally followed by a <code>{count}</code>
+     */
+    protected static String generateValue(String expression) {
+        if (Strings.isNullOrBlank(expression)) {
+            return null;
+        }
+        StringBuilder answer = new StringBuilder();
+        int i = 0;
+        int length = expression.length();
+        while (i < length) {
+            String characters;
+            char c = expression.charAt(i);
+            if (c == '[') {
+                int end = expression.indexOf(']', i + 1);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Unterminated character class in expression: " + expression);
+                }
+                characters = expandCharacterClass(expression.substring(i + 1, end), expression);
+                i = end + 1;
+            } else if (c == '\\' && i + 1 < length) {
+                characters = expandEscape(expression.charAt(i + 1));
+                i += 2;
+            } else {
+                characters = String.valueOf(c);
+                i++;
+            }
+            int count = 1;
+            if (i < length && expression.charAt(i) == '{') {
+                int end = expression.indexOf('}', i + 1);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Unterminated count in expression: " + expression);
+                }
+                try {
+                    count = Integer.parseInt(expression.substring(i + 1, end).trim());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid count in expression: " + expression);
+                }
+                if (count < 0 || answer.length() + count > MAX_GENERATED_LENGTH) {
+                    throw new IllegalArgumentException("Invalid count in expression: " + expression);
+                }
+                i = end + 1;
+            }
+            for (int j = 0; j < count; j++) {
+                answer.append(characters.charAt(RANDOM.nextInt(characters.length())));
+            }
+        }
+        return answer.toString();
+    }
+
+    private static String expandCharacterClass(String characterClass, String expression) {
+        StringBuilder answer = new StringBuilder();
+        int i = 0;
+        while (i < characterClass.length()) {
+            char c = characterClass.charAt(i);
+            if (c == '\\' && i + 1 < characterClass.length()) {
+                answer.append(expandEscape(characterClass.charAt(i + 1)));
+                i += 2;
+            } else if (i + 2 < characterClass.length() && characterClass.charAt(i + 1) == '-') {
+                int to = characterClass.charAt(i + 2);
+                //loop on an int, as a char would wrap around and never end a range up to Character.MAX_VALUE
+                for (int ch = c; ch <= to; ch++) {
+                    answer.append((char) ch);
+                }
+                i += 3;
+            } else {
+                answer.append(c);
+                i++;
+            }
+        }
+        if (answer.length() == 0) {
+            throw new IllegalArgumentException("Empty character class in expression: " + expression);
+        }
+        return answer.toString();
+    }
+
+    private static String expandEscape(char c) {
+        switch (c) {
+            case 'w':
+                return "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789_";
+            case 'd':
+                return "0123456789";
+            case 'a':
+                return "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
+            case 'A':
+                return "~!@#$%^&*()-_+={}[]\\|<,>.?/\"';:`";
+            default:
+                return String.valueOf(c);
+        }
+    }
+}
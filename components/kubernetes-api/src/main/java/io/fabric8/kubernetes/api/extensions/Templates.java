@@ -15,7 +15,9 @@
  */
 package io.fabric8.kubernetes.api.extensions;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import io.fabric8.kubernetes.api.KubernetesHelper;
 import io.fabric8.kubernetes.api.model.HasMetadata;
 import io.fabric8.kubernetes.api.model.KubernetesList;
@@ -193,31 +195,15 @@ public class Templates {
         }
         List<Parameter> parameters = entity != null ? entity.getParameters() : null;
         if (parameters != null && !parameters.isEmpty()) {
-            String json = "{\"kind\": \"List\", \"apiVersion\": \"" +
-                    KubernetesHelper.defaultApiVersion + "\",\n" +
-                    "  \"items\": " +
-                    KubernetesHelper.toJson(objects) +
-                    " }";
+            TemplateParameters templateParameters = new TemplateParameters(parameters, failOnMissingParameterValue);
 
-            // lets make a few passes in case there's expressions in values
-            for (int i = 0; i < 5; i++) {
-                for (Parameter parameter : parameters) {
-                    String name = parameter.getName();
-                    String regex = "${" + name + "}";
-                    String value = parameter.getValue();
-
-                    // TODO generate random strings for passwords etc!
-                    if (Strings.isNullOrBlank(value)) {
-                        if (failOnMissingParameterValue) {
-                            throw new IllegalArgumentException("No value available for parameter name: " + name);
-                        } else {
-                            value = "";
-                        }
-                    }
-                    json = Strings.replaceAllWithoutRegex(json, regex, value);
-                }
-            }
-            return  OBJECT_MAPPER.readerFor(KubernetesList.class).readValue(json);
+            // substitute the parameters in a single pass over the object tree rather than the JSON text
+            JsonNode items = OBJECT_MAPPER.valueToTree(objects);
+            ObjectNode list = OBJECT_MAPPER.createObjectNode();
+            list.put("kind", "List");
+            list.put("apiVersion", KubernetesHelper.defaultApiVersion);
+            list.set("items", templateParameters.substitute(items));
+            return OBJECT_MAPPER.treeToValue(list, KubernetesList.class);
         } else {
             KubernetesList answer = new KubernetesList();
             answer.setItems(objects);
@@ -0,0 +1,76 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.api;
+
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.NamespaceBuilder;
+import io.fabric8.kubernetes.api.model.ReplicationController;
+import io.fabric8.kubernetes.api.model.ReplicationControllerBuilder;
+import io.fabric8.kubernetes.api.model.Secret;
+import io.fabric8.kubernetes.api.model.SecretBuilder;
+import io.fabric8.kubernetes.api.model.Service;
+import io.fabric8.kubernetes.api.model.ServiceBuilder;
+import io.fabric8.openshift.api.model.Route;
+import io.fabric8.openshift.api.model.RouteBuilder;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ApplyGraphTest {
+
+    @Test
+    public void testEntitiesAreGroupedIntoTiersPerNamespace() throws Exception {
+        Route route = new RouteBuilder().withNewMetadata().withName("cheese").endMetadata().build();
+        ReplicationController rc = new ReplicationControllerBuilder().withNewMetadata().withName("cheese").endMetadata().build();
+        Service service = new ServiceBuilder().withNewMetadata().withName("cheese").endMetadata().build();
+        Secret secret = new SecretBuilder().withNewMetadata().withName("cheese").endMetadata().build();
+        Secret otherSecret = new SecretBuilder().withNewMetadata().withName("beer").withNamespace("other").endMetadata().build();
+        List<HasMetadata> entities = new ArrayList<HasMetadata>(Arrays.asList(route, rc, service, otherSecret, secret,
+                new NamespaceBuilder().withNewMetadata().withName("other").endMetadata().build()));
+
+        ApplyGraph graph = new ApplyGraph(entities, "default");
+
+        assertThat(graph.getNamespaces()).containsExactly("default", "other");
+        assertThat(graph.getEntities("default", 0)).isEmpty();
+        assertThat(graph.getEntities("default", 1)).containsExactly(secret);
+        assertThat(graph.getEntities("default", 2)).containsExactly(service);
+        assertThat(graph.getEntities("default", 3)).containsExactly(rc);
+        assertThat(graph.getEntities("default", 4)).containsExactly(route);
+        assertThat(graph.getEntities("other", 0)).hasSize(1);
+        assertThat(graph.getEntities("other", 1)).containsExactly(otherSecret);
+    }
+
+    @Test
+    public void testEntitiesAreGroupedByTheNamespaceTheyAreAppliedTo() throws Exception {
+        // services and replication controllers are applied to the namespace of the controller whatever their metadata says
+        Service service = new ServiceBuilder().withNewMetadata().withName("cheese").withNamespace("staging").endMetadata().build();
+        ReplicationController rc = new ReplicationControllerBuilder().withNewMetadata().withName("cheese").withNamespace("staging").endMetadata().build();
+        Route route = new RouteBuilder().withNewMetadata().withName("cheese").withNamespace("staging").endMetadata().build();
+
+        ApplyGraph graph = new ApplyGraph(Arrays.<HasMetadata>asList(service, rc, route), "default");
+
+        assertThat(graph.getNamespaces()).containsExactly("default", "staging");
+        assertThat(graph.getEntities("default", 2)).containsExactly(service);
+        assertThat(graph.getEntities("default", 3)).containsExactly(rc);
+        assertThat(graph.getEntities("staging", 4)).containsExactly(route);
+        assertThat(ApplyGraph.getApplyNamespace(service, "default")).isEqualTo("default");
+        assertThat(ApplyGraph.getApplyNamespace(route, "default")).isEqualTo("staging");
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.api;
+
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.NamespaceBuilder;
+import io.fabric8.kubernetes.api.model.ReplicationControllerBuilder;
+import io.fabric8.kubernetes.api.model.SecretBuilder;
+import io.fabric8.kubernetes.api.model.Service;
+import io.fabric8.kubernetes.api.model.ServiceBuilder;
+import io.fabric8.kubernetes.client.dsl.Gettable;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class ControllerTest {
+
+    @Test
+    public void testApplyNoEntitiesConcurrently() throws Exception {
+        Controller controller = new Controller(null);
+        controller.setApplyParallelism(4);
+
+        assertThat(controller.applyEntities(new ArrayList<HasMetadata>(), "test")).isEmpty();
+
+        String json = "{\"apiVersion\":\"v1\",\"kind\":\"List\",\"items\":[]}";
+        try (ManifestReader reader = ManifestReader.forJson(new ByteArrayInputStream(json.getBytes()))) {
+            assertThat(controller.applyStream(reader, "test")).isEmpty();
+        }
+    }
+
+    @Test
+    public void testParserHasStoppedWhenAFailedApplyReturns() throws Exception {
+        Controller controller = new Controller(null) {
+            @Override
+            public void applyEntity(Object dto, String sourceName) throws Exception {
+                throw new IllegalStateException("Failed to apply " + KubernetesHelper.getName((HasMetadata) dto));
+            }
+        };
+        StringBuilder json = new StringBuilder("{\"apiVersion\":\"v1\",\"kind\":\"List\",\"items\":[");
+        for (int i = 0; i < 1000; i++) {
+            if (i > 0) {
+                json.append(",");
+            }
+            json.append("{\"apiVersion\":\"v1\",\"kind\":\"Service\",\"metadata\":{\"name\":\"s").append(i).append("\"}}");
+        }
+        json.append("]}");
+
+        try (ManifestReader reader = ManifestReader.forJson(new ByteArrayInputStream(json.toString().getBytes()))) {
+            controller.applyStream(reader, "test");
+            fail("The apply should have failed");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage()).isEqualTo("Failed to apply s0");
+        }
+        // the reader has been closed so the parser must not still be using it
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            assertThat(thread.getName()).isNotEqualTo("fabric8-apply-reader");
+        }
+    }
+
+    @Test
+    public void testLiveStateIsListedOncePerKindAndNamespace() throws Exception {
+        final List<String> listed = new ArrayList<>();
+        Controller controller = new Controller(null) {
+            @Override
+            protected void listLiveState(LiveStateSnapshot snapshot, Class<? extends HasMetadata> kind, String namespace) {
+                listed.add(kind.getSimpleName() + "/" + namespace);
+                snapshot.addList(kind, namespace, new ArrayList<HasMetadata>(), null);
+            }
+        };
+        controller.setNamespace("default");
+
+        List<HasMetadata> entities = Arrays.<HasMetadata>asList(
+                createService("a"),
+                createService("b"),
+                new SecretBuilder().withNewMetadata().withName("c").withNamespace("other").endMetadata().build(),
+                new NamespaceBuilder().withNewMetadata().withName("d").endMetadata().build(),
+                new ReplicationControllerBuilder().withNewMetadata().withName("e").endMetadata().build(),
+                createService("f"));
+        LiveStateSnapshot snapshot = controller.createLiveStateSnapshot(entities);
+
+        assertThat(listed).containsExactly("Namespace/null", "Service/default", "Secret/other", "ReplicationController/default");
+        assertThat(snapshot.getListCount()).isEqualTo(4);
+    }
+
+    @Test
+    public void testEntityWithTheSameNameIsComparedWithTheUpdatedLiveState() throws Exception {
+        final List<String> created = new ArrayList<>();
+        final List<String> compared = new ArrayList<>();
+        final Gettable<Service> notFetched = new Gettable<Service>() {
+            @Override
+            public Service get() {
+                throw new AssertionError("The service should have been found in the live state snapshot");
+            }
+        };
+        Controller controller = new Controller(null) {
+            @Override
+            protected void listLiveState(LiveStateSnapshot snapshot, Class<? extends HasMetadata> kind, String namespace) {
+                List<HasMetadata> items = new ArrayList<>();
+                if (kind == Service.class) {
+                    items.add(createService("live"));
+                }
+                snapshot.addList(kind, namespace, items, null);
+            }
+
+            @Override
+            public void applyEntity(Object dto, String sourceName) throws Exception {
+                // looks up and records the live state the same way as applyService
+                Service service = (Service) dto;
+                String name = KubernetesHelper.getName(service);
+                Service old = getLiveEntity(Service.class, getNamespace(), name, notFetched);
+                if (old == null) {
+                    created.add(name);
+                    updateLiveState(service, getNamespace(), service);
+                } else {
+                    compared.add(name);
+                }
+            }
+        };
+        controller.setNamespace("default");
+        controller.setPrefetchLiveState(true);
+
+        List<HasMetadata> entities = Arrays.<HasMetadata>asList(createService("a"), createService("live"), createService("a"), createService("b"));
+        assertThat(controller.applyEntities(entities, "test")).hasSize(4);
+
+        assertThat(created).containsExactly("a", "b");
+        assertThat(compared).containsExactly("live", "a");
+
+        // the snapshot only lasts for the apply
+        final Service fetched = createService("a");
+        Service answer = controller.getLiveEntity(Service.class, "default", "a", new Gettable<Service>() {
+            @Override
+            public Service get() {
+                return fetched;
+            }
+        });
+        assertThat(answer).isSameAs(fetched);
+    }
+
+    protected static Service createService(String name) {
+        return new ServiceBuilder().withNewMetadata().withName(name).endMetadata().build();
+    }
+}
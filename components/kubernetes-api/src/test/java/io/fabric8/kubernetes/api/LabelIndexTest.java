@@ -0,0 +1,83 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.api;
+
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import io.fabric8.kubernetes.api.model.Service;
+import io.fabric8.kubernetes.api.model.ServiceBuilder;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LabelIndexTest {
+
+    @Test
+    public void testSelectMatchesFilterLabels() throws Exception {
+        List<Pod> pods = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            pods.add(new PodBuilder().withNewMetadata().withName("pod" + i).
+                    addToLabels("component", "c" + (i % 10)).
+                    addToLabels("tier", i % 2 == 0 ? "web" : "db").endMetadata().build());
+        }
+        LabelIndex<Pod> index = new LabelIndex<>(pods);
+
+        List<Map<String, String>> selectors = Arrays.asList(
+                labels("component", "c3"),
+                labels("component", "c4", "tier", "web"),
+                labels("component", "c4", "tier", "db"),
+                labels("component", "unknown"),
+                labels("other", null),
+                new HashMap<String, String>());
+        for (Map<String, String> selector : selectors) {
+            List<Pod> expected = new ArrayList<>();
+            for (Pod pod : pods) {
+                if (selector.isEmpty() || KubernetesHelper.filterLabels(selector, pod.getMetadata().getLabels())) {
+                    expected.add(pod);
+                }
+            }
+            assertThat(index.select(selector)).as("selector " + selector).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void testPodsForServices() throws Exception {
+        List<Pod> pods = Arrays.asList(
+                new PodBuilder().withNewMetadata().withName("broker").addToLabels("component", "broker").endMetadata().build(),
+                new PodBuilder().withNewMetadata().withName("web").addToLabels("component", "web").endMetadata().build());
+        List<Service> services = Arrays.asList(
+                new ServiceBuilder().withNewMetadata().withName("broker").endMetadata().withNewSpec().addToSelector("component", "broker").endSpec().build(),
+                new ServiceBuilder().withNewMetadata().withName("db").endMetadata().withNewSpec().addToSelector("component", "db").endSpec().build());
+
+        Map<String, List<Pod>> podsForServices = KubernetesHelper.getPodsForServices(services, pods);
+        assertThat(podsForServices.get("broker")).containsExactly(pods.get(0));
+        assertThat(podsForServices.get("db")).isEmpty();
+    }
+
+    protected static Map<String, String> labels(String... keyValues) {
+        Map<String, String> answer = new HashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            answer.put(keyValues[i], keyValues[i + 1]);
+        }
+        return answer;
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.api;
+
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.Service;
+import io.fabric8.openshift.api.model.Template;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ManifestReaderTest {
+
+    @Test
+    public void testReadListItems() throws Exception {
+        String json = "{\"apiVersion\":\"v1\",\"kind\":\"List\",\"items\":[" +
+                "{\"apiVersion\":\"v1\",\"kind\":\"Service\",\"metadata\":{\"name\":\"foo\"}}," +
+                "{\"apiVersion\":\"v1\",\"kind\":\"Service\",\"metadata\":{\"name\":\"bar\"}}]}";
+        List<HasMetadata> entities = readAll(ManifestReader.forJson(new ByteArrayInputStream(json.getBytes())));
+
+        assertThat(entities).hasSize(2);
+        assertThat(entities.get(0)).isInstanceOf(Service.class);
+        assertThat(KubernetesHelper.getName(entities.get(0))).isEqualTo("foo");
+        assertThat(KubernetesHelper.getName(entities.get(1))).isEqualTo("bar");
+    }
+
+    @Test
+    public void testReadYamlDocuments() throws Exception {
+        String yaml = "apiVersion: v1\nkind: Service\nmetadata:\n  name: foo\n" +
+                "---\n" +
+                "apiVersion: v1\nkind: Service\nmetadata:\n  name: bar\n";
+        List<HasMetadata> entities = readAll(ManifestReader.forYaml(new ByteArrayInputStream(yaml.getBytes())));
+
+        assertThat(entities).hasSize(2);
+        assertThat(KubernetesHelper.getName(entities.get(1))).isEqualTo("bar");
+    }
+
+    @Test
+    public void testTemplateIsReadAsOneEntity() throws Exception {
+        String json = "{\"metadata\":{\"name\":\"cheese\"},\"objects\":[" +
+                "{\"apiVersion\":\"v1\",\"kind\":\"Service\",\"metadata\":{\"name\":\"foo\"}}]," +
+                "\"apiVersion\":\"v1\",\"kind\":\"Template\"}";
+        List<HasMetadata> entities = readAll(ManifestReader.forJson(new ByteArrayInputStream(json.getBytes())));
+
+        assertThat(entities).hasSize(1);
+        assertThat(entities.get(0)).isInstanceOf(Template.class);
+        assertThat(((Template) entities.get(0)).getObjects()).hasSize(1);
+    }
+
+    protected static List<HasMetadata> readAll(ManifestReader reader) throws IOException {
+        List<HasMetadata> answer = new ArrayList<>();
+        try {
+            HasMetadata entity;
+            while ((entity = reader.next()) != null) {
+                answer.add(entity);
+            }
+        } finally {
+            reader.close();
+        }
+        return answer;
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.api;
+
+import io.fabric8.kubernetes.api.model.ServiceBuilder;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ServiceUrlResolverTest {
+    private final List<String> resolved = new ArrayList<>();
+    private Runnable duringResolve;
+
+    private final ServiceUrlResolver resolver = new ServiceUrlResolver(null, 60 * 60 * 1000L, false) {
+        @Override
+        protected String resolveServiceURL(String serviceName, String namespace, String serviceProtocol, String servicePortName, boolean serviceExternal) {
+            resolved.add(namespace + "/" + serviceName);
+            if (duringResolve != null) {
+                Runnable task = duringResolve;
+                duringResolve = null;
+                task.run();
+            }
+            return "http://" + serviceName + "-" + resolved.size();
+        }
+    };
+
+    @Test
+    public void testCachesResolvedUrls() throws Exception {
+        assertThat(resolver.getServiceURL("foo", "default", "tcp", false)).isEqualTo("http://foo-1");
+        assertThat(resolver.getServiceURL("foo", "default", "tcp", false)).isEqualTo("http://foo-1");
+        assertThat(resolver.getServiceURL("foo", "default", "tcp", true)).isEqualTo("http://foo-2");
+        assertThat(resolved).containsExactly("default/foo", "default/foo");
+    }
+
+    @Test
+    public void testChangeInvalidatesOnlyThatService() throws Exception {
+        resolver.getServiceURL("foo", "default", "tcp", false);
+        resolver.getServiceURL("bar", "default", "tcp", false);
+
+        resolver.onChange("default", new ServiceBuilder().withNewMetadata().withName("foo").endMetadata().build());
+
+        assertThat(resolver.getServiceURL("foo", "default", "tcp", false)).isEqualTo("http://foo-3");
+        assertThat(resolver.getServiceURL("bar", "default", "tcp", false)).isEqualTo("http://bar-2");
+        assertThat(resolved).containsExactly("default/foo", "default/bar", "default/foo");
+    }
+
+    @Test
+    public void testUrlResolvedDuringInvalidationIsNotCached() throws Exception {
+        duringResolve = new Runnable() {
+            @Override
+            public void run() {
+                resolver.invalidate("default", "foo");
+            }
+        };
+        assertThat(resolver.getServiceURL("foo", "default", "tcp", false)).isEqualTo("http://foo-1");
+
+        // the first URL may be stale so it should be resolved again and then cached
+        assertThat(resolver.getServiceURL("foo", "default", "tcp", false)).isEqualTo("http://foo-2");
+        assertThat(resolver.getServiceURL("foo", "default", "tcp", false)).isEqualTo("http://foo-2");
+        assertThat(resolved).containsExactly("default/foo", "default/foo");
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.api;
+
+import io.fabric8.kubernetes.api.extensions.TemplateParameters;
+import io.fabric8.kubernetes.api.extensions.Templates;
+import io.fabric8.kubernetes.api.model.KubernetesList;
+import io.fabric8.kubernetes.api.model.Service;
+import io.fabric8.kubernetes.api.model.ServiceBuilder;
+import io.fabric8.openshift.api.model.Parameter;
+import io.fabric8.openshift.api.model.Template;
+import io.fabric8.openshift.api.model.TemplateBuilder;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class TemplateParametersTest {
+
+    @Test
+    public void testNestedParameters() throws Exception {
+        TemplateParameters parameters = new TemplateParameters(Arrays.asList(
+                parameter("HOST", "${NAME}.${DOMAIN}"),
+                parameter("NAME", "cheese"),
+                parameter("DOMAIN", "example.com")), true);
+
+        assertThat(parameters.getValue("HOST")).isEqualTo("cheese.example.com");
+        assertThat(parameters.substitute("http://${HOST}/${UNKNOWN}")).isEqualTo("http://cheese.example.com/${UNKNOWN}");
+    }
+
+    @Test
+    public void testCyclicParameters() throws Exception {
+        try {
+            new TemplateParameters(Arrays.asList(parameter("A", "${B}"), parameter("B", "x${A}")), true);
+            fail("Should have failed on the cyclic parameters");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage()).contains("A -> B -> A");
+        }
+    }
+
+    @Test
+    public void testGeneratedParameter() throws Exception {
+        Parameter password = parameter("PASSWORD", null);
+        password.setGenerate("expression");
+        password.setFrom("[a-zA-Z0-9]{16}");
+
+        TemplateParameters parameters = new TemplateParameters(Arrays.asList(password), true);
+
+        assertThat(parameters.getValue("PASSWORD")).matches("[a-zA-Z0-9]{16}");
+    }
+
+    @Test
+    public void testGeneratedParameterWithRangeEndingAtLastCharacter() throws Exception {
+        Parameter parameter = parameter("VALUE", null);
+        parameter.setGenerate("expression");
+        parameter.setFrom("[\uFFF0-\uFFFF]{8}");
+
+        TemplateParameters parameters = new TemplateParameters(Arrays.asList(parameter), true);
+
+        String value = parameters.getValue("VALUE");
+        assertThat(value).hasSize(8);
+        for (char c : value.toCharArray()) {
+            assertThat((int) c).isBetween(0xFFF0, 0xFFFF);
+        }
+    }
+
+    @Test
+    public void testProcessTemplateWithNestedParameters() throws Exception {
+        Service service = new ServiceBuilder().withNewMetadata().withName("${NAME}").addToLabels("host", "${HOST}").endMetadata().build();
+        Template template = new TemplateBuilder().
+                addNewParameter().withName("HOST").withValue("${NAME}.example.com").endParameter().
+                addNewParameter().withName("NAME").withValue("cheese").endParameter().
+                addToObjects(service).build();
+
+        KubernetesList list = Templates.processTemplatesLocally(template, true);
+
+        Service result = (Service) list.getItems().get(0);
+        assertThat(KubernetesHelper.getName(result)).isEqualTo("cheese");
+        assertThat(result.getMetadata().getLabels().get("host")).isEqualTo("cheese.example.com");
+    }
+
+    protected static Parameter parameter(String name, String value) {
+        Parameter answer = new Parameter();
+        answer.setName(name);
+        answer.setValue(value);
+        return answer;
+    }
+}
@@ -17,9 +17,18 @@ package io.fabric8.kubernetes.api;
 
 import io.fabric8.kubernetes.api.model.EditablePod;
 import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.EnvVar;
+import io.fabric8.kubernetes.api.model.EnvVarBuilder;
 import io.fabric8.kubernetes.api.model.ReplicationController;
+import io.fabric8.kubernetes.api.model.Service;
+import io.fabric8.kubernetes.api.model.ServiceBuilder;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 import static org.junit.Assert.*;
 
 public class UserConfigurationCompareTest {
@@ -32,4 +41,40 @@ public class UserConfigurationCompareTest {
 
         assertEquals(null, UserConfigurationCompare.getCommonDenominator(ReplicationController.class, Pod.class));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCollectionsEqualIgnoresOrder() {
+        List<EnvVar> left = new ArrayList<>();
+        List<EnvVar> right = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            left.add(new EnvVarBuilder().withName("NAME_" + i).withValue("value" + i).build());
+            right.add(new EnvVarBuilder().withName("NAME_" + i).withValue("value" + i).build());
+        }
+        Collections.reverse(right);
+        assertTrue(UserConfigurationCompare.configEqual(left, right));
+
+        right.set(0, new EnvVarBuilder().withName("NAME_99").withValue("changed").build());
+        assertFalse(UserConfigurationCompare.configEqual(left, right));
+    }
+
+    @Test
+    public void testCollectionsEqualCountsDuplicates() {
+        assertTrue(UserConfigurationCompare.collectionsEqual(Arrays.asList("a", "a", "b"), Arrays.asList("b", "a", "a")));
+        assertFalse(UserConfigurationCompare.collectionsEqual(Arrays.asList("a", "a", "b"), Arrays.asList("a", "b", "b")));
+        assertFalse(UserConfigurationCompare.collectionsEqual(Arrays.asList("a"), Arrays.asList("a", "a")));
+    }
+
+    @Test
+    public void testConfigHashIgnoresRuntimeMetadata() {
+        Service service = new ServiceBuilder().withNewMetadata().withName("cheese").addToLabels("a", "1").addToLabels("b", "2").endMetadata().build();
+        String hash = UserConfigurationCompare.configHash(service);
+
+        Service live = new ServiceBuilder().withNewMetadata().withName("cheese").addToLabels("b", "2").addToLabels("a", "1").
+                withResourceVersion("123").withUid("abc").
+                addToAnnotations(Annotations.Apply.CONFIG_HASH, hash).endMetadata().build();
+        assertEquals(hash, UserConfigurationCompare.configHash(live));
+
+        Service changed = new ServiceBuilder().withNewMetadata().withName("cheese").addToLabels("a", "1").endMetadata().build();
+        assertNotEquals(hash, UserConfigurationCompare.configHash(changed));
+    }
+}
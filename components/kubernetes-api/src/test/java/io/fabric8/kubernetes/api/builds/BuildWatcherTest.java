@@ -0,0 +1,159 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.api.builds;
+
+import io.fabric8.kubernetes.api.model.ListMeta;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+import io.fabric8.openshift.api.model.Build;
+import io.fabric8.openshift.api.model.BuildBuilder;
+import io.fabric8.openshift.api.model.BuildList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BuildWatcherTest {
+    private final List<Long> reconnectDelays = new ArrayList<>();
+    private final List<String> watchedVersions = new ArrayList<>();
+    private final List<Build> listedBuilds = new ArrayList<>();
+    private final List<String> notifiedBuildIds = new ArrayList<>();
+    private final List<Boolean> notifiedHoldingLock = new ArrayList<>();
+    private Watcher<Build> watcher;
+    private int listCount;
+    private BuildWatcher buildWatcher;
+
+    @Before
+    public void init() {
+        buildWatcher = new BuildWatcher(null, new BuildListener() {
+            @Override
+            public void onBuildFinished(BuildFinishedEvent event) {
+                notifiedBuildIds.add(event.getUid());
+                notifiedHoldingLock.add(Thread.holdsLock(buildWatcher));
+            }
+        }, "default", null) {
+            @Override
+            protected BuildList listBuilds() {
+                listCount++;
+                BuildList answer = new BuildList();
+                ListMeta listMeta = new ListMeta();
+                listMeta.setResourceVersion("1");
+                answer.setMetadata(listMeta);
+                answer.setItems(new ArrayList<Build>(listedBuilds));
+                return answer;
+            }
+
+            @Override
+            protected Watch watchBuilds(String resourceVersion, Watcher<Build> buildWatcher) {
+                watchedVersions.add(resourceVersion);
+                watcher = buildWatcher;
+                return new Watch() {
+                    @Override
+                    public void close() {
+                    }
+                };
+            }
+
+            @Override
+            protected synchronized long nextReconnectDelay() {
+                long delay = super.nextReconnectDelay();
+                reconnectDelays.add(delay);
+                return delay;
+            }
+        };
+        // long enough that the timer never reconnects during the test; the test reconnects itself
+        buildWatcher.setInitialReconnectDelay(60 * 60 * 1000L);
+        buildWatcher.setMaxReconnectDelay(16 * 60 * 60 * 1000L);
+        buildWatcher.watch();
+    }
+
+    @After
+    public void cleanup() {
+        buildWatcher.close();
+    }
+
+    @Test
+    public void testBackoffIsNotResetUntilAnEventIsReceived() throws Exception {
+        long initialDelay = buildWatcher.getInitialReconnectDelay();
+
+        // the watch opens but closes straight away without delivering any events
+        watcher.onClose(new KubernetesClientException("closed"));
+        buildWatcher.connect();
+        watcher.onClose(new KubernetesClientException("closed"));
+        buildWatcher.connect();
+        watcher.onClose(new KubernetesClientException("closed"));
+        assertThat(reconnectDelays).containsExactly(initialDelay, 2 * initialDelay, 4 * initialDelay);
+
+        // once an event arrives the watch is known to work so the backoff starts again
+        buildWatcher.connect();
+        watcher.eventReceived(Watcher.Action.MODIFIED, createBuild("5"));
+        watcher.onClose(null);
+        assertThat(reconnectDelays).containsExactly(initialDelay, 2 * initialDelay, 4 * initialDelay, initialDelay);
+    }
+
+    @Test
+    public void testErrorEventsDoNotResetBackoff() throws Exception {
+        long initialDelay = buildWatcher.getInitialReconnectDelay();
+
+        watcher.onClose(null);
+        buildWatcher.connect();
+        watcher.eventReceived(Watcher.Action.ERROR, null);
+        assertThat(reconnectDelays).containsExactly(initialDelay, 2 * initialDelay);
+    }
+
+    @Test
+    public void testReconnectsFromLastResourceVersion() throws Exception {
+        watcher.eventReceived(Watcher.Action.MODIFIED, createBuild("7"));
+        watcher.onClose(null);
+        buildWatcher.connect();
+        assertThat(watchedVersions).containsExactly("1", "7");
+        assertThat(listCount).isEqualTo(1);
+
+        // after an error the builds are listed again in case any events were missed
+        watcher.eventReceived(Watcher.Action.ERROR, null);
+        buildWatcher.connect();
+        assertThat(listCount).isEqualTo(2);
+        assertThat(watchedVersions).containsExactly("1", "7", "1");
+    }
+
+    @Test
+    public void testListenerIsNotifiedWithoutHoldingTheLock() throws Exception {
+        watcher.eventReceived(Watcher.Action.MODIFIED, createFinishedBuild("uid-1", "8"));
+        watcher.eventReceived(Watcher.Action.MODIFIED, createFinishedBuild("uid-1", "9"));
+
+        // the builds listed when reconnecting after an error are notified too
+        listedBuilds.add(createFinishedBuild("uid-2", "10"));
+        watcher.eventReceived(Watcher.Action.ERROR, null);
+        buildWatcher.connect();
+
+        assertThat(notifiedBuildIds).containsExactly("uid-1", "uid-2");
+        assertThat(notifiedHoldingLock).containsExactly(false, false);
+    }
+
+    protected static Build createFinishedBuild(String uid, String resourceVersion) {
+        return new BuildBuilder().withNewMetadata().withName("build").withUid(uid).withResourceVersion(resourceVersion).endMetadata()
+                .withNewStatus().withPhase(Builds.Status.COMPLETE).endStatus().build();
+    }
+
+    protected static Build createBuild(String resourceVersion) {
+        return new BuildBuilder().withNewMetadata().withName("build").withResourceVersion(resourceVersion).endMetadata().build();
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.api.cache;
+
+import io.fabric8.kubernetes.api.model.ListMeta;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ResourceCacheTest {
+    private List<Pod> serverPods = new ArrayList<>();
+    private int listCount;
+    private Watcher<Pod> watcher;
+    private ResourceCache<Pod> cache;
+
+    @Before
+    public void init() {
+        serverPods.add(createPod("broker-1", "1", "component", "broker"));
+        serverPods.add(createPod("broker-2", "2", "component", "broker"));
+        serverPods.add(createPod("web-1", "3", "component", "web"));
+        cache = new ResourceCache<Pod>("Pod", "default", 60000) {
+            @Override
+            protected ListMeta list(List<Pod> items) {
+                listCount++;
+                items.addAll(serverPods);
+                ListMeta listMeta = new ListMeta();
+                listMeta.setResourceVersion("3");
+                return listMeta;
+            }
+
+            @Override
+            protected Watch watch(String resourceVersion, Watcher<Pod> podWatcher) {
+                watcher = podWatcher;
+                return new Watch() {
+                    @Override
+                    public void close() {
+                    }
+                };
+            }
+        };
+    }
+
+    @Test
+    public void testSelectUsesLabelIndex() throws Exception {
+        assertThat(names(cache.select(labels("component", "broker")))).containsOnly("broker-1", "broker-2");
+        assertThat(names(cache.select(labels("component", "db")))).isEmpty();
+        assertThat(names(cache.select(null))).containsOnly("broker-1", "broker-2", "web-1");
+        assertThat(listCount).isEqualTo(1);
+    }
+
+    @Test
+    public void testWatchEventsUpdateCache() throws Exception {
+        cache.list();
+
+        watcher.eventReceived(Watcher.Action.MODIFIED, createPod("broker-2", "4", "component", "web"));
+        watcher.eventReceived(Watcher.Action.DELETED, createPod("web-1", "5", "component", "web"));
+        watcher.eventReceived(Watcher.Action.ADDED, createPod("db-1", "6", "component", "db"));
+        // an out of date event is ignored
+        watcher.eventReceived(Watcher.Action.MODIFIED, createPod("db-1", "5", "component", "web"));
+
+        assertThat(names(cache.select(labels("component", "broker")))).containsOnly("broker-1");
+        assertThat(names(cache.select(labels("component", "web")))).containsOnly("broker-2");
+        assertThat(names(cache.select(labels("component", "db")))).containsOnly("db-1");
+        assertThat(cache.getResourceVersion()).isEqualTo("6");
+        assertThat(listCount).isEqualTo(1);
+    }
+
+    @Test
+    public void testModifyingReturnedResourceDoesNotCorruptIndex() throws Exception {
+        Pod pod = cache.get("broker-1");
+        pod.getMetadata().getLabels().put("component", "web");
+
+        watcher.eventReceived(Watcher.Action.DELETED, createPod("broker-1", "4", "component", "web"));
+
+        assertThat(names(cache.select(labels("component", "broker")))).containsOnly("broker-2");
+        assertThat(names(cache.select(labels("component", "web")))).containsOnly("web-1");
+    }
+
+    @Test
+    public void testClosedWatchResyncs() throws Exception {
+        cache.list();
+        assertThat(cache.isStale()).isFalse();
+
+        watcher.onClose(null);
+        assertThat(cache.isStale()).isTrue();
+
+        cache.list();
+        assertThat(listCount).isEqualTo(2);
+    }
+
+    protected static Pod createPod(String name, String resourceVersion, String labelKey, String labelValue) {
+        return new PodBuilder().withNewMetadata().withName(name).withResourceVersion(resourceVersion).
+                addToLabels(labelKey, labelValue).endMetadata().build();
+    }
+
+    protected static Map<String, String> labels(String key, String value) {
+        Map<String, String> answer = new HashMap<>();
+        answer.put(key, value);
+        return answer;
+    }
+
+    protected static List<String> names(List<Pod> pods) {
+        List<String> answer = new ArrayList<>();
+        for (Pod pod : pods) {
+            answer.add(pod.getMetadata().getName());
+        }
+        Collections.sort(answer);
+        return answer;
+    }
+}
@@ -16,6 +16,7 @@
 package io.fabric8.kubernetes.jolokia;
 
 import io.fabric8.kubernetes.api.KubernetesHelper;
+import io.fabric8.kubernetes.api.cache.KubernetesCache;
 import io.fabric8.kubernetes.api.model.*;
 import io.fabric8.kubernetes.client.DefaultKubernetesClient;
 import io.fabric8.kubernetes.client.KubernetesClient;
@@ -23,15 +24,40 @@ import io.fabric8.kubernetes.client.utils.URLUtils;
 import io.fabric8.utils.Filter;
 import io.fabric8.utils.Strings;
 import io.fabric8.utils.Systems;
+import org.apache.http.client.HttpClient;
+import org.apache.http.conn.ClientConnectionManager;
 import org.jolokia.client.J4pClient;
 import org.jolokia.client.J4pClientBuilder;
+import org.jolokia.client.exception.J4pBulkRemoteException;
+import org.jolokia.client.request.J4pRequest;
+import org.jolokia.client.request.J4pResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static io.fabric8.kubernetes.api.KubernetesHelper.getDockerIp;
 import static io.fabric8.utils.Objects.assertNotNull;
@@ -41,12 +67,21 @@ import static io.fabric8.utils.Objects.assertNotNull;
  */
 public class JolokiaClients {
     private static final transient Logger LOG = LoggerFactory.getLogger(JolokiaClients.class);
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
 
     private final KubernetesClient kubernetes;
     private String user = Systems.getEnvVarOrSystemProperty("JOLOKIA_USER", "JOLOKIA_USER", "admin");
     private String password = Systems.getEnvVarOrSystemProperty("JOLOKIA_PASSWORD", "JOLOKIA_PASSWORD", "admin");;
+    private String credentialsHash = hashCredentials(user, password);
     private Filter<Pod> podFilter = null;
     private boolean useKubeProxy = true;
+    private int queryParallelism = 16;
+    private long queryTimeout = 30000;
+    private ExecutorService queryExecutor;
+    private long clientIdleTimeout = 5 * 60 * 1000L;
+    private int maxConnectionsPerClient = 20;
+    private final Map<String, CachedClient> clients = new HashMap<>();
+    private volatile KubernetesCache kubernetesCache;
 
     public JolokiaClients() {
         this(new DefaultKubernetesClient());
@@ -103,15 +138,10 @@ public class JolokiaClients {
      */
     public J4pClient clientForReplicationController(ReplicationController replicationController) {
         Objects.requireNonNull(replicationController, "ReplicationController");
-        PodList podList = kubernetes.pods().inNamespace(replicationController.getMetadata().getNamespace()).list();
-        List<Pod> items = null;
-        if (podList != null) {
-            items = podList.getItems();
-        }
-        if (items == null || items.isEmpty()) {
+        List<Pod> pods = podsForReplicationController(replicationController);
+        if (pods.isEmpty()) {
             throw new IllegalArgumentException("No pods found for ReplicationController " + KubernetesHelper.summaryText(replicationController));
         }
-        List<Pod> pods = KubernetesHelper.getPodsForReplicationController(replicationController, items);
         return clientForPod(pods);
     }
 
@@ -140,8 +170,7 @@ public class JolokiaClients {
      * Returns all the clients for the first working pod for the given replication controller
      */
     public List<J4pClient> clientsForReplicationController(ReplicationController replicationController) {
-        List<Pod> pods = KubernetesHelper.getPodsForReplicationController(replicationController, kubernetes.pods().inNamespace(replicationController.getMetadata().getNamespace()).list().getItems());
-        return clientsForPod(pods);
+        return clientsForPod(podsForReplicationController(replicationController));
     }
 
     /**
@@ -149,9 +178,7 @@ public class JolokiaClients {
      */
     public List<J4pClient> clientsForReplicationController(String replicationControllerName, String namespace) {
         ReplicationController replicationController = requireReplicationController(replicationControllerName, namespace);
-        List<Pod> pods = KubernetesHelper.getPodsForReplicationController(replicationController,
-                kubernetes.pods().inNamespace(namespace).list().getItems());
-        return clientsForPod(pods);
+        return clientsForPod(podsForReplicationController(replicationController));
     }
 
 
@@ -160,9 +187,7 @@ public class JolokiaClients {
      * Returns a client for the first working pod for the given service
      */
     public J4pClient clientForService(String serviceName, String namespace) {
-        List<Pod> pods = KubernetesHelper.getPodsForService(requireService(serviceName, namespace),
-                kubernetes.pods().inNamespace(namespace).list().getItems());
-        return clientForPod(pods);
+        return clientForPod(podsForService(requireService(serviceName, namespace)));
     }
 
 
@@ -170,43 +195,35 @@ public class JolokiaClients {
      * Returns a client for the first working pod for the given service
      */
     public J4pClient clientForService(String serviceName) {
-        List<Pod> pods = KubernetesHelper.getPodsForService(requireService(serviceName),
-                kubernetes.pods().list().getItems());
-        return clientForPod(pods);
+        return clientForPod(podsForService(requireService(serviceName)));
     }
 
     /**
      * Returns a client for the first working pod for the given service
      */
     public J4pClient clientForService(Service service) {
-        List<Pod> pods = KubernetesHelper.getPodsForService(service, kubernetes.pods().inNamespace(service.getMetadata().getNamespace()).list().getItems());
-        return clientForPod(pods);
+        return clientForPod(podsForService(service));
     }
 
     /**
      * Returns all the clients for the first working pod for the given service
      */
     public List<J4pClient> clientsForService(String serviceName, String namespace) {
-        List<Pod> pods = KubernetesHelper.getPodsForService(requireService(serviceName, namespace),
-                kubernetes.pods().inNamespace(namespace).list().getItems());
-        return clientsForPod(pods);
+        return clientsForPod(podsForService(requireService(serviceName, namespace)));
     }
 
     /**
      * Returns all the clients for the first working pod for the given service
      */
     public List<J4pClient> clientsForService(String serviceName) {
-        List<Pod> pods = KubernetesHelper.getPodsForService(requireService(serviceName),
-                kubernetes.pods().list().getItems());
-        return clientsForPod(pods);
+        return clientsForPod(podsForService(requireService(serviceName)));
     }
 
     /**
      * Returns all the clients the first working pod for the given service
      */
     public List<J4pClient> clientsForService(Service service) {
-        List<Pod> pods = KubernetesHelper.getPodsForService(service, kubernetes.pods().inNamespace(service.getMetadata().getNamespace()).list().getItems());
-        return clientsForPod(pods);
+        return clientsForPod(podsForService(service));
     }
 
     /**
@@ -239,6 +256,378 @@ public class JolokiaClients {
         }
         return answer;
     }
+
+    /**
+     * Executes the requests as one bulk request against each running pod of the service at once,
+     * returning the result of each pod indexed by pod name
+     */
+    public Map<String, JolokiaPodResult> queryService(String serviceName, String namespace, List<? extends J4pRequest> requests) {
+        return queryService(requireService(serviceName, namespace), requests);
+    }
+
+    /**
+     * Executes the requests as one bulk request against each running pod of the service at once,
+     * returning the result of each pod indexed by pod name
+     */
+    public Map<String, JolokiaPodResult> queryService(Service service, List<? extends J4pRequest> requests) {
+        List<Pod> pods = listPods(service.getMetadata().getNamespace(), KubernetesHelper.getSelector(service));
+        return queryPods(pods, requests);
+    }
+
+    /**
+     * Executes the requests as one bulk request against each running pod of the replication controller at once,
+     * returning the result of each pod indexed by pod name
+     */
+    public Map<String, JolokiaPodResult> queryReplicationController(String replicationControllerName, String namespace, List<? extends J4pRequest> requests) {
+        return queryReplicationController(requireReplicationController(replicationControllerName, namespace), requests);
+    }
+
+    /**
+     * Executes the requests as one bulk request against each running pod of the replication controller at once,
+     * returning the result of each pod indexed by pod name
+     */
+    public Map<String, JolokiaPodResult> queryReplicationController(ReplicationController replicationController, List<? extends J4pRequest> requests) {
+        ReplicationControllerSpec spec = replicationController.getSpec();
+        if (spec == null) {
+            return new LinkedHashMap<>();
+        }
+        List<Pod> pods = listPods(replicationController.getMetadata().getNamespace(), spec.getSelector());
+        return queryPods(pods, requests);
+    }
+
+    /**
+     * Executes the requests as one bulk request against each of the running pods at once, using up to
+     * {@link #getQueryParallelism()} threads, returning the result of each pod indexed by pod name.
+     * <p/>
+     * A pod which does not respond within {@link #getQueryTimeout()} milliseconds of its requests being sent
+     * or which fails has a result with the error; the other pods are not affected.
+     */
+    public Map<String, JolokiaPodResult> queryPods(Iterable<Pod> pods, List<? extends J4pRequest> requests) {
+        final List<J4pRequest> requestList = new ArrayList<J4pRequest>(requests);
+        ExecutorService executor = getQueryExecutor();
+        List<PodQuery> queries = new ArrayList<>();
+        for (Pod pod : pods) {
+            if (KubernetesHelper.isPodRunning(pod) && filterPod(pod)) {
+                PodQuery query = new PodQuery(pod, requestList);
+                try {
+                    query.future = executor.submit(query);
+                } catch (RejectedExecutionException e) {
+                    // we have been closed so lets not wait for the query
+                    query.error = e;
+                }
+                queries.add(query);
+            }
+        }
+        Map<String, JolokiaPodResult> answer = new LinkedHashMap<>();
+        for (PodQuery query : queries) {
+            JolokiaPodResult result = query.await(queryTimeout);
+            answer.put(result.getPodName(), result);
+        }
+        return answer;
+    }
+
+    /**
+     * Stops the threads used to query pods and closes the cached clients
+     */
+    public synchronized void close() {
+        if (queryExecutor != null) {
+            // the queued queries never run so lets cancel them rather than leave their callers waiting
+            for (Runnable runnable : queryExecutor.shutdownNow()) {
+                if (runnable instanceof Future) {
+                    ((Future<?>) runnable).cancel(false);
+                }
+            }
+            queryExecutor = null;
+        }
+        clearClients();
+    }
+
+    /**
+     * Closes and removes the cached clients of the given pod, such as when it has been deleted
+     */
+    public void invalidate(Pod pod) {
+        String prefix = clientKeyPrefix(pod);
+        List<J4pClient> removed = new ArrayList<>();
+        synchronized (clients) {
+            Iterator<Map.Entry<String, CachedClient>> iter = clients.entrySet().iterator();
+            while (iter.hasNext()) {
+                Map.Entry<String, CachedClient> entry = iter.next();
+                if (entry.getKey().startsWith(prefix)) {
+                    removed.add(entry.getValue().client);
+                    iter.remove();
+                }
+            }
+        }
+        closeClients(removed);
+    }
+
+    /**
+     * Closes and removes all the cached clients
+     */
+    public void clearClients() {
+        List<J4pClient> removed = new ArrayList<>();
+        synchronized (clients) {
+            for (CachedClient cached : clients.values()) {
+                removed.add(cached.client);
+            }
+            clients.clear();
+        }
+        closeClients(removed);
+    }
+
+    /**
+     * Returns the cached client for the jolokia port of the pod creating one if there is none, or if the pod has
+     * restarted or moved since it was created. Clients which have not been used for {@link #getClientIdleTimeout()}
+     * milliseconds are removed from the cache and their idle connections closed; they are not closed as callers
+     * may still be using them.
+     */
+    protected J4pClient cachedClient(Pod pod, Container container, int port, String jolokiaUrl) {
+        // the credentials are hashed so that the password is not kept in the keys of the cache
+        String key = clientKeyPrefix(pod) + port + (useKubeProxy ? "/proxy" : "/direct") + "/" + credentialsHash + "/" + queryTimeout;
+        int restarts = getRestartCount(pod);
+        long now = System.currentTimeMillis();
+        List<J4pClient> removed = new ArrayList<>();
+        J4pClient answer;
+        synchronized (clients) {
+            Iterator<CachedClient> iter = clients.values().iterator();
+            while (iter.hasNext()) {
+                CachedClient cached = iter.next();
+                if (now - cached.lastUsed > clientIdleTimeout) {
+                    removed.add(cached.client);
+                    iter.remove();
+                }
+            }
+            CachedClient cached = clients.get(key);
+            if (cached != null && cached.restarts == restarts && Objects.equals(cached.url, jolokiaUrl)) {
+                cached.lastUsed = now;
+                answer = cached.client;
+            } else {
+                if (cached != null) {
+                    removed.add(cached.client);
+                }
+                LOG.debug("Using jolokia URL: " + jolokiaUrl);
+                answer = createJolokiaClient(container, jolokiaUrl);
+                clients.put(key, new CachedClient(answer, jolokiaUrl, restarts, now));
+            }
+        }
+        closeIdleConnections(removed);
+        return answer;
+    }
+
+    private static String clientKeyPrefix(Pod pod) {
+        ObjectMeta metadata = pod.getMetadata();
+        String uid = metadata.getUid();
+        return metadata.getNamespace() + "/" + (Strings.isNotBlank(uid) ? uid : metadata.getName()) + ":";
+    }
+
+    private static String hashCredentials(String user, String password) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] bytes = digest.digest((user + ":" + password).getBytes(StandardCharsets.UTF_8));
+            char[] answer = new char[bytes.length * 2];
+            for (int i = 0; i < bytes.length; i++) {
+                answer[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+                answer[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+            }
+            return new String(answer);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Failed to hash the jolokia credentials. " + e, e);
+        }
+    }
+
+    private static int getRestartCount(Pod pod) {
+        int answer = 0;
+        PodStatus status = pod.getStatus();
+        if (status != null && status.getContainerStatuses() != null) {
+            for (ContainerStatus containerStatus : status.getContainerStatuses()) {
+                Integer restartCount = containerStatus.getRestartCount();
+                if (restartCount != null) {
+                    answer += restartCount;
+                }
+            }
+        }
+        return answer;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static void closeIdleConnections(List<J4pClient> clients) {
+        for (J4pClient client : clients) {
+            HttpClient httpClient = client.getHttpClient();
+            try {
+                ClientConnectionManager connectionManager = httpClient != null ? httpClient.getConnectionManager() : null;
+                if (connectionManager != null) {
+                    connectionManager.closeIdleConnections(0, TimeUnit.MILLISECONDS);
+                }
+            } catch (Exception e) {
+                LOG.debug("Failed to close idle connections of jolokia client due " + e.getMessage() + ". This exception is ignored.", e);
+            }
+        }
+    }
+
+    private static void closeClients(List<J4pClient> clients) {
+        for (J4pClient client : clients) {
+            Object httpClient = client.getHttpClient();
+            if (httpClient instanceof Closeable) {
+                try {
+                    ((Closeable) httpClient).close();
+                } catch (IOException e) {
+                    LOG.warn("Failed to close jolokia client due " + e.getMessage() + ". This exception is ignored.", e);
+                }
+            }
+        }
+    }
+
+    private static class CachedClient {
+        private final J4pClient client;
+        private final String url;
+        private final int restarts;
+        private long lastUsed;
+
+        CachedClient(J4pClient client, String url, int restarts, long lastUsed) {
+            this.client = client;
+            this.url = url;
+            this.restarts = restarts;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    protected synchronized ExecutorService getQueryExecutor() {
+        if (queryExecutor == null) {
+            queryExecutor = Executors.newFixedThreadPool(queryParallelism, new ThreadFactory() {
+                private final AtomicInteger counter = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "jolokia-query-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return queryExecutor;
+    }
+
+    /**
+     * Returns the pods selected by the service
+     */
+    protected List<Pod> podsForService(Service service) {
+        List<Pod> pods = listPods(service.getMetadata().getNamespace(), KubernetesHelper.getSelector(service));
+        return KubernetesHelper.getPodsForService(service, pods);
+    }
+
+    /**
+     * Returns the pods selected by the replication controller
+     */
+    protected List<Pod> podsForReplicationController(ReplicationController replicationController) {
+        ReplicationControllerSpec spec = replicationController.getSpec();
+        Map<String, String> selector = spec != null ? spec.getSelector() : null;
+        List<Pod> pods = listPods(replicationController.getMetadata().getNamespace(), selector);
+        return KubernetesHelper.getPodsForReplicationController(replicationController, pods);
+    }
+
+    /**
+     * Lists the pods matching the selector in the namespace, from the {@link #getKubernetesCache()} if there is one
+     * otherwise letting the API server select them
+     */
+    protected List<Pod> listPods(String namespace, Map<String, String> selector) {
+        KubernetesCache cache = kubernetesCache;
+        if (cache != null) {
+            return cache.pods(namespace).select(selector);
+        }
+        PodList podList;
+        if (selector == null || selector.isEmpty()) {
+            podList = kubernetes.pods().inNamespace(namespace).list();
+        } else {
+            podList = kubernetes.pods().inNamespace(namespace).withLabels(selector).list();
+        }
+        List<Pod> answer = podList != null ? podList.getItems() : null;
+        return answer != null ? answer : new ArrayList<Pod>();
+    }
+
+    protected JolokiaPodResult executeRequests(Pod pod, List<J4pRequest> requests) {
+        ObjectMeta metadata = pod.getMetadata();
+        String namespace = metadata.getNamespace();
+        String podName = metadata.getName();
+        long start = System.currentTimeMillis();
+        List<J4pResponse<J4pRequest>> responses = null;
+        Exception error = null;
+        try {
+            J4pClient client = clientForPod(pod);
+            if (client == null) {
+                error = new IllegalStateException("No jolokia port found for pod " + namespace + "/" + podName);
+            } else {
+                responses = client.execute(requests);
+            }
+        } catch (J4pBulkRemoteException e) {
+            responses = e.getResponses();
+            error = e;
+        } catch (Exception e) {
+            error = e;
+        }
+        return new JolokiaPodResult(namespace, podName, responses, error, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * The requests to execute against a pod which times out from when the requests start executing
+     * rather than from when they are queued
+     */
+    private class PodQuery implements Callable<JolokiaPodResult> {
+        private final Pod pod;
+        private final List<J4pRequest> requests;
+        private volatile long started;
+        private Future<JolokiaPodResult> future;
+        private Exception error;
+
+        PodQuery(Pod pod, List<J4pRequest> requests) {
+            this.pod = pod;
+            this.requests = requests;
+        }
+
+        @Override
+        public JolokiaPodResult call() throws Exception {
+            started = System.currentTimeMillis();
+            return executeRequests(pod, requests);
+        }
+
+        JolokiaPodResult await(long timeout) {
+            ObjectMeta metadata = pod.getMetadata();
+            if (error != null) {
+                return new JolokiaPodResult(metadata.getNamespace(), metadata.getName(), null, error, 0);
+            }
+            while (true) {
+                long startTime = started;
+                long wait = startTime == 0 ? timeout : startTime + timeout - System.currentTimeMillis();
+                try {
+                    if (wait > 0) {
+                        return future.get(wait, TimeUnit.MILLISECONDS);
+                    }
+                } catch (TimeoutException e) {
+                    if (started == 0 || started != startTime) {
+                        // the requests were still queued so lets keep waiting
+                        continue;
+                    }
+                } catch (InterruptedException e) {
+                    future.cancel(true);
+                    Thread.currentThread().interrupt();
+                    return new JolokiaPodResult(metadata.getNamespace(), metadata.getName(), null, e, elapsedSince(startTime));
+                } catch (CancellationException e) {
+                    // the query executor was shut down by close() before the requests completed
+                    return new JolokiaPodResult(metadata.getNamespace(), metadata.getName(), null, e, elapsedSince(startTime));
+                } catch (ExecutionException e) {
+                    Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    return new JolokiaPodResult(metadata.getNamespace(), metadata.getName(), null, cause, elapsedSince(startTime));
+                }
+                future.cancel(true);
+                return new JolokiaPodResult(metadata.getNamespace(), metadata.getName(), null,
+                        new TimeoutException("No response from pod " + metadata.getNamespace() + "/" + metadata.getName() + " within " + timeout + " ms"), timeout);
+            }
+        }
+
+        private long elapsedSince(long startTime) {
+            return startTime == 0 ? 0 : System.currentTimeMillis() - startTime;
+        }
+    }
+
     /**
      * Strategy method to filter pods before creating clients for them.
      */
@@ -283,13 +672,12 @@ public class JolokiaClients {
                             String namespace = metadata.getNamespace();
                             String podName = metadata.getName();
                             String jolokiaUrl = URLUtils.join(masterUrl.toString(), "/api/v1/namespaces/" + namespace + "/pods/https:" + podName + ":8778/proxy/jolokia/");
-                            LOG.info("Using jolokia URL: " + jolokiaUrl);
-                            return createJolokiaClient(container, jolokiaUrl);
+                            return cachedClient(pod, container, containerPort, jolokiaUrl);
                         }
                         PodStatus currentState = pod.getStatus();
                         String podIP = currentState.getPodIP();
                         if (Strings.isNotBlank(podIP)) {
-                            return createJolokiaClientFromHostAndPort(container, podIP, containerPort);
+                            return cachedClient(pod, container, containerPort, "http://" + podIP + ":" + containerPort + "/jolokia/");
                         }
                         Integer hostPort = port.getHostPort();
                         if (hostPort != null && hasDocker(pod)) {
@@ -304,7 +692,7 @@ public class JolokiaClients {
                             }
                         }
                         if (Strings.isNotBlank(host)) {
-                            return createJolokiaClientFromHostAndPort(container, host, hostPort);
+                            return cachedClient(pod, container, containerPort, "http://" + host + ":" + hostPort + "/jolokia/");
                         }
                     }
                 }
@@ -364,6 +752,7 @@ public class JolokiaClients {
 
     public void setUser(String user) {
         this.user = user;
+        this.credentialsHash = hashCredentials(user, password);
     }
 
     public String getPassword() {
@@ -372,6 +761,7 @@ public class JolokiaClients {
 
     public void setPassword(String password) {
         this.password = password;
+        this.credentialsHash = hashCredentials(user, password);
     }
 
     public boolean isUseKubeProxy() {
@@ -382,6 +772,63 @@ public class JolokiaClients {
         this.useKubeProxy = useKubeProxy;
     }
 
+    public int getQueryParallelism() {
+        return queryParallelism;
+    }
+
+    /**
+     * Sets the maximum number of pods which are queried at once
+     */
+    public void setQueryParallelism(int queryParallelism) {
+        this.queryParallelism = queryParallelism;
+    }
+
+    public long getQueryTimeout() {
+        return queryTimeout;
+    }
+
+    /**
+     * Sets the time in milliseconds to wait for the responses of a pod, which is also used as the connection
+     * and socket timeout of the clients created afterwards
+     */
+    public void setQueryTimeout(long queryTimeout) {
+        this.queryTimeout = queryTimeout;
+    }
+
+    public long getClientIdleTimeout() {
+        return clientIdleTimeout;
+    }
+
+    /**
+     * Sets the time in milliseconds after which a cached client which has not been used is closed
+     */
+    public void setClientIdleTimeout(long clientIdleTimeout) {
+        this.clientIdleTimeout = clientIdleTimeout;
+    }
+
+    public int getMaxConnectionsPerClient() {
+        return maxConnectionsPerClient;
+    }
+
+    /**
+     * Sets the maximum number of pooled HTTP connections of each client
+     */
+    public void setMaxConnectionsPerClient(int maxConnectionsPerClient) {
+        this.maxConnectionsPerClient = maxConnectionsPerClient;
+    }
+
+    public KubernetesCache getKubernetesCache() {
+        return kubernetesCache;
+    }
+
+    /**
+     * Sets the cache to look up the pods from rather than listing them from the API server on each call;
+     * the cache is shared so it is not closed by {@link #close()}
+     */
+    public void setKubernetesCache(KubernetesCache kubernetesCache) {
+        this.kubernetesCache = kubernetesCache;
+    }
+
     public Filter<Pod> getPodFilter() {
         return podFilter;
     }
@@ -400,7 +847,12 @@ public class JolokiaClients {
         if (Strings.isNotBlank(password)) {
             builder = builder.password(password);
         }
-        return builder.build();
+        // lets not let a pod which stops responding hold on to a query thread for longer than the query timeout
+        int timeout = (int) Math.min(queryTimeout, Integer.MAX_VALUE);
+        if (timeout > 0) {
+            builder = builder.connectionTimeout(timeout).socketTimeout(timeout);
+        }
+        return builder.pooledConnections().maxTotalConnections(maxConnectionsPerClient).build();
     }
 
     protected ReplicationController requireReplicationController(String replicationControllerName, String namespace) {
@@ -0,0 +1,89 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.jolokia;
+
+import org.jolokia.client.request.J4pRequest;
+import org.jolokia.client.request.J4pResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The result of executing a batch of Jolokia requests against a pod
+ */
+public class JolokiaPodResult {
+    private final String namespace;
+    private final String podName;
+    private final List<J4pResponse<J4pRequest>> responses;
+    private final Exception error;
+    private final long elapsed;
+
+    public JolokiaPodResult(String namespace, String podName, List<J4pResponse<J4pRequest>> responses, Exception error, long elapsed) {
+        this.namespace = namespace;
+        this.podName = podName;
+        this.responses = responses != null ? responses : new ArrayList<J4pResponse<J4pRequest>>();
+        this.error = error;
+        this.elapsed = elapsed;
+    }
+
+    @Override
+    public String toString() {
+        return "JolokiaPodResult{" +
+                "namespace='" + namespace + '\'' +
+                ", podName='" + podName + '\'' +
+                ", responses=" + responses.size() +
+                ", error=" + error +
+                ", elapsed=" + elapsed +
+                '}';
+    }
+
+    /**
+     * Returns true if all the requests succeeded
+     */
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    public String getNamespace() {
+        return namespace;
+    }
+
+    public String getPodName() {
+        return podName;
+    }
+
+    /**
+     * Returns the responses in the order of the requests; if some of the requests of a bulk request failed
+     * this only contains the successful responses and the error is a {@link org.jolokia.client.exception.J4pBulkRemoteException}
+     */
+    public List<J4pResponse<J4pRequest>> getResponses() {
+        return responses;
+    }
+
+    /**
+     * Returns the reason the requests failed, such as a timeout or a failure to connect, or null if they all succeeded
+     */
+    public Exception getError() {
+        return error;
+    }
+
+    /**
+     * Returns the time in milliseconds taken to execute the requests
+     */
+    public long getElapsed() {
+        return elapsed;
+    }
+}
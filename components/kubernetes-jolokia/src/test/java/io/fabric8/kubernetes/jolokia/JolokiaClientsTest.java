@@ -0,0 +1,178 @@
+/**
+ *  Copyright 2005-2015 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.jolokia;
+
+import io.fabric8.kubernetes.api.model.Container;
+import io.fabric8.kubernetes.api.model.ContainerBuilder;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import io.fabric8.kubernetes.api.model.Service;
+import io.fabric8.kubernetes.api.model.ServiceBuilder;
+import org.jolokia.client.J4pClient;
+import org.jolokia.client.request.J4pRequest;
+import org.jolokia.client.request.J4pResponse;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JolokiaClientsTest {
+    private final CountDownLatch slowPodStarted = new CountDownLatch(1);
+    private final CountDownLatch releaseSlowPod = new CountDownLatch(1);
+    private final CountDownLatch queriesSubmitted = new CountDownLatch(1);
+    private final List<Pod> pods = new ArrayList<>();
+    private final List<String> createdClientUrls = new ArrayList<>();
+    private final ExecutorService caller = Executors.newSingleThreadExecutor();
+    private final JolokiaClients clients = new JolokiaClients(null) {
+        @Override
+        protected JolokiaPodResult executeRequests(Pod pod, List<J4pRequest> requests) {
+            String name = pod.getMetadata().getName();
+            if (name.startsWith("slow")) {
+                slowPodStarted.countDown();
+                try {
+                    releaseSlowPod.await();
+                } catch (InterruptedException e) {
+                    return new JolokiaPodResult("default", name, null, e, 0);
+                }
+            }
+            return new JolokiaPodResult("default", name, new ArrayList<J4pResponse<J4pRequest>>(), null, 0);
+        }
+
+        @Override
+        protected J4pClient createJolokiaClient(Container container, String jolokiaUrl) {
+            createdClientUrls.add(jolokiaUrl);
+            return super.createJolokiaClient(container, jolokiaUrl);
+        }
+
+        @Override
+        protected List<Pod> listPods(String namespace, Map<String, String> selector) {
+            return pods;
+        }
+
+        @Override
+        protected boolean filterPod(Pod pod) {
+            if (pod.getMetadata().getName().equals("last")) {
+                // the pods before this one have all been submitted
+                queriesSubmitted.countDown();
+                return false;
+            }
+            return true;
+        }
+    };
+
+    @After
+    public void cleanup() {
+        releaseSlowPod.countDown();
+        clients.close();
+        caller.shutdownNow();
+    }
+
+    @Test
+    public void testSlowPodTimesOutWithoutAffectingTheOtherPods() throws Exception {
+        clients.setQueryTimeout(200);
+
+        pods.addAll(Arrays.asList(createPod("fast-1"), createPod("slow"), createPod("fast-2")));
+        Service service = new ServiceBuilder().withNewMetadata().withName("service").withNamespace("default").endMetadata()
+                .withNewSpec().addToSelector("app", "test").endSpec().build();
+
+        Map<String, JolokiaPodResult> results = clients.queryService(service, new ArrayList<J4pRequest>());
+
+        assertThat(results.keySet()).containsExactly("fast-1", "slow", "fast-2");
+        assertThat(results.get("fast-1").isSuccess()).isTrue();
+        assertThat(results.get("fast-2").isSuccess()).isTrue();
+        assertThat(results.get("slow").getError()).isInstanceOf(TimeoutException.class);
+    }
+
+    @Test
+    public void testQueuedQueriesAreCancelledOnClose() throws Exception {
+        // the only query thread is kept busy by the slow pod so the other pod stays queued
+        clients.setQueryParallelism(1);
+        clients.setQueryTimeout(60 * 1000L);
+
+        Future<Map<String, JolokiaPodResult>> future = caller.submit(new Callable<Map<String, JolokiaPodResult>>() {
+            @Override
+            public Map<String, JolokiaPodResult> call() throws Exception {
+                return clients.queryPods(Arrays.asList(createPod("slow"), createPod("queued"), createPod("last")), new ArrayList<J4pRequest>());
+            }
+        });
+        assertThat(slowPodStarted.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(queriesSubmitted.await(10, TimeUnit.SECONDS)).isTrue();
+        clients.close();
+
+        // the caller returns straight away rather than waiting for the query timeout
+        Map<String, JolokiaPodResult> results = future.get(10, TimeUnit.SECONDS);
+        assertThat(results.keySet()).containsExactly("slow", "queued");
+        assertThat(results.get("slow").isSuccess()).isFalse();
+        assertThat(results.get("queued").getError()).isInstanceOf(CancellationException.class);
+    }
+
+    @Test
+    public void testCachedClientIsReusedUntilThePodRestartsOrMoves() throws Exception {
+        Container container = new ContainerBuilder().withName("app").build();
+        String url = "http://10.0.0.1:8778/jolokia/";
+        J4pClient client = clients.cachedClient(createPod("pod", 0), container, 8778, url);
+        assertThat(clients.cachedClient(createPod("pod", 0), container, 8778, url)).isSameAs(client);
+        assertThat(createdClientUrls).containsExactly(url);
+
+        J4pClient restarted = clients.cachedClient(createPod("pod", 1), container, 8778, url);
+        assertThat(restarted).isNotSameAs(client);
+
+        String movedUrl = "http://10.0.0.2:8778/jolokia/";
+        J4pClient moved = clients.cachedClient(createPod("pod", 1), container, 8778, movedUrl);
+        assertThat(moved).isNotSameAs(restarted);
+        assertThat(clients.cachedClient(createPod("pod", 1), container, 8778, movedUrl)).isSameAs(moved);
+        assertThat(createdClientUrls).containsExactly(url, url, movedUrl);
+    }
+
+    @Test
+    public void testCachedClientIsOnlyReusedWithTheSameCredentials() throws Exception {
+        Container container = new ContainerBuilder().withName("app").build();
+        String url = "http://10.0.0.1:8778/jolokia/";
+        String password = clients.getPassword();
+        J4pClient client = clients.cachedClient(createPod("pod", 0), container, 8778, url);
+
+        clients.setPassword(password + "-changed");
+        J4pClient changed = clients.cachedClient(createPod("pod", 0), container, 8778, url);
+        assertThat(changed).isNotSameAs(client);
+
+        clients.setPassword(password);
+        assertThat(clients.cachedClient(createPod("pod", 0), container, 8778, url)).isSameAs(client);
+        assertThat(createdClientUrls).containsExactly(url, url);
+    }
+
+    protected static Pod createPod(String name) {
+        return new PodBuilder().withNewMetadata().withName(name).withNamespace("default").endMetadata()
+                .withNewStatus().withPhase("Running").endStatus().build();
+    }
+
+    protected static Pod createPod(String name, int restarts) {
+        return new PodBuilder().withNewMetadata().withName(name).withNamespace("default").endMetadata()
+                .withNewStatus().withPhase("Running").addNewContainerStatus().withName("app").withRestartCount(restarts).endContainerStatus().endStatus().build();
+    }
+}
@@ -16,6 +16,7 @@
 package io.fabric8.maven;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import io.fabric8.kubernetes.api.ApplyResult;
 import io.fabric8.kubernetes.api.Controller;
 import io.fabric8.kubernetes.api.KubernetesHelper;
 import io.fabric8.kubernetes.api.model.HasMetadata;
@@ -149,6 +150,28 @@ public class ApplyMojo extends AbstractFabric8Mojo {
     @Parameter(property = "fabric8.apply.jsonLogDir", defaultValue = "${basedir}/target/fabric8/applyJson")
     private File jsonLogDir;
 
+    /**
+     * The maximum number of resources in a namespace to apply at once. When more than 1 the resources are applied
+     * in dependency order: namespaces, then secrets and service accounts, services, replication controllers and pods,
+     * then routes.
+     */
+    @Parameter(property = "fabric8.apply.parallelism", defaultValue = "1")
+    private int applyParallelism;
+
+    /**
+     * Should we list the live resources once per kind and namespace up front, rather than requesting each resource
+     * we apply one at a time
+     */
+    @Parameter(property = "fabric8.apply.prefetch", defaultValue = "false")
+    private boolean prefetchLiveState;
+
+    /**
+     * Should we annotate the applied resources with a hash of their configuration so that unchanged resources
+     * are detected by comparing the hash on later applies
+     */
+    @Parameter(property = "fabric8.apply.configHash", defaultValue = "false")
+    private boolean configHashAnnotations;
+
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
         File json = getKubernetesJson();
@@ -186,6 +209,9 @@ public class ApplyMojo extends AbstractFabric8Mojo {
             controller.setDeletePodsOnReplicationControllerUpdate(deletePodsOnReplicationControllerUpdate);
             controller.setRollingUpgrade(rollingUpgrades);
             controller.setRollingUpgradePreserveScale(isRollingUpgradePreserveScale());
+            controller.setApplyParallelism(applyParallelism);
+            controller.setPrefetchLiveState(prefetchLiveState);
+            controller.setConfigHashAnnotations(configHashAnnotations);
 
             boolean openShift = KubernetesHelper.isOpenShift(kubernetes);
             if (openShift) {
@@ -233,18 +259,33 @@ public class ApplyMojo extends AbstractFabric8Mojo {
             addEnvironmentAnnotations(entities);
 
             //Apply all items
-            for (HasMetadata entity : entities) {
-                if (entity instanceof Pod) {
-                    Pod pod = (Pod) entity;
-                    controller.applyPod(pod, fileName);
-                } else if (entity instanceof Service) {
-                    Service service = (Service) entity;
-                    controller.applyService(service, fileName);
-                } else if (entity instanceof ReplicationController) {
-                    ReplicationController replicationController = (ReplicationController) entity;
-                    controller.applyReplicationController(replicationController, fileName);
-                } else if (entity != null) {
-                    controller.apply(entity, fileName);
+            if (applyParallelism > 1 || prefetchLiveState) {
+                List<ApplyResult> results = controller.applyEntities(new ArrayList<>(entities), fileName);
+                int failures = 0;
+                for (ApplyResult result : results) {
+                    if (result.isSuccess()) {
+                        getLog().debug(result.toString());
+                    } else {
+                        failures++;
+                        getLog().warn("Failed to apply " + result.getKind() + " " + result.getNamespace() + "/" + result.getName() + " due " + result.getError());
+                    }
+                }
+                getLog().info("Applied " + (results.size() - failures) + " of " + results.size() + " entities from " + fileName
+                        + (failures > 0 ? " with " + failures + " failures" : ""));
+            } else {
+                for (HasMetadata entity : entities) {
+                    if (entity instanceof Pod) {
+                        Pod pod = (Pod) entity;
+                        controller.applyPod(pod, fileName);
+                    } else if (entity instanceof Service) {
+                        Service service = (Service) entity;
+                        controller.applyService(service, fileName);
+                    } else if (entity instanceof ReplicationController) {
+                        ReplicationController replicationController = (ReplicationController) entity;
+                        controller.applyReplicationController(replicationController, fileName);
+                    } else if (entity != null) {
+                        controller.apply(entity, fileName);
+                    }
                 }
             }
         } catch (Exception e) {